@@ -17,42 +17,62 @@
 package com.netflix.kayenta.atlas.backends;
 
 import com.netflix.kayenta.atlas.model.AtlasStorage;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+/**
+ * Holds the most recently fetched Atlas storage cnames. Like {@link BackendDatabase}, reads go to
+ * an immutable snapshot that an update replaces, so they take no lock.
+ */
 public class AtlasStorageDatabase {
 
-  private Map<String, AtlasStorage> atlasStorages = new HashMap<>();
-
-  public synchronized Optional<String> getGlobalUri(String scheme, String accountId) {
-    Optional<String> uri =
-        atlasStorages.entrySet().stream()
-            .filter(map -> map.getKey().equals(accountId))
-            .findFirst()
-            .map(Map.Entry::getValue)
-            .map(AtlasStorage::getGlobal)
-            .map(s -> scheme + "://" + s);
-    return uri;
+  private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap());
+
+  public Optional<String> getGlobalUri(String scheme, String accountId) {
+    return Optional.ofNullable(snapshot.globalCnamesByAccountId.get(accountId))
+        .map(s -> scheme + "://" + s);
   }
 
-  public synchronized Optional<String> getRegionalUri(
-      String scheme, String accountId, String region) {
-    Optional<String> uri =
-        atlasStorages.entrySet().stream()
-            .filter(map -> map.getKey().equals(accountId))
-            .findFirst()
-            .map(Map.Entry::getValue)
-            .flatMap(s -> s.getRegionalCnameForRegion(region))
-            .map(s -> scheme + "://" + s);
-    return uri;
+  public Optional<String> getRegionalUri(String scheme, String accountId, String region) {
+    return Optional.ofNullable(
+            snapshot.regionalCnamesByAccountIdAndRegion.get(Arrays.asList(accountId, region)))
+        .map(s -> scheme + "://" + s);
   }
 
-  public synchronized void update(Map<String, Map<String, AtlasStorage>> newAtlasStorages) {
+  public void update(Map<String, Map<String, AtlasStorage>> newAtlasStorages) {
     if (!newAtlasStorages.containsKey("atlas_storage")) {
       throw new IllegalArgumentException(
           "Expected fetched AtlasStorage URI to contain a top level key 'atlas_storage'");
     }
-    atlasStorages = newAtlasStorages.get("atlas_storage");
+    snapshot = new Snapshot(newAtlasStorages.get("atlas_storage"));
+  }
+
+  private static class Snapshot {
+
+    private final Map<String, String> globalCnamesByAccountId = new HashMap<>();
+    private final Map<List<String>, String> regionalCnamesByAccountIdAndRegion = new HashMap<>();
+
+    Snapshot(Map<String, AtlasStorage> atlasStorages) {
+      atlasStorages.forEach(
+          (accountId, atlasStorage) -> {
+            if (atlasStorage.getGlobal() != null) {
+              globalCnamesByAccountId.put(accountId, atlasStorage.getGlobal());
+            }
+            if (atlasStorage.getRegional() != null && atlasStorage.getRegions() != null) {
+              for (String region : atlasStorage.getRegions()) {
+                atlasStorage
+                    .getRegionalCnameForRegion(region)
+                    .ifPresent(
+                        cname ->
+                            regionalCnamesByAccountIdAndRegion.put(
+                                Arrays.asList(accountId, region), cname));
+              }
+            }
+          });
+    }
   }
 }
@@ -18,22 +18,25 @@ package com.netflix.kayenta.atlas.backends;
 
 import com.netflix.kayenta.atlas.model.Backend;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
+/**
+ * Holds the most recently fetched Atlas backends.
+ *
+ * <p>Every Atlas fetch resolves its backend here, so reads take no lock: the backends are published
+ * as an immutable, pre-indexed snapshot, and an update builds a new snapshot and swaps it in.
+ */
 public class BackendDatabase {
 
-  private List<Backend> backends = new ArrayList<>();
-
-  private boolean matches(
-      Backend backend, String deployment, String dataset, String region, String environment) {
-    // return false if it doesn't match the deployment.
-    if (!backend.getDeployment().equals(deployment)) return false;
-
-    // return false if it doesn't match the dataset.
-    if (!backend.getDataset().equals(dataset)) return false;
+  private volatile Snapshot snapshot = new Snapshot(Collections.emptyList());
 
+  private static boolean matches(Backend backend, String region, String environment) {
     // return false if it doesn't match the region.
     if (backend.getRegions() != null && !backend.getRegions().contains(region)) return false;
 
@@ -41,31 +44,91 @@ public class BackendDatabase {
     return backend.getEnvironments() == null || backend.getEnvironments().contains(environment);
   }
 
-  public synchronized Optional<Backend> getOne(
+  public Optional<Backend> getOne(
       String deployment, String dataset, String region, String environment) {
-    return backends.stream()
-        .filter(a -> matches(a, deployment, dataset, region, environment))
+    return snapshot
+        .backendsByDeploymentAndDataset
+        .getOrDefault(Arrays.asList(deployment, dataset), Collections.emptyList())
+        .stream()
+        .filter(a -> matches(a, region, environment))
         .findFirst();
   }
 
-  public synchronized void update(List<Backend> newBackends) {
-    backends = newBackends;
+  public void update(List<Backend> newBackends) {
+    snapshot = new Snapshot(newBackends);
   }
 
-  public synchronized List<String> getLocations() {
-    ArrayList<String> locations = new ArrayList<>();
+  public List<String> getLocations() {
+    return snapshot.locations;
+  }
 
-    for (Backend backend : backends) {
-      locations.addAll(backend.getTargets());
-    }
-    return locations.stream().distinct().collect(Collectors.toList());
+  public String getUriForLocation(String scheme, String location) {
+    Backend backend = snapshot.backendsByLocation.get(location);
+
+    return backend != null ? backend.getUriForLocation(scheme, location) : null;
   }
 
-  public synchronized String getUriForLocation(String scheme, String location) {
-    for (Backend backend : backends) {
-      String cname = backend.getUriForLocation(scheme, location);
-      if (cname != null) return cname;
+  private static class Snapshot {
+
+    private final Map<List<String>, List<Backend>> backendsByDeploymentAndDataset;
+    private final List<String> locations;
+    // The first backend that serves each location, as the backends are listed.
+    private final Map<String, Backend> backendsByLocation;
+
+    Snapshot(List<Backend> backends) {
+      Map<List<String>, List<Backend>> backendsByDeploymentAndDataset = new HashMap<>();
+      LinkedHashSet<String> locations = new LinkedHashSet<>();
+      Map<String, Backend> backendsByLocation = new HashMap<>();
+
+      for (Backend backend : backends) {
+        backendsByDeploymentAndDataset
+            .computeIfAbsent(
+                Arrays.asList(backend.getDeployment(), backend.getDataset()),
+                key -> new ArrayList<>())
+            .add(backend);
+        locations.addAll(backend.getTargets());
+
+        for (String location : getServedLocations(backend)) {
+          backendsByLocation.putIfAbsent(location, backend);
+        }
+      }
+
+      this.backendsByDeploymentAndDataset = backendsByDeploymentAndDataset;
+      this.locations = Collections.unmodifiableList(new ArrayList<>(locations));
+      this.backendsByLocation = backendsByLocation;
+    }
+
+    // Expands the target the same way Backend.getUriForLocation() matches a location against it,
+    // where an empty list of regions or environments means the target doesn't vary by it.
+    private static List<String> getServedLocations(Backend backend) {
+      List<String> servedLocations =
+          Collections.singletonList(
+              backend
+                  .getTarget()
+                  .replace("$(deployment)", backend.getDeployment())
+                  .replace("$(dataset)", backend.getDataset()));
+
+      servedLocations = expand(servedLocations, "$(region)", backend.getRegions());
+      servedLocations = expand(servedLocations, "$(env)", backend.getEnvironments());
+
+      return servedLocations;
+    }
+
+    private static List<String> expand(
+        List<String> servedLocations, String placeholder, List<String> substitutions) {
+      if (substitutions == null || substitutions.isEmpty()) {
+        return servedLocations;
+      }
+
+      List<String> expandedLocations = new ArrayList<>();
+
+      for (String substitution : substitutions) {
+        for (String servedLocation : servedLocations) {
+          expandedLocations.add(servedLocation.replace(placeholder, substitution));
+        }
+      }
+
+      return expandedLocations;
     }
-    return null;
   }
 }
@@ -18,16 +18,16 @@ package com.netflix.kayenta.atlas.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.kayenta.atlas.model.AtlasResults;
+import com.netflix.kayenta.atlas.model.AtlasResultsMerger;
 import com.netflix.kayenta.metrics.FatalQueryException;
 import com.netflix.kayenta.metrics.RetryableQueryException;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -74,39 +74,63 @@ public class AtlasSSEConverter implements Converter {
     return null;
   }
 
+  /**
+   * Reads the stream one line at a time, merging the chunks of each time series as they arrive.
+   * Reading stops at the first 'close' stanza, and an 'error' stanza fails the query right away
+   * rather than after the rest of the response has been buffered.
+   */
   protected List<AtlasResults> processInput(BufferedReader reader) {
-    List<String[]> tokenizedLines =
-        reader
-            .lines()
-            .filter(line -> !StringUtils.isEmpty(line))
-            .map(line -> line.split(": ", 2))
-            .collect(Collectors.toList());
-
-    tokenizedLines.stream()
-        .map(tokenizedLine -> tokenizedLine[0])
-        .filter(openingToken -> !openingToken.equals("data"))
-        .forEach(
-            nonDataOpeningToken ->
-                log.info(
-                    "Received opening token other than 'data' from Atlas: {}",
-                    nonDataOpeningToken));
-
-    List<AtlasResults> atlasResultsList =
-        tokenizedLines.stream()
-            .map(this::convertTokenizedLineToAtlasResults)
-            .filter(Objects::nonNull)
-            .collect(Collectors.toList());
-
-    if (!atlasResultsList.get(atlasResultsList.size() - 1).getType().equals("close")) {
+    AtlasResultsMerger atlasResultsMerger = new AtlasResultsMerger();
+    AtlasResults closeAtlasResults = null;
+
+    try {
+      String line;
+
+      while (closeAtlasResults == null && (line = reader.readLine()) != null) {
+        if (StringUtils.isEmpty(line)) {
+          continue;
+        }
+
+        String[] tokenizedLine = line.split(": ", 2);
+
+        if (!tokenizedLine[0].equals("data")) {
+          log.info("Received opening token other than 'data' from Atlas: {}", tokenizedLine[0]);
+        }
+
+        AtlasResults atlasResults = convertTokenizedLineToAtlasResults(tokenizedLine);
+
+        if (atlasResults == null) {
+          continue;
+        }
+
+        if (atlasResults.getType().equals("close")) {
+          closeAtlasResults = atlasResults;
+        } else {
+          atlasResultsMerger.add(atlasResults);
+        }
+      }
+    } catch (IOException e) {
+      log.error("Cannot read Atlas results", e);
+      throw new RetryableQueryException("Could not read Atlas response: " + e.getMessage());
+    }
+
+    if (closeAtlasResults == null) {
       log.error("Received data from Atlas that did not terminate with a 'close'.");
       throw new RetryableQueryException(
           "Atlas response did not end in a 'close', we cannot guarantee all data was received.");
     }
 
+    List<AtlasResults> atlasResultsList = new ArrayList<>(atlasResultsMerger.getResults().values());
+    atlasResultsList.add(closeAtlasResults);
+
     return atlasResultsList;
   }
 
   protected AtlasResults convertTokenizedLineToAtlasResults(String[] tokenizedLine) {
+    if (tokenizedLine.length < 2) {
+      return null;
+    }
+
     try {
       AtlasResults atlasResults =
           kayentaObjectMapper.readValue(tokenizedLine[1], AtlasResults.class);
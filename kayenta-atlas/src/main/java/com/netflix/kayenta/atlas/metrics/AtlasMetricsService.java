@@ -37,7 +37,6 @@ import com.netflix.kayenta.metrics.MetricsService;
 import com.netflix.kayenta.retrofit.config.RemoteService;
 import com.netflix.kayenta.retrofit.config.RetrofitClientFactory;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
-import com.netflix.kayenta.util.Retry;
 import com.netflix.spectator.api.Registry;
 import com.squareup.okhttp.OkHttpClient;
 import java.time.Duration;
@@ -58,8 +57,7 @@ public class AtlasMetricsService implements MetricsService {
 
   public final String URI_SCHEME = "http";
 
-  public final int MAX_RETRIES = 10; // maximum number of times we'll retry an Atlas query
-  public final long RETRY_BACKOFF = 1000; // time between retries in millis
+  private static final String BATCH_LEGEND_PREFIX = "kayentaBatchMetric";
 
   @NotNull @Singular @Getter private List<String> accountNames;
 
@@ -71,8 +69,6 @@ public class AtlasMetricsService implements MetricsService {
 
   @Autowired private final Registry registry;
 
-  private final Retry retry = new Retry();
-
   @Override
   public String getType() {
     return "atlas";
@@ -93,11 +89,169 @@ public class AtlasMetricsService implements MetricsService {
       CanaryConfig canaryConfig,
       CanaryMetricConfig canaryMetricConfig,
       CanaryScope canaryScope) {
+    AtlasCanaryScope atlasCanaryScope = toAtlasCanaryScope(canaryScope);
+    AtlasNamedAccountCredentials credentials = getCredentials(accountName);
+    String uri = resolveUri(credentials, atlasCanaryScope);
 
-    OkHttpClient okHttpClient = new OkHttpClient();
-    okHttpClient.setConnectTimeout(30, TimeUnit.SECONDS);
-    okHttpClient.setReadTimeout(90, TimeUnit.SECONDS);
+    AtlasSSEConverter atlasSSEConverter =
+        new AtlasSSEConverter(
+            kayentaObjectMapper,
+            canaryConfig.getName(),
+            canaryMetricConfig.getName(),
+            canaryMetricConfig.getQuery().toString());
+    String decoratedQuery = decorateQuery(canaryMetricConfig, atlasCanaryScope);
+    List<AtlasResults> atlasResultsList =
+        fetch(credentials, uri, atlasSSEConverter, decoratedQuery, atlasCanaryScope);
+
+    return toMetricSets(
+        canaryMetricConfig.getName(),
+        AtlasResultsHelper.merge(atlasResultsList).values(),
+        decoratedQuery,
+        uri,
+        atlasCanaryScope);
+  }
+
+  /**
+   * Fetches all of the metrics with a single Atlas request. Every metric's expression is given a
+   * legend that identifies its position in the batch, and the common query of the scope is applied
+   * to all of them at once. The returned lines are then attributed to their metric by that legend.
+   *
+   * <p>A legend only labels the expression on top of the stack, so this cannot work for queries
+   * that set their own legend, nor for queries that leave several expressions on the stack. The
+   * former are recognized up front and queried on their own. The latter show up as lines that
+   * carry no batch legend, in which case every metric of the batch is queried on its own instead.
+   */
+  @Override
+  public List<MetricSet> batchQueryMetrics(
+      String accountName,
+      CanaryConfig canaryConfig,
+      List<CanaryMetricConfig> canaryMetricConfigs,
+      CanaryScope canaryScope) {
+    AtlasCanaryScope atlasCanaryScope = toAtlasCanaryScope(canaryScope);
+    List<Integer> batchedMetricIndexes = new ArrayList<>();
+    Map<Integer, List<MetricSet>> metricSetListsByMetricIndex = new HashMap<>();
+
+    for (int index = 0; index < canaryMetricConfigs.size(); index++) {
+      if (isBatchable(canaryMetricConfigs.get(index))) {
+        batchedMetricIndexes.add(index);
+      } else {
+        metricSetListsByMetricIndex.put(
+            index,
+            queryMetrics(accountName, canaryConfig, canaryMetricConfigs.get(index), canaryScope));
+      }
+    }
 
+    Map<Integer, List<MetricSet>> batchedMetricSetLists =
+        batchedMetricIndexes.size() > 1
+            ? fetchBatch(
+                accountName,
+                canaryConfig,
+                canaryMetricConfigs,
+                batchedMetricIndexes,
+                atlasCanaryScope)
+            : null;
+
+    if (batchedMetricSetLists != null) {
+      metricSetListsByMetricIndex.putAll(batchedMetricSetLists);
+    } else {
+      for (int index : batchedMetricIndexes) {
+        metricSetListsByMetricIndex.put(
+            index,
+            queryMetrics(accountName, canaryConfig, canaryMetricConfigs.get(index), canaryScope));
+      }
+    }
+
+    List<MetricSet> metricSetList = new ArrayList<>();
+
+    for (int index = 0; index < canaryMetricConfigs.size(); index++) {
+      metricSetList.addAll(metricSetListsByMetricIndex.get(index));
+    }
+
+    return metricSetList;
+  }
+
+  private static boolean isBatchable(CanaryMetricConfig canaryMetricConfig) {
+    AtlasCanaryMetricSetQueryConfig atlasMetricSetQuery =
+        (AtlasCanaryMetricSetQueryConfig) canaryMetricConfig.getQuery();
+
+    return Arrays.stream(atlasMetricSetQuery.getQ().split(","))
+        .noneMatch(token -> token.trim().equals(":legend"));
+  }
+
+  /**
+   * Returns the metric sets of the given metrics by their index, or null if the response holds
+   * lines that cannot be attributed to any of them.
+   */
+  private Map<Integer, List<MetricSet>> fetchBatch(
+      String accountName,
+      CanaryConfig canaryConfig,
+      List<CanaryMetricConfig> canaryMetricConfigs,
+      List<Integer> metricIndexes,
+      AtlasCanaryScope atlasCanaryScope) {
+    AtlasNamedAccountCredentials credentials = getCredentials(accountName);
+    String uri = resolveUri(credentials, atlasCanaryScope);
+
+    AtlasSSEConverter atlasSSEConverter =
+        new AtlasSSEConverter(
+            kayentaObjectMapper,
+            canaryConfig.getName(),
+            metricIndexes.stream()
+                .map(index -> canaryMetricConfigs.get(index).getName())
+                .collect(Collectors.joining(", ")),
+            null);
+    List<String> labeledQueries = new ArrayList<>();
+
+    for (int index : metricIndexes) {
+      AtlasCanaryMetricSetQueryConfig atlasMetricSetQuery =
+          (AtlasCanaryMetricSetQueryConfig) canaryMetricConfigs.get(index).getQuery();
+
+      labeledQueries.add(
+          atlasMetricSetQuery.getQ() + "," + BATCH_LEGEND_PREFIX + index + ",:legend");
+    }
+
+    String batchedQuery = String.join(",", labeledQueries) + "," + atlasCanaryScope.cq();
+    List<AtlasResults> atlasResultsList =
+        fetch(credentials, uri, atlasSSEConverter, batchedQuery, atlasCanaryScope);
+
+    Map<Integer, List<AtlasResults>> atlasResultsByMetricIndex = new HashMap<>();
+
+    for (AtlasResults atlasResults : AtlasResultsHelper.merge(atlasResultsList).values()) {
+      String label = atlasResults.getLabel();
+
+      if (label == null || !label.startsWith(BATCH_LEGEND_PREFIX)) {
+        log.info(
+            "Atlas result with label {} belongs to no metric of batched query {}, querying the "
+                + "metrics one by one instead",
+            label,
+            batchedQuery);
+        return null;
+      }
+
+      int metricIndex = Integer.parseInt(label.substring(BATCH_LEGEND_PREFIX.length()));
+      atlasResultsByMetricIndex
+          .computeIfAbsent(metricIndex, key -> new ArrayList<>())
+          .add(atlasResults);
+    }
+
+    Map<Integer, List<MetricSet>> metricSetListsByMetricIndex = new HashMap<>();
+
+    for (int index : metricIndexes) {
+      CanaryMetricConfig canaryMetricConfig = canaryMetricConfigs.get(index);
+
+      metricSetListsByMetricIndex.put(
+          index,
+          toMetricSets(
+              canaryMetricConfig.getName(),
+              atlasResultsByMetricIndex.getOrDefault(index, Collections.emptyList()),
+              decorateQuery(canaryMetricConfig, atlasCanaryScope),
+              uri,
+              atlasCanaryScope));
+    }
+
+    return metricSetListsByMetricIndex;
+  }
+
+  private static AtlasCanaryScope toAtlasCanaryScope(CanaryScope canaryScope) {
     if (!(canaryScope instanceof AtlasCanaryScope)) {
       throw new IllegalArgumentException(
           "Canary scope not instance of AtlasCanaryScope: "
@@ -106,8 +260,19 @@ public class AtlasMetricsService implements MetricsService {
               + "neglecting to explicitly specify which account to use for a given request.");
     }
 
-    AtlasCanaryScope atlasCanaryScope = (AtlasCanaryScope) canaryScope;
-    AtlasNamedAccountCredentials credentials = getCredentials(accountName);
+    return (AtlasCanaryScope) canaryScope;
+  }
+
+  private static String decorateQuery(
+      CanaryMetricConfig canaryMetricConfig, AtlasCanaryScope atlasCanaryScope) {
+    AtlasCanaryMetricSetQueryConfig atlasMetricSetQuery =
+        (AtlasCanaryMetricSetQueryConfig) canaryMetricConfig.getQuery();
+
+    return atlasMetricSetQuery.getQ() + "," + atlasCanaryScope.cq();
+  }
+
+  private String resolveUri(
+      AtlasNamedAccountCredentials credentials, AtlasCanaryScope atlasCanaryScope) {
     BackendDatabase backendDatabase = credentials.getBackendUpdater().getBackendDatabase();
     String uri = backendDatabase.getUriForLocation(URI_SCHEME, atlasCanaryScope.getLocation());
 
@@ -176,47 +341,54 @@ public class AtlasMetricsService implements MetricsService {
               + atlasCanaryScope.getEnvironment());
     }
 
+    return uri;
+  }
+
+  private List<AtlasResults> fetch(
+      AtlasNamedAccountCredentials credentials,
+      String uri,
+      AtlasSSEConverter atlasSSEConverter,
+      String query,
+      AtlasCanaryScope atlasCanaryScope) {
+    OkHttpClient okHttpClient = new OkHttpClient();
+    okHttpClient.setConnectTimeout(30, TimeUnit.SECONDS);
+    okHttpClient.setReadTimeout(90, TimeUnit.SECONDS);
+
     RemoteService remoteService = new RemoteService();
     log.info("Using Atlas backend {}", uri);
     remoteService.setBaseUrl(uri);
-    AtlasSSEConverter atlasSSEConverter =
-        new AtlasSSEConverter(
-            kayentaObjectMapper,
-            canaryConfig.getName(),
-            canaryMetricConfig.getName(),
-            canaryMetricConfig.getQuery().toString());
 
     AtlasRemoteService atlasRemoteService =
         retrofitClientFactory.createClient(
             AtlasRemoteService.class, atlasSSEConverter, remoteService, okHttpClient);
-    AtlasCanaryMetricSetQueryConfig atlasMetricSetQuery =
-        (AtlasCanaryMetricSetQueryConfig) canaryMetricConfig.getQuery();
-    String decoratedQuery = atlasMetricSetQuery.getQ() + "," + atlasCanaryScope.cq();
     String isoStep = Duration.of(atlasCanaryScope.getStep(), SECONDS) + "";
 
+    // Failed queries are retried by the SynchronousQueryProcessor, which reschedules fetch tasks
+    // rather than sleeping on the calling thread.
     long start = registry.clock().monotonicTime();
-    List<AtlasResults> atlasResultsList;
     try {
-      atlasResultsList =
-          retry.retry(
-              () ->
-                  atlasRemoteService.fetch(
-                      decoratedQuery,
-                      atlasCanaryScope.getStart().toEpochMilli(),
-                      atlasCanaryScope.getEnd().toEpochMilli(),
-                      isoStep,
-                      credentials.getFetchId(),
-                      UUID.randomUUID() + ""),
-              MAX_RETRIES,
-              RETRY_BACKOFF);
+      return atlasRemoteService.fetch(
+          query,
+          atlasCanaryScope.getStart().toEpochMilli(),
+          atlasCanaryScope.getEnd().toEpochMilli(),
+          isoStep,
+          credentials.getFetchId(),
+          UUID.randomUUID() + "");
     } finally {
       long end = registry.clock().monotonicTime();
       registry.timer("atlas.fetchTime").record(end - start, TimeUnit.NANOSECONDS);
     }
-    Map<String, AtlasResults> idToAtlasResultsMap = AtlasResultsHelper.merge(atlasResultsList);
+  }
+
+  private List<MetricSet> toMetricSets(
+      String metricName,
+      Collection<AtlasResults> atlasResultsCollection,
+      String decoratedQuery,
+      String uri,
+      AtlasCanaryScope atlasCanaryScope) {
     List<MetricSet> metricSetList = new ArrayList<>();
 
-    for (AtlasResults atlasResults : idToAtlasResultsMap.values()) {
+    for (AtlasResults atlasResults : atlasResultsCollection) {
       Instant responseStartTimeInstant = Instant.ofEpochMilli(atlasResults.getStart());
       Instant responseEndTimeInstant = Instant.ofEpochMilli(atlasResults.getEnd());
       List<Double> timeSeriesList = atlasResults.getData().getValues();
@@ -227,7 +399,7 @@ public class AtlasMetricsService implements MetricsService {
 
       MetricSet.MetricSetBuilder metricSetBuilder =
           MetricSet.builder()
-              .name(canaryMetricConfig.getName())
+              .name(metricName)
               .startTimeMillis(atlasResults.getStart())
               .startTimeIso(responseStartTimeInstant.toString())
               .endTimeMillis(atlasResults.getEnd())
@@ -261,7 +433,7 @@ public class AtlasMetricsService implements MetricsService {
     if (metricSetList.size() == 0) {
       MetricSet metricSet =
           MetricSet.builder()
-              .name(canaryMetricConfig.getName())
+              .name(metricName)
               .startTimeMillis(atlasCanaryScope.getStart().toEpochMilli())
               .startTimeIso(atlasCanaryScope.getStart().toString())
               .endTimeMillis(atlasCanaryScope.getEnd().toEpochMilli())
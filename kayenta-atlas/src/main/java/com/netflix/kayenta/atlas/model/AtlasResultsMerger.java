@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.atlas.model;
+
+import com.netflix.kayenta.metrics.DoubleSeries;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles the time series of an Atlas response as its chunks arrive.
+ *
+ * <p>Atlas streams each time series in chunks covering consecutive time ranges. The chunks of a
+ * series are appended to one primitive buffer as they are added, with a NaN for every step between
+ * the end of a chunk and the start of the next one, so that only the assembled series are held on
+ * to. Chunks that arrive out of order are kept aside and put in order when the results are
+ * requested.
+ */
+public class AtlasResultsMerger {
+
+  private final Map<String, Series> seriesById = new LinkedHashMap<>();
+
+  /** Adds a chunk of a time series. */
+  public void add(AtlasResults atlasResults) {
+    seriesById.computeIfAbsent(atlasResults.getId(), id -> new Series()).add(atlasResults);
+  }
+
+  /** Returns the assembled time series keyed by id, in the order they were first seen. */
+  public Map<String, AtlasResults> getResults() {
+    Map<String, AtlasResults> results = new LinkedHashMap<>();
+
+    seriesById.forEach((id, series) -> results.put(id, series.toAtlasResults()));
+
+    return results;
+  }
+
+  private static class Series {
+
+    private AtlasResults first;
+    private int chunkCount;
+    private long lastStart;
+    private long lastEnd;
+    private double[] values;
+    private int size;
+    private List<AtlasResults> unorderedChunks;
+
+    void add(AtlasResults atlasResults) {
+      if (unorderedChunks != null) {
+        unorderedChunks.add(atlasResults);
+        return;
+      }
+
+      if (chunkCount == 0) {
+        // A series that arrives in one chunk, which is the common case, is not copied.
+        first = atlasResults;
+      } else if (atlasResults.getStart() < lastStart) {
+        unorderedChunks = new ArrayList<>();
+        unorderedChunks.add(toAtlasResults());
+        unorderedChunks.add(atlasResults);
+        values = null;
+        return;
+      } else {
+        if (chunkCount == 1) {
+          List<Double> firstValues = first.getData().getValues();
+
+          values = new double[Math.max(16, firstValues.size() * 2)];
+          append(firstValues);
+        }
+
+        long padding = (atlasResults.getStart() - lastEnd) / atlasResults.getStep();
+
+        for (long i = 0; i < padding; i++) {
+          append(Double.NaN);
+        }
+        append(atlasResults.getData().getValues());
+      }
+
+      chunkCount++;
+      lastStart = atlasResults.getStart();
+      lastEnd = atlasResults.getEnd();
+    }
+
+    private void append(List<Double> chunkValues) {
+      if (chunkValues instanceof DoubleSeries) {
+        DoubleSeries doubleSeries = (DoubleSeries) chunkValues;
+
+        for (int i = 0; i < doubleSeries.size(); i++) {
+          append(doubleSeries.getDouble(i));
+        }
+      } else {
+        for (Double value : chunkValues) {
+          append(value != null ? value : Double.NaN);
+        }
+      }
+    }
+
+    private void append(double value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    AtlasResults toAtlasResults() {
+      if (unorderedChunks != null) {
+        Series orderedSeries = new Series();
+
+        unorderedChunks.stream()
+            .sorted(Comparator.comparingLong(AtlasResults::getStart))
+            .forEach(orderedSeries::add);
+
+        return orderedSeries.toAtlasResults();
+      }
+
+      if (chunkCount == 1) {
+        return first;
+      }
+
+      return AtlasResults.builder()
+          .type(first.getType())
+          .id(first.getId())
+          .query(first.getQuery())
+          .label(first.getLabel())
+          .start(first.getStart())
+          .step(first.getStep())
+          .end(lastEnd)
+          .tags(first.getTags())
+          .groupByKeys(first.getGroupByKeys())
+          .data(
+              TimeseriesData.builder()
+                  .values(DoubleSeries.of(Arrays.copyOf(values, size)))
+                  .type(first.getData().getType())
+                  .build())
+          .build();
+    }
+  }
+}
@@ -16,6 +16,8 @@
 
 package com.netflix.kayenta.atlas.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.netflix.kayenta.metrics.DoubleSeries;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
@@ -31,7 +33,10 @@ public class TimeseriesData {
 
   @NotNull @Getter private String type;
 
-  @NotNull @Getter private List<Double> values;
+  @NotNull
+  @Getter
+  @JsonDeserialize(as = DoubleSeries.class)
+  private List<Double> values;
 
   public static TimeseriesData dummy(String type, long count) {
     List<Double> values =
@@ -21,9 +21,9 @@ import com.netflix.kayenta.atlas.canary.AtlasCanaryScope;
 import com.netflix.kayenta.atlas.config.AtlasConfigurationProperties;
 import com.netflix.kayenta.canary.CanaryConfig;
 import com.netflix.kayenta.metrics.SynchronousQueryProcessor;
+import com.netflix.kayenta.metrics.orca.MetricsFetchTask;
 import com.netflix.kayenta.security.AccountCredentials;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
-import com.netflix.spinnaker.orca.api.pipeline.RetryableTask;
 import com.netflix.spinnaker.orca.api.pipeline.TaskResult;
 import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
 import java.io.IOException;
@@ -36,7 +36,7 @@ import org.springframework.stereotype.Component;
 
 @Component
 @Slf4j
-public class AtlasFetchTask implements RetryableTask {
+public class AtlasFetchTask implements MetricsFetchTask {
 
   @Autowired private ObjectMapper kayentaObjectMapper;
 
@@ -79,7 +79,6 @@ public class AtlasFetchTask implements RetryableTask {
     CanaryConfig canaryConfig =
         kayentaObjectMapper.convertValue(canaryConfigMap, CanaryConfig.class);
     String scopeJson = (String) context.get("canaryScope");
-    int metricIndex = (Integer) context.get("metricIndex");
     AtlasCanaryScope atlasCanaryScope;
     try {
       atlasCanaryScope = kayentaObjectMapper.readValue(scopeJson, AtlasCanaryScope.class);
@@ -100,7 +99,7 @@ public class AtlasFetchTask implements RetryableTask {
         resolvedMetricsAccountName,
         resolvedStorageAccountName,
         canaryConfig,
-        metricIndex,
-        atlasCanaryScope);
+        atlasCanaryScope,
+        stage);
   }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.atlas;
+
+import static org.junit.Assert.*;
+
+import com.netflix.kayenta.atlas.backends.AtlasStorageDatabase;
+import com.netflix.kayenta.atlas.model.AtlasStorage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import org.junit.Test;
+
+public class AtlasStorageDatabaseTest {
+
+  private final AtlasStorage atlasStorage =
+      AtlasStorage.builder()
+          .global("atlas-global.example.com")
+          .regional("atlas-$(region).example.com")
+          .regions(Arrays.asList("us-east-1", "us-west-2"))
+          .build();
+
+  @Test
+  public void resolvesUrisFromTheLatestUpdate() {
+    AtlasStorageDatabase db = new AtlasStorageDatabase();
+
+    assertEquals(Optional.empty(), db.getGlobalUri("http", "123"));
+
+    db.update(
+        Collections.singletonMap("atlas_storage", Collections.singletonMap("123", atlasStorage)));
+
+    assertEquals(Optional.of("http://atlas-global.example.com"), db.getGlobalUri("http", "123"));
+    assertEquals(
+        Optional.of("http://atlas-us-west-2.example.com"),
+        db.getRegionalUri("http", "123", "us-west-2"));
+    assertEquals(Optional.empty(), db.getRegionalUri("http", "123", "eu-west-1"));
+    assertEquals(Optional.empty(), db.getGlobalUri("http", "456"));
+
+    db.update(
+        Collections.singletonMap("atlas_storage", Collections.singletonMap("456", atlasStorage)));
+
+    assertEquals(Optional.empty(), db.getGlobalUri("http", "123"));
+    assertEquals(Optional.of("http://atlas-global.example.com"), db.getGlobalUri("http", "456"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUpdatesWithoutAtlasStorage() {
+    new AtlasStorageDatabase().update(Collections.emptyMap());
+  }
+}
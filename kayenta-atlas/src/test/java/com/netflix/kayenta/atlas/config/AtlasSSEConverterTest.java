@@ -8,6 +8,7 @@ import com.netflix.kayenta.metrics.FatalQueryException;
 import com.netflix.kayenta.metrics.RetryableQueryException;
 import java.io.BufferedReader;
 import java.io.StringReader;
+import java.util.Arrays;
 import java.util.List;
 import org.junit.Test;
 
@@ -53,4 +54,37 @@ public class AtlasSSEConverterTest {
   public void retryableErrorWithoutClose() {
     atlasResultsFromSSE(retryableErrorMessage);
   }
+
+  @Test
+  public void chunksOfASeriesAreMergedAsTheyArrive() {
+    String firstChunk =
+        "data: {\"type\":\"timeseries\",\"id\":\"abc\",\"start\":0,\"end\":120000,"
+            + "\"step\":60000,\"data\":{\"type\":\"array\",\"values\":[1.0,2.0]}}\n";
+    String secondChunk =
+        "data: {\"type\":\"timeseries\",\"id\":\"abc\",\"start\":180000,\"end\":240000,"
+            + "\"step\":60000,\"data\":{\"type\":\"array\",\"values\":[4.0]}}\n";
+
+    List<AtlasResults> results =
+        atlasResultsFromSSE(firstChunk + timeseriesMessage + secondChunk + closeMessage);
+
+    assertEquals(3, results.size());
+    assertEquals("abc", results.get(0).getId());
+    assertEquals(0, results.get(0).getStart());
+    assertEquals(240000, results.get(0).getEnd());
+    assertEquals(Arrays.asList(1.0, 2.0, Double.NaN, 4.0), results.get(0).getData().getValues());
+    assertEquals("randomIdHere", results.get(1).getId());
+    assertEquals("close", results.get(2).getType());
+  }
+
+  @Test
+  public void stopsReadingAtClose() {
+    List<AtlasResults> results =
+        atlasResultsFromSSE(timeseriesMessage + closeMessage + retryableErrorMessage);
+    assertEquals(2, results.size());
+  }
+
+  @Test(expected = FatalQueryException.class)
+  public void failsAsSoonAsAnErrorArrives() {
+    atlasResultsFromSSE(timeseriesMessage + errorMessageIllegalStateMessage + closeMessage);
+  }
 }
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.atlas.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.kayenta.atlas.backends.BackendUpdater;
+import com.netflix.kayenta.atlas.canary.AtlasCanaryScope;
+import com.netflix.kayenta.atlas.model.AtlasResults;
+import com.netflix.kayenta.atlas.model.TimeseriesData;
+import com.netflix.kayenta.atlas.security.AtlasNamedAccountCredentials;
+import com.netflix.kayenta.atlas.service.AtlasRemoteService;
+import com.netflix.kayenta.canary.CanaryConfig;
+import com.netflix.kayenta.canary.CanaryMetricConfig;
+import com.netflix.kayenta.canary.providers.metrics.AtlasCanaryMetricSetQueryConfig;
+import com.netflix.kayenta.metrics.DoubleSeries;
+import com.netflix.kayenta.metrics.MetricSet;
+import com.netflix.kayenta.retrofit.config.RemoteService;
+import com.netflix.kayenta.retrofit.config.RetrofitClientFactory;
+import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.spectator.api.NoopRegistry;
+import com.squareup.okhttp.OkHttpClient;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import retrofit.converter.Converter;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AtlasMetricsServiceTest {
+
+  private static final String ACCOUNT = "atlas-account";
+
+  @Mock AccountCredentialsRepository accountCredentialsRepository;
+
+  @Mock RetrofitClientFactory retrofitClientFactory;
+
+  @Mock AtlasRemoteService atlasRemoteService;
+
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  BackendUpdater backendUpdater;
+
+  private AtlasMetricsService atlasMetricsService;
+
+  private AtlasCanaryScope atlasCanaryScope;
+
+  @Before
+  public void setUp() {
+    AtlasNamedAccountCredentials credentials =
+        AtlasNamedAccountCredentials.builder().name(ACCOUNT).backendUpdater(backendUpdater).build();
+
+    when(accountCredentialsRepository.<AtlasNamedAccountCredentials>getRequiredOne(ACCOUNT))
+        .thenReturn(credentials);
+    when(backendUpdater.getBackendDatabase().getUriForLocation("http", "us-east-1"))
+        .thenReturn("http://atlas.example.com");
+    when(retrofitClientFactory.createClient(
+            eq(AtlasRemoteService.class),
+            any(Converter.class),
+            any(RemoteService.class),
+            any(OkHttpClient.class)))
+        .thenReturn(atlasRemoteService);
+
+    atlasMetricsService =
+        AtlasMetricsService.builder()
+            .accountName(ACCOUNT)
+            .accountCredentialsRepository(accountCredentialsRepository)
+            .retrofitClientFactory(retrofitClientFactory)
+            .kayentaObjectMapper(new ObjectMapper())
+            .registry(new NoopRegistry())
+            .build();
+
+    atlasCanaryScope = new AtlasCanaryScope();
+    atlasCanaryScope.setType("asg");
+    atlasCanaryScope.setScope("app-v001");
+    atlasCanaryScope.setLocation("us-east-1");
+    atlasCanaryScope.setStart(Instant.ofEpochMilli(0));
+    atlasCanaryScope.setEnd(Instant.ofEpochMilli(180_000));
+    atlasCanaryScope.setStep(60L);
+  }
+
+  @Test
+  public void batchedQueryResultsAreSplitBackToTheirMetricByLegend() {
+    CanaryMetricConfig cpu = metric("cpu", "name,cpu,:eq");
+    CanaryMetricConfig errors = metric("errors", "name,errors,:eq");
+    CanaryMetricConfig latency = metric("latency", "name,latency,:eq");
+    CanaryConfig canaryConfig =
+        CanaryConfig.builder().name("config").metrics(Arrays.asList(cpu, errors, latency)).build();
+    String cq = atlasCanaryScope.cq();
+
+    // Atlas returns the lines in whatever order it likes.
+    when(atlasRemoteService.fetch(
+            anyString(), anyLong(), anyLong(), anyString(), any(), anyString()))
+        .thenReturn(
+            Arrays.asList(
+                timeseries("a", "kayentaBatchMetric1", 2),
+                timeseries("b", "kayentaBatchMetric0", 1),
+                timeseries("d", "kayentaBatchMetric1", 3)));
+
+    List<MetricSet> metricSets =
+        atlasMetricsService.batchQueryMetrics(
+            ACCOUNT, canaryConfig, Arrays.asList(cpu, errors, latency), atlasCanaryScope);
+
+    verify(atlasRemoteService)
+        .fetch(
+            eq(
+                "name,cpu,:eq,kayentaBatchMetric0,:legend,"
+                    + "name,errors,:eq,kayentaBatchMetric1,:legend,"
+                    + "name,latency,:eq,kayentaBatchMetric2,:legend,"
+                    + cq),
+            eq(0L),
+            eq(180_000L),
+            eq("PT1M"),
+            any(),
+            anyString());
+    assertThat(metricSets)
+        .extracting(MetricSet::getName)
+        .containsExactly("cpu", "errors", "errors", "latency");
+    assertThat(metricSets.get(0).getValues()).containsExactly(1.0, 1.0, 1.0);
+    assertThat(metricSets.get(1).getValues()).containsExactly(2.0, 2.0, 2.0);
+    assertThat(metricSets.get(2).getValues()).containsExactly(3.0, 3.0, 3.0);
+    assertThat(metricSets.get(0).getAttributes().get("query")).isEqualTo("name,cpu,:eq," + cq);
+    // A metric that matched nothing still gets a placeholder.
+    assertThat(metricSets.get(3).getValues()).isEmpty();
+    assertThat(metricSets.get(3).getAttributes().get("query"))
+        .isEqualTo("name,latency,:eq," + cq);
+  }
+
+  @Test
+  public void queriesWithTheirOwnLegendAreNotBatched() {
+    CanaryMetricConfig cpu = metric("cpu", "name,cpu,:eq");
+    CanaryMetricConfig errors = metric("errors", "name,errors,:eq,:sum,failures,:legend");
+    CanaryMetricConfig latency = metric("latency", "name,latency,:eq");
+    CanaryConfig canaryConfig =
+        CanaryConfig.builder().name("config").metrics(Arrays.asList(cpu, errors, latency)).build();
+    String cq = atlasCanaryScope.cq();
+    String batchedQuery =
+        "name,cpu,:eq,kayentaBatchMetric0,:legend,"
+            + "name,latency,:eq,kayentaBatchMetric2,:legend,"
+            + cq;
+
+    when(atlasRemoteService.fetch(
+            eq(batchedQuery), anyLong(), anyLong(), anyString(), any(), anyString()))
+        .thenReturn(
+            Arrays.asList(
+                timeseries("a", "kayentaBatchMetric2", 3),
+                timeseries("b", "kayentaBatchMetric0", 1)));
+    when(atlasRemoteService.fetch(
+            eq("name,errors,:eq,:sum,failures,:legend," + cq),
+            anyLong(),
+            anyLong(),
+            anyString(),
+            any(),
+            anyString()))
+        .thenReturn(Collections.singletonList(timeseries("c", "failures", 2)));
+
+    List<MetricSet> metricSets =
+        atlasMetricsService.batchQueryMetrics(
+            ACCOUNT, canaryConfig, Arrays.asList(cpu, errors, latency), atlasCanaryScope);
+
+    assertThat(metricSets)
+        .extracting(MetricSet::getName)
+        .containsExactly("cpu", "errors", "latency");
+    assertThat(metricSets)
+        .extracting(metricSet -> metricSet.getValues().get(0))
+        .containsExactly(1.0, 2.0, 3.0);
+  }
+
+  @Test
+  public void batchesWithLinesOfNoMetricAreQueriedMetricByMetric() {
+    // The first query leaves two expressions on the stack, and only the top one gets a legend.
+    CanaryMetricConfig requests = metric("requests", "name,2xx,:eq,name,5xx,:eq");
+    CanaryMetricConfig latency = metric("latency", "name,latency,:eq");
+    CanaryConfig canaryConfig =
+        CanaryConfig.builder().name("config").metrics(Arrays.asList(requests, latency)).build();
+    String cq = atlasCanaryScope.cq();
+    String batchedQuery =
+        "name,2xx,:eq,name,5xx,:eq,kayentaBatchMetric0,:legend,"
+            + "name,latency,:eq,kayentaBatchMetric1,:legend,"
+            + cq;
+
+    when(atlasRemoteService.fetch(
+            eq(batchedQuery), anyLong(), anyLong(), anyString(), any(), anyString()))
+        .thenReturn(
+            Arrays.asList(
+                timeseries("a", "name=2xx", 1),
+                timeseries("b", "kayentaBatchMetric0", 2),
+                timeseries("c", "kayentaBatchMetric1", 3)));
+    when(atlasRemoteService.fetch(
+            eq("name,2xx,:eq,name,5xx,:eq," + cq),
+            anyLong(),
+            anyLong(),
+            anyString(),
+            any(),
+            anyString()))
+        .thenReturn(Arrays.asList(timeseries("a", "name=2xx", 1), timeseries("b", "name=5xx", 2)));
+    when(atlasRemoteService.fetch(
+            eq("name,latency,:eq," + cq), anyLong(), anyLong(), anyString(), any(), anyString()))
+        .thenReturn(Collections.singletonList(timeseries("c", "name=latency", 3)));
+
+    List<MetricSet> metricSets =
+        atlasMetricsService.batchQueryMetrics(
+            ACCOUNT, canaryConfig, Arrays.asList(requests, latency), atlasCanaryScope);
+
+    assertThat(metricSets)
+        .extracting(MetricSet::getName)
+        .containsExactly("requests", "requests", "latency");
+    assertThat(metricSets)
+        .extracting(metricSet -> metricSet.getValues().get(0))
+        .containsExactlyInAnyOrder(1.0, 2.0, 3.0);
+    assertThat(metricSets.get(2).getValues().get(0)).isEqualTo(3.0);
+  }
+
+  private static CanaryMetricConfig metric(String name, String q) {
+    return CanaryMetricConfig.builder()
+        .name(name)
+        .query(AtlasCanaryMetricSetQueryConfig.builder().q(q).build())
+        .build();
+  }
+
+  private static AtlasResults timeseries(String id, String label, double value) {
+    return AtlasResults.builder()
+        .type("timeseries")
+        .id(id)
+        .label(label)
+        .start(0)
+        .step(60_000)
+        .end(180_000)
+        .tags(Collections.emptyMap())
+        .data(
+            TimeseriesData.builder()
+                .type("array")
+                .values(DoubleSeries.of(value, value, value))
+                .build())
+        .build();
+  }
+}
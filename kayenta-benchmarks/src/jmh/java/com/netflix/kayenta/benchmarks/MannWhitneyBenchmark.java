@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.benchmarks;
+
+import com.netflix.kayenta.mannwhitney.MannWhitney;
+import com.netflix.kayenta.mannwhitney.MannWhitneyResult;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MannWhitneyBenchmark {
+
+  @Param({"60", "1440", "10080"})
+  int length;
+
+  @Param({"0.0", "0.5"})
+  double tieRatio;
+
+  private final MannWhitney mannWhitney = new MannWhitney();
+  private double[] control;
+  private double[] experiment;
+
+  @Setup
+  public void setUp() {
+    control = SyntheticSeries.generate(length, 100, 0, tieRatio, 1);
+    experiment = SyntheticSeries.generate(length, 102, 0, tieRatio, 2);
+  }
+
+  @Benchmark
+  public MannWhitneyResult mannWhitneyUTest() {
+    return mannWhitney.mannWhitneyUTest(experiment, control, 0.98, 0.0);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.benchmarks;
+
+import com.netflix.kayenta.canary.CanaryMetricConfig;
+import com.netflix.kayenta.metrics.MetricSet;
+import com.netflix.kayenta.metrics.MetricSetMixerService;
+import com.netflix.kayenta.metrics.MetricSetPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetricSetMixerBenchmark {
+
+  private static final long STEP_MILLIS = 60000;
+
+  @Param({"5"})
+  int metrics;
+
+  /** Number of series (tag combinations) per metric, as returned by group-by queries. */
+  @Param({"1", "100", "2000"})
+  int cardinality;
+
+  @Param({"60", "1440"})
+  int length;
+
+  private final MetricSetMixerService metricSetMixerService = new MetricSetMixerService();
+  private List<CanaryMetricConfig> canaryMetricConfigs;
+  private List<MetricSet> controlMetricSets;
+  private List<MetricSet> experimentMetricSets;
+
+  @Setup
+  public void setUp() {
+    canaryMetricConfigs = new ArrayList<>();
+    controlMetricSets = new ArrayList<>();
+    experimentMetricSets = new ArrayList<>();
+
+    for (int m = 0; m < metrics; m++) {
+      String name = "metric" + m;
+
+      canaryMetricConfigs.add(CanaryMetricConfig.builder().name(name).build());
+      for (int c = 0; c < cardinality; c++) {
+        controlMetricSets.add(metricSet(name, c, 100, m * cardinality + c));
+        experimentMetricSets.add(metricSet(name, c, 102, -(m * cardinality + c)));
+      }
+    }
+
+    // The metrics services return series in no particular order.
+    Collections.shuffle(controlMetricSets, new Random(1));
+    Collections.shuffle(experimentMetricSets, new Random(2));
+  }
+
+  private MetricSet metricSet(String name, int tagValue, double mean, long seed) {
+    return MetricSet.builder()
+        .name(name)
+        .tag("instance", "i-" + tagValue)
+        .startTimeMillis(0)
+        .endTimeMillis(length * STEP_MILLIS)
+        .stepMillis(STEP_MILLIS)
+        .values(SyntheticSeries.generate(length, mean, 0, 0, seed))
+        .build();
+  }
+
+  @Benchmark
+  public List<MetricSetPair> mixAll() {
+    return metricSetMixerService.mixAll(
+        canaryMetricConfigs, controlMetricSets, experimentMetricSets);
+  }
+}
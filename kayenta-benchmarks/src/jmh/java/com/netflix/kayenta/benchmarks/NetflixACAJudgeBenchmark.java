@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.benchmarks;
+
+import com.netflix.kayenta.canary.CanaryConfig;
+import com.netflix.kayenta.canary.CanaryMetricConfig;
+import com.netflix.kayenta.canary.results.CanaryAnalysisResult;
+import com.netflix.kayenta.judge.NetflixACAJudge;
+import com.netflix.kayenta.metrics.DoubleSeries;
+import com.netflix.kayenta.metrics.MetricSetPair;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NetflixACAJudgeBenchmark {
+
+  @Param({"60", "1440", "10080"})
+  int length;
+
+  @Param({"0.0", "0.1"})
+  double nanRatio;
+
+  @Param({"0.0", "0.5"})
+  double tieRatio;
+
+  private final NetflixACAJudge judge = new NetflixACAJudge();
+  private CanaryConfig canaryConfig;
+  private MetricSetPair metricSetPair;
+
+  @Setup
+  public void setUp() {
+    canaryConfig =
+        CanaryConfig.builder()
+            .metric(
+                CanaryMetricConfig.builder()
+                    .name("cpu")
+                    .analysisConfiguration("canary", analysisConfiguration())
+                    .build())
+            .build();
+    metricSetPair =
+        MetricSetPair.builder()
+            .name("cpu")
+            .value("control", series(100, 1))
+            .value("experiment", series(102, 2))
+            .build();
+  }
+
+  private static Map<String, Object> analysisConfiguration() {
+    Map<String, Object> configuration = new HashMap<>();
+    configuration.put("nanStrategy", "remove");
+    configuration.put("outliers", Collections.singletonMap("strategy", "remove"));
+    return configuration;
+  }
+
+  private DoubleSeries series(double mean, long seed) {
+    return DoubleSeries.of(SyntheticSeries.generate(length, mean, nanRatio, tieRatio, seed));
+  }
+
+  @Benchmark
+  public CanaryAnalysisResult classifyMetric() {
+    return judge.classifyMetric(canaryConfig, metricSetPair);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.kayenta.prometheus.config.PrometheusResponseConverter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import retrofit.converter.ConversionException;
+import retrofit.mime.TypedByteArray;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrometheusDecoderBenchmark {
+
+  private static final long START_SECS = 1_600_000_000L;
+  private static final long STEP_SECS = 60;
+
+  /** Number of series in the response, as returned by e.g. {@code sum by (instance)} queries. */
+  @Param({"1", "100", "1000"})
+  int series;
+
+  @Param({"60", "1440"})
+  int length;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final PrometheusResponseConverter converter =
+      new PrometheusResponseConverter(objectMapper);
+  private byte[] body;
+
+  @Setup
+  public void setUp() {
+    StringBuilder json = new StringBuilder();
+
+    json.append("{\"status\":\"success\",")
+        .append("\"data\":{\"resultType\":\"matrix\",\"result\":[");
+
+    for (int s = 0; s < series; s++) {
+      double[] values = SyntheticSeries.generate(length, 100, 0.01, 0.5, s);
+
+      json.append(s > 0 ? "," : "")
+          .append("{\"metric\":{\"__name__\":\"requests\",\"instance\":\"i-")
+          .append(s)
+          .append("\"},\"values\":[");
+      for (int i = 0; i < length; i++) {
+        json.append(i > 0 ? "," : "")
+            .append('[')
+            .append(START_SECS + i * STEP_SECS)
+            .append(".5,\"")
+            .append(Double.isNaN(values[i]) ? "NaN" : Double.toString(values[i]))
+            .append("\"]");
+      }
+      json.append("]}");
+    }
+    json.append("]}}");
+
+    body = json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public Object streaming() throws ConversionException {
+    return converter.fromBody(new TypedByteArray("application/json", body), List.class);
+  }
+
+  /** The cost of only building the generic tree the previous decoder started from. */
+  @Benchmark
+  public Object mapTree() throws IOException {
+    return objectMapper.readValue(body, Map.class);
+  }
+}
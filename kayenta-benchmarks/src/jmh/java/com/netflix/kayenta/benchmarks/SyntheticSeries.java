@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.benchmarks;
+
+import java.util.Random;
+
+/** Generates reproducible synthetic metric series for the benchmarks. */
+final class SyntheticSeries {
+
+  private SyntheticSeries() {}
+
+  /**
+   * @param length number of data points
+   * @param mean mean of the normally distributed values
+   * @param nanRatio fraction of the data points that are NaN
+   * @param tieRatio fraction of the data points rounded to integers, which produces ties
+   * @param seed seed of the generator, so that every run benchmarks the same data
+   */
+  static double[] generate(int length, double mean, double nanRatio, double tieRatio, long seed) {
+    Random random = new Random(seed);
+    double[] values = new double[length];
+
+    for (int i = 0; i < length; i++) {
+      double value = mean + random.nextGaussian() * mean / 10;
+
+      if (random.nextDouble() < tieRatio) {
+        value = Math.rint(value);
+      }
+      if (random.nextDouble() < nanRatio) {
+        value = Double.NaN;
+      }
+      values[i] = value;
+    }
+
+    return values;
+  }
+}
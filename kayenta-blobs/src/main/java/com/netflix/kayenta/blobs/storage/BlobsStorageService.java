@@ -28,6 +28,7 @@ import com.netflix.kayenta.canary.CanaryConfig;
 import com.netflix.kayenta.index.CanaryConfigIndex;
 import com.netflix.kayenta.index.config.CanaryConfigIndexAction;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.storage.ConcurrentObjectLoader;
 import com.netflix.kayenta.storage.ObjectType;
 import com.netflix.kayenta.storage.StorageService;
 import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
@@ -55,6 +56,8 @@ public class BlobsStorageService implements StorageService {
 
   @Autowired CanaryConfigIndex canaryConfigIndex;
 
+  @Autowired(required = false) private ConcurrentObjectLoader concurrentObjectLoader;
+
   @Override
   public boolean servicesAccount(String accountName) {
     return accountNames.contains(accountName);
@@ -80,6 +83,17 @@ public class BlobsStorageService implements StorageService {
     }
   }
 
+  @Override
+  public <T> Map<String, T> loadObjects(
+      String accountName, ObjectType objectType, List<String> objectKeys) {
+    if (concurrentObjectLoader == null) {
+      return StorageService.super.loadObjects(accountName, objectType, objectKeys);
+    }
+
+    return concurrentObjectLoader.loadObjects(
+        objectType, objectKeys, objectKey -> loadObject(accountName, objectType, objectKey));
+  }
+
   private CloudBlockBlob resolveSingularBlob(
       ObjectType objectType,
       String objectKey,
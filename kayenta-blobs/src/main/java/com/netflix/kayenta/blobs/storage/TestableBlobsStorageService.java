@@ -39,7 +39,8 @@ public class TestableBlobsStorageService extends BlobsStorageService {
       ObjectMapper kayentaObjectMapper,
       AccountCredentialsRepository accountCredentialsRepository,
       CanaryConfigIndex canaryConfigIndex) {
-    super(accountNames, kayentaObjectMapper, accountCredentialsRepository, canaryConfigIndex);
+    super(
+        accountNames, kayentaObjectMapper, accountCredentialsRepository, canaryConfigIndex, null);
   }
 
   @Override
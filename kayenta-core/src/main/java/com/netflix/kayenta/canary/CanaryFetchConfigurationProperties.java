@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.canary;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/** Controls how the per-metric fetch stages of the standard canary pipeline are wired together. */
+@Data
+@ConfigurationProperties("kayenta.canary.fetch")
+public class CanaryFetchConfigurationProperties {
+
+  /**
+   * Maximum number of fetch stages that may run at the same time for each of the control and
+   * experiment scopes. A value of 1 chains every fetch after the previous one; a value of 0 (or
+   * less) starts every fetch as soon as the canary context has been set up.
+   */
+  private int maxConcurrentFetchesPerScope = 1;
+
+  /**
+   * When enabled, all metrics that share a metrics service and a named scope are fetched by a
+   * single stage through {@link com.netflix.kayenta.metrics.MetricsService#batchQueryMetrics},
+   * instead of one stage per metric.
+   */
+  private boolean batchMetricsPerScope = false;
+}
@@ -40,6 +40,7 @@ import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import javax.validation.constraints.NotNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -58,6 +59,7 @@ public class ExecutionMapper {
   private final List<CanaryScopeFactory> canaryScopeFactories;
   private final ExecutionLauncher executionLauncher;
   private final ExecutionRepository executionRepository;
+  private final CanaryFetchConfigurationProperties fetchConfiguration;
 
   private final Id pipelineRunId;
   private final Id failureId;
@@ -69,13 +71,15 @@ public class ExecutionMapper {
       String currentInstanceId,
       Optional<List<CanaryScopeFactory>> canaryScopeFactories,
       ExecutionLauncher executionLauncher,
-      ExecutionRepository executionRepository) {
+      ExecutionRepository executionRepository,
+      CanaryFetchConfigurationProperties fetchConfiguration) {
     this.objectMapper = objectMapper;
     this.registry = registry;
     this.currentInstanceId = currentInstanceId;
     this.canaryScopeFactories = canaryScopeFactories.orElseGet(Collections::emptyList);
     this.executionLauncher = executionLauncher;
     this.executionRepository = executionRepository;
+    this.fetchConfiguration = fetchConfiguration;
 
     this.pipelineRunId = registry.createId("canary.pipelines.initiated");
     this.failureId = registry.createId("canary.pipelines.startupFailed");
@@ -293,16 +297,15 @@ public class ExecutionMapper {
       boolean isCanary,
       String resolvedMetricsAccountName,
       String resolvedStorageAccountName) {
-    return IntStream.range(0, canaryConfig.getMetrics().size())
+    List<List<Integer>> fetchGroups = groupMetricIndexes(canaryConfig);
+
+    return IntStream.range(0, fetchGroups.size())
         .mapToObj(
             index -> {
-              CanaryMetricConfig metric = canaryConfig.getMetrics().get(index);
+              List<Integer> metricIndexes = fetchGroups.get(index);
+              CanaryMetricConfig metric = canaryConfig.getMetrics().get(metricIndexes.get(0));
               String serviceType = metric.getQuery().getServiceType();
               CanaryScopeFactory canaryScopeFactory = getScopeFactoryForServiceType(serviceType);
-              if (metric.getScopeName() == null) {
-                throw new IllegalArgumentException(
-                    "Canary scope for metric named '" + metric.getName() + "' is null.");
-              }
               CanaryScope inspecificScope =
                   getScopeForNamedScope(executionRequest, metric.getScopeName(), isCanary);
               CanaryScope scopeModel = canaryScopeFactory.buildCanaryScope(inspecificScope);
@@ -319,27 +322,72 @@ public class ExecutionMapper {
               }
 
               String currentStageId = stagePrefix + index;
-              String previousStageId =
-                  (index == 0) ? CanaryStageNames.REFID_SET_CONTEXT : stagePrefix + (index - 1);
-
-              return Maps.newHashMap(
-                  new ImmutableMap.Builder<String, Object>()
-                      .put("refId", currentStageId)
-                      .put("metricIndex", index)
-                      .put("requisiteStageRefIds", Collections.singletonList(previousStageId))
-                      .put("user", "[anonymous]")
-                      .put(
-                          "metricsAccountName",
-                          resolvedMetricsAccountName) // TODO: How can this work?  We'd need to look
-                      // this up per type
-                      .put("storageAccountName", resolvedStorageAccountName)
-                      .put("stageType", serviceType + "Fetch")
-                      .put("canaryScope", scopeJson)
-                      .build());
+              String previousStageId = getPreviousFetchStageId(stagePrefix, index);
+
+              Map<String, Object> fetchContext =
+                  Maps.newHashMap(
+                      new ImmutableMap.Builder<String, Object>()
+                          .put("refId", currentStageId)
+                          .put("metricIndex", metricIndexes.get(0))
+                          .put(
+                              "requisiteStageRefIds", Collections.singletonList(previousStageId))
+                          .put("user", "[anonymous]")
+                          .put(
+                              "metricsAccountName",
+                              resolvedMetricsAccountName) // TODO: How can this work?  We'd need to
+                          // look this up per type
+                          .put("storageAccountName", resolvedStorageAccountName)
+                          .put("stageType", serviceType + "Fetch")
+                          .put("canaryScope", scopeJson)
+                          .build());
+
+              if (metricIndexes.size() > 1) {
+                fetchContext.put("metricIndexes", metricIndexes);
+              }
+
+              return fetchContext;
             })
         .collect(Collectors.toList());
   }
 
+  /**
+   * Returns the metric indexes handled by each fetch stage. Without batching every metric gets its
+   * own fetch stage; with batching all metrics that share a metrics service and a named scope are
+   * fetched by a single stage.
+   */
+  private List<List<Integer>> groupMetricIndexes(CanaryConfig canaryConfig) {
+    Map<String, List<Integer>> fetchGroups = new LinkedHashMap<>();
+
+    for (int index = 0; index < canaryConfig.getMetrics().size(); index++) {
+      CanaryMetricConfig metric = canaryConfig.getMetrics().get(index);
+      if (metric.getScopeName() == null) {
+        throw new IllegalArgumentException(
+            "Canary scope for metric named '" + metric.getName() + "' is null.");
+      }
+      String groupKey =
+          fetchConfiguration.isBatchMetricsPerScope()
+              ? metric.getQuery().getServiceType() + ":" + metric.getScopeName()
+              : String.valueOf(index);
+
+      fetchGroups.computeIfAbsent(groupKey, key -> new ArrayList<>()).add(index);
+    }
+
+    return new ArrayList<>(fetchGroups.values());
+  }
+
+  /**
+   * Fetches are spread across a fixed number of lanes, each of which runs its fetches one after
+   * another. A single lane gives the historical fully serial chain; with no limit every fetch only
+   * depends on the setup stage.
+   */
+  private String getPreviousFetchStageId(String stagePrefix, int index) {
+    int lanes = fetchConfiguration.getMaxConcurrentFetchesPerScope();
+    if (lanes <= 0 || index < lanes) {
+      return CanaryStageNames.REFID_SET_CONTEXT;
+    }
+    return stagePrefix + (index - lanes);
+  }
+
   public CanaryExecutionResponse buildExecution(
       String application,
       String parentPipelineExecutionId,
@@ -425,23 +473,17 @@ public class ExecutionMapper {
             resolvedMetricsAccountName,
             resolvedStorageAccountName);
 
-    int maxMetricIndex =
-        canaryConfig.getMetrics().size()
-            - 1; // 0 based naming, so we want the last index value, not the count
-    String lastControlFetchRefid = CanaryStageNames.REFID_FETCH_CONTROL_PREFIX + maxMetricIndex;
-    String lastExperimentFetchRefid =
-        CanaryStageNames.REFID_FETCH_EXPERIMENT_PREFIX + maxMetricIndex;
+    // The fetches are not necessarily a single chain, so the mixer joins on all of them.
+    List<String> fetchRefids =
+        Stream.concat(controlFetchContexts.stream(), fetchExperimentContexts.stream())
+            .map(context -> (String) context.get("refId"))
+            .collect(Collectors.toList());
 
     Map<String, Object> mixMetricSetsContext =
         Maps.newHashMap(
             new ImmutableMap.Builder<String, Object>()
                 .put("refId", CanaryStageNames.REFID_MIX_METRICS)
-                .put(
-                    "requisiteStageRefIds",
-                    new ImmutableList.Builder()
-                        .add(lastControlFetchRefid)
-                        .add(lastExperimentFetchRefid)
-                        .build())
+                .put("requisiteStageRefIds", ImmutableList.copyOf(fetchRefids))
                 .put("user", "[anonymous]")
                 .put("storageAccountName", resolvedStorageAccountName)
                 .put("controlRefidPrefix", CanaryStageNames.REFID_FETCH_CONTROL_PREFIX)
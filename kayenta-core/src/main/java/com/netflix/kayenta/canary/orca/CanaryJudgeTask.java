@@ -25,13 +25,17 @@ import com.netflix.kayenta.security.AccountCredentialsRepository;
 import com.netflix.kayenta.storage.ObjectType;
 import com.netflix.kayenta.storage.StorageService;
 import com.netflix.kayenta.storage.StorageServiceRepository;
+import com.netflix.kayenta.storage.StorageWriteBehindConfigurationProperties;
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
 import com.netflix.spinnaker.orca.api.pipeline.RetryableTask;
 import com.netflix.spinnaker.orca.api.pipeline.TaskResult;
 import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus;
+import com.netflix.spinnaker.orca.api.pipeline.models.PipelineExecution;
 import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import javax.annotation.Nonnull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -47,6 +51,7 @@ public class CanaryJudgeTask implements RetryableTask {
   private final List<CanaryJudge> canaryJudges;
   private final ObjectMapper objectMapper;
   private final ExecutionMapper executionMapper;
+  private final StorageWriteBehindConfigurationProperties storageWriteBehindConfigurationProperties;
 
   @Autowired
   public CanaryJudgeTask(
@@ -54,12 +59,14 @@ public class CanaryJudgeTask implements RetryableTask {
       StorageServiceRepository storageServiceRepository,
       List<CanaryJudge> canaryJudges,
       ObjectMapper kayentaObjectMapper,
-      ExecutionMapper executionMapper) {
+      ExecutionMapper executionMapper,
+      StorageWriteBehindConfigurationProperties storageWriteBehindConfigurationProperties) {
     this.accountCredentialsRepository = accountCredentialsRepository;
     this.storageServiceRepository = storageServiceRepository;
     this.canaryJudges = canaryJudges;
     this.objectMapper = kayentaObjectMapper;
     this.executionMapper = executionMapper;
+    this.storageWriteBehindConfigurationProperties = storageWriteBehindConfigurationProperties;
   }
 
   @Override
@@ -93,9 +100,25 @@ public class CanaryJudgeTask implements RetryableTask {
         storageServiceRepository.getRequiredOne(resolvedStorageAccountName);
 
     CanaryConfig canaryConfig = executionMapper.getCanaryConfig(stage.getExecution());
-    List<MetricSetPair> metricSetPairList =
-        storageService.loadObject(
-            resolvedStorageAccountName, ObjectType.METRIC_SET_PAIR_LIST, metricSetPairListId);
+    List<MetricSetPair> metricSetPairList;
+
+    try {
+      metricSetPairList =
+          storageService.loadObject(
+              resolvedStorageAccountName, ObjectType.METRIC_SET_PAIR_LIST, metricSetPairListId);
+    } catch (NotFoundException e) {
+      // With write-behind enabled, the mix stage may have run on another node whose write has not
+      // reached the object store yet. That can only be the case for a little while after it
+      // completed; past that, the metric set pair list is missing.
+      Long mixEndTime = getMixEndTime(stage.getExecution(), metricSetPairListId);
+
+      if (storageWriteBehindConfigurationProperties.mayStillBePending(mixEndTime)) {
+        log.info("Waiting for metric set pair list {} to be persisted.", metricSetPairListId);
+        return TaskResult.builder(ExecutionStatus.RUNNING).build();
+      }
+
+      throw e;
+    }
     CanaryJudgeConfig canaryJudgeConfig = canaryConfig.getJudge();
     CanaryJudge canaryJudge = null;
 
@@ -127,4 +150,16 @@ public class CanaryJudgeTask implements RetryableTask {
 
     return TaskResult.builder(ExecutionStatus.SUCCEEDED).output("result", result).build();
   }
+
+  private static Long getMixEndTime(PipelineExecution execution, String metricSetPairListId) {
+    return execution.getStages().stream()
+        .filter(
+            stage ->
+                metricSetPairListId != null
+                    && metricSetPairListId.equals(stage.getOutputs().get("metricSetPairListId")))
+        .map(StageExecution::getEndTime)
+        .filter(Objects::nonNull)
+        .findFirst()
+        .orElse(null);
+  }
 }
@@ -21,33 +21,57 @@ import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKN
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.google.common.collect.ImmutableList;
 import com.netflix.kayenta.atlas.config.KayentaSerializationConfigurationProperties;
+import com.netflix.kayenta.canary.CanaryFetchConfigurationProperties;
 import com.netflix.kayenta.canary.CanaryMetricSetQueryConfig;
+import com.netflix.kayenta.metrics.InMemoryMetricsQueryCache;
 import com.netflix.kayenta.metrics.MapBackedMetricsServiceRepository;
 import com.netflix.kayenta.metrics.MetricSetMixerService;
+import com.netflix.kayenta.metrics.MetricsQueryCache;
+import com.netflix.kayenta.metrics.MetricsQueryCacheConfigurationProperties;
 import com.netflix.kayenta.metrics.MetricsRetryConfigurationProperties;
 import com.netflix.kayenta.metrics.MetricsServiceRepository;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
 import com.netflix.kayenta.security.MapBackedAccountCredentialsRepository;
 import com.netflix.kayenta.service.MetricSetPairListService;
+import com.netflix.kayenta.storage.CachingStorageService;
+import com.netflix.kayenta.storage.ConcurrentObjectLoader;
 import com.netflix.kayenta.storage.MapBackedStorageServiceRepository;
+import com.netflix.kayenta.storage.StorageCacheConfigurationProperties;
+import com.netflix.kayenta.storage.StorageCodec;
+import com.netflix.kayenta.storage.StorageCodecConfigurationProperties;
+import com.netflix.kayenta.storage.StorageFormat;
+import com.netflix.kayenta.storage.StorageLoadConfigurationProperties;
 import com.netflix.kayenta.storage.StorageService;
 import com.netflix.kayenta.storage.StorageServiceRepository;
+import com.netflix.kayenta.storage.StorageWriteBehindConfigurationProperties;
+import com.netflix.kayenta.storage.WriteBehindQueue;
+import com.netflix.kayenta.storage.WriteBehindStorageService;
+import com.netflix.spectator.api.Registry;
 import com.netflix.spinnaker.kork.jackson.ObjectMapperSubtypeConfigurer;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
 @Configuration
 @Slf4j
@@ -61,7 +85,15 @@ import org.springframework.context.annotation.Primary;
   "com.netflix.kayenta.persistence.config",
   "com.netflix.kayenta.retrofit.config"
 })
-@EnableConfigurationProperties(MetricsRetryConfigurationProperties.class)
+@EnableConfigurationProperties({
+  MetricsRetryConfigurationProperties.class,
+  MetricsQueryCacheConfigurationProperties.class,
+  CanaryFetchConfigurationProperties.class,
+  StorageCacheConfigurationProperties.class,
+  StorageLoadConfigurationProperties.class,
+  StorageWriteBehindConfigurationProperties.class,
+  StorageCodecConfigurationProperties.class
+})
 public class KayentaConfiguration {
 
   @Bean
@@ -82,11 +114,56 @@ public class KayentaConfiguration {
     return new MetricSetMixerService();
   }
 
+  @Bean
+  @ConditionalOnMissingBean
+  MetricsQueryCache metricsQueryCache(
+      MetricsQueryCacheConfigurationProperties metricsQueryCacheConfigurationProperties,
+      Registry registry) {
+    if (!metricsQueryCacheConfigurationProperties.isEnabled()) {
+      return MetricsQueryCache.NOOP;
+    }
+
+    return new InMemoryMetricsQueryCache(metricsQueryCacheConfigurationProperties, registry);
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  ConcurrentObjectLoader concurrentObjectLoader(
+      StorageLoadConfigurationProperties storageLoadConfigurationProperties) {
+    return new ConcurrentObjectLoader(storageLoadConfigurationProperties);
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  @ConditionalOnProperty("kayenta.storage.write-behind.enabled")
+  WriteBehindQueue writeBehindQueue(
+      StorageWriteBehindConfigurationProperties storageWriteBehindConfigurationProperties,
+      Registry registry) {
+    return new WriteBehindQueue(storageWriteBehindConfigurationProperties, registry);
+  }
+
   @Bean
   @ConditionalOnMissingBean(StorageServiceRepository.class)
   StorageServiceRepository storageServiceRepository(
-      @Autowired(required = false) Optional<List<StorageService>> storageServices) {
-    return new MapBackedStorageServiceRepository(storageServices.orElse(Collections.emptyList()));
+      @Autowired(required = false) Optional<List<StorageService>> storageServices,
+      @Autowired(required = false) Optional<WriteBehindQueue> writeBehindQueue,
+      StorageCacheConfigurationProperties storageCacheConfigurationProperties,
+      Registry registry) {
+    List<StorageService> services = storageServices.orElse(Collections.emptyList());
+
+    if (writeBehindQueue.isPresent()) {
+      services =
+          services.stream()
+              .map(s -> new WriteBehindStorageService(s, writeBehindQueue.get()))
+              .collect(Collectors.toList());
+    }
+
+    if (storageCacheConfigurationProperties.isEnabled()) {
+      services =
+          services.stream()
+              .map(s -> new CachingStorageService(s, storageCacheConfigurationProperties, registry))
+              .collect(Collectors.toList());
+    }
+
+    return new MapBackedStorageServiceRepository(services);
   }
 
   @Bean
@@ -147,6 +224,35 @@ public class KayentaConfiguration {
     configureObjectMapperFeatures(objectMapper, kayentaSerializationConfigurationProperties);
   }
 
+  @Bean
+  StorageCodec storageCodec(
+      ObjectMapper kayentaObjectMapper,
+      ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder,
+      List<ObjectMapperSubtypeConfigurer.SubtypeLocator> subtypeLocators,
+      KayentaSerializationConfigurationProperties kayentaSerializationConfigurationProperties,
+      StorageCodecConfigurationProperties storageCodecConfigurationProperties) {
+    Map<StorageFormat, ObjectMapper> objectMappers = new EnumMap<>(StorageFormat.class);
+    Jackson2ObjectMapperBuilder builder =
+        objectMapperBuilder.getIfAvailable(Jackson2ObjectMapperBuilder::json);
+
+    objectMappers.put(StorageFormat.JSON, kayentaObjectMapper);
+    objectMappers.put(
+        StorageFormat.SMILE,
+        builder
+            .factory(new SmileFactory().disable(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT))
+            .build());
+    objectMappers.put(StorageFormat.CBOR, builder.factory(new CBORFactory()).build());
+
+    objectMappers.values().stream()
+        .filter(objectMapper -> objectMapper != kayentaObjectMapper)
+        .forEach(
+            objectMapper ->
+                configureObjectMapper(
+                    objectMapper, subtypeLocators, kayentaSerializationConfigurationProperties));
+
+    return new StorageCodec(objectMappers, storageCodecConfigurationProperties);
+  }
+
   @Bean
   @ConfigurationProperties(prefix = "kayenta.serialization")
   KayentaSerializationConfigurationProperties kayentaSerializationConfigurationProperties() {
@@ -21,71 +21,137 @@ import static com.netflix.kayenta.index.CanaryConfigIndexingAgent.*;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.kayenta.index.config.CanaryConfigIndexAction;
+import com.netflix.kayenta.index.config.IndexConfigurationProperties;
 import com.netflix.kayenta.security.AccountCredentials;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
 
 @Slf4j
 public class CanaryConfigIndex {
 
+  public static final String INDEX_UPDATES_CHANNEL = "kayenta:canary-config-index:updates";
+
   private final JedisPool jedisPool;
   private final ObjectMapper kayentaObjectMapper;
 
+  // Parsed index snapshots keyed by account, only used while subscribed to INDEX_UPDATES_CHANNEL.
+  private final boolean nearCacheEnabled;
+  private final long nearCacheMaxAgeMS;
+  private final long nearCacheResubscribeIntervalMS;
+  private final Map<String, IndexSnapshot> nearCache = new ConcurrentHashMap<>();
+  private final AtomicLong invalidationCount = new AtomicLong();
+  private volatile boolean subscribed = false;
+  private volatile boolean shutdown = false;
+  private volatile JedisPubSub indexUpdateListener;
+
   public CanaryConfigIndex(JedisPool jedisPool, ObjectMapper kayentaObjectMapper) {
     this.jedisPool = jedisPool;
     this.kayentaObjectMapper = kayentaObjectMapper;
+    this.nearCacheEnabled = false;
+    this.nearCacheMaxAgeMS = 0;
+    this.nearCacheResubscribeIntervalMS = 0;
+  }
+
+  public CanaryConfigIndex(
+      JedisPool jedisPool,
+      ObjectMapper kayentaObjectMapper,
+      IndexConfigurationProperties indexConfigurationProperties) {
+    this.jedisPool = jedisPool;
+    this.kayentaObjectMapper = kayentaObjectMapper;
+    this.nearCacheEnabled = indexConfigurationProperties.isNearCacheEnabled();
+    this.nearCacheMaxAgeMS = indexConfigurationProperties.getNearCacheMaxAgeMS();
+    this.nearCacheResubscribeIntervalMS =
+        indexConfigurationProperties.getNearCacheResubscribeIntervalMS();
+
+    if (nearCacheEnabled) {
+      Thread subscriberThread =
+          new Thread(this::subscribeToIndexUpdates, "canary-config-index-subscriber");
+      subscriberThread.setDaemon(true);
+      subscriberThread.start();
+    }
+  }
+
+  public void shutdown() {
+    shutdown = true;
+
+    JedisPubSub listener = indexUpdateListener;
+
+    if (listener != null && listener.isSubscribed()) {
+      listener.unsubscribe();
+    }
   }
 
   // Build a list of canary config summaries, including the current persisted index plus entries in
   // the pending updates queue.
   public Set<Map<String, Object>> getCanaryConfigSummarySet(
       AccountCredentials credentials, List<String> applications) {
-    String accountName = credentials.getName();
-    String mapByApplicationKey =
-        "kayenta:" + credentials.getType() + ":" + accountName + MAP_BY_APPLICATION_KEY_SUFFIX;
-    Set<Map<String, Object>> canaryConfigSummarySet = new HashSet<>();
+    return getIndexSnapshot(credentials).getCanaryConfigSummarySet(applications);
+  }
+
+  // Serve the index from the near cache if it can be trusted, which is only the case while we are
+  // subscribed to index update notifications. Otherwise, read it from redis.
+  private IndexSnapshot getIndexSnapshot(AccountCredentials credentials) {
+    if (!nearCacheEnabled || !subscribed) {
+      return loadIndexSnapshot(credentials);
+    }
+
+    String accountKey = buildAccountKey(credentials);
+    IndexSnapshot indexSnapshot = nearCache.get(accountKey);
+
+    if (indexSnapshot != null
+        && System.currentTimeMillis() - indexSnapshot.loadedAtMS < nearCacheMaxAgeMS) {
+      return indexSnapshot;
+    }
+
+    long invalidationsBeforeLoad = invalidationCount.get();
+    indexSnapshot = loadIndexSnapshot(credentials);
+    nearCache.put(accountKey, indexSnapshot);
+
+    // An invalidation that arrived while we were loading may not be reflected in the snapshot.
+    if (invalidationCount.get() != invalidationsBeforeLoad || !subscribed) {
+      nearCache.remove(accountKey, indexSnapshot);
+    }
+
+    return indexSnapshot;
+  }
+
+  private IndexSnapshot loadIndexSnapshot(AccountCredentials credentials) {
+    String mapByApplicationKey = buildAccountKey(credentials) + MAP_BY_APPLICATION_KEY_SUFFIX;
+    String pendingUpdatesKey =
+        buildMapPendingUpdatesByApplicationKey(credentials, credentials.getName());
+    IndexSnapshot indexSnapshot = new IndexSnapshot(System.currentTimeMillis());
 
     try (Jedis jedis = jedisPool.getResource()) {
-      if (jedis.exists(mapByApplicationKey)) {
-        if (applications != null && applications.size() > 0) {
-          // If any applications were specified, populate the response with all of the canary
-          // configs scoped to those applications.
-          for (String application : applications) {
-            String appScopedCanaryConfigListJson = jedis.hget(mapByApplicationKey, application);
-
-            populateCanaryConfigSummarySet(
-                mapByApplicationKey, canaryConfigSummarySet, appScopedCanaryConfigListJson);
-          }
-        } else {
-          // No applications were specified so populate the response with all persisted canary
-          // configs.
-          List<String> allAppScopedCanaryConfigListJson = jedis.hvals(mapByApplicationKey);
-
-          for (String appScopedCanaryConfigListJson : allAppScopedCanaryConfigListJson) {
-            populateCanaryConfigSummarySet(
-                mapByApplicationKey, canaryConfigSummarySet, appScopedCanaryConfigListJson);
-          }
-        }
-      } else {
+      Map<String, String> applicationToCanaryConfigListJsonMap =
+          jedis.hgetAll(mapByApplicationKey);
+
+      if (applicationToCanaryConfigListJsonMap.isEmpty()) {
         throw new IllegalArgumentException("Canary config index not ready.");
       }
 
-      populateWithPendingUpdates(
-          credentials, accountName, jedis, canaryConfigSummarySet, applications);
+      for (Map.Entry<String, String> entry : applicationToCanaryConfigListJsonMap.entrySet()) {
+        populateIndexSnapshot(mapByApplicationKey, indexSnapshot, entry.getKey(), entry.getValue());
+      }
+
+      populateWithPendingUpdates(indexSnapshot, jedis.lrange(pendingUpdatesKey, 0, -1));
     }
 
-    return canaryConfigSummarySet;
+    return indexSnapshot;
   }
 
-  // Populate the response with the canary configs scoped to the application, while deduping based
-  // on canary config id.
-  private void populateCanaryConfigSummarySet(
+  // Record the canary configs scoped to the application, while deduping based on canary config id.
+  private void populateIndexSnapshot(
       String mapByApplicationKey,
-      Set<Map<String, Object>> canaryConfigSummarySet,
+      IndexSnapshot indexSnapshot,
+      String application,
       String appScopedCanaryConfigSetJson) {
     if (!StringUtils.isEmpty(appScopedCanaryConfigSetJson)) {
       if (appScopedCanaryConfigSetJson.equals(NO_INDEXED_CONFIGS_SENTINEL_VALUE)) {
@@ -96,19 +162,16 @@ public class CanaryConfigIndex {
         List<Map<String, Object>> appScopedCanaryConfigList =
             kayentaObjectMapper.readValue(
                 appScopedCanaryConfigSetJson, new TypeReference<List<Map<String, Object>>>() {});
+        List<Map<String, Object>> canaryConfigSummaries = new ArrayList<>();
 
+        // Snapshots are shared between callers, so the summaries they hand out must not change.
         for (Map<String, Object> canaryConfigSummary : appScopedCanaryConfigList) {
-          String canaryConfigId = (String) canaryConfigSummary.get("id");
-          boolean alreadyInList =
-              canaryConfigSummarySet.stream()
-                  .filter(it -> it.get("id").equals(canaryConfigId))
-                  .findFirst()
-                  .isPresent();
-
-          if (!alreadyInList) {
-            canaryConfigSummarySet.add(canaryConfigSummary);
-          }
+          canaryConfigSummary = Collections.unmodifiableMap(canaryConfigSummary);
+          canaryConfigSummaries.add(canaryConfigSummary);
+          indexSnapshot.addCanaryConfigSummary(canaryConfigSummary);
         }
+
+        indexSnapshot.canaryConfigSummariesByApplication.put(application, canaryConfigSummaries);
       } catch (IOException e) {
         throw new IllegalArgumentException(
             "Unable to parse index '" + mapByApplicationKey + "': " + e.getMessage(), e);
@@ -116,70 +179,115 @@ public class CanaryConfigIndex {
     }
   }
 
-  // Populate the response with canary config summaries from the pending updates queue.
+  // Record the canary config summaries from the pending updates queue.
   private void populateWithPendingUpdates(
-      AccountCredentials credentials,
-      String accountName,
-      Jedis jedis,
-      Set<Map<String, Object>> canaryConfigSummarySet,
-      List<String> applications) {
-    String pendingUpdatesKey = buildMapPendingUpdatesByApplicationKey(credentials, accountName);
-
-    if (jedis.exists(pendingUpdatesKey)) {
-      List<String> pendingUpdatesJsonList = jedis.lrange(pendingUpdatesKey, 0, -1);
-
-      if (pendingUpdatesJsonList != null && pendingUpdatesJsonList.size() > 0) {
-        for (String pendingUpdateCanaryConfigSummaryJson : pendingUpdatesJsonList) {
-          try {
-            String[] updateTokens = pendingUpdateCanaryConfigSummaryJson.split(":", 5);
-            CanaryConfigIndexAction action = CanaryConfigIndexAction.valueOf(updateTokens[1]);
-            String startOrFinish = updateTokens[2];
-
-            // In-flight operations are considered already completed as far as the index is
-            // concerned.
-            if (startOrFinish.equals("start")) {
-              pendingUpdateCanaryConfigSummaryJson = updateTokens[4];
-
-              Map<String, Object> pendingUpdateCanaryConfigSummary =
-                  kayentaObjectMapper.readValue(
-                      pendingUpdateCanaryConfigSummaryJson,
-                      new TypeReference<Map<String, Object>>() {});
-              String pendingUpdateCanaryConfigId =
-                  (String) pendingUpdateCanaryConfigSummary.get("id");
-              Map<String, Object> existingCanaryConfigSummary =
-                  canaryConfigSummarySet.stream()
-                      .filter(it -> it.get("id").equals(pendingUpdateCanaryConfigId))
-                      .findFirst()
-                      .orElse(null);
-
-              // Remove any existing matching summary from the response.
-              if (existingCanaryConfigSummary != null) {
-                canaryConfigSummarySet.remove(existingCanaryConfigSummary);
-              }
+      IndexSnapshot indexSnapshot, List<String> pendingUpdatesJsonList) {
+    if (pendingUpdatesJsonList != null && pendingUpdatesJsonList.size() > 0) {
+      for (String pendingUpdateCanaryConfigSummaryJson : pendingUpdatesJsonList) {
+        try {
+          String[] updateTokens = pendingUpdateCanaryConfigSummaryJson.split(":", 5);
+          CanaryConfigIndexAction action = CanaryConfigIndexAction.valueOf(updateTokens[1]);
+          String startOrFinish = updateTokens[2];
+
+          // In-flight operations are considered already completed as far as the index is
+          // concerned.
+          if (startOrFinish.equals("start")) {
+            pendingUpdateCanaryConfigSummaryJson = updateTokens[4];
+
+            Map<String, Object> pendingUpdateCanaryConfigSummary =
+                kayentaObjectMapper.readValue(
+                    pendingUpdateCanaryConfigSummaryJson,
+                    new TypeReference<Map<String, Object>>() {});
+
+            indexSnapshot.pendingUpdates.add(
+                new PendingUpdate(
+                    action, Collections.unmodifiableMap(pendingUpdateCanaryConfigSummary)));
+          }
+        } catch (IOException e) {
+          log.error(
+              "Problem deserializing pendingUpdateCanaryConfigSummaryJson -> {}: {}",
+              pendingUpdateCanaryConfigSummaryJson,
+              e);
+        }
+      }
+    }
+  }
 
-              // If the pending update represents an update action, as opposed to a delete, populate
-              // the response with the updated summary.
-              if (action == CanaryConfigIndexAction.UPDATE) {
-                // Populate the response with the canary config summary if either no applications
-                // were specified in the request or if the canary config is scoped to at
-                // least one of the specified applications.
-                if (applications == null
-                    || applications.size() == 0
-                    || haveCommonElements(
-                        applications,
-                        (List<String>) pendingUpdateCanaryConfigSummary.get("applications"))) {
-                  canaryConfigSummarySet.add(pendingUpdateCanaryConfigSummary);
-                }
+  // Keep one redis connection subscribed to index update notifications for as long as we are
+  // running. Whenever the subscription is down, updates may be missed, so the near cache is
+  // bypassed until it is re-established.
+  private void subscribeToIndexUpdates() {
+    while (!shutdown) {
+      JedisPubSub listener =
+          new JedisPubSub() {
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+              invalidateAll();
+              subscribed = true;
+
+              if (shutdown) {
+                unsubscribe();
               }
             }
-          } catch (IOException e) {
-            log.error(
-                "Problem deserializing pendingUpdateCanaryConfigSummaryJson -> {}: {}",
-                pendingUpdateCanaryConfigSummaryJson,
-                e);
-          }
+
+            @Override
+            public void onMessage(String channel, String accountKey) {
+              invalidate(accountKey);
+            }
+          };
+
+      indexUpdateListener = listener;
+
+      try (Jedis jedis = jedisPool.getResource()) {
+        jedis.subscribe(listener, INDEX_UPDATES_CHANNEL);
+      } catch (Exception e) {
+        if (!shutdown) {
+          log.warn("Lost subscription to canary config index updates: ", e);
         }
+      } finally {
+        subscribed = false;
+        invalidateAll();
       }
+
+      if (!shutdown) {
+        try {
+          Thread.sleep(nearCacheResubscribeIntervalMS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private void invalidate(String accountKey) {
+    invalidationCount.incrementAndGet();
+    nearCache.remove(accountKey);
+  }
+
+  private void invalidateAll() {
+    invalidationCount.incrementAndGet();
+    nearCache.clear();
+  }
+
+  // Drop our own cached copy of the account's index right away, and let every other instance know
+  // that theirs is out of date.
+  public void publishIndexUpdate(AccountCredentials credentials) {
+    try (Jedis jedis = jedisPool.getResource()) {
+      publishIndexUpdate(jedis, credentials);
+    }
+  }
+
+  private void publishIndexUpdate(Jedis jedis, AccountCredentials credentials) {
+    String accountKey = buildAccountKey(credentials);
+
+    invalidate(accountKey);
+
+    try {
+      jedis.publish(INDEX_UPDATES_CHANNEL, accountKey);
+    } catch (JedisException e) {
+      // The snapshots cached by other instances will still expire after nearCacheMaxAgeMS.
+      log.warn("Unable to publish canary config index update for {}: ", accountKey, e);
     }
   }
 
@@ -193,36 +301,15 @@ public class CanaryConfigIndex {
 
   public String getIdFromName(
       AccountCredentials credentials, String canaryConfigName, List<String> applications) {
-    Set<Map<String, Object>> canaryConfigSummarySet =
-        getCanaryConfigSummarySet(credentials, applications);
-
-    if (canaryConfigSummarySet != null) {
-      Map<String, Object> canaryConfigSummary =
-          canaryConfigSummarySet.stream()
-              .filter(it -> it.get("name").equals(canaryConfigName))
-              .findFirst()
-              .orElse(null);
-
-      if (canaryConfigSummary != null) {
-        return (String) canaryConfigSummary.get("id");
-      }
-    }
+    Map<String, Object> canaryConfigSummary =
+        getIndexSnapshot(credentials).getCanaryConfigSummaryByName(canaryConfigName, applications);
 
-    return null;
+    return canaryConfigSummary != null ? (String) canaryConfigSummary.get("id") : null;
   }
 
   public Map<String, Object> getSummaryFromId(
       AccountCredentials credentials, String canaryConfigId) {
-    Set<Map<String, Object>> canaryConfigSummarySet = getCanaryConfigSummarySet(credentials, null);
-
-    if (canaryConfigSummarySet != null) {
-      return canaryConfigSummarySet.stream()
-          .filter(it -> it.get("id").equals(canaryConfigId))
-          .findFirst()
-          .orElse(null);
-    }
-
-    return null;
+    return getIndexSnapshot(credentials).getCanaryConfigSummaryById(canaryConfigId);
   }
 
   public long getRedisTime() {
@@ -254,9 +341,11 @@ public class CanaryConfigIndex {
               + correlationId
               + ":"
               + canaryConfigSummaryJson);
+      publishIndexUpdate(jedis, credentials);
     }
   }
 
+  // Finish entries don't change the canary config summary set, so there is nothing to publish.
   public void finishPendingUpdate(
       AccountCredentials credentials, CanaryConfigIndexAction action, String correlationId) {
     String accountName = credentials.getName();
@@ -291,6 +380,7 @@ public class CanaryConfigIndex {
               + correlationId
               + ":"
               + canaryConfigSummaryJson);
+      publishIndexUpdate(jedis, credentials);
     }
   }
 
@@ -298,4 +388,146 @@ public class CanaryConfigIndex {
       AccountCredentials credentials, String accountName) {
     return "kayenta:" + credentials.getType() + ":" + accountName + PENDING_UPDATES_KEY_SUFFIX;
   }
+
+  private static String buildAccountKey(AccountCredentials credentials) {
+    return "kayenta:" + credentials.getType() + ":" + credentials.getName();
+  }
+
+  // The parsed state of one account's index: the persisted summaries plus, in queue order, the
+  // in-flight updates that are layered on top of them.
+  private static class IndexSnapshot {
+
+    private final long loadedAtMS;
+    private final Map<String, Map<String, Object>> canaryConfigSummariesById =
+        new LinkedHashMap<>();
+    private final Map<String, List<Map<String, Object>>> canaryConfigSummariesByApplication =
+        new HashMap<>();
+    private final Map<String, List<Map<String, Object>>> canaryConfigSummariesByName =
+        new HashMap<>();
+    private final List<PendingUpdate> pendingUpdates = new ArrayList<>();
+
+    IndexSnapshot(long loadedAtMS) {
+      this.loadedAtMS = loadedAtMS;
+    }
+
+    // Record a persisted summary, which is listed once per application it is scoped to.
+    void addCanaryConfigSummary(Map<String, Object> canaryConfigSummary) {
+      String canaryConfigId = (String) canaryConfigSummary.get("id");
+
+      if (canaryConfigSummariesById.putIfAbsent(canaryConfigId, canaryConfigSummary) == null) {
+        canaryConfigSummariesByName
+            .computeIfAbsent((String) canaryConfigSummary.get("name"), name -> new ArrayList<>())
+            .add(canaryConfigSummary);
+      }
+    }
+
+    Set<Map<String, Object>> getCanaryConfigSummarySet(List<String> applications) {
+      boolean allApplications = applications == null || applications.size() == 0;
+      Map<String, Map<String, Object>> canaryConfigSummaries = new LinkedHashMap<>();
+
+      if (allApplications) {
+        canaryConfigSummaries.putAll(canaryConfigSummariesById);
+      } else {
+        for (String application : applications) {
+          List<Map<String, Object>> appScopedCanaryConfigList =
+              canaryConfigSummariesByApplication.get(application);
+
+          if (appScopedCanaryConfigList != null) {
+            for (Map<String, Object> canaryConfigSummary : appScopedCanaryConfigList) {
+              canaryConfigSummaries.putIfAbsent(
+                  (String) canaryConfigSummary.get("id"), canaryConfigSummary);
+            }
+          }
+        }
+      }
+
+      Set<String> applicationSet = allApplications ? null : new HashSet<>(applications);
+
+      for (PendingUpdate pendingUpdate : pendingUpdates) {
+        // Remove any existing matching summary from the response.
+        canaryConfigSummaries.remove(pendingUpdate.canaryConfigId);
+
+        // If the pending update represents an update action, as opposed to a delete, populate the
+        // response with the updated summary, provided it is scoped to a requested application.
+        if (pendingUpdate.action == CanaryConfigIndexAction.UPDATE
+            && (allApplications || pendingUpdate.isScopedToAnyOf(applicationSet))) {
+          canaryConfigSummaries.put(
+              pendingUpdate.canaryConfigId, pendingUpdate.canaryConfigSummary);
+        }
+      }
+
+      return new HashSet<>(canaryConfigSummaries.values());
+    }
+
+    // The latest pending update of a canary config overrides its persisted summary.
+    Map<String, Object> getCanaryConfigSummaryById(String canaryConfigId) {
+      for (int i = pendingUpdates.size() - 1; i >= 0; i--) {
+        PendingUpdate pendingUpdate = pendingUpdates.get(i);
+
+        if (pendingUpdate.canaryConfigId.equals(canaryConfigId)) {
+          return pendingUpdate.action == CanaryConfigIndexAction.UPDATE
+              ? pendingUpdate.canaryConfigSummary
+              : null;
+        }
+      }
+
+      return canaryConfigSummariesById.get(canaryConfigId);
+    }
+
+    // Finds a canary config by name among those scoped to any of the applications (or among all of
+    // them, if none are specified), looking at the pending updates first.
+    Map<String, Object> getCanaryConfigSummaryByName(
+        String canaryConfigName, List<String> applications) {
+      Set<String> applicationSet =
+          applications == null || applications.size() == 0 ? null : new HashSet<>(applications);
+      Set<String> pendingCanaryConfigIds = new HashSet<>();
+
+      for (int i = pendingUpdates.size() - 1; i >= 0; i--) {
+        PendingUpdate pendingUpdate = pendingUpdates.get(i);
+
+        // Only the latest pending update of each canary config counts.
+        if (pendingCanaryConfigIds.add(pendingUpdate.canaryConfigId)
+            && pendingUpdate.action == CanaryConfigIndexAction.UPDATE
+            && canaryConfigName.equals(pendingUpdate.canaryConfigSummary.get("name"))
+            && (applicationSet == null || pendingUpdate.isScopedToAnyOf(applicationSet))) {
+          return pendingUpdate.canaryConfigSummary;
+        }
+      }
+
+      for (Map<String, Object> canaryConfigSummary :
+          canaryConfigSummariesByName.getOrDefault(canaryConfigName, Collections.emptyList())) {
+        if (!pendingCanaryConfigIds.contains(canaryConfigSummary.get("id"))
+            && (applicationSet == null || isScopedToAnyOf(canaryConfigSummary, applicationSet))) {
+          return canaryConfigSummary;
+        }
+      }
+
+      return null;
+    }
+  }
+
+  private static class PendingUpdate {
+
+    private final CanaryConfigIndexAction action;
+    private final String canaryConfigId;
+    private final Map<String, Object> canaryConfigSummary;
+
+    PendingUpdate(CanaryConfigIndexAction action, Map<String, Object> canaryConfigSummary) {
+      this.action = action;
+      this.canaryConfigId = (String) canaryConfigSummary.get("id");
+      this.canaryConfigSummary = canaryConfigSummary;
+    }
+
+    boolean isScopedToAnyOf(Set<String> applications) {
+      return CanaryConfigIndex.isScopedToAnyOf(canaryConfigSummary, applications);
+    }
+  }
+
+  private static boolean isScopedToAnyOf(
+      Map<String, Object> canaryConfigSummary, Set<String> applications) {
+    List<String> scopedApplications = (List<String>) canaryConfigSummary.get("applications");
+
+    return scopedApplications != null
+        && scopedApplications.stream().anyMatch(applications::contains);
+  }
 }
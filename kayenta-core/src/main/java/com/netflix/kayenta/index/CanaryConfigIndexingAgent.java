@@ -17,16 +17,20 @@
 package com.netflix.kayenta.index;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
 import com.netflix.kayenta.canary.CanaryConfig;
 import com.netflix.kayenta.index.config.IndexConfigurationProperties;
 import com.netflix.kayenta.security.AccountCredentials;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.storage.ConcurrentObjectLoader;
 import com.netflix.kayenta.storage.ObjectType;
+import com.netflix.kayenta.storage.StorageLoadConfigurationProperties;
 import com.netflix.kayenta.storage.StorageService;
 import com.netflix.kayenta.storage.StorageServiceRepository;
 import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
@@ -55,6 +59,7 @@ public class CanaryConfigIndexingAgent extends AbstractHealthIndicator {
   private final ObjectMapper kayentaObjectMapper;
   private final CanaryConfigIndex canaryConfigIndex;
   private final IndexConfigurationProperties indexConfigurationProperties;
+  private final ConcurrentObjectLoader concurrentObjectLoader;
 
   private int cyclesInitiated = 0;
   private int cyclesCompleted = 0;
@@ -74,6 +79,18 @@ public class CanaryConfigIndexingAgent extends AbstractHealthIndicator {
     this.kayentaObjectMapper = kayentaObjectMapper;
     this.canaryConfigIndex = canaryConfigIndex;
     this.indexConfigurationProperties = indexConfigurationProperties;
+
+    // The agent has its own loader threads so that a full re-indexing does not hold up the loads of
+    // running canary pipelines.
+    StorageLoadConfigurationProperties storageLoadConfigurationProperties =
+        new StorageLoadConfigurationProperties();
+    storageLoadConfigurationProperties.setMaxConcurrentLoads(
+        indexConfigurationProperties.getMaxConcurrentLoads());
+    this.concurrentObjectLoader = new ConcurrentObjectLoader(storageLoadConfigurationProperties);
+  }
+
+  public void shutdown() {
+    concurrentObjectLoader.shutdown();
   }
 
   @Scheduled(fixedDelayString = "#{@indexConfigurationProperties.heartbeatIntervalMS}")
@@ -147,49 +164,20 @@ public class CanaryConfigIndexingAgent extends AbstractHealthIndicator {
             List<Map<String, Object>> canaryConfigObjectKeys =
                 configurationService.listObjectKeys(
                     accountName, ObjectType.CANARY_CONFIG, null, true);
-            Map<String, List<Map>> applicationToCanaryConfigListMap = new HashMap<>();
-
-            for (Map<String, Object> canaryConfigSummary : canaryConfigObjectKeys) {
-              try {
-                String canaryConfigId = (String) canaryConfigSummary.get("id");
-                String canaryConfigName = (String) canaryConfigSummary.get("name");
-                Long updatedTimestamp = (Long) canaryConfigSummary.get("updatedTimestamp");
-                String updatedTimestampIso =
-                    (String) canaryConfigSummary.get("updatedTimestampIso");
-
-                if (updatedTimestamp == null) {
-                  updatedTimestamp = canaryConfigIndex.getRedisTime();
-                  updatedTimestampIso = Instant.ofEpochMilli(updatedTimestamp).toString();
-                }
-
-                CanaryConfig canaryConfig =
-                    configurationService.loadObject(
-                        accountName, ObjectType.CANARY_CONFIG, canaryConfigId);
-                List<String> applications = canaryConfig.getApplications();
-
-                for (String application : applications) {
-                  List<Map> canaryConfigList = applicationToCanaryConfigListMap.get(application);
-
-                  if (canaryConfigList == null) {
-                    canaryConfigList = new ArrayList<Map>();
-                    applicationToCanaryConfigListMap.put(application, canaryConfigList);
-                  }
-
-                  canaryConfigList.add(
-                      new ImmutableMap.Builder<String, Object>()
-                          .put("id", canaryConfigId)
-                          .put("name", canaryConfigName)
-                          .put("updatedTimestamp", updatedTimestamp)
-                          .put("updatedTimestampIso", updatedTimestampIso)
-                          .put("applications", applications)
-                          .build());
-                }
-              } catch (NotFoundException e) {
-                // This can happen if a re-indexing is underway and we attempt to retrieve a canary
-                // config that has been
-                // deleted. Don't need to take any action.
-              }
-            }
+            String mapByApplicationKey =
+                "kayenta:"
+                    + credentials.getType()
+                    + ":"
+                    + accountName
+                    + MAP_BY_APPLICATION_KEY_SUFFIX;
+            Map<String, String> oldApplicationToSerializedCanaryConfigListMap =
+                jedis.hgetAll(mapByApplicationKey);
+            Map<String, List<Map>> applicationToCanaryConfigListMap =
+                buildApplicationToCanaryConfigListMap(
+                    accountName,
+                    configurationService,
+                    canaryConfigObjectKeys,
+                    getIndexedCanaryConfigSummaries(oldApplicationToSerializedCanaryConfigListMap));
 
             Map<String, String> applicationToSerializedCanaryConfigListMap =
                 new HashMap<String, String>();
@@ -206,28 +194,40 @@ public class CanaryConfigIndexingAgent extends AbstractHealthIndicator {
               }
             }
 
-            String mapByApplicationKey =
-                "kayenta:"
-                    + credentials.getType()
-                    + ":"
-                    + accountName
-                    + MAP_BY_APPLICATION_KEY_SUFFIX;
-            Set<String> oldMapByApplicationKeys = jedis.hkeys(mapByApplicationKey);
             Set<String> byApplicationKeysToDelete = new HashSet<>();
             // Application keys to delete should be all the original applications minus all the
             // currently-observed applications.
-            byApplicationKeysToDelete.addAll(oldMapByApplicationKeys);
+            byApplicationKeysToDelete.addAll(
+                oldApplicationToSerializedCanaryConfigListMap.keySet());
             byApplicationKeysToDelete.removeAll(
                 applicationToSerializedCanaryConfigListMap.keySet());
 
-            if (applicationToSerializedCanaryConfigListMap.size() > 0) {
-              jedis.hmset(mapByApplicationKey, applicationToSerializedCanaryConfigListMap);
+            // Only the applications whose canary configs changed are rewritten.
+            Map<String, String> changedApplicationToSerializedCanaryConfigListMap =
+                new HashMap<String, String>();
+
+            for (Map.Entry<String, String> entry :
+                applicationToSerializedCanaryConfigListMap.entrySet()) {
+              if (!entry
+                  .getValue()
+                  .equals(oldApplicationToSerializedCanaryConfigListMap.get(entry.getKey()))) {
+                changedApplicationToSerializedCanaryConfigListMap.put(
+                    entry.getKey(), entry.getValue());
+              }
+            }
+
+            boolean indexUpdated = false;
+
+            if (changedApplicationToSerializedCanaryConfigListMap.size() > 0) {
+              jedis.hmset(mapByApplicationKey, changedApplicationToSerializedCanaryConfigListMap);
+              indexUpdated = true;
             }
 
             if (byApplicationKeysToDelete.size() > 0) {
               jedis.hdel(
                   mapByApplicationKey,
                   byApplicationKeysToDelete.toArray(new String[byApplicationKeysToDelete.size()]));
+              indexUpdated = true;
             }
 
             // We do this so we can distinguish between a completely empty index and an
@@ -237,6 +237,7 @@ public class CanaryConfigIndexingAgent extends AbstractHealthIndicator {
                   mapByApplicationKey,
                   "not-a-real-application:" + currentInstanceId,
                   NO_INDEXED_CONFIGS_SENTINEL_VALUE);
+              indexUpdated = true;
             }
 
             // Now that we've scanned all of the canary configs in the storage system and updated
@@ -275,8 +276,13 @@ public class CanaryConfigIndexingAgent extends AbstractHealthIndicator {
 
               for (String updateToFlush : updatesToFlush) {
                 jedis.lrem(pendingUpdatesKey, 1, updateToFlush);
+                indexUpdated = true;
               }
             }
+
+            if (indexUpdated) {
+              canaryConfigIndex.publishIndexUpdate(credentials);
+            }
           } catch (Exception e) {
             log.error("Problem indexing account {}: ", accountName, e);
           }
@@ -299,6 +305,137 @@ public class CanaryConfigIndexingAgent extends AbstractHealthIndicator {
     }
   }
 
+  // Recovers the summaries recorded by the previous indexing cycle, keyed by canary config id.
+  private Map<String, Map<String, Object>> getIndexedCanaryConfigSummaries(
+      Map<String, String> applicationToSerializedCanaryConfigListMap) {
+    Map<String, Map<String, Object>> indexedCanaryConfigSummaries = new HashMap<>();
+
+    for (Map.Entry<String, String> entry : applicationToSerializedCanaryConfigListMap.entrySet()) {
+      if (NO_INDEXED_CONFIGS_SENTINEL_VALUE.equals(entry.getValue())) {
+        continue;
+      }
+
+      try {
+        List<Map<String, Object>> canaryConfigSummaries =
+            kayentaObjectMapper.readValue(
+                entry.getValue(), new TypeReference<List<Map<String, Object>>>() {});
+
+        for (Map<String, Object> canaryConfigSummary : canaryConfigSummaries) {
+          indexedCanaryConfigSummaries.put(
+              (String) canaryConfigSummary.get("id"), canaryConfigSummary);
+        }
+      } catch (IOException e) {
+        // The canary configs of this application will be loaded again.
+        log.warn("Problem deserializing index entry for application {}: {}", entry.getKey(), e);
+      }
+    }
+
+    return indexedCanaryConfigSummaries;
+  }
+
+  private Map<String, List<Map>> buildApplicationToCanaryConfigListMap(
+      String accountName,
+      StorageService configurationService,
+      List<Map<String, Object>> canaryConfigObjectKeys,
+      Map<String, Map<String, Object>> indexedCanaryConfigSummaries) {
+    long reloadUpdatesSince =
+        canaryConfigIndex.getRedisTime()
+            - indexConfigurationProperties.getRecentUpdateReloadWindowMS();
+    Map<String, List<String>> canaryConfigIdToApplicationsMap = new HashMap<>();
+    List<String> canaryConfigIdsToLoad = new ArrayList<>();
+
+    // Only canary configs that are new or have been updated since the previous cycle are loaded;
+    // the applications of the rest are taken from the index.
+    for (Map<String, Object> canaryConfigSummary : canaryConfigObjectKeys) {
+      String canaryConfigId = (String) canaryConfigSummary.get("id");
+      Long updatedTimestamp = (Long) canaryConfigSummary.get("updatedTimestamp");
+      Map<String, Object> indexedCanaryConfigSummary =
+          indexedCanaryConfigSummaries.get(canaryConfigId);
+
+      if (updatedTimestamp != null
+          && updatedTimestamp < reloadUpdatesSince
+          && indexedCanaryConfigSummary != null
+          && indexedCanaryConfigSummary.get("updatedTimestamp") instanceof Number
+          && ((Number) indexedCanaryConfigSummary.get("updatedTimestamp")).longValue()
+              == updatedTimestamp
+          && indexedCanaryConfigSummary.get("applications") instanceof List) {
+        canaryConfigIdToApplicationsMap.put(
+            canaryConfigId, (List<String>) indexedCanaryConfigSummary.get("applications"));
+      } else {
+        canaryConfigIdsToLoad.add(canaryConfigId);
+      }
+    }
+
+    Map<String, CanaryConfig> loadedCanaryConfigs =
+        concurrentObjectLoader.loadObjects(
+            ObjectType.CANARY_CONFIG,
+            canaryConfigIdsToLoad,
+            canaryConfigId -> {
+              try {
+                CanaryConfig canaryConfig =
+                    configurationService.loadObject(
+                        accountName, ObjectType.CANARY_CONFIG, canaryConfigId);
+                return canaryConfig;
+              } catch (NotFoundException e) {
+                // This can happen if a re-indexing is underway and we attempt to retrieve a
+                // canary config that has been deleted. Don't need to take any action.
+                return null;
+              }
+            });
+
+    for (Map.Entry<String, CanaryConfig> entry : loadedCanaryConfigs.entrySet()) {
+      if (entry.getValue() != null) {
+        canaryConfigIdToApplicationsMap.put(entry.getKey(), entry.getValue().getApplications());
+      }
+    }
+
+    log.debug(
+        "Loaded {} of {} canary configs in account {}.",
+        canaryConfigIdsToLoad.size(),
+        canaryConfigObjectKeys.size(),
+        accountName);
+
+    Map<String, List<Map>> applicationToCanaryConfigListMap = new HashMap<>();
+
+    for (Map<String, Object> canaryConfigSummary : canaryConfigObjectKeys) {
+      String canaryConfigId = (String) canaryConfigSummary.get("id");
+      List<String> applications = canaryConfigIdToApplicationsMap.get(canaryConfigId);
+
+      if (applications == null) {
+        continue;
+      }
+
+      String canaryConfigName = (String) canaryConfigSummary.get("name");
+      Long updatedTimestamp = (Long) canaryConfigSummary.get("updatedTimestamp");
+      String updatedTimestampIso = (String) canaryConfigSummary.get("updatedTimestampIso");
+
+      if (updatedTimestamp == null) {
+        updatedTimestamp = canaryConfigIndex.getRedisTime();
+        updatedTimestampIso = Instant.ofEpochMilli(updatedTimestamp).toString();
+      }
+
+      for (String application : applications) {
+        applicationToCanaryConfigListMap
+            .computeIfAbsent(application, a -> new ArrayList<>())
+            .add(
+                new ImmutableMap.Builder<String, Object>()
+                    .put("id", canaryConfigId)
+                    .put("name", canaryConfigName)
+                    .put("updatedTimestamp", updatedTimestamp)
+                    .put("updatedTimestampIso", updatedTimestampIso)
+                    .put("applications", applications)
+                    .build());
+      }
+    }
+
+    // Keep each application's entry stable across cycles so unchanged ones need not be rewritten.
+    for (List<Map> canaryConfigList : applicationToCanaryConfigListMap.values()) {
+      canaryConfigList.sort(Comparator.comparing(summary -> (String) summary.get("id")));
+    }
+
+    return applicationToCanaryConfigListMap;
+  }
+
   @Override
   protected void doHealthCheck(Health.Builder builder) throws Exception {
     Set<AccountCredentials> configurationStoreAccountCredentialsSet =
@@ -36,7 +36,7 @@ public class IndexConfiguration {
     return new IndexConfigurationProperties();
   }
 
-  @Bean
+  @Bean(destroyMethod = "shutdown")
   CanaryConfigIndexingAgent canaryConfigIndexingAgent(
       String currentInstanceId,
       JedisPool jedisPool,
@@ -55,9 +55,12 @@ public class IndexConfiguration {
         indexConfigurationProperties);
   }
 
-  @Bean
-  CanaryConfigIndex canaryConfigIndex(JedisPool jedisPool, ObjectMapper kayentaObjectMapper) {
-    return new CanaryConfigIndex(jedisPool, kayentaObjectMapper);
+  @Bean(destroyMethod = "shutdown")
+  CanaryConfigIndex canaryConfigIndex(
+      JedisPool jedisPool,
+      ObjectMapper kayentaObjectMapper,
+      IndexConfigurationProperties indexConfigurationProperties) {
+    return new CanaryConfigIndex(jedisPool, kayentaObjectMapper, indexConfigurationProperties);
   }
 
   @Bean
@@ -33,4 +33,19 @@ public class IndexConfigurationProperties {
   @Getter @Setter private int indexingLockTTLSec = (int) Duration.ofMinutes(15).getSeconds();
 
   @Getter @Setter private long pendingUpdateStaleEntryThresholdMS = Duration.ofHours(1).toMillis();
+
+  // Canary configs are only loaded while indexing if they are new or their updatedTimestamp has
+  // changed. Listed timestamps can be coarser than the time between two writes, so configs updated
+  // within this window of the indexing cycle are loaded regardless.
+  @Getter @Setter private long recentUpdateReloadWindowMS = Duration.ofMinutes(1).toMillis();
+
+  @Getter @Setter private int maxConcurrentLoads = 8;
+
+  // Parsed canary config summaries are cached in-process and invalidated through redis pub/sub.
+  // Cached entries are reloaded after nearCacheMaxAgeMS in case a notification was missed.
+  @Getter @Setter private boolean nearCacheEnabled = true;
+
+  @Getter @Setter private long nearCacheMaxAgeMS = Duration.ofMinutes(5).toMillis();
+
+  @Getter @Setter private long nearCacheResubscribeIntervalMS = Duration.ofSeconds(5).toMillis();
 }
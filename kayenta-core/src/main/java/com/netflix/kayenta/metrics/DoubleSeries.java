@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.metrics;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+import java.util.stream.DoubleStream;
+
+/**
+ * An immutable series of metric values backed by a primitive array.
+ *
+ * <p>Metric sets routinely hold thousands of data points per canary run; keeping them unboxed
+ * avoids a Double allocation per point in the metrics services, the mixer and the judge. The
+ * series still implements {@code List<Double>} so existing readers keep working, and it is
+ * serialized as a plain JSON array of numbers, exactly like the list it replaces. Missing (null)
+ * values are held as NaN.
+ *
+ * <p>Binary formats that can embed raw bytes (Smile, CBOR) get the values as a single
+ * XOR-encoded column instead of an array of numbers; either representation is read back.
+ */
+@JsonSerialize(using = DoubleSeries.Serializer.class)
+@JsonDeserialize(using = DoubleSeries.Deserializer.class)
+public final class DoubleSeries extends AbstractList<Double> implements RandomAccess {
+
+  public static final DoubleSeries EMPTY = new DoubleSeries(new double[0]);
+
+  private final double[] values;
+
+  private DoubleSeries(double[] values) {
+    this.values = values;
+  }
+
+  public static DoubleSeries of(double... values) {
+    return values.length == 0 ? EMPTY : new DoubleSeries(values.clone());
+  }
+
+  public static DoubleSeries copyOf(Collection<? extends Number> values) {
+    if (values instanceof DoubleSeries) {
+      return (DoubleSeries) values;
+    }
+    if (values.isEmpty()) {
+      return EMPTY;
+    }
+
+    double[] array = new double[values.size()];
+    int i = 0;
+
+    for (Number value : values) {
+      array[i++] = value != null ? value.doubleValue() : Double.NaN;
+    }
+
+    return new DoubleSeries(array);
+  }
+
+  /** Returns a series of the given size holding only NaN values. */
+  public static DoubleSeries nanFilled(int size) {
+    if (size <= 0) {
+      return EMPTY;
+    }
+
+    double[] array = new double[size];
+    Arrays.fill(array, Double.NaN);
+
+    return new DoubleSeries(array);
+  }
+
+  /**
+   * Returns this series padded with NaN values up to the given size, or this series itself if it
+   * is already at least that long.
+   */
+  public DoubleSeries padTo(int size) {
+    if (values.length >= size) {
+      return this;
+    }
+
+    double[] array = Arrays.copyOf(values, size);
+    Arrays.fill(array, values.length, size, Double.NaN);
+
+    return new DoubleSeries(array);
+  }
+
+  public double getDouble(int index) {
+    return values[index];
+  }
+
+  @Override
+  public Double get(int index) {
+    return values[index];
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  /** Returns a copy of the values that the caller is free to modify. */
+  public double[] toDoubleArray() {
+    return values.clone();
+  }
+
+  public DoubleStream doubleStream() {
+    return Arrays.stream(values);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof DoubleSeries) {
+      return Arrays.equals(values, ((DoubleSeries) o).values);
+    }
+
+    return super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    // Must stay consistent with List.hashCode(), since a series may equal any other list.
+    return super.hashCode();
+  }
+
+  public static class Serializer extends JsonSerializer<DoubleSeries> {
+
+    @Override
+    public void serialize(DoubleSeries series, JsonGenerator gen, SerializerProvider serializers)
+        throws IOException {
+      if (gen.canWriteBinaryNatively()) {
+        gen.writeBinary(XorDoubleEncoding.encode(series.values));
+        return;
+      }
+
+      gen.writeStartArray(series.values.length);
+      for (double value : series.values) {
+        gen.writeNumber(value);
+      }
+      gen.writeEndArray();
+    }
+  }
+
+  public static class Deserializer extends JsonDeserializer<DoubleSeries> {
+
+    @Override
+    public DoubleSeries deserialize(JsonParser parser, DeserializationContext context)
+        throws IOException {
+      if (parser.hasToken(JsonToken.VALUE_EMBEDDED_OBJECT)) {
+        double[] values = XorDoubleEncoding.decode(parser.getBinaryValue());
+        return values.length == 0 ? EMPTY : new DoubleSeries(values);
+      }
+
+      if (!parser.isExpectedStartArrayToken()) {
+        return (DoubleSeries) context.handleUnexpectedToken(DoubleSeries.class, parser);
+      }
+
+      double[] array = new double[16];
+      int size = 0;
+      JsonToken token;
+
+      while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+        if (size == array.length) {
+          array = Arrays.copyOf(array, size * 2);
+        }
+        array[size++] =
+            token == JsonToken.VALUE_NULL ? Double.NaN : parser.getValueAsDouble(Double.NaN);
+      }
+
+      return size == 0 ? EMPTY : new DoubleSeries(Arrays.copyOf(array, size));
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.metrics;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.Registry;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded, in-process cache of metric query results. Only results for time windows that ended
+ * long enough ago are cached, since the metrics store may still change its answer for anything
+ * more recent.
+ */
+public class InMemoryMetricsQueryCache implements MetricsQueryCache {
+
+  private final MetricsQueryCacheConfigurationProperties configuration;
+  private final Registry registry;
+  private final Id evictionsId;
+  private final Cache<MetricsQueryKey, List<MetricSet>> cache;
+
+  public InMemoryMetricsQueryCache(
+      MetricsQueryCacheConfigurationProperties configuration, Registry registry) {
+    this.configuration = configuration;
+    this.registry = registry;
+    this.evictionsId = registry.createId("canary.telemetry.query.cache.evictions");
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumSize(configuration.getMaximumSize())
+            .expireAfterWrite(configuration.getTimeToLive().toMillis(), TimeUnit.MILLISECONDS)
+            .removalListener(this::onRemoval)
+            .build();
+
+    registry.gauge(registry.createId("canary.telemetry.query.cache.size"), cache, Cache::size);
+  }
+
+  @Override
+  public Optional<List<MetricSet>> get(MetricsQueryKey key) {
+    return Optional.ofNullable(cache.getIfPresent(key));
+  }
+
+  @Override
+  public void put(MetricsQueryKey key, List<MetricSet> metricSetList) {
+    if (isCacheable(key)) {
+      cache.put(key, Collections.unmodifiableList(metricSetList));
+    }
+  }
+
+  private boolean isCacheable(MetricsQueryKey key) {
+    Instant end = key.getCanaryScope().getEnd();
+
+    if (end == null) {
+      return false;
+    }
+
+    Instant now = Instant.ofEpochMilli(registry.clock().wallTime());
+
+    return end.plus(configuration.getMinimumWindowAge()).isBefore(now);
+  }
+
+  private void onRemoval(RemovalNotification<MetricsQueryKey, List<MetricSet>> notification) {
+    if (notification.wasEvicted()) {
+      registry
+          .counter(evictionsId.withTag("cause", notification.getCause().name().toLowerCase()))
+          .increment();
+    }
+  }
+}
@@ -17,7 +17,7 @@
 package com.netflix.kayenta.metrics;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import java.util.List;
+import java.util.Collection;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
@@ -44,7 +44,7 @@ public class MetricSet {
 
   @NotNull @Getter private long stepMillis;
 
-  @NotNull @Singular @Getter private List<Double> values;
+  @NotNull @Getter private DoubleSeries values;
 
   @Singular @Getter private Map<String, String> attributes;
 
@@ -58,7 +58,7 @@ public class MetricSet {
       long endTimeMillis,
       String endTimeIso,
       long stepMillis,
-      List<Double> values,
+      DoubleSeries values,
       Map<String, String> attributes,
       String metricSetKey) {
     this.name = name;
@@ -68,7 +68,7 @@ public class MetricSet {
     this.endTimeMillis = endTimeMillis;
     this.endTimeIso = endTimeIso;
     this.stepMillis = stepMillis;
-    this.values = values;
+    this.values = values != null ? values : DoubleSeries.EMPTY;
     this.attributes = attributes;
     this.metricSetKey = metricSetKey;
   }
@@ -100,4 +100,17 @@ public class MetricSet {
     }
     return (endTimeMillis - startTimeMillis) / stepMillis;
   }
+
+  public static class MetricSetBuilder {
+
+    public MetricSetBuilder values(Collection<? extends Number> values) {
+      this.values = DoubleSeries.copyOf(values);
+      return this;
+    }
+
+    public MetricSetBuilder values(double[] values) {
+      this.values = DoubleSeries.of(values);
+      return this;
+    }
+  }
 }
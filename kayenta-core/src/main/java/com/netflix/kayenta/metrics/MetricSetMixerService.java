@@ -19,7 +19,6 @@ package com.netflix.kayenta.metrics;
 import com.netflix.kayenta.canary.CanaryMetricConfig;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.DoubleStream;
 import org.springframework.util.StringUtils;
 
 public class MetricSetMixerService {
@@ -28,8 +27,8 @@ public class MetricSetMixerService {
     String experimentName = experimentMetricSet.getName();
     Map<String, String> controlTags = controlMetricSet.getTags();
     Map<String, String> experimentTags = experimentMetricSet.getTags();
-    List<Double> controlValues = controlMetricSet.getValues();
-    List<Double> experimentValues = experimentMetricSet.getValues();
+    DoubleSeries controlValues = controlMetricSet.getValues();
+    DoubleSeries experimentValues = experimentMetricSet.getValues();
     MetricSetPair.MetricSetScope controlScope =
         MetricSetPair.MetricSetScope.builder()
             .startTimeIso(controlMetricSet.getStartTimeIso())
@@ -65,18 +64,8 @@ public class MetricSetMixerService {
 
     // If we know how many data points we should expect, pad the array to contain that number.
     // This typically only happens when one side (control or experiment) have no data at all.
-    if (controlMetricSet.expectedDataPoints() > controlValues.size()) {
-      controlValues = new ArrayList<>(controlValues);
-      while (controlMetricSet.expectedDataPoints() > controlValues.size()) {
-        controlValues.add(Double.NaN);
-      }
-    }
-    if (experimentMetricSet.expectedDataPoints() > experimentValues.size()) {
-      experimentValues = new ArrayList<>(experimentValues);
-      while (experimentMetricSet.expectedDataPoints() > experimentValues.size()) {
-        experimentValues.add(Double.NaN);
-      }
-    }
+    controlValues = controlValues.padTo((int) controlMetricSet.expectedDataPoints());
+    experimentValues = experimentValues.padTo((int) experimentMetricSet.expectedDataPoints());
 
     MetricSetPair.MetricSetPairBuilder metricSetPairBuilder =
         MetricSetPair.builder()
@@ -98,20 +87,18 @@ public class MetricSetMixerService {
     return metricSetPairBuilder.build();
   }
 
-  // This looks through the in-memory MetricSets many times.
+  // Pairs control and experiment series by their tag maps in a single pass over each side.
   protected List<MetricSetPair> mixOneMetric(
       List<MetricSet> controlMetricSetList, List<MetricSet> experimentMetricSetList) {
     List<MetricSetPair> ret = new ArrayList<>();
 
-    // Collect the set of tags on both sides.  Depending on what these contain, we will do different
-    // things below.
-    Set<Map<String, String>> controlTags =
-        controlMetricSetList.stream().map(MetricSet::getTags).collect(Collectors.toSet());
-    Set<Map<String, String>> experimentTags =
-        experimentMetricSetList.stream().map(MetricSet::getTags).collect(Collectors.toSet());
+    // Index the series on both sides by their tags. Depending on what these contain, we will do
+    // different things below. If a tag map occurs more than once, the first series wins.
+    Map<Map<String, String>, MetricSet> controlByTags = indexByTags(controlMetricSetList);
+    Map<Map<String, String>, MetricSet> experimentByTags = indexByTags(experimentMetricSetList);
 
-    boolean controlHasEmptyTags = controlTags.contains(Collections.emptyMap());
-    boolean experimentHasEmptyTags = experimentTags.contains(Collections.emptyMap());
+    boolean controlHasEmptyTags = controlByTags.containsKey(Collections.emptyMap());
+    boolean experimentHasEmptyTags = experimentByTags.containsKey(Collections.emptyMap());
 
     MetricSet controlTemplate = controlMetricSetList.get(0);
     MetricSet experimentTemplate = experimentMetricSetList.get(0);
@@ -132,33 +119,47 @@ public class MetricSetMixerService {
     } else {
       // If both have empty tags, or both have no empty tags, we will just mix them by
       // comparing tag-for-tag in each, and making templates as needed.
-      Set<Map<String, String>> allTags = new HashSet<>();
-      allTags.addAll(controlTags);
-      allTags.addAll(experimentTags);
-      for (Map<String, String> tags : allTags) {
-        MetricSet controlMetricSet =
-            controlMetricSetList.stream()
-                .filter((ms) -> ms.getTags().equals(tags))
-                .findFirst()
-                .orElse(makeTemplate(controlTemplate, tags));
-        MetricSet experimentMetricSet =
-            experimentMetricSetList.stream()
-                .filter((ms) -> ms.getTags().equals(tags))
-                .findFirst()
-                .orElse(makeTemplate(experimentTemplate, tags));
-        ret.add(mixOne(controlMetricSet, experimentMetricSet));
+      for (Map.Entry<Map<String, String>, MetricSet> entry : controlByTags.entrySet()) {
+        MetricSet experimentMetricSet = experimentByTags.get(entry.getKey());
+
+        if (experimentMetricSet == null) {
+          experimentMetricSet = makeTemplate(experimentTemplate, entry.getKey());
+        }
+        ret.add(mixOne(entry.getValue(), experimentMetricSet));
+      }
+      for (Map.Entry<Map<String, String>, MetricSet> entry : experimentByTags.entrySet()) {
+        if (!controlByTags.containsKey(entry.getKey())) {
+          ret.add(mixOne(makeTemplate(controlTemplate, entry.getKey()), entry.getValue()));
+        }
       }
     }
 
     return ret;
   }
 
+  private static Map<Map<String, String>, MetricSet> indexByTags(List<MetricSet> metricSetList) {
+    Map<Map<String, String>, MetricSet> metricSetsByTags =
+        new LinkedHashMap<>(metricSetList.size() * 2);
+
+    for (MetricSet metricSet : metricSetList) {
+      metricSetsByTags.putIfAbsent(metricSet.getTags(), metricSet);
+    }
+
+    return metricSetsByTags;
+  }
+
+  private static Map<String, List<MetricSet>> groupByName(List<MetricSet> metricSetList) {
+    Map<String, List<MetricSet>> metricSetsByName = new HashMap<>();
+
+    for (MetricSet metricSet : metricSetList) {
+      metricSetsByName.computeIfAbsent(metricSet.getName(), k -> new ArrayList<>()).add(metricSet);
+    }
+
+    return metricSetsByName;
+  }
+
   protected MetricSet makeTemplate(MetricSet template, Map<String, String> tags) {
-    List<Double> values =
-        DoubleStream.generate(() -> Double.NaN)
-            .limit(template.expectedDataPoints())
-            .boxed()
-            .collect(Collectors.toList());
+    DoubleSeries values = DoubleSeries.nanFilled((int) template.expectedDataPoints());
 
     return MetricSet.builder()
         .attributes(template.getAttributes())
@@ -179,16 +180,14 @@ public class MetricSetMixerService {
       List<MetricSet> experimentMetricSetList) {
 
     List<MetricSetPair> ret = new ArrayList<>();
+    Map<String, List<MetricSet>> controlMetricsByName = groupByName(controlMetricSetList);
+    Map<String, List<MetricSet>> experimentMetricsByName = groupByName(experimentMetricSetList);
 
     for (CanaryMetricConfig metric : canaryMetricConfig) {
       List<MetricSet> controlMetrics =
-          controlMetricSetList.stream()
-              .filter((ms) -> ms.getName().equals(metric.getName()))
-              .collect(Collectors.toList());
+          controlMetricsByName.getOrDefault(metric.getName(), Collections.emptyList());
       List<MetricSet> experimentMetrics =
-          experimentMetricSetList.stream()
-              .filter((ms) -> ms.getName().equals(metric.getName()))
-              .collect(Collectors.toList());
+          experimentMetricsByName.getOrDefault(metric.getName(), Collections.emptyList());
       if (controlMetrics.size() == 0) {
         throw new IllegalArgumentException(
             "No control metrics found for "
@@ -16,7 +16,6 @@
 
 package com.netflix.kayenta.metrics;
 
-import java.util.List;
 import java.util.Map;
 import javax.validation.constraints.NotNull;
 import lombok.*;
@@ -32,7 +31,7 @@ public class MetricSetPair {
 
   @NotNull @Singular @Getter private Map<String, String> tags;
 
-  @NotNull @Singular @Getter private Map<String, List<Double>> values;
+  @NotNull @Singular @Getter private Map<String, DoubleSeries> values;
 
   @NotNull @Singular @Getter private Map<String, MetricSetScope> scopes;
 
@@ -42,7 +41,7 @@ public class MetricSetPair {
       String name,
       String id,
       Map<String, String> tags,
-      Map<String, List<Double>> values,
+      Map<String, DoubleSeries> values,
       Map<String, MetricSetScope> scopes,
       Map<String, Map<String, String>> attributes) {
     this.name = name;
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.metrics;
+
+import java.util.List;
+import java.util.Optional;
+
+/** Holds the results of metric queries so that repeated identical queries need not be re-issued. */
+public interface MetricsQueryCache {
+
+  Optional<List<MetricSet>> get(MetricsQueryKey key);
+
+  /** Implementations are free to ignore results they should not cache. */
+  void put(MetricsQueryKey key, List<MetricSet> metricSetList);
+
+  MetricsQueryCache NOOP =
+      new MetricsQueryCache() {
+        @Override
+        public Optional<List<MetricSet>> get(MetricsQueryKey key) {
+          return Optional.empty();
+        }
+
+        @Override
+        public void put(MetricsQueryKey key, List<MetricSet> metricSetList) {}
+      };
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.metrics;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/** Configuration of the cache of metric query results used by the SynchronousQueryProcessor. */
+@Data
+@ConfigurationProperties("kayenta.metrics.cache")
+public class MetricsQueryCacheConfigurationProperties {
+
+  private boolean enabled = false;
+
+  private long maximumSize = 1000;
+
+  private Duration timeToLive = Duration.ofMinutes(30);
+
+  /**
+   * Results are only cached once the end of their time window is at least this far in the past, so
+   * that data still being ingested by the metrics store is not cached.
+   */
+  private Duration minimumWindowAge = Duration.ofMinutes(1);
+}
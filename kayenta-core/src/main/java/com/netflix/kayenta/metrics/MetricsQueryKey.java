@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.metrics;
+
+import com.netflix.kayenta.canary.CanaryScope;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * Identifies the result of querying one metric against one scope. Two queries with equal keys are
+ * expected to return the same metric sets, as long as their time window is in the past.
+ */
+@Value
+public class MetricsQueryKey {
+
+  String metricsAccountName;
+
+  String metricName;
+
+  // The metric's query config, as rendered by its toString().
+  String queryConfig;
+
+  // The canary config's templates, which custom filter templates of the query config refer to.
+  Map<String, String> templates;
+
+  // Includes the start, end and step of the query.
+  CanaryScope canaryScope;
+}
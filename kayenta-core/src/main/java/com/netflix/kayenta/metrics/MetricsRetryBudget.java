@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.metrics;
+
+import com.netflix.spectator.api.Registry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Limits how many retries may be issued against a single metrics account within a fixed window, so
+ * that an unhealthy metrics store is not hammered by every canary run retrying at once.
+ */
+class MetricsRetryBudget {
+
+  private final MetricsRetryConfigurationProperties retryConfiguration;
+  private final Registry registry;
+  private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+
+  MetricsRetryBudget(MetricsRetryConfigurationProperties retryConfiguration, Registry registry) {
+    this.retryConfiguration = retryConfiguration;
+    this.registry = registry;
+  }
+
+  /** Returns true if another retry against the given account is allowed right now. */
+  boolean tryAcquire(String metricsAccountName) {
+    int budget = retryConfiguration.getAccountRetryBudget();
+
+    if (budget <= 0) {
+      return true;
+    }
+
+    long windowMs = retryConfiguration.getAccountRetryBudgetWindow().toMillis();
+    long windowStart = registry.clock().wallTime() / windowMs * windowMs;
+    Window window =
+        windows.compute(
+            metricsAccountName,
+            (account, current) ->
+                current != null && current.start == windowStart
+                    ? current.increment()
+                    : new Window(windowStart, 1));
+
+    if (window.retries > budget) {
+      registry
+          .counter(
+              "canary.telemetry.query.retryBudgetExhausted", "metricsAccount", metricsAccountName)
+          .increment();
+
+      return false;
+    }
+
+    return true;
+  }
+
+  private static class Window {
+    final long start;
+    final int retries;
+
+    Window(long start, int retries) {
+      this.start = start;
+      this.retries = retries;
+    }
+
+    Window increment() {
+      return new Window(start, retries + 1);
+    }
+  }
+}
@@ -18,6 +18,7 @@ package com.netflix.kayenta.metrics;
 
 import static java.util.Arrays.asList;
 
+import java.time.Duration;
 import java.util.HashSet;
 import java.util.Set;
 import lombok.Data;
@@ -42,4 +43,15 @@ public class MetricsRetryConfigurationProperties {
   private int attempts = 10;
 
   private int backoffPeriodMultiplierMs = 1000;
+
+  // Fraction of each backoff period that is randomized, so that queries failing together do not
+  // all retry at the same moment.
+  private double jitterFactor = 0.5;
+
+  // Maximum number of retries per metrics account within accountRetryBudgetWindow. Once spent,
+  // failing queries against that account are not retried until the window rolls over. Zero
+  // disables the budget.
+  private int accountRetryBudget = 0;
+
+  private Duration accountRetryBudgetWindow = Duration.ofMinutes(1);
 }
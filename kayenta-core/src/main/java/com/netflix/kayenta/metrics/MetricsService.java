@@ -20,6 +20,7 @@ import com.netflix.kayenta.canary.CanaryConfig;
 import com.netflix.kayenta.canary.CanaryMetricConfig;
 import com.netflix.kayenta.canary.CanaryScope;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +45,30 @@ public interface MetricsService {
       CanaryScope canaryScope)
       throws IOException;
 
+  /**
+   * Queries several metrics of the same canary config against a single scope. The returned metric
+   * sets are named after the metric that produced them, so they can all be stored together in one
+   * metric set list.
+   *
+   * <p>The default implementation issues one query per metric. Metrics services that can answer
+   * several queries in a single round trip should override this.
+   */
+  default List<MetricSet> batchQueryMetrics(
+      String accountName,
+      CanaryConfig canaryConfig,
+      List<CanaryMetricConfig> canaryMetricConfigs,
+      CanaryScope canaryScope)
+      throws IOException {
+    List<MetricSet> metricSetList = new ArrayList<>();
+
+    for (CanaryMetricConfig canaryMetricConfig : canaryMetricConfigs) {
+      metricSetList.addAll(
+          queryMetrics(accountName, canaryConfig, canaryMetricConfig, canaryScope));
+    }
+
+    return metricSetList;
+  }
+
   default List<Map> getMetadata(String metricsAccountName, String filter) throws IOException {
     return Collections.emptyList();
   }
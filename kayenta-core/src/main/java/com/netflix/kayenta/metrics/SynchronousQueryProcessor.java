@@ -26,12 +26,22 @@ import com.netflix.spectator.api.Id;
 import com.netflix.spectator.api.Registry;
 import com.netflix.spinnaker.orca.api.pipeline.TaskResult;
 import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus;
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -41,21 +51,36 @@ import retrofit.RetrofitError;
 @Component
 @Slf4j
 public class SynchronousQueryProcessor {
+
+  // Stage context keys used to carry retry state between executions of a fetch task.
+  public static final String RETRIES_CONTEXT_KEY = "metricsQueryRetries";
+  public static final String BACKOFF_PERIOD_CONTEXT_KEY = "metricsQueryBackoffPeriodMs";
+  public static final String TOTAL_BACKOFF_PERIOD_CONTEXT_KEY = "metricsQueryTotalBackoffPeriodMs";
+
   private final MetricsServiceRepository metricsServiceRepository;
   private final StorageServiceRepository storageServiceRepository;
   private final Registry registry;
   private final MetricsRetryConfigurationProperties retryConfiguration;
+  private final MetricsQueryCache metricsQueryCache;
+  private final MetricsRetryBudget retryBudget;
+
+  // Queries currently being executed, so that concurrent identical queries can share one fetch.
+  private final ConcurrentMap<List<MetricsQueryKey>, CompletableFuture<List<MetricSet>>>
+      inFlightQueries = new ConcurrentHashMap<>();
 
   @Autowired
   public SynchronousQueryProcessor(
       MetricsServiceRepository metricsServiceRepository,
       StorageServiceRepository storageServiceRepository,
       Registry registry,
-      MetricsRetryConfigurationProperties retryConfiguration) {
+      MetricsRetryConfigurationProperties retryConfiguration,
+      MetricsQueryCache metricsQueryCache) {
     this.metricsServiceRepository = metricsServiceRepository;
     this.storageServiceRepository = storageServiceRepository;
     this.registry = registry;
     this.retryConfiguration = retryConfiguration;
+    this.metricsQueryCache = metricsQueryCache;
+    this.retryBudget = new MetricsRetryBudget(retryConfiguration, registry);
   }
 
   public String executeQuery(
@@ -65,6 +90,44 @@ public class SynchronousQueryProcessor {
       int metricIndex,
       CanaryScope canaryScope)
       throws IOException {
+    return executeQuery(
+        metricsAccountName,
+        storageAccountName,
+        canaryConfig,
+        Collections.singletonList(metricIndex),
+        canaryScope);
+  }
+
+  /**
+   * Queries the given metrics of the canary config against a single scope and stores all of the
+   * resulting metric sets as one metric set list. When more than one metric is requested the
+   * metrics service gets the chance to answer them in a single batched query.
+   */
+  public String executeQuery(
+      String metricsAccountName,
+      String storageAccountName,
+      CanaryConfig canaryConfig,
+      List<Integer> metricIndexes,
+      CanaryScope canaryScope)
+      throws IOException {
+    return executeQuery(
+        metricsAccountName, storageAccountName, canaryConfig, metricIndexes, canaryScope, 0, true);
+  }
+
+  /**
+   * @param previousRetries the number of attempts that have already failed
+   * @param retryInline whether to retry failed attempts right away on the calling thread, or to
+   *     leave that to the caller
+   */
+  private String executeQuery(
+      String metricsAccountName,
+      String storageAccountName,
+      CanaryConfig canaryConfig,
+      List<Integer> metricIndexes,
+      CanaryScope canaryScope,
+      int previousRetries,
+      boolean retryInline)
+      throws IOException {
     MetricsService metricsService = metricsServiceRepository.getRequiredOne(metricsAccountName);
 
     StorageService storageService = storageServiceRepository.getRequiredOne(storageAccountName);
@@ -74,54 +137,201 @@ public class SynchronousQueryProcessor {
             .createId("canary.telemetry.query")
             .withTag("metricsStore", metricsService.getType());
 
-    CanaryMetricConfig canaryMetricConfig = canaryConfig.getMetrics().get(metricIndex);
-    List<MetricSet> metricSetList = null;
+    Id cacheId =
+        registry
+            .createId("canary.telemetry.query.cache")
+            .withTag("metricsStore", metricsService.getType());
+
+    Id coalescedId =
+        registry
+            .createId("canary.telemetry.query.coalesced")
+            .withTag("metricsStore", metricsService.getType());
+
+    List<MetricSet> metricSetList = new ArrayList<>();
+    List<CanaryMetricConfig> canaryMetricConfigs = new ArrayList<>();
+    List<MetricsQueryKey> queryKeys = new ArrayList<>();
+
+    for (int metricIndex : metricIndexes) {
+      CanaryMetricConfig canaryMetricConfig = canaryConfig.getMetrics().get(metricIndex);
+      MetricsQueryKey queryKey =
+          toQueryKey(metricsAccountName, canaryConfig, canaryMetricConfig, canaryScope);
+      Optional<List<MetricSet>> cachedMetricSetList = metricsQueryCache.get(queryKey);
 
-    // TODO: retry mechanism should be extracted to separate class
+      registry
+          .counter(cacheId.withTag("result", cachedMetricSetList.isPresent() ? "hit" : "miss"))
+          .increment();
+
+      if (cachedMetricSetList.isPresent()) {
+        metricSetList.addAll(cachedMetricSetList.get());
+      } else {
+        canaryMetricConfigs.add(canaryMetricConfig);
+        queryKeys.add(queryKey);
+      }
+    }
+
+    if (!canaryMetricConfigs.isEmpty()) {
+      MetricsQuery query =
+          () ->
+              canaryMetricConfigs.size() == 1
+                  ? metricsService.queryMetrics(
+                      metricsAccountName, canaryConfig, canaryMetricConfigs.get(0), canaryScope)
+                  : metricsService.batchQueryMetrics(
+                      metricsAccountName, canaryConfig, canaryMetricConfigs, canaryScope);
+      List<MetricSet> queriedMetricSetList =
+          queryOnceInFlight(
+              queryKeys,
+              coalescedId,
+              retryInline
+                  ? () -> queryWithRetries(metricsAccountName, queryId, query)
+                  : () -> queryOnce(queryId, previousRetries, query));
+
+      cacheQueryResults(queryKeys, queriedMetricSetList);
+
+      if (metricSetList.isEmpty()) {
+        metricSetList = queriedMetricSetList;
+      } else {
+        metricSetList.addAll(queriedMetricSetList);
+      }
+    }
+
+    String metricSetListId = UUID.randomUUID() + "";
+
+    storageService.storeObject(
+        storageAccountName, ObjectType.METRIC_SET_LIST, metricSetListId, metricSetList);
+
+    return metricSetListId;
+  }
+
+  /**
+   * Keys a query on its inputs rather than on the output of MetricsService.buildQuery(), which
+   * would have to be built for every metric (cached or not) and would fail outside of the retries.
+   */
+  private static MetricsQueryKey toQueryKey(
+      String metricsAccountName,
+      CanaryConfig canaryConfig,
+      CanaryMetricConfig canaryMetricConfig,
+      CanaryScope canaryScope) {
+    return new MetricsQueryKey(
+        metricsAccountName,
+        canaryMetricConfig.getName(),
+        String.valueOf(canaryMetricConfig.getQuery()),
+        canaryConfig.getTemplates(),
+        canaryScope);
+  }
+
+  private void cacheQueryResults(
+      List<MetricsQueryKey> queryKeys, List<MetricSet> queriedMetricSetList) {
+    if (queryKeys.size() == 1) {
+      metricsQueryCache.put(queryKeys.get(0), queriedMetricSetList);
+      return;
+    }
+
+    // The metric sets of a batched query are attributed to their metric by name.
+    Map<String, List<MetricSet>> metricSetListsByName = new HashMap<>();
+
+    for (MetricSet metricSet : queriedMetricSetList) {
+      metricSetListsByName
+          .computeIfAbsent(metricSet.getName(), name -> new ArrayList<>())
+          .add(metricSet);
+    }
+
+    for (MetricsQueryKey queryKey : queryKeys) {
+      List<MetricSet> metricSetList = metricSetListsByName.get(queryKey.getMetricName());
+
+      if (metricSetList != null) {
+        metricsQueryCache.put(queryKey, metricSetList);
+      }
+    }
+  }
+
+  /**
+   * Executes the query unless an identical one is already in flight, in which case this waits for
+   * and shares the result (or failure) of that query instead.
+   */
+  private List<MetricSet> queryOnceInFlight(
+      List<MetricsQueryKey> queryKeys, Id coalescedId, MetricsQuery query) throws IOException {
+    CompletableFuture<List<MetricSet>> future = new CompletableFuture<>();
+    CompletableFuture<List<MetricSet>> inFlightQuery =
+        inFlightQueries.putIfAbsent(queryKeys, future);
+
+    if (inFlightQuery != null) {
+      registry.counter(coalescedId).increment();
+
+      try {
+        return inFlightQuery.join();
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+
+        throw e;
+      }
+    }
+
+    try {
+      List<MetricSet> metricSetList = query.execute();
+
+      future.complete(metricSetList);
+
+      return metricSetList;
+    } catch (Throwable t) {
+      future.completeExceptionally(t);
+
+      throw t;
+    } finally {
+      inFlightQueries.remove(queryKeys, future);
+    }
+  }
+
+  private List<MetricSet> queryOnce(Id queryId, int previousRetries, MetricsQuery query)
+      throws IOException {
+    registry.counter(queryId.withTag("retries", previousRetries + "")).increment();
+
+    return query.execute();
+  }
+
+  /**
+   * Retries failed attempts on the calling thread. This is only meant for callers that need the
+   * result synchronously, like the fetch controllers; fetch tasks reschedule themselves instead of
+   * blocking an Orca worker thread (see {@link #executeQueryAndProduceTaskResult(String, String,
+   * CanaryConfig, CanaryScope, StageExecution)}).
+   */
+  // TODO: retry mechanism should be extracted to separate class
+  private List<MetricSet> queryWithRetries(
+      String metricsAccountName, Id queryId, MetricsQuery query) throws IOException {
     int retries = 0;
-    boolean success = false;
 
-    while (!success) {
+    while (true) {
       try {
-        registry.counter(queryId.withTag("retries", retries + "")).increment();
-        metricSetList =
-            metricsService.queryMetrics(
-                metricsAccountName, canaryConfig, canaryMetricConfig, canaryScope);
-        success = true;
+        return queryOnce(queryId, retries, query);
       } catch (RetrofitError e) {
-
-        boolean retryable = isRetryable(e);
-        if (retryable) {
-          retries++;
-          if (retries >= retryConfiguration.getAttempts()) {
-            throw e;
-          }
-          long backoffPeriod = getBackoffPeriodMs(retries);
-          try {
-            Thread.sleep(backoffPeriod);
-          } catch (InterruptedException ignored) {
-          }
-          Object error = e.getResponse() != null ? e.getResponse().getStatus() : e.getCause();
-          log.warn(
-              "Got {} result when querying for metrics. Retrying request (current attempt: "
-                  + "{}, max attempts: {}, last backoff period: {}ms)",
-              error,
-              retries,
-              retryConfiguration.getAttempts(),
-              backoffPeriod);
-        } else {
+        if (!isRetryable(e) || !acquireRetry(metricsAccountName, retries + 1)) {
           throw e;
         }
-      } catch (IOException | UncheckedIOException | RetryableQueryException e) {
         retries++;
-        if (retries >= retryConfiguration.getAttempts()) {
+        long backoffPeriod = getBackoffPeriodMs(retries);
+        sleep(backoffPeriod, e);
+        Object error = e.getResponse() != null ? e.getResponse().getStatus() : e.getCause();
+        log.warn(
+            "Got {} result when querying for metrics. Retrying request (current attempt: "
+                + "{}, max attempts: {}, last backoff period: {}ms)",
+            error,
+            retries,
+            retryConfiguration.getAttempts(),
+            backoffPeriod);
+      } catch (IOException | UncheckedIOException | RetryableQueryException e) {
+        if (!acquireRetry(metricsAccountName, retries + 1)) {
           throw e;
         }
+        retries++;
         long backoffPeriod = getBackoffPeriodMs(retries);
-        try {
-          Thread.sleep(backoffPeriod);
-        } catch (InterruptedException ignored) {
-        }
+        sleep(backoffPeriod, e);
         log.warn(
             "Got error when querying for metrics. Retrying request (current attempt: {}, max "
                 + "attempts: {}, last backoff period: {}ms)",
@@ -131,19 +341,38 @@ public class SynchronousQueryProcessor {
             e);
       }
     }
-    String metricSetListId = UUID.randomUUID() + "";
+  }
 
-    storageService.storeObject(
-        storageAccountName, ObjectType.METRIC_SET_LIST, metricSetListId, metricSetList);
+  private boolean acquireRetry(String metricsAccountName, int retryAttemptNumber) {
+    return retryAttemptNumber < retryConfiguration.getAttempts()
+        && retryBudget.tryAcquire(metricsAccountName);
+  }
 
-    return metricSetListId;
+  // An interrupted thread stops retrying, rather than retrying the query without backing off.
+  private void sleep(long duration, Exception lastError) throws InterruptedIOException {
+    try {
+      Thread.sleep(duration);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      InterruptedIOException interruptedIOException =
+          new InterruptedIOException("Interrupted while backing off to retry a metrics query.");
+      interruptedIOException.initCause(e);
+      interruptedIOException.addSuppressed(lastError);
+      throw interruptedIOException;
+    }
   }
 
   private long getBackoffPeriodMs(int retryAttemptNumber) {
     // The retries range from 1..max, but we want the backoff periods to range from Math.pow(2,
     // 0)..Math.pow(2, max-1).
-    return (long) Math.pow(2, (retryAttemptNumber - 1))
-        * retryConfiguration.getBackoffPeriodMultiplierMs();
+    long backoffPeriod =
+        (long) Math.pow(2, (retryAttemptNumber - 1))
+            * retryConfiguration.getBackoffPeriodMultiplierMs();
+    // Randomize part of the period so that queries that failed together do not retry together.
+    long jitter = (long) (backoffPeriod * retryConfiguration.getJitterFactor());
+
+    return backoffPeriod - jitter + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
   }
 
   private boolean isRetryable(RetrofitError e) {
@@ -198,6 +427,69 @@ public class SynchronousQueryProcessor {
     }
   }
 
+  /**
+   * Executes the query of a fetch stage. A retryable failure does not block the Orca worker thread;
+   * instead the task returns RUNNING and records its retry state in the stage context, so that it
+   * is executed again once the backoff period has passed (see {@link
+   * com.netflix.kayenta.metrics.orca.MetricsFetchTask}).
+   */
+  public TaskResult executeQueryAndProduceTaskResult(
+      String metricsAccountName,
+      String storageAccountName,
+      CanaryConfig canaryConfig,
+      CanaryScope canaryScope,
+      StageExecution stage) {
+    Map<String, Object> context = stage.getContext();
+    int retries = ((Number) context.getOrDefault(RETRIES_CONTEXT_KEY, 0)).intValue();
+
+    try {
+      String metricSetListId =
+          executeQuery(
+              metricsAccountName,
+              storageAccountName,
+              canaryConfig,
+              getMetricIndexes(context),
+              canaryScope,
+              retries,
+              false /* retryInline */);
+
+      return TaskResult.builder(ExecutionStatus.SUCCEEDED)
+          .output("metricSetListId", metricSetListId)
+          .build();
+    } catch (RetrofitError e) {
+      if (!isRetryable(e) || !acquireRetry(metricsAccountName, retries + 1)) {
+        throw e;
+      }
+      return scheduleRetry(context, retries + 1, e);
+    } catch (IOException | UncheckedIOException | RetryableQueryException e) {
+      if (!acquireRetry(metricsAccountName, retries + 1)) {
+        throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+      }
+      return scheduleRetry(context, retries + 1, e);
+    }
+  }
+
+  private TaskResult scheduleRetry(Map<String, Object> context, int retries, Exception e) {
+    long backoffPeriod = getBackoffPeriodMs(retries);
+    long totalBackoffPeriod =
+        ((Number) context.getOrDefault(TOTAL_BACKOFF_PERIOD_CONTEXT_KEY, 0L)).longValue()
+            + backoffPeriod;
+
+    log.warn(
+        "Got error when querying for metrics. Rescheduling request (current attempt: {}, max "
+            + "attempts: {}, backoff period: {}ms)",
+        retries,
+        retryConfiguration.getAttempts(),
+        backoffPeriod,
+        e);
+
+    return TaskResult.builder(ExecutionStatus.RUNNING)
+        .context(RETRIES_CONTEXT_KEY, retries)
+        .context(BACKOFF_PERIOD_CONTEXT_KEY, backoffPeriod)
+        .context(TOTAL_BACKOFF_PERIOD_CONTEXT_KEY, totalBackoffPeriod)
+        .build();
+  }
+
   public TaskResult executeQueryAndProduceTaskResult(
       String metricsAccountName,
       String storageAccountName,
@@ -221,4 +513,24 @@ public class SynchronousQueryProcessor {
       throw new RuntimeException(e);
     }
   }
+
+  /**
+   * Fetch stages either carry the single "metricIndex" they are responsible for, or a list of
+   * "metricIndexes" when several metrics sharing a scope are fetched together.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<Integer> getMetricIndexes(Map<String, Object> context) {
+    List<Integer> metricIndexes = (List<Integer>) context.get("metricIndexes");
+
+    if (metricIndexes == null || metricIndexes.isEmpty()) {
+      return Collections.singletonList((Integer) context.get("metricIndex"));
+    }
+
+    return metricIndexes;
+  }
+
+  @FunctionalInterface
+  private interface MetricsQuery {
+    List<MetricSet> execute() throws IOException;
+  }
 }
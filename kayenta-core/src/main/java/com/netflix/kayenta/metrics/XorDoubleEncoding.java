@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.metrics;
+
+import java.util.Arrays;
+
+/**
+ * A compact binary encoding of a series of doubles for binary storage formats. Each value is
+ * XOR-ed with its predecessor; metric values change slowly or not at all from one interval to the
+ * next, so the result is mostly zero bytes at either end, and only the bytes in between are
+ * written after a one-byte header counting the zero bytes that were dropped.
+ */
+final class XorDoubleEncoding {
+
+  private static final int NO_CHANGE = 0x80;
+
+  private XorDoubleEncoding() {}
+
+  static byte[] encode(double[] values) {
+    byte[] bytes = new byte[5 + values.length * 9];
+    int position = writeVarInt(bytes, 0, values.length);
+    long previous = 0;
+
+    for (double value : values) {
+      long bits = Double.doubleToLongBits(value);
+      long xor = bits ^ previous;
+      previous = bits;
+
+      if (xor == 0) {
+        bytes[position++] = (byte) NO_CHANGE;
+        continue;
+      }
+
+      int leading = Long.numberOfLeadingZeros(xor) / 8;
+      int trailing = Long.numberOfTrailingZeros(xor) / 8;
+
+      bytes[position++] = (byte) (leading << 4 | trailing);
+
+      for (int shift = (7 - leading) * 8; shift >= trailing * 8; shift -= 8) {
+        bytes[position++] = (byte) (xor >>> shift);
+      }
+    }
+
+    return Arrays.copyOf(bytes, position);
+  }
+
+  static double[] decode(byte[] bytes) {
+    int[] position = {0};
+    int size = readVarInt(bytes, position);
+    double[] values = new double[size];
+    long previous = 0;
+    int p = position[0];
+
+    for (int i = 0; i < size; i++) {
+      int header = bytes[p++] & 0xFF;
+
+      if (header != NO_CHANGE) {
+        int leading = header >>> 4;
+        int trailing = header & 0x0F;
+
+        if (leading + trailing >= 8) {
+          throw new IllegalArgumentException("Corrupt encoded series (header " + header + ").");
+        }
+
+        long xor = 0;
+
+        for (int j = leading + trailing; j < 8; j++) {
+          xor = xor << 8 | (bytes[p++] & 0xFF);
+        }
+
+        previous ^= xor << (trailing * 8);
+      }
+
+      values[i] = Double.longBitsToDouble(previous);
+    }
+
+    return values;
+  }
+
+  private static int writeVarInt(byte[] bytes, int position, int value) {
+    while ((value & ~0x7F) != 0) {
+      bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+
+    bytes[position++] = (byte) value;
+
+    return position;
+  }
+
+  private static int readVarInt(byte[] bytes, int[] position) {
+    int value = 0;
+
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = bytes[position[0]++];
+      value |= (b & 0x7F) << shift;
+
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+
+    throw new IllegalArgumentException("Corrupt encoded series (bad length).");
+  }
+}
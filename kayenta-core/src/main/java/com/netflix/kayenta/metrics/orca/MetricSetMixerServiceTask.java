@@ -23,9 +23,11 @@ import com.netflix.kayenta.metrics.MetricSetMixerService;
 import com.netflix.kayenta.metrics.MetricSetPair;
 import com.netflix.kayenta.security.AccountCredentials;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.storage.BulkLoadException;
 import com.netflix.kayenta.storage.ObjectType;
 import com.netflix.kayenta.storage.StorageService;
 import com.netflix.kayenta.storage.StorageServiceRepository;
+import com.netflix.kayenta.storage.StorageWriteBehindConfigurationProperties;
 import com.netflix.spinnaker.orca.api.pipeline.RetryableTask;
 import com.netflix.spinnaker.orca.api.pipeline.TaskResult;
 import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus;
@@ -34,11 +36,14 @@ import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
 import java.time.Duration;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.annotation.Nonnull;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+@Slf4j
 @Component
 public class MetricSetMixerServiceTask implements RetryableTask {
 
@@ -46,17 +51,20 @@ public class MetricSetMixerServiceTask implements RetryableTask {
   private final StorageServiceRepository storageServiceRepository;
   private final MetricSetMixerService metricSetMixerService;
   private final ExecutionMapper executionMapper;
+  private final StorageWriteBehindConfigurationProperties storageWriteBehindConfigurationProperties;
 
   @Autowired
   public MetricSetMixerServiceTask(
       AccountCredentialsRepository accountCredentialsRepository,
       StorageServiceRepository storageServiceRepository,
       MetricSetMixerService metricSetMixerService,
-      ExecutionMapper executionMapper) {
+      ExecutionMapper executionMapper,
+      StorageWriteBehindConfigurationProperties storageWriteBehindConfigurationProperties) {
     this.accountCredentialsRepository = accountCredentialsRepository;
     this.storageServiceRepository = storageServiceRepository;
     this.metricSetMixerService = metricSetMixerService;
     this.executionMapper = executionMapper;
+    this.storageWriteBehindConfigurationProperties = storageWriteBehindConfigurationProperties;
   }
 
   @Override
@@ -76,10 +84,12 @@ public class MetricSetMixerServiceTask implements RetryableTask {
   public TaskResult execute(@Nonnull StageExecution stage) {
     Map<String, Object> context = stage.getContext();
     String storageAccountName = (String) context.get("storageAccountName");
-    List<String> controlMetricSetListIds =
-        getMetricSetListIds(stage.getExecution(), (String) context.get("controlRefidPrefix"));
-    List<String> experimentMetricSetListIds =
-        getMetricSetListIds(stage.getExecution(), (String) context.get("experimentRefidPrefix"));
+    List<StageExecution> controlFetchStages =
+        getFetchStages(stage.getExecution(), (String) context.get("controlRefidPrefix"));
+    List<StageExecution> experimentFetchStages =
+        getFetchStages(stage.getExecution(), (String) context.get("experimentRefidPrefix"));
+    List<String> controlMetricSetListIds = getMetricSetListIds(controlFetchStages);
+    List<String> experimentMetricSetListIds = getMetricSetListIds(experimentFetchStages);
     String resolvedAccountName =
         accountCredentialsRepository
             .getRequiredOneBy(storageAccountName, AccountCredentials.Type.OBJECT_STORE)
@@ -101,23 +111,44 @@ public class MetricSetMixerServiceTask implements RetryableTask {
               + ").");
     }
 
+    List<String> metricSetListIds = new ArrayList<>(controlMetricSetListIds);
+    metricSetListIds.addAll(experimentMetricSetListIds);
+
+    Map<String, List<MetricSet>> metricSetLists;
+
+    try {
+      metricSetLists =
+          storageService.loadObjects(
+              resolvedAccountName, ObjectType.METRIC_SET_LIST, metricSetListIds);
+    } catch (BulkLoadException e) {
+      // With write-behind enabled, the fetch stages may have run on another node whose writes have
+      // not reached the object store yet. That can only be the case for a little while after the
+      // last of them completed; past that, the metric set lists are missing.
+      Long fetchEndTime =
+          Stream.concat(controlFetchStages.stream(), experimentFetchStages.stream())
+              .map(StageExecution::getEndTime)
+              .filter(Objects::nonNull)
+              .max(Long::compare)
+              .orElse(null);
+
+      if (e.isNotFound()
+          && storageWriteBehindConfigurationProperties.mayStillBePending(fetchEndTime)) {
+        log.info("Waiting for metric set lists to be persisted: {}", e.getFailures().keySet());
+        return TaskResult.builder(ExecutionStatus.RUNNING).build();
+      }
+
+      throw e;
+    }
+
     List<MetricSet> controlMetricSetList =
         controlMetricSetListIds.stream()
-            .map(
-                (id) ->
-                    (List<MetricSet>)
-                        storageService.loadObject(
-                            resolvedAccountName, ObjectType.METRIC_SET_LIST, id))
+            .map(metricSetLists::get)
             .flatMap(Collection::stream)
             .collect(Collectors.toList());
 
     List<MetricSet> experimentMetricSetList =
         experimentMetricSetListIds.stream()
-            .map(
-                (id) ->
-                    (List<MetricSet>)
-                        storageService.loadObject(
-                            resolvedAccountName, ObjectType.METRIC_SET_LIST, id))
+            .map(metricSetLists::get)
             .flatMap(Collection::stream)
             .collect(Collectors.toList());
 
@@ -138,7 +169,7 @@ public class MetricSetMixerServiceTask implements RetryableTask {
         .build();
   }
 
-  private List<String> getMetricSetListIds(PipelineExecution execution, String stagePrefix) {
+  private List<StageExecution> getFetchStages(PipelineExecution execution, String stagePrefix) {
     List<StageExecution> stages = execution.getStages();
     return stages.stream()
         .filter(
@@ -146,6 +177,11 @@ public class MetricSetMixerServiceTask implements RetryableTask {
               String refId = stage.getRefId();
               return refId != null && refId.startsWith(stagePrefix);
             })
+        .collect(Collectors.toList());
+  }
+
+  private List<String> getMetricSetListIds(List<StageExecution> fetchStages) {
+    return fetchStages.stream()
         .map(stage -> resolveMetricSetListId(stage))
         .collect(Collectors.toList());
   }
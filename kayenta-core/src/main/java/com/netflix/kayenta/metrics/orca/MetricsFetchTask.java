@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.metrics.orca;
+
+import com.netflix.kayenta.metrics.SynchronousQueryProcessor;
+import com.netflix.spinnaker.orca.api.pipeline.RetryableTask;
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
+import java.time.Duration;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+/**
+ * A task fetching metrics through the {@link SynchronousQueryProcessor}. When a query fails with a
+ * retryable error, the processor returns RUNNING and records the backoff period of the next
+ * attempt in the stage context; this interface makes Orca honour that period instead of the
+ * task's regular one, and extends the task timeout by the time spent backing off.
+ */
+public interface MetricsFetchTask extends RetryableTask {
+
+  @Override
+  default long getDynamicBackoffPeriod(StageExecution stage, Duration taskDuration) {
+    Object backoffPeriod =
+        stage.getContext().get(SynchronousQueryProcessor.BACKOFF_PERIOD_CONTEXT_KEY);
+
+    if (backoffPeriod instanceof Number) {
+      return ((Number) backoffPeriod).longValue();
+    }
+
+    return getDynamicBackoffPeriod(taskDuration);
+  }
+
+  @Override
+  default long getDynamicTimeout(@Nonnull StageExecution stage) {
+    Map<String, Object> context = stage.getContext();
+    Object totalBackoffPeriod =
+        context.get(SynchronousQueryProcessor.TOTAL_BACKOFF_PERIOD_CONTEXT_KEY);
+
+    if (totalBackoffPeriod instanceof Number) {
+      return getTimeout() + ((Number) totalBackoffPeriod).longValue();
+    }
+
+    return getTimeout();
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/** Thrown when some of the objects requested by StorageService.loadObjects could not be loaded. */
+public class BulkLoadException extends RuntimeException {
+
+  private final Map<String, Throwable> failures;
+
+  public BulkLoadException(ObjectType objectType, int requested, Map<String, Throwable> failures) {
+    super(
+        "Failed to load "
+            + failures.size()
+            + " of "
+            + requested
+            + " "
+            + objectType.getGroup()
+            + " objects: "
+            + failures.entrySet().stream()
+                .map(e -> e.getKey() + " (" + e.getValue().getMessage() + ")")
+                .collect(Collectors.joining(", ")));
+    this.failures = Collections.unmodifiableMap(failures);
+    failures.values().forEach(this::addSuppressed);
+  }
+
+  /** The cause of each failed load, keyed by object key. */
+  public Map<String, Throwable> getFailures() {
+    return failures;
+  }
+
+  /** Whether every failed load failed because its object does not exist (yet). */
+  public boolean isNotFound() {
+    return failures.values().stream().allMatch(f -> f instanceof NotFoundException);
+  }
+}
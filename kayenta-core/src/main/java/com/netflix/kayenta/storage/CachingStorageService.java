@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.netflix.kayenta.metrics.MetricSet;
+import com.netflix.kayenta.metrics.MetricSetPair;
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import lombok.Value;
+
+/**
+ * A StorageService decorator that keeps recently used metric set lists and metric set pair lists
+ * in memory. Those objects are written once under a freshly generated id and never updated, so a
+ * cached copy can be served for as long as it has not been deleted through this instance.
+ * Everything else is passed straight through to the underlying StorageService.
+ */
+public class CachingStorageService implements StorageService {
+
+  private static final Set<ObjectType> CACHEABLE_OBJECT_TYPES =
+      ImmutableSet.of(ObjectType.METRIC_SET_LIST, ObjectType.METRIC_SET_PAIR_LIST);
+
+  private final StorageService delegate;
+  private final Registry registry;
+  private final Id requestsId;
+  private final Id evictionsId;
+  private final Cache<CacheKey, List<?>> cache;
+
+  public CachingStorageService(
+      StorageService delegate,
+      StorageCacheConfigurationProperties configuration,
+      Registry registry) {
+    String storageService = delegate.getClass().getSimpleName();
+
+    this.delegate = delegate;
+    this.registry = registry;
+    this.requestsId =
+        registry.createId("storage.cache.requests").withTag("storageService", storageService);
+    this.evictionsId =
+        registry.createId("storage.cache.evictions").withTag("storageService", storageService);
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(configuration.getMaximumWeight())
+            .weigher(CachingStorageService::weigh)
+            .expireAfterAccess(
+                configuration.getExpireAfterAccess().toMillis(), TimeUnit.MILLISECONDS)
+            .removalListener(this::onRemoval)
+            .build();
+
+    registry.gauge(
+        registry.createId("storage.cache.size").withTag("storageService", storageService),
+        cache,
+        Cache::size);
+  }
+
+  public StorageService getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public boolean servicesAccount(String accountName) {
+    return delegate.servicesAccount(accountName);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T loadObject(String accountName, ObjectType objectType, String objectKey)
+      throws IllegalArgumentException, NotFoundException {
+    if (!CACHEABLE_OBJECT_TYPES.contains(objectType)) {
+      return delegate.loadObject(accountName, objectType, objectKey);
+    }
+
+    CacheKey key = new CacheKey(accountName, objectType.getGroup(), objectKey);
+    List<?> cached = cache.getIfPresent(key);
+
+    if (cached != null) {
+      recordRequest(objectType, "hit");
+      return (T) cached;
+    }
+
+    recordRequest(objectType, "miss");
+
+    try {
+      return (T)
+          cache.get(
+              key,
+              () -> {
+                Object obj = delegate.loadObject(accountName, objectType, objectKey);
+
+                // Null is not cached, and Guava rejects it below.
+                return obj != null ? immutableCopy(obj) : null;
+              });
+    } catch (CacheLoader.InvalidCacheLoadException e) {
+      // The delegate returned null rather than throwing NotFoundException; pass that along.
+      return null;
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> Map<String, T> loadObjects(
+      String accountName, ObjectType objectType, List<String> objectKeys) {
+    if (!CACHEABLE_OBJECT_TYPES.contains(objectType)) {
+      return delegate.loadObjects(accountName, objectType, objectKeys);
+    }
+
+    Map<String, T> objects = new LinkedHashMap<>();
+    List<String> missingKeys = new ArrayList<>();
+
+    for (String objectKey : objectKeys) {
+      List<?> cached =
+          cache.getIfPresent(new CacheKey(accountName, objectType.getGroup(), objectKey));
+
+      recordRequest(objectType, cached != null ? "hit" : "miss");
+      objects.put(objectKey, (T) cached);
+
+      if (cached == null) {
+        missingKeys.add(objectKey);
+      }
+    }
+
+    if (!missingKeys.isEmpty()) {
+      Map<String, T> loaded = delegate.loadObjects(accountName, objectType, missingKeys);
+
+      loaded.forEach(
+          (objectKey, obj) -> {
+            if (obj == null) {
+              return;
+            }
+
+            List<?> copy = immutableCopy(obj);
+
+            cache.put(new CacheKey(accountName, objectType.getGroup(), objectKey), copy);
+            objects.put(objectKey, (T) copy);
+          });
+    }
+
+    return objects;
+  }
+
+  @Override
+  public <T> void storeObject(
+      String accountName,
+      ObjectType objectType,
+      String objectKey,
+      T obj,
+      String filename,
+      boolean isAnUpdate) {
+    delegate.storeObject(accountName, objectType, objectKey, obj, filename, isAnUpdate);
+
+    if (CACHEABLE_OBJECT_TYPES.contains(objectType) && obj instanceof List) {
+      cache.put(new CacheKey(accountName, objectType.getGroup(), objectKey), immutableCopy(obj));
+    }
+  }
+
+  @Override
+  public void deleteObject(String accountName, ObjectType objectType, String objectKey) {
+    try {
+      delegate.deleteObject(accountName, objectType, objectKey);
+    } finally {
+      cache.invalidate(new CacheKey(accountName, objectType.getGroup(), objectKey));
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> listObjectKeys(
+      String accountName, ObjectType objectType, List<String> applications, boolean skipIndex) {
+    return delegate.listObjectKeys(accountName, objectType, applications, skipIndex);
+  }
+
+  private void recordRequest(ObjectType objectType, String result) {
+    registry
+        .counter(requestsId.withTags("objectType", objectType.getGroup(), "result", result))
+        .increment();
+  }
+
+  private void onRemoval(RemovalNotification<CacheKey, List<?>> notification) {
+    if (notification.wasEvicted()) {
+      registry
+          .counter(evictionsId.withTag("cause", notification.getCause().name().toLowerCase()))
+          .increment();
+    }
+  }
+
+  private static List<?> immutableCopy(Object obj) {
+    return Collections.unmodifiableList(new ArrayList<>((List<?>) obj));
+  }
+
+  /** Roughly one unit per data point, plus one per series so that empty series still count. */
+  private static int weigh(CacheKey key, List<?> value) {
+    long weight = 1;
+
+    for (Object element : value) {
+      weight++;
+
+      if (element instanceof MetricSet) {
+        weight += ((MetricSet) element).getValues().size();
+      } else if (element instanceof MetricSetPair) {
+        for (List<Double> values : ((MetricSetPair) element).getValues().values()) {
+          weight += values.size();
+        }
+      }
+    }
+
+    return (int) Math.min(weight, Integer.MAX_VALUE);
+  }
+
+  @Value
+  private static class CacheKey {
+    String accountName;
+    String group;
+    String objectKey;
+  }
+}
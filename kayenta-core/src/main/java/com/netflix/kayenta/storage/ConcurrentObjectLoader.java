@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Loads many objects from a storage service at once so that their round trips to the object store
+ * overlap. Loads run on a fixed pool of threads, which bounds the number of requests in flight
+ * across every bulk load in the process.
+ */
+public class ConcurrentObjectLoader {
+
+  private final ExecutorService executorService;
+
+  public ConcurrentObjectLoader(StorageLoadConfigurationProperties configuration) {
+    this.executorService =
+        Executors.newFixedThreadPool(
+            Math.max(1, configuration.getMaxConcurrentLoads()),
+            new ThreadFactoryBuilder()
+                .setNameFormat("storage-object-loader-%d")
+                .setDaemon(true)
+                .build());
+  }
+
+  /**
+   * Loads the objects with the given keys, returning them in the order of the keys. Every load is
+   * attempted even when some of them fail; the failures are then reported together in a
+   * BulkLoadException.
+   */
+  public <T> Map<String, T> loadObjects(
+      ObjectType objectType, List<String> objectKeys, Function<String, T> loader) {
+    if (objectKeys.size() <= 1) {
+      return loadSequentially(objectType, objectKeys, loader);
+    }
+
+    Map<String, Future<T>> futures = new LinkedHashMap<>();
+
+    for (String objectKey : objectKeys) {
+      if (!futures.containsKey(objectKey)) {
+        futures.put(objectKey, executorService.submit(() -> loader.apply(objectKey)));
+      }
+    }
+
+    Map<String, T> objects = new LinkedHashMap<>();
+    Map<String, Throwable> failures = new LinkedHashMap<>();
+
+    for (Map.Entry<String, Future<T>> entry : futures.entrySet()) {
+      try {
+        objects.put(entry.getKey(), entry.getValue().get());
+      } catch (ExecutionException e) {
+        failures.put(entry.getKey(), e.getCause());
+      } catch (InterruptedException e) {
+        futures.values().forEach(f -> f.cancel(true));
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while loading " + objectType.getGroup(), e);
+      }
+    }
+
+    return checkFailures(objectType, futures.size(), objects, failures);
+  }
+
+  /** Loads the objects one at a time on the calling thread, reporting failures the same way. */
+  public static <T> Map<String, T> loadSequentially(
+      ObjectType objectType, List<String> objectKeys, Function<String, T> loader) {
+    Map<String, T> objects = new LinkedHashMap<>();
+    Map<String, Throwable> failures = new LinkedHashMap<>();
+
+    for (String objectKey : objectKeys) {
+      if (objects.containsKey(objectKey) || failures.containsKey(objectKey)) {
+        continue;
+      }
+
+      try {
+        objects.put(objectKey, loader.apply(objectKey));
+      } catch (RuntimeException e) {
+        failures.put(objectKey, e);
+      }
+    }
+
+    return checkFailures(objectType, objects.size() + failures.size(), objects, failures);
+  }
+
+  public void shutdown() {
+    executorService.shutdownNow();
+  }
+
+  private static <T> Map<String, T> checkFailures(
+      ObjectType objectType,
+      int requested,
+      Map<String, T> objects,
+      Map<String, Throwable> failures) {
+    if (!failures.isEmpty()) {
+      throw new BulkLoadException(objectType, requested, failures);
+    }
+
+    return objects;
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/** Configuration of the read-through cache placed in front of every StorageService. */
+@Data
+@ConfigurationProperties("kayenta.storage.cache")
+public class StorageCacheConfigurationProperties {
+
+  private boolean enabled = false;
+
+  /**
+   * Upper bound on the total weight of the cached objects, where an object weighs roughly one unit
+   * per metric data point it holds.
+   */
+  private long maximumWeight = 10_000_000;
+
+  private Duration expireAfterAccess = Duration.ofMinutes(30);
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSet;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.Value;
+
+/**
+ * Serializes objects for storage services and reads them back. The encoding an object was written
+ * with (e.g. {@code json}, {@code smile+gzip}) is returned alongside its bytes, for the storage
+ * service to record in the object's metadata; objects without a recorded encoding are plain JSON.
+ */
+public class StorageCodec {
+
+  /** The name of the object metadata entry that holds the encoding of an object. */
+  public static final String ENCODING_METADATA_KEY = "kayenta-encoding";
+
+  private static final String GZIP_SUFFIX = "+gzip";
+
+  private static final Set<ObjectType> ENCODED_OBJECT_TYPES =
+      ImmutableSet.of(ObjectType.METRIC_SET_LIST, ObjectType.METRIC_SET_PAIR_LIST);
+
+  private final Map<StorageFormat, ObjectMapper> objectMappers;
+  private final StorageCodecConfigurationProperties configuration;
+
+  public StorageCodec(
+      Map<StorageFormat, ObjectMapper> objectMappers,
+      StorageCodecConfigurationProperties configuration) {
+    if (!objectMappers.containsKey(configuration.getFormat())) {
+      throw new IllegalArgumentException(
+          "No object mapper for storage format " + configuration.getFormat() + ".");
+    }
+
+    this.objectMappers = new EnumMap<>(objectMappers);
+    this.configuration = configuration;
+  }
+
+  /** A codec that reads and writes plain JSON only. */
+  public static StorageCodec json(ObjectMapper objectMapper) {
+    return new StorageCodec(
+        Collections.singletonMap(StorageFormat.JSON, objectMapper),
+        new StorageCodecConfigurationProperties());
+  }
+
+  public EncodedObject encode(ObjectType objectType, Object obj) throws IOException {
+    StorageFormat format = StorageFormat.JSON;
+    boolean compressed = false;
+
+    if (ENCODED_OBJECT_TYPES.contains(objectType)) {
+      format = configuration.getFormat();
+      compressed = configuration.isCompressed();
+    }
+
+    ObjectMapper objectMapper = objectMappers.get(format);
+    String encoding = format.name().toLowerCase(Locale.ROOT);
+
+    if (!compressed) {
+      return new EncodedObject(
+          objectMapper.writeValueAsBytes(obj), encoding, format.getContentType());
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+      objectMapper.writeValue(gzip, obj);
+    }
+
+    return new EncodedObject(bytes.toByteArray(), encoding + GZIP_SUFFIX, "application/gzip");
+  }
+
+  /**
+   * Reads an object written with the given encoding, which is null or empty for objects written
+   * before encodings were recorded.
+   */
+  public <T> T decode(String encoding, InputStream content, TypeReference<T> typeReference)
+      throws IOException {
+    if (encoding == null || encoding.isEmpty()) {
+      return objectMappers.get(StorageFormat.JSON).readValue(content, typeReference);
+    }
+
+    boolean compressed = encoding.endsWith(GZIP_SUFFIX);
+    String formatName =
+        compressed ? encoding.substring(0, encoding.length() - GZIP_SUFFIX.length()) : encoding;
+    ObjectMapper objectMapper = objectMappers.get(parseFormat(formatName));
+
+    if (objectMapper == null) {
+      throw new IllegalStateException("No object mapper for storage encoding " + encoding + ".");
+    }
+
+    return objectMapper.readValue(
+        compressed ? new GZIPInputStream(content) : content, typeReference);
+  }
+
+  private static StorageFormat parseFormat(String formatName) {
+    try {
+      return StorageFormat.valueOf(formatName.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException("Unknown storage format " + formatName + ".", e);
+    }
+  }
+
+  @Value
+  public static class EncodedObject {
+    byte[] bytes;
+
+    /** The value to record under ENCODING_METADATA_KEY. */
+    String encoding;
+
+    String contentType;
+  }
+}
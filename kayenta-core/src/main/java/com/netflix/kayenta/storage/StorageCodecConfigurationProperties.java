@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration of how metric set lists and metric set pair lists are encoded in the object store.
+ * Other object types are always written as plain JSON, and objects in any encoding can be read
+ * regardless of this configuration.
+ */
+@Data
+@ConfigurationProperties("kayenta.storage.codec")
+public class StorageCodecConfigurationProperties {
+
+  private StorageFormat format = StorageFormat.JSON;
+
+  private boolean compressed = false;
+}
@@ -34,6 +34,17 @@ public interface StorageService {
       String filename,
       boolean isAnUpdate);
 
+  /**
+   * Loads several objects of the same type, returning them keyed by object key in the order of
+   * objectKeys. If any of them cannot be loaded, a BulkLoadException reporting each failed key is
+   * thrown. Backends whose loads are remote round trips should override this to overlap them.
+   */
+  default <T> Map<String, T> loadObjects(
+      String accountName, ObjectType objectType, List<String> objectKeys) {
+    return ConcurrentObjectLoader.loadSequentially(
+        objectType, objectKeys, objectKey -> loadObject(accountName, objectType, objectKey));
+  }
+
   void deleteObject(String accountName, ObjectType objectType, String objectKey);
 
   List<Map<String, Object>> listObjectKeys(
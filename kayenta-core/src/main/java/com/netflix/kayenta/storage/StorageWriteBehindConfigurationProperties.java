@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration of write-behind persistence of metric set lists and metric set pair lists. While
+ * a write is pending, the node that produced the object serves it from memory; other nodes wait
+ * for it to reach the object store.
+ */
+@Data
+@ConfigurationProperties("kayenta.storage.write-behind")
+public class StorageWriteBehindConfigurationProperties {
+
+  private boolean enabled = false;
+
+  private int threads = 4;
+
+  /** Once this many writes are pending, further writes are made synchronously. */
+  private int maxPendingWrites = 1000;
+
+  private int attempts = 3;
+
+  private Duration backoffPeriod = Duration.ofSeconds(1);
+
+  /** How long shutdown waits for pending writes to reach the object store. */
+  private Duration flushTimeout = Duration.ofSeconds(30);
+
+  /**
+   * How long after the stage that produced an object has completed other stages keep waiting for
+   * it to reach the object store. After that, the object is treated as missing.
+   */
+  private Duration maxPendingTime = Duration.ofMinutes(1);
+
+  /** Returns whether an object produced by a stage that ended at the given time may be pending. */
+  public boolean mayStillBePending(Long stageEndTime) {
+    return enabled
+        && stageEndTime != null
+        && System.currentTimeMillis() - stageEndTime < maxPendingTime.toMillis();
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.Registry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persists objects to their storage service in the background, keeping each one in memory until
+ * its write has completed so that it can still be loaded on this node in the meantime. Writes that
+ * still fail after every attempt are remembered, so that loading the object on this node reports
+ * the failure instead of a missing object.
+ */
+@Slf4j
+public class WriteBehindQueue {
+
+  private final StorageWriteBehindConfigurationProperties configuration;
+  private final Registry registry;
+  private final Id writesId;
+  private final ExecutorService executorService;
+  private final Map<PendingKey, Object> pendingWrites = new ConcurrentHashMap<>();
+  private final Cache<PendingKey, String> failedWrites;
+
+  public WriteBehindQueue(
+      StorageWriteBehindConfigurationProperties configuration, Registry registry) {
+    this.configuration = configuration;
+    this.registry = registry;
+    this.writesId = registry.createId("storage.writeBehind.writes");
+    this.executorService =
+        Executors.newFixedThreadPool(
+            Math.max(1, configuration.getThreads()),
+            new ThreadFactoryBuilder().setNameFormat("storage-write-behind-%d").build());
+    this.failedWrites =
+        CacheBuilder.newBuilder()
+            .maximumSize(Math.max(1, configuration.getMaxPendingWrites()))
+            .build();
+
+    registry.gauge(registry.createId("storage.writeBehind.pending"), pendingWrites, Map::size);
+  }
+
+  /**
+   * Queues a write of the object. Returns false, without queueing anything, if too many writes
+   * are already pending, in which case the caller should write the object itself.
+   */
+  public boolean submit(
+      String accountName, ObjectType objectType, String objectKey, Object obj, Runnable write) {
+    if (pendingWrites.size() >= configuration.getMaxPendingWrites()) {
+      registry.counter(writesId.withTag("result", "synchronous")).increment();
+      return false;
+    }
+
+    PendingKey key = new PendingKey(accountName, objectType.getGroup(), objectKey);
+
+    failedWrites.invalidate(key);
+    pendingWrites.put(key, obj);
+    executorService.execute(() -> persist(key, obj, write));
+
+    return true;
+  }
+
+  /** Returns the object if its write is still pending, or null otherwise. */
+  public Object getPending(String accountName, ObjectType objectType, String objectKey) {
+    return pendingWrites.get(new PendingKey(accountName, objectType.getGroup(), objectKey));
+  }
+
+  /**
+   * Returns a description of why the object could not be persisted if its write ran out of
+   * attempts, or null otherwise.
+   */
+  public String getFailure(String accountName, ObjectType objectType, String objectKey) {
+    return failedWrites.getIfPresent(new PendingKey(accountName, objectType.getGroup(), objectKey));
+  }
+
+  /** Drops a pending write, e.g. because the object is being deleted. */
+  public void cancel(String accountName, ObjectType objectType, String objectKey) {
+    PendingKey key = new PendingKey(accountName, objectType.getGroup(), objectKey);
+
+    pendingWrites.remove(key);
+    failedWrites.invalidate(key);
+  }
+
+  /** Stops accepting work and waits up to the flush timeout for pending writes to complete. */
+  public void shutdown() throws InterruptedException {
+    executorService.shutdown();
+
+    if (!executorService.awaitTermination(
+        configuration.getFlushTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+      log.warn(
+          "Shutting down with {} writes still pending: {}",
+          pendingWrites.size(),
+          pendingWrites.keySet());
+    }
+  }
+
+  private void persist(PendingKey key, Object obj, Runnable write) {
+    try {
+      for (int attempt = 1; pendingWrites.get(key) == obj; attempt++) {
+        try {
+          write.run();
+          registry.counter(writesId.withTag("result", "success")).increment();
+          return;
+        } catch (RuntimeException e) {
+          if (attempt >= configuration.getAttempts()) {
+            log.error("Failed to persist {} after {} attempts.", key, attempt, e);
+            registry.counter(writesId.withTag("result", "failure")).increment();
+            recordFailure(key, obj, "after " + attempt + " attempts: " + e.getMessage());
+            return;
+          }
+
+          log.warn("Failed to persist {} (attempt {}), retrying.", key, attempt, e);
+          Thread.sleep(configuration.getBackoffPeriod().toMillis());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("Interrupted while persisting {}.", key, e);
+      recordFailure(key, obj, "because the write was interrupted.");
+    } finally {
+      pendingWrites.remove(key, obj);
+    }
+  }
+
+  private void recordFailure(PendingKey key, Object obj, String reason) {
+    // Unless the object has since been stored again or deleted.
+    if (pendingWrites.get(key) == obj) {
+      failedWrites.put(
+          key, "Failed to persist " + key.getGroup() + " " + key.getObjectKey() + " " + reason);
+    }
+  }
+
+  @Value
+  private static class PendingKey {
+    String accountName;
+    String group;
+    String objectKey;
+  }
+}
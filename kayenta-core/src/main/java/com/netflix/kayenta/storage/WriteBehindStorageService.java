@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import com.google.common.collect.ImmutableSet;
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A StorageService decorator that hands metric set lists and metric set pair lists to a
+ * WriteBehindQueue instead of writing them to the object store on the caller's thread. The fetch,
+ * mix and judge stages of a canary usually run on the same node, so the next stage finds the
+ * object in memory; any other node falls back to the underlying StorageService once the write
+ * has landed.
+ */
+public class WriteBehindStorageService implements StorageService {
+
+  private static final Set<ObjectType> WRITE_BEHIND_OBJECT_TYPES =
+      ImmutableSet.of(ObjectType.METRIC_SET_LIST, ObjectType.METRIC_SET_PAIR_LIST);
+
+  private final StorageService delegate;
+  private final WriteBehindQueue writeBehindQueue;
+
+  public WriteBehindStorageService(StorageService delegate, WriteBehindQueue writeBehindQueue) {
+    this.delegate = delegate;
+    this.writeBehindQueue = writeBehindQueue;
+  }
+
+  @Override
+  public boolean servicesAccount(String accountName) {
+    return delegate.servicesAccount(accountName);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T loadObject(String accountName, ObjectType objectType, String objectKey)
+      throws IllegalArgumentException, NotFoundException {
+    Object pending = writeBehindQueue.getPending(accountName, objectType, objectKey);
+
+    if (pending != null) {
+      return (T) pending;
+    }
+
+    checkNotFailed(accountName, objectType, objectKey);
+
+    return delegate.loadObject(accountName, objectType, objectKey);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> Map<String, T> loadObjects(
+      String accountName, ObjectType objectType, List<String> objectKeys) {
+    Map<String, T> objects = new LinkedHashMap<>();
+    List<String> missingKeys = new ArrayList<>();
+
+    for (String objectKey : objectKeys) {
+      T pending = (T) writeBehindQueue.getPending(accountName, objectType, objectKey);
+
+      objects.put(objectKey, pending);
+
+      if (pending == null) {
+        checkNotFailed(accountName, objectType, objectKey);
+        missingKeys.add(objectKey);
+      }
+    }
+
+    if (!missingKeys.isEmpty()) {
+      objects.putAll(delegate.loadObjects(accountName, objectType, missingKeys));
+    }
+
+    return objects;
+  }
+
+  // A write that ran out of attempts has lost the object, so waiting for it would be pointless.
+  private void checkNotFailed(String accountName, ObjectType objectType, String objectKey) {
+    String failure = writeBehindQueue.getFailure(accountName, objectType, objectKey);
+
+    if (failure != null) {
+      throw new IllegalStateException(failure);
+    }
+  }
+
+  @Override
+  public <T> void storeObject(
+      String accountName,
+      ObjectType objectType,
+      String objectKey,
+      T obj,
+      String filename,
+      boolean isAnUpdate) {
+    boolean queued =
+        WRITE_BEHIND_OBJECT_TYPES.contains(objectType)
+            && writeBehindQueue.submit(
+                accountName,
+                objectType,
+                objectKey,
+                obj,
+                () ->
+                    delegate.storeObject(
+                        accountName, objectType, objectKey, obj, filename, isAnUpdate));
+
+    if (!queued) {
+      delegate.storeObject(accountName, objectType, objectKey, obj, filename, isAnUpdate);
+    }
+  }
+
+  @Override
+  public void deleteObject(String accountName, ObjectType objectType, String objectKey) {
+    writeBehindQueue.cancel(accountName, objectType, objectKey);
+    delegate.deleteObject(accountName, objectType, objectKey);
+  }
+
+  @Override
+  public List<Map<String, Object>> listObjectKeys(
+      String accountName, ObjectType objectType, List<String> applications, boolean skipIndex) {
+    return delegate.listObjectKeys(accountName, objectType, applications, skipIndex);
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.canary;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.spectator.api.NoopRegistry;
+import com.netflix.spinnaker.orca.api.pipeline.models.PipelineExecution;
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
+import com.netflix.spinnaker.orca.pipeline.ExecutionLauncher;
+import com.netflix.spinnaker.orca.pipeline.persistence.ExecutionRepository;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ExecutionMapperTest {
+
+  private static final int METRIC_COUNT = 4;
+
+  @Mock CanaryScopeFactory canaryScopeFactory;
+
+  @Mock ExecutionLauncher executionLauncher;
+
+  @Mock ExecutionRepository executionRepository;
+
+  private final CanaryFetchConfigurationProperties fetchConfiguration =
+      new CanaryFetchConfigurationProperties();
+
+  private ExecutionMapper executionMapper;
+
+  @Before
+  public void setUp() {
+    when(canaryScopeFactory.handles("test")).thenReturn(true);
+    when(canaryScopeFactory.buildCanaryScope(any())).then(invocation -> invocation.getArgument(0));
+
+    executionMapper =
+        new ExecutionMapper(
+            new ObjectMapper(),
+            new NoopRegistry(),
+            "instance-id",
+            Optional.of(Collections.singletonList(canaryScopeFactory)),
+            executionLauncher,
+            executionRepository,
+            fetchConfiguration);
+  }
+
+  @Test
+  public void unlimitedFetchesAllStartAfterTheSetupStage() throws Exception {
+    fetchConfiguration.setMaxConcurrentFetchesPerScope(0);
+
+    Map<String, List<String>> requisites = buildExecutionAndGetRequisiteStageRefIds();
+
+    for (int index = 0; index < METRIC_COUNT; index++) {
+      assertThat(requisites.get("fetchControl" + index)).containsExactly("setupContext");
+      assertThat(requisites.get("fetchExperiment" + index)).containsExactly("setupContext");
+    }
+    assertThat(requisites.get("mixMetrics")).containsExactlyElementsOf(allFetchRefIds());
+  }
+
+  @Test
+  public void aSingleFetchAtATimeChainsEveryFetchAfterThePreviousOne() throws Exception {
+    fetchConfiguration.setMaxConcurrentFetchesPerScope(1);
+
+    Map<String, List<String>> requisites = buildExecutionAndGetRequisiteStageRefIds();
+
+    assertThat(requisites.get("fetchControl0")).containsExactly("setupContext");
+    assertThat(requisites.get("fetchExperiment0")).containsExactly("setupContext");
+    for (int index = 1; index < METRIC_COUNT; index++) {
+      assertThat(requisites.get("fetchControl" + index))
+          .containsExactly("fetchControl" + (index - 1));
+      assertThat(requisites.get("fetchExperiment" + index))
+          .containsExactly("fetchExperiment" + (index - 1));
+    }
+    assertThat(requisites.get("mixMetrics")).containsExactlyElementsOf(allFetchRefIds());
+  }
+
+  @Test
+  public void severalFetchesAtATimeAreSpreadAcrossThatManyChains() throws Exception {
+    fetchConfiguration.setMaxConcurrentFetchesPerScope(3);
+
+    Map<String, List<String>> requisites = buildExecutionAndGetRequisiteStageRefIds();
+
+    for (int index = 0; index < 3; index++) {
+      assertThat(requisites.get("fetchControl" + index)).containsExactly("setupContext");
+      assertThat(requisites.get("fetchExperiment" + index)).containsExactly("setupContext");
+    }
+    assertThat(requisites.get("fetchControl3")).containsExactly("fetchControl0");
+    assertThat(requisites.get("fetchExperiment3")).containsExactly("fetchExperiment0");
+    assertThat(requisites.get("mixMetrics")).containsExactlyElementsOf(allFetchRefIds());
+  }
+
+  private Map<String, List<String>> buildExecutionAndGetRequisiteStageRefIds() throws Exception {
+    CanaryConfig canaryConfig =
+        CanaryConfig.builder()
+            .name("some-config")
+            .metrics(
+                IntStream.range(0, METRIC_COUNT)
+                    .mapToObj(
+                        index ->
+                            CanaryMetricConfig.builder()
+                                .name("metric-" + index)
+                                .scopeName("default")
+                                .query(() -> "test")
+                                .build())
+                    .collect(Collectors.toList()))
+            .build();
+    CanaryExecutionRequest canaryExecutionRequest =
+        CanaryExecutionRequest.builder()
+            .scope(
+                "default",
+                CanaryScopePair.builder()
+                    .controlScope(CanaryScope.builder().scope("control").build())
+                    .experimentScope(CanaryScope.builder().scope("experiment").build())
+                    .build())
+            .thresholds(
+                CanaryClassifierThresholdsConfig.builder().pass(95.0).marginal(75.0).build())
+            .build();
+
+    executionMapper.buildExecution(
+        "some-app",
+        null,
+        "some-config-id",
+        canaryConfig,
+        null,
+        "metrics-account",
+        "storage-account",
+        canaryExecutionRequest);
+
+    ArgumentCaptor<PipelineExecution> pipeline = ArgumentCaptor.forClass(PipelineExecution.class);
+    verify(executionRepository).store(pipeline.capture());
+
+    Map<String, List<String>> requisites = new LinkedHashMap<>();
+    for (StageExecution stage : pipeline.getValue().getStages()) {
+      requisites.put(stage.getRefId(), new ArrayList<>(stage.getRequisiteStageRefIds()));
+    }
+    return requisites;
+  }
+
+  private static List<String> allFetchRefIds() {
+    List<String> refIds = new ArrayList<>();
+    for (int index = 0; index < METRIC_COUNT; index++) {
+      refIds.add("fetchControl" + index);
+    }
+    for (int index = 0; index < METRIC_COUNT; index++) {
+      refIds.add("fetchExperiment" + index);
+    }
+    return refIds;
+  }
+}
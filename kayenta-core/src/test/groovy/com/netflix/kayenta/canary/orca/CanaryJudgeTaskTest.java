@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.netflix.kayenta.canary.orca;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.kayenta.canary.CanaryConfig;
+import com.netflix.kayenta.canary.CanaryJudge;
+import com.netflix.kayenta.canary.ExecutionMapper;
+import com.netflix.kayenta.security.AccountCredentials;
+import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.storage.ObjectType;
+import com.netflix.kayenta.storage.StorageService;
+import com.netflix.kayenta.storage.StorageServiceRepository;
+import com.netflix.kayenta.storage.StorageWriteBehindConfigurationProperties;
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import com.netflix.spinnaker.orca.api.pipeline.TaskResult;
+import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus;
+import com.netflix.spinnaker.orca.api.pipeline.models.PipelineExecution;
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CanaryJudgeTaskTest {
+
+  private static final String STORAGE_ACCOUNT = "storage-account";
+  private static final String METRIC_SET_PAIR_LIST_ID = "metric-set-pair-list-1";
+
+  private final StorageService storageService = mock(StorageService.class);
+  private final PipelineExecution execution = mock(PipelineExecution.class);
+  private final StageExecution mixerStage = mock(StageExecution.class);
+  private final StageExecution judgeStage = mock(StageExecution.class);
+  private final StorageWriteBehindConfigurationProperties storageWriteBehindConfiguration =
+      new StorageWriteBehindConfigurationProperties();
+
+  private CanaryJudgeTask task;
+
+  @Before
+  public void setUp() {
+    AccountCredentialsRepository accountCredentialsRepository =
+        mock(AccountCredentialsRepository.class);
+    AccountCredentials accountCredentials = mock(AccountCredentials.class);
+    when(accountCredentials.getName()).thenReturn(STORAGE_ACCOUNT);
+    when(accountCredentialsRepository.getRequiredOneBy(
+            STORAGE_ACCOUNT, AccountCredentials.Type.OBJECT_STORE))
+        .thenReturn(accountCredentials);
+
+    StorageServiceRepository storageServiceRepository = mock(StorageServiceRepository.class);
+    when(storageServiceRepository.getRequiredOne(STORAGE_ACCOUNT)).thenReturn(storageService);
+
+    ExecutionMapper executionMapper = mock(ExecutionMapper.class);
+    when(executionMapper.getCanaryConfig(execution)).thenReturn(CanaryConfig.builder().build());
+
+    when(mixerStage.getOutputs())
+        .thenReturn(Collections.singletonMap("metricSetPairListId", METRIC_SET_PAIR_LIST_ID));
+    when(judgeStage.getOutputs()).thenReturn(Collections.emptyMap());
+    when(judgeStage.getExecution()).thenReturn(execution);
+    Map<String, Object> context = new HashMap<>();
+    context.put("storageAccountName", STORAGE_ACCOUNT);
+    context.put("metricSetPairListId", METRIC_SET_PAIR_LIST_ID);
+    when(judgeStage.getContext()).thenReturn(context);
+    when(execution.getStages()).thenReturn(Arrays.asList(mixerStage, judgeStage));
+
+    when(storageService.loadObject(
+            STORAGE_ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, METRIC_SET_PAIR_LIST_ID))
+        .thenThrow(new NotFoundException(METRIC_SET_PAIR_LIST_ID));
+
+    task =
+        new CanaryJudgeTask(
+            accountCredentialsRepository,
+            storageServiceRepository,
+            Collections.singletonList(mock(CanaryJudge.class)),
+            new ObjectMapper(),
+            executionMapper,
+            storageWriteBehindConfiguration);
+  }
+
+  @Test
+  public void waitsForAMetricSetPairListMixedMomentsAgoToBePersisted() {
+    storageWriteBehindConfiguration.setEnabled(true);
+    mixEndedAgo(Duration.ofSeconds(5));
+
+    TaskResult result = task.execute(judgeStage);
+
+    assertThat(result.getStatus()).isEqualTo(ExecutionStatus.RUNNING);
+  }
+
+  @Test
+  public void failsOnceTheMetricSetPairListCanNoLongerBePending() {
+    storageWriteBehindConfiguration.setEnabled(true);
+    mixEndedAgo(storageWriteBehindConfiguration.getMaxPendingTime().plusSeconds(1));
+
+    assertThatThrownBy(() -> task.execute(judgeStage)).isInstanceOf(NotFoundException.class);
+  }
+
+  @Test
+  public void failsRightAwayWithoutWriteBehind() {
+    mixEndedAgo(Duration.ofSeconds(5));
+
+    assertThatThrownBy(() -> task.execute(judgeStage)).isInstanceOf(NotFoundException.class);
+  }
+
+  private void mixEndedAgo(Duration duration) {
+    when(mixerStage.getEndTime()).thenReturn(System.currentTimeMillis() - duration.toMillis());
+  }
+}
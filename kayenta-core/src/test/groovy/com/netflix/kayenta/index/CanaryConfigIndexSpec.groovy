@@ -18,10 +18,12 @@ package com.netflix.kayenta.index
 
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.netflix.kayenta.index.config.CanaryConfigIndexAction
+import com.netflix.kayenta.index.config.IndexConfigurationProperties
 import com.netflix.spinnaker.kork.jedis.EmbeddedRedis
 import redis.clients.jedis.Jedis
 import redis.clients.jedis.JedisPool
 import spock.lang.*
+import spock.util.concurrent.PollingConditions
 
 import static com.netflix.kayenta.index.CanaryConfigIndexingAgent.MAP_BY_APPLICATION_KEY_SUFFIX
 import static com.netflix.kayenta.index.CanaryConfigIndexingAgent.NO_INDEXED_CONFIGS_SENTINEL_VALUE
@@ -448,4 +450,80 @@ class CanaryConfigIndexSpec extends Specification {
     then:
     canaryConfigSummarySet.collect { it.id } as Set == ["id1", "id2", "id3", "id5"] as Set
   }
+
+  def "canary configs are looked up by id and name, respecting pending updates"() {
+    given:
+    jedis.hset(mapByApplicationKey, "a", "[{\"id\":\"id1\",\"name\":\"name1\",\"updatedTimestamp\":1507570197295,\"updatedTimestampIso\":\"2017-10-09T15:07:23.677Z\",\"applications\":[\"a\", \"b\"]}]")
+    jedis.hset(mapByApplicationKey, "b", "[{\"id\":\"id1\",\"name\":\"name1\",\"updatedTimestamp\":1507570197295,\"updatedTimestampIso\":\"2017-10-09T15:07:23.677Z\",\"applications\":[\"a\", \"b\"]}," +
+                                          "{\"id\":\"id2\",\"name\":\"name2\",\"updatedTimestamp\":1507570197295,\"updatedTimestampIso\":\"2017-10-09T15:07:23.677Z\",\"applications\":[\"b\"]}]")
+
+    expect:
+    canaryConfigIndex.getSummaryFromId(testCredentials, "id2").name == "name2"
+    canaryConfigIndex.getSummaryFromId(testCredentials, "id3") == null
+    canaryConfigIndex.getIdFromName(testCredentials, "name1", null) == "id1"
+    canaryConfigIndex.getIdFromName(testCredentials, "name2", ["a"]) == null
+    canaryConfigIndex.getIdFromName(testCredentials, "name2", ["a", "b"]) == "id2"
+
+    when:
+    canaryConfigIndex.startPendingUpdate(testCredentials, currentTime + "", CanaryConfigIndexAction.UPDATE, "1", "{\"id\":\"id1\",\"name\":\"different-name\",\"updatedTimestamp\":1507570197295,\"updatedTimestampIso\":\"2017-10-09T15:07:23.677Z\",\"applications\":[\"a\"]}")
+    canaryConfigIndex.startPendingUpdate(testCredentials, currentTime + 1 + "", CanaryConfigIndexAction.UPDATE, "2", "{\"id\":\"id3\",\"name\":\"name3\",\"updatedTimestamp\":1507570197295,\"updatedTimestampIso\":\"2017-10-09T15:07:23.677Z\",\"applications\":[\"c\"]}")
+    canaryConfigIndex.startPendingUpdate(testCredentials, currentTime + 2 + "", CanaryConfigIndexAction.DELETE, "3", "{\"id\":\"id2\",\"name\":\"name2\",\"updatedTimestamp\":1507570197295,\"updatedTimestampIso\":\"2017-10-09T15:07:23.677Z\",\"applications\":[\"b\"]}")
+
+    then:
+    canaryConfigIndex.getSummaryFromId(testCredentials, "id1").name == "different-name"
+    canaryConfigIndex.getSummaryFromId(testCredentials, "id2") == null
+    canaryConfigIndex.getSummaryFromId(testCredentials, "id3").name == "name3"
+    canaryConfigIndex.getIdFromName(testCredentials, "name1", null) == null
+    canaryConfigIndex.getIdFromName(testCredentials, "different-name", ["a"]) == "id1"
+    canaryConfigIndex.getIdFromName(testCredentials, "different-name", ["b"]) == null
+    canaryConfigIndex.getIdFromName(testCredentials, "name2", ["b"]) == null
+    canaryConfigIndex.getIdFromName(testCredentials, "name3", ["c"]) == "id3"
+
+    when:
+    canaryConfigIndex.startPendingUpdate(testCredentials, currentTime + 3 + "", CanaryConfigIndexAction.DELETE, "4", "{\"id\":\"id3\",\"name\":\"name3\",\"updatedTimestamp\":1507570197295,\"updatedTimestampIso\":\"2017-10-09T15:07:23.677Z\",\"applications\":[\"c\"]}")
+
+    then:
+    canaryConfigIndex.getSummaryFromId(testCredentials, "id3") == null
+    canaryConfigIndex.getIdFromName(testCredentials, "name3", null) == null
+  }
+
+  def "near cache serves the index until an update is published"() {
+    given:
+    CanaryConfigIndex cachingCanaryConfigIndex = new CanaryConfigIndex(jedisPool, objectMapper, new IndexConfigurationProperties())
+    // Stands in for another kayenta instance.
+    CanaryConfigIndex otherCanaryConfigIndex = new CanaryConfigIndex(jedisPool, objectMapper)
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+    jedis.hset(mapByApplicationKey, "a", "[{\"id\":\"id1\",\"name\":\"name1\",\"updatedTimestamp\":1507570197295,\"updatedTimestampIso\":\"2017-10-09T15:07:23.677Z\",\"applications\":[\"a\"]}]")
+    conditions.eventually {
+      assert cachingCanaryConfigIndex.subscribed
+    }
+
+    expect:
+    cachingCanaryConfigIndex.getCanaryConfigSummarySet(testCredentials, null).collect { it.id } as Set == ["id1"] as Set
+
+    when:
+    jedis.hset(mapByApplicationKey, "b", "[{\"id\":\"id2\",\"name\":\"name2\",\"updatedTimestamp\":1507570197295,\"updatedTimestampIso\":\"2017-10-09T15:07:23.677Z\",\"applications\":[\"b\"]}]")
+
+    then:
+    cachingCanaryConfigIndex.getCanaryConfigSummarySet(testCredentials, null).collect { it.id } as Set == ["id1"] as Set
+
+    when:
+    otherCanaryConfigIndex.startPendingUpdate(testCredentials, currentTime + "", CanaryConfigIndexAction.UPDATE, "1", "{\"id\":\"id3\",\"name\":\"name3\",\"updatedTimestamp\":1507570197295,\"updatedTimestampIso\":\"2017-10-09T15:07:23.677Z\",\"applications\":[\"a\"]}")
+
+    then:
+    conditions.eventually {
+      assert cachingCanaryConfigIndex.getCanaryConfigSummarySet(testCredentials, null).collect { it.id } as Set == ["id1", "id2", "id3"] as Set
+    }
+    cachingCanaryConfigIndex.getCanaryConfigSummarySet(testCredentials, ["a"]).collect { it.id } as Set == ["id1", "id3"] as Set
+
+    when:
+    cachingCanaryConfigIndex.startPendingUpdate(testCredentials, currentTime + 1 + "", CanaryConfigIndexAction.DELETE, "2", "{\"id\":\"id1\",\"name\":\"name1\",\"updatedTimestamp\":1507570197295,\"updatedTimestampIso\":\"2017-10-09T15:07:23.677Z\",\"applications\":[\"a\"]}")
+
+    then:
+    // Our own updates are visible right away.
+    cachingCanaryConfigIndex.getCanaryConfigSummarySet(testCredentials, ["a"]).collect { it.id } as Set == ["id3"] as Set
+
+    cleanup:
+    cachingCanaryConfigIndex.shutdown()
+  }
 }
@@ -88,6 +88,7 @@ class CanaryConfigIndexingAgentSpec extends Specification {
   }
 
   def cleanup() {
+    canaryConfigIndexingAgent.shutdown()
     embeddedRedis.jedis.withCloseable { it.flushDB() }
   }
 
@@ -160,8 +161,43 @@ class CanaryConfigIndexingAgentSpec extends Specification {
     [id1: ["a", "b"], id2: ["a", "b", "c"]] | "d"                || ["a", "b", "c"]         | []
   }
 
-  Map buildCanaryConfigSummary(String id, String name) {
-    [id: id, name: name, updatedTimestamp: (long)1, updatedTimestampIso: "1"]
+  Map buildCanaryConfigSummary(String id, String name, long updatedTimestamp = 1) {
+    [id: id, name: name, updatedTimestamp: updatedTimestamp, updatedTimestampIso: "$updatedTimestamp" as String]
+  }
+
+  def "agent should only load canary configs that are new or have been updated since the previous cycle"() {
+    given:
+    accountCredentialsRepository.save(ACCOUNT_NAME, testCredentials)
+
+    when:
+    canaryConfigIndexingAgent.indexCanaryConfigs()
+
+    then:
+    1 * configurationService.servicesAccount(ACCOUNT_NAME) >> true
+    1 * configurationService.listObjectKeys(ACCOUNT_NAME, ObjectType.CANARY_CONFIG, null, true) >> [
+      buildCanaryConfigSummary("id1", "name1"),
+      buildCanaryConfigSummary("id2", "name2")
+    ]
+    1 * configurationService.loadObject(ACCOUNT_NAME, ObjectType.CANARY_CONFIG, "id1") >> new CanaryConfig(applications: ["a", "b"])
+    1 * configurationService.loadObject(ACCOUNT_NAME, ObjectType.CANARY_CONFIG, "id2") >> new CanaryConfig(applications: ["a"])
+
+    when:
+    canaryConfigIndexingAgent.indexCanaryConfigs()
+
+    then:
+    1 * configurationService.servicesAccount(ACCOUNT_NAME) >> true
+    1 * configurationService.listObjectKeys(ACCOUNT_NAME, ObjectType.CANARY_CONFIG, null, true) >> [
+      buildCanaryConfigSummary("id1", "name1"),
+      buildCanaryConfigSummary("id2", "name2", 2),
+      buildCanaryConfigSummary("id3", "name3")
+    ]
+    0 * configurationService.loadObject(ACCOUNT_NAME, ObjectType.CANARY_CONFIG, "id1")
+    1 * configurationService.loadObject(ACCOUNT_NAME, ObjectType.CANARY_CONFIG, "id2") >> new CanaryConfig(applications: ["c"])
+    1 * configurationService.loadObject(ACCOUNT_NAME, ObjectType.CANARY_CONFIG, "id3") >> new CanaryConfig(applications: ["b"])
+    jedis.hkeys(mapByApplicationKey) == ["a", "b", "c"] as Set
+    objectMapper.readValue(jedis.hget(mapByApplicationKey, "a"), List).collect { it.id } == ["id1"]
+    objectMapper.readValue(jedis.hget(mapByApplicationKey, "b"), List).collect { it.id } == ["id1", "id3"]
+    objectMapper.readValue(jedis.hget(mapByApplicationKey, "c"), List).collect { it.id } == ["id2"]
   }
 
   def "agent flushes matching start/finish entries from pending updates queue, while leaving unmatched start entries untouched"() {
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.metrics
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Shared
+import spock.lang.Specification
+
+class DoubleSeriesSpec extends Specification {
+
+  @Shared
+  ObjectMapper objectMapper = new ObjectMapper()
+
+  void "metric set values are serialized as a plain JSON array"() {
+    setup:
+    MetricSet metricSet = MetricSet.builder().name('cpu').values([1.5d, Double.NaN, 3]).build()
+
+    when:
+    Map json = objectMapper.readValue(objectMapper.writeValueAsString(metricSet), Map)
+
+    then:
+    json.values == [1.5d, 'NaN', 3.0d]
+  }
+
+  void "values written as a list of doubles can be read back"() {
+    setup:
+    String json = objectMapper.writeValueAsString(
+      [name: 'cpu', tags: [:], values: [1.5d, null, Double.NaN, 3.0d]])
+
+    when:
+    MetricSet metricSet = objectMapper.readValue(json, MetricSet)
+
+    then:
+    metricSet.values == [1.5d, Double.NaN, Double.NaN, 3.0d]
+  }
+
+  void "metric set pair values round-trip through JSON"() {
+    setup:
+    MetricSetPair metricSetPair =
+      MetricSetPair.builder()
+        .name('cpu')
+        .value('control', DoubleSeries.of(1, 2))
+        .value('experiment', DoubleSeries.EMPTY)
+        .build()
+
+    when:
+    MetricSetPair read =
+      objectMapper.readValue(objectMapper.writeValueAsString(metricSetPair), MetricSetPair)
+
+    then:
+    read.values.control instanceof DoubleSeries
+    read.values == [control: [1.0d, 2.0d], experiment: []]
+  }
+
+  void "padding fills the missing data points with NaN"() {
+    expect:
+    DoubleSeries.of(1, 2).padTo(4) == [1.0d, 2.0d, Double.NaN, Double.NaN]
+    DoubleSeries.of(1, 2).padTo(1) == [1.0d, 2.0d]
+  }
+}
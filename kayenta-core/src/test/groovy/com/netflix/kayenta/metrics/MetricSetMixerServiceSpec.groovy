@@ -300,6 +300,43 @@ class MetricSetMixerServiceSpec extends Specification {
     [ 'cpu', 'errors' ] | [controlCpuMetricSet, controlErrorsMetricSet] | [experimentErrorsMetricSet, experimentCpuMetricSet]            || ['cpu', 'errors']      | [[tagName: 'tagValue'], [tagNameA: 'tagValueA', tagNameB: 'tagValueB']] | [[control: [1, 3, 5, 7], experiment: [2, 4, 6, 8]], [control: [10, 20, 30], experiment: [60, 70, 80]]]
   }
 
+  void "series are paired by their tags regardless of their order"() {
+    setup:
+    MetricSetMixerService metricSetMixerService = new MetricSetMixerService()
+    def makeMetricSet = { String region, List values ->
+      MetricSet.builder()
+        .name('requests')
+        .tag('region', region)
+        .values(values)
+        .startTimeMillis(0)
+        .endTimeMillis(60000 * 2)
+        .stepMillis(60000)
+        .build()
+    }
+    List<MetricSet> controlMetricSetList = [
+      makeMetricSet('us-east-1', [1, 2]),
+      makeMetricSet('us-west-2', [3, 4]),
+      makeMetricSet('eu-west-1', [5, 6])
+    ]
+    List<MetricSet> experimentMetricSetList = [
+      makeMetricSet('eu-west-1', [50, 60]),
+      makeMetricSet('ap-south-1', [70, 80]),
+      makeMetricSet('us-east-1', [10, 20])
+    ]
+
+    when:
+    List<MetricSetPair> metricSetPairs =
+      metricSetMixerService.mixAll(makeConfig(['requests']), controlMetricSetList, experimentMetricSetList)
+
+    then:
+    metricSetPairs.collectEntries { [(it.tags.region): it.values] } == [
+      'us-east-1': [control: [1, 2], experiment: [10, 20]],
+      'us-west-2': [control: [3, 4], experiment: [Double.NaN, Double.NaN]],
+      'eu-west-1': [control: [5, 6], experiment: [50, 60]],
+      'ap-south-1': [control: [Double.NaN, Double.NaN], experiment: [70, 80]]
+    ]
+  }
+
   List<CanaryMetricConfig> makeConfig(List<String> names) {
     List<CanaryMetricConfig> ret = []
 
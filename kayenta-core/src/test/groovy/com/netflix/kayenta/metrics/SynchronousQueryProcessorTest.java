@@ -16,13 +16,17 @@
 
 package com.netflix.kayenta.metrics;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.codehaus.groovy.runtime.InvokerHelper.asList;
 import static org.mockito.Answers.RETURNS_DEEP_STUBS;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -34,20 +38,32 @@ import static org.springframework.http.HttpStatus.LOCKED;
 
 import com.netflix.kayenta.canary.CanaryConfig;
 import com.netflix.kayenta.canary.CanaryMetricConfig;
+import com.netflix.kayenta.canary.CanaryMetricSetQueryConfig;
 import com.netflix.kayenta.canary.CanaryScope;
 import com.netflix.kayenta.storage.ObjectType;
 import com.netflix.kayenta.storage.StorageService;
 import com.netflix.kayenta.storage.StorageServiceRepository;
 import com.netflix.spectator.api.Registry;
+import com.netflix.spinnaker.orca.api.pipeline.TaskResult;
+import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus;
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.SocketTimeoutException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -63,6 +79,8 @@ public class SynchronousQueryProcessorTest {
   private static final int ATTEMPTS = 5;
   @Mock MetricsRetryConfigurationProperties retryConfiguration;
 
+  @Mock MetricsQueryCache metricsQueryCache;
+
   @Mock MetricsService metricsService;
   @Mock StorageService storageService;
 
@@ -115,6 +133,43 @@ public class SynchronousQueryProcessorTest {
     verifyZeroInteractions(storageService);
   }
 
+  @Test
+  public void stopsRetryingOnceInterrupted() throws IOException {
+    RetrofitError error = getRetrofitErrorWithHttpStatus(INTERNAL_SERVER_ERROR.value());
+    when(metricsService.queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class)))
+        .thenThrow(error);
+
+    Thread.currentThread().interrupt();
+
+    try {
+      assertThatThrownBy(
+              () ->
+                  processor.executeQuery(
+                      METRICS,
+                      STORAGE,
+                      mock(CanaryConfig.class, RETURNS_DEEP_STUBS),
+                      1,
+                      mock(CanaryScope.class)))
+          .isInstanceOf(InterruptedIOException.class)
+          .hasSuppressedException(error);
+      assertThat(Thread.currentThread().isInterrupted()).isTrue();
+    } finally {
+      Thread.interrupted();
+    }
+
+    verify(metricsService, times(1))
+        .queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class));
+    verifyZeroInteractions(storageService);
+  }
+
   @Test
   public void retriesRetryableHttpSeriesAndReturnsSuccessfulResponse() throws IOException {
     List response = asList(mock(MetricSet.class));
@@ -251,6 +306,263 @@ public class SynchronousQueryProcessorTest {
     verifyZeroInteractions(storageService);
   }
 
+  @Test
+  public void queriesSeveralMetricsAsOneBatchAndStoresOneMetricSetList() throws IOException {
+    List response = asList(mock(MetricSet.class), mock(MetricSet.class));
+    when(metricsService.batchQueryMetrics(
+            anyString(), any(CanaryConfig.class), anyList(), any(CanaryScope.class)))
+        .thenThrow(getRetrofitErrorWithHttpStatus(INTERNAL_SERVER_ERROR.value()))
+        .thenReturn(response);
+
+    processor.executeQuery(
+        METRICS,
+        STORAGE,
+        mock(CanaryConfig.class, RETURNS_DEEP_STUBS),
+        Arrays.asList(0, 1),
+        mock(CanaryScope.class));
+
+    verify(metricsService, times(2))
+        .batchQueryMetrics(anyString(), any(CanaryConfig.class), anyList(), any(CanaryScope.class));
+    verify(storageService)
+        .storeObject(eq(STORAGE), eq(ObjectType.METRIC_SET_LIST), any(), eq(response));
+  }
+
+  @Test
+  public void usesCachedResultsInsteadOfQueryingTheMetricsService() throws IOException {
+    List response = asList(mock(MetricSet.class));
+    when(metricsQueryCache.get(any(MetricsQueryKey.class))).thenReturn(Optional.of(response));
+
+    processor.executeQuery(
+        METRICS, STORAGE, mock(CanaryConfig.class, RETURNS_DEEP_STUBS), 1, mock(CanaryScope.class));
+
+    verify(metricsService, never())
+        .queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class));
+    verify(storageService)
+        .storeObject(eq(STORAGE), eq(ObjectType.METRIC_SET_LIST), any(), eq(response));
+  }
+
+  @Test
+  public void keysTheCacheOnTheQueryInputsWithoutBuildingTheQuery() throws IOException {
+    CanaryMetricSetQueryConfig queryConfig = mock(CanaryMetricSetQueryConfig.class);
+    CanaryConfig canaryConfig =
+        CanaryConfig.builder()
+            .metric(CanaryMetricConfig.builder().name("cpu").query(queryConfig).build())
+            .template("filter", "region = ${location}")
+            .build();
+    CanaryScope canaryScope = mock(CanaryScope.class);
+    List response = asList(mock(MetricSet.class));
+    when(metricsQueryCache.get(any(MetricsQueryKey.class))).thenReturn(Optional.of(response));
+
+    processor.executeQuery(METRICS, STORAGE, canaryConfig, 0, canaryScope);
+
+    ArgumentCaptor<MetricsQueryKey> queryKey = ArgumentCaptor.forClass(MetricsQueryKey.class);
+    verify(metricsQueryCache).get(queryKey.capture());
+    assertThat(queryKey.getValue())
+        .isEqualTo(
+            new MetricsQueryKey(
+                METRICS,
+                "cpu",
+                queryConfig.toString(),
+                Collections.singletonMap("filter", "region = ${location}"),
+                canaryScope));
+    verify(metricsService, never()).buildQuery(any(), any(), any(), any());
+  }
+
+  @Test
+  public void reschedulesFetchTaskInsteadOfRetryingInline() throws IOException {
+    when(metricsService.queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class)))
+        .thenThrow(getRetrofitErrorWithHttpStatus(INTERNAL_SERVER_ERROR.value()));
+    StageExecution stage = mock(StageExecution.class);
+    Map<String, Object> context = new HashMap<>();
+    context.put("metricIndex", 1);
+    context.put(SynchronousQueryProcessor.RETRIES_CONTEXT_KEY, 2);
+    when(stage.getContext()).thenReturn(context);
+
+    TaskResult result =
+        processor.executeQueryAndProduceTaskResult(
+            METRICS,
+            STORAGE,
+            mock(CanaryConfig.class, RETURNS_DEEP_STUBS),
+            mock(CanaryScope.class),
+            stage);
+
+    assertThat(result.getStatus()).isEqualTo(ExecutionStatus.RUNNING);
+    assertThat(result.getContext().get(SynchronousQueryProcessor.RETRIES_CONTEXT_KEY)).isEqualTo(3);
+    verify(metricsService, times(1))
+        .queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class));
+    verifyZeroInteractions(storageService);
+  }
+
+  @Test
+  public void failsFetchTaskOnceMaxAttemptsAreReached() throws IOException {
+    when(metricsService.queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class)))
+        .thenThrow(getRetrofitErrorWithHttpStatus(INTERNAL_SERVER_ERROR.value()));
+    StageExecution stage = mock(StageExecution.class);
+    Map<String, Object> context = new HashMap<>();
+    context.put("metricIndex", 1);
+    context.put(SynchronousQueryProcessor.RETRIES_CONTEXT_KEY, ATTEMPTS - 1);
+    when(stage.getContext()).thenReturn(context);
+
+    assertThatThrownBy(
+            () ->
+                processor.executeQueryAndProduceTaskResult(
+                    METRICS,
+                    STORAGE,
+                    mock(CanaryConfig.class, RETURNS_DEEP_STUBS),
+                    mock(CanaryScope.class),
+                    stage))
+        .isInstanceOf(RetrofitError.class);
+    verifyZeroInteractions(storageService);
+  }
+
+  @Test
+  public void sharesTheResultOfAnIdenticalQueryThatIsAlreadyInFlight() throws Exception {
+    List response = asList(mock(MetricSet.class));
+    CountDownLatch release = new CountDownLatch(1);
+    when(metricsService.queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class)))
+        .thenAnswer(
+            invocation -> {
+              release.await();
+              return response;
+            });
+    CanaryConfig canaryConfig = mock(CanaryConfig.class, RETURNS_DEEP_STUBS);
+    CanaryScope canaryScope = mock(CanaryScope.class);
+
+    FutureTask<String> first = startQuery(canaryConfig, canaryScope);
+    verify(metricsService, timeout(5000))
+        .queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class));
+    FutureTask<String> second = startQueryAndAwaitBlocked(canaryConfig, canaryScope);
+    release.countDown();
+
+    assertThat(first.get(5, TimeUnit.SECONDS)).isNotNull();
+    assertThat(second.get(5, TimeUnit.SECONDS)).isNotNull();
+    verify(metricsService, times(1))
+        .queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class));
+    verify(storageService, times(2))
+        .storeObject(eq(STORAGE), eq(ObjectType.METRIC_SET_LIST), any(), eq(response));
+
+    // Once the shared query has completed, the next identical query is executed again.
+    processor.executeQuery(METRICS, STORAGE, canaryConfig, 1, canaryScope);
+
+    verify(metricsService, times(2))
+        .queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class));
+  }
+
+  @Test
+  public void sharesTheFailureOfAnIdenticalQueryThatIsAlreadyInFlight() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    when(metricsService.queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class)))
+        .thenAnswer(
+            invocation -> {
+              release.await();
+              throw getRetrofitErrorWithHttpStatus(BAD_REQUEST.value());
+            });
+    CanaryConfig canaryConfig = mock(CanaryConfig.class, RETURNS_DEEP_STUBS);
+    CanaryScope canaryScope = mock(CanaryScope.class);
+
+    FutureTask<String> first = startQuery(canaryConfig, canaryScope);
+    verify(metricsService, timeout(5000))
+        .queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class));
+    FutureTask<String> second = startQueryAndAwaitBlocked(canaryConfig, canaryScope);
+    release.countDown();
+
+    assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS))
+        .hasCauseInstanceOf(RetrofitError.class);
+    assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS))
+        .hasCauseInstanceOf(RetrofitError.class);
+    verify(metricsService, times(1))
+        .queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class));
+    verifyZeroInteractions(storageService);
+
+    // The failed query is no longer in flight, so the next identical query is executed again.
+    assertThatThrownBy(() -> processor.executeQuery(METRICS, STORAGE, canaryConfig, 1, canaryScope))
+        .isInstanceOf(RetrofitError.class);
+
+    verify(metricsService, times(2))
+        .queryMetrics(
+            anyString(),
+            any(CanaryConfig.class),
+            any(CanaryMetricConfig.class),
+            any(CanaryScope.class));
+  }
+
+  private FutureTask<String> startQuery(CanaryConfig canaryConfig, CanaryScope canaryScope) {
+    FutureTask<String> query = newQuery(canaryConfig, canaryScope);
+
+    new Thread(query).start();
+
+    return query;
+  }
+
+  /**
+   * Starts a query and waits until it is parked, which it only is while waiting for the result of
+   * the query already in flight (or, were it not coalesced, in the blocked metrics service).
+   */
+  private FutureTask<String> startQueryAndAwaitBlocked(
+      CanaryConfig canaryConfig, CanaryScope canaryScope) throws InterruptedException {
+    FutureTask<String> query = newQuery(canaryConfig, canaryScope);
+    Thread thread = new Thread(query);
+    long deadline = System.currentTimeMillis() + 5000;
+
+    thread.start();
+
+    while (thread.getState() != Thread.State.WAITING) {
+      assertThat(System.currentTimeMillis()).isLessThan(deadline);
+      Thread.sleep(10);
+    }
+
+    return query;
+  }
+
+  private FutureTask<String> newQuery(CanaryConfig canaryConfig, CanaryScope canaryScope) {
+    return new FutureTask<>(
+        () -> processor.executeQuery(METRICS, STORAGE, canaryConfig, 1, canaryScope));
+  }
+
   private RetrofitError getRetrofitErrorWithHttpStatus(int status) {
     return RetrofitError.httpError(
         "url", new Response("url", status, "reason", Collections.emptyList(), null), null, null);
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.metrics.orca;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import com.netflix.kayenta.canary.CanaryConfig;
+import com.netflix.kayenta.canary.ExecutionMapper;
+import com.netflix.kayenta.metrics.MetricSetMixerService;
+import com.netflix.kayenta.security.AccountCredentials;
+import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.storage.BulkLoadException;
+import com.netflix.kayenta.storage.ObjectType;
+import com.netflix.kayenta.storage.StorageService;
+import com.netflix.kayenta.storage.StorageServiceRepository;
+import com.netflix.kayenta.storage.StorageWriteBehindConfigurationProperties;
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import com.netflix.spinnaker.orca.api.pipeline.TaskResult;
+import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus;
+import com.netflix.spinnaker.orca.api.pipeline.models.PipelineExecution;
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricSetMixerServiceTaskTest {
+
+  private static final String STORAGE_ACCOUNT = "storage-account";
+
+  private final StorageService storageService = mock(StorageService.class);
+  private final PipelineExecution execution = mock(PipelineExecution.class);
+  private final StageExecution controlFetchStage = mock(StageExecution.class);
+  private final StageExecution experimentFetchStage = mock(StageExecution.class);
+  private final StageExecution mixerStage = mock(StageExecution.class);
+  private final StorageWriteBehindConfigurationProperties storageWriteBehindConfiguration =
+      new StorageWriteBehindConfigurationProperties();
+
+  private MetricSetMixerServiceTask task;
+
+  @Before
+  public void setUp() {
+    AccountCredentialsRepository accountCredentialsRepository =
+        mock(AccountCredentialsRepository.class);
+    AccountCredentials accountCredentials = mock(AccountCredentials.class);
+    when(accountCredentials.getName()).thenReturn(STORAGE_ACCOUNT);
+    when(accountCredentialsRepository.getRequiredOneBy(
+            STORAGE_ACCOUNT, AccountCredentials.Type.OBJECT_STORE))
+        .thenReturn(accountCredentials);
+
+    StorageServiceRepository storageServiceRepository = mock(StorageServiceRepository.class);
+    when(storageServiceRepository.getRequiredOne(STORAGE_ACCOUNT)).thenReturn(storageService);
+
+    ExecutionMapper executionMapper = mock(ExecutionMapper.class);
+    when(executionMapper.getCanaryConfig(execution)).thenReturn(CanaryConfig.builder().build());
+
+    when(controlFetchStage.getRefId()).thenReturn("fetchControl0");
+    when(controlFetchStage.getOutputs())
+        .thenReturn(Collections.singletonMap("metricSetListId", "control-1"));
+    when(experimentFetchStage.getRefId()).thenReturn("fetchExperiment0");
+    when(experimentFetchStage.getOutputs())
+        .thenReturn(Collections.singletonMap("metricSetListId", "experiment-1"));
+    when(mixerStage.getRefId()).thenReturn("mixMetrics");
+    when(mixerStage.getExecution()).thenReturn(execution);
+    when(mixerStage.getContext())
+        .thenReturn(
+            new HashMap<>(
+                ImmutableMap.of(
+                    "storageAccountName", STORAGE_ACCOUNT,
+                    "controlRefidPrefix", "fetchControl",
+                    "experimentRefidPrefix", "fetchExperiment")));
+    when(execution.getStages())
+        .thenReturn(Arrays.asList(controlFetchStage, experimentFetchStage, mixerStage));
+
+    Map<String, Throwable> failures =
+        Collections.singletonMap("experiment-1", new NotFoundException("experiment-1"));
+    when(storageService.loadObjects(
+            eq(STORAGE_ACCOUNT), eq(ObjectType.METRIC_SET_LIST), anyList()))
+        .thenThrow(new BulkLoadException(ObjectType.METRIC_SET_LIST, 2, failures));
+
+    task =
+        new MetricSetMixerServiceTask(
+            accountCredentialsRepository,
+            storageServiceRepository,
+            new MetricSetMixerService(),
+            executionMapper,
+            storageWriteBehindConfiguration);
+  }
+
+  @Test
+  public void waitsForMetricSetListsFetchedMomentsAgoToBePersisted() {
+    storageWriteBehindConfiguration.setEnabled(true);
+    fetchesEndedAgo(Duration.ofSeconds(5));
+
+    TaskResult result = task.execute(mixerStage);
+
+    assertThat(result.getStatus()).isEqualTo(ExecutionStatus.RUNNING);
+  }
+
+  @Test
+  public void failsOnceMetricSetListsCanNoLongerBePending() {
+    storageWriteBehindConfiguration.setEnabled(true);
+    fetchesEndedAgo(storageWriteBehindConfiguration.getMaxPendingTime().plusSeconds(1));
+
+    assertThatThrownBy(() -> task.execute(mixerStage)).isInstanceOf(BulkLoadException.class);
+  }
+
+  @Test
+  public void failsRightAwayWithoutWriteBehind() {
+    fetchesEndedAgo(Duration.ofSeconds(5));
+
+    assertThatThrownBy(() -> task.execute(mixerStage)).isInstanceOf(BulkLoadException.class);
+  }
+
+  private void fetchesEndedAgo(Duration duration) {
+    long endTime = System.currentTimeMillis() - duration.toMillis();
+
+    when(controlFetchStage.getEndTime()).thenReturn(endTime - 1000);
+    when(experimentFetchStage.getEndTime()).thenReturn(endTime);
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.netflix.kayenta.canary.CanaryConfig;
+import com.netflix.kayenta.metrics.MetricSet;
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class CachingStorageServiceTest {
+
+  private static final String ACCOUNT = "account-1";
+
+  private final StorageService delegate = mock(StorageService.class);
+  private final Registry registry = new DefaultRegistry();
+  private final StorageCacheConfigurationProperties configuration =
+      new StorageCacheConfigurationProperties();
+
+  private final CachingStorageService storageService =
+      new CachingStorageService(delegate, configuration, registry);
+
+  @Test
+  public void loadObject_readsMetricSetListsThroughTheCache() {
+    List<MetricSet> metricSets = metricSets(3);
+    when(delegate.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1")).thenReturn(metricSets);
+
+    List<MetricSet> first = storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+    List<MetricSet> second = storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+
+    assertThat(first).isEqualTo(metricSets);
+    assertThat(second).isSameAs(first);
+    verify(delegate, times(1)).loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+    assertThat(requests("hit")).isEqualTo(1);
+    assertThat(requests("miss")).isEqualTo(1);
+  }
+
+  @Test
+  public void loadObject_doesNotCacheMutableObjectTypes() {
+    CanaryConfig canaryConfig = CanaryConfig.builder().name("config").build();
+    when(delegate.loadObject(ACCOUNT, ObjectType.CANARY_CONFIG, "id-1")).thenReturn(canaryConfig);
+
+    storageService.loadObject(ACCOUNT, ObjectType.CANARY_CONFIG, "id-1");
+    storageService.loadObject(ACCOUNT, ObjectType.CANARY_CONFIG, "id-1");
+
+    verify(delegate, times(2)).loadObject(ACCOUNT, ObjectType.CANARY_CONFIG, "id-1");
+  }
+
+  @Test
+  public void loadObject_propagatesNotFoundAndDoesNotCacheIt() {
+    when(delegate.loadObject(anyString(), any(), anyString()))
+        .thenThrow(new NotFoundException("missing"));
+
+    assertThatThrownBy(() -> storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1"))
+        .isInstanceOf(NotFoundException.class);
+    assertThatThrownBy(() -> storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1"))
+        .isInstanceOf(NotFoundException.class);
+
+    verify(delegate, times(2)).loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+  }
+
+  @Test
+  public void loadObject_passesNullFromTheDelegateThroughWithoutCachingIt() {
+    List<MetricSet> first = storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+    List<MetricSet> second = storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+
+    assertThat(first).isNull();
+    assertThat(second).isNull();
+    verify(delegate, times(2)).loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+  }
+
+  @Test
+  public void loadObjects_loadsOnlyTheMissingObjectsFromTheDelegate() {
+    List<MetricSet> cached = metricSets(2);
+    List<MetricSet> missing = metricSets(3);
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", cached);
+    doReturn(Collections.singletonMap("id-2", missing))
+        .when(delegate)
+        .loadObjects(ACCOUNT, ObjectType.METRIC_SET_LIST, Collections.singletonList("id-2"));
+
+    Map<String, List<MetricSet>> loaded =
+        storageService.loadObjects(
+            ACCOUNT, ObjectType.METRIC_SET_LIST, Arrays.asList("id-2", "id-1"));
+
+    assertThat(loaded.keySet()).containsExactly("id-2", "id-1");
+    assertThat(loaded.get("id-1")).isEqualTo(cached);
+    assertThat(loaded.get("id-2")).isEqualTo(missing);
+    assertThat(requests("hit")).isEqualTo(1);
+    assertThat(requests("miss")).isEqualTo(1);
+  }
+
+  @Test
+  public void storeObject_writesThroughToTheCache() {
+    List<MetricSet> metricSets = metricSets(2);
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets);
+    List<MetricSet> loaded = storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+
+    assertThat(loaded).isEqualTo(metricSets);
+    verify(delegate)
+        .storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets, null, true);
+    verify(delegate, times(0)).loadObject(anyString(), any(), anyString());
+  }
+
+  @Test
+  public void deleteObject_invalidatesTheCachedCopy() {
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets(2));
+    when(delegate.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1"))
+        .thenThrow(new NotFoundException("deleted"));
+
+    storageService.deleteObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+
+    verify(delegate).deleteObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+    assertThatThrownBy(() -> storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1"))
+        .isInstanceOf(NotFoundException.class);
+  }
+
+  @Test
+  public void cacheEvictsByWeight() {
+    configuration.setMaximumWeight(10);
+    when(delegate.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1"))
+        .thenReturn(metricSets(8));
+    CachingStorageService smallCache = new CachingStorageService(delegate, configuration, registry);
+
+    smallCache.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets(8));
+    smallCache.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-2", metricSets(8));
+    smallCache.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+
+    verify(delegate).loadObject(eq(ACCOUNT), eq(ObjectType.METRIC_SET_LIST), eq("id-1"));
+  }
+
+  private long requests(String result) {
+    return registry
+        .counter(
+            registry
+                .createId("storage.cache.requests")
+                .withTags(
+                    "storageService",
+                    delegate.getClass().getSimpleName(),
+                    "objectType",
+                    ObjectType.METRIC_SET_LIST.getGroup(),
+                    "result",
+                    result))
+        .count();
+  }
+
+  private static List<MetricSet> metricSets(int values) {
+    return Collections.singletonList(
+        MetricSet.builder()
+            .name("metric")
+            .values(Collections.nCopies(values, 1.0d))
+            .build());
+  }
+}
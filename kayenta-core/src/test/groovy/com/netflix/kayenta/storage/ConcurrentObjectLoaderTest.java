@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class ConcurrentObjectLoaderTest {
+
+  private final StorageLoadConfigurationProperties configuration =
+      new StorageLoadConfigurationProperties();
+
+  private final ConcurrentObjectLoader loader = new ConcurrentObjectLoader(configuration);
+
+  @After
+  public void shutdown() {
+    loader.shutdown();
+  }
+
+  @Test
+  public void loadObjects_returnsObjectsInKeyOrder() {
+    Map<String, String> objects =
+        loader.loadObjects(
+            ObjectType.METRIC_SET_LIST, Arrays.asList("c", "a", "b", "a"), key -> key + "-value");
+
+    assertThat(objects)
+        .containsExactly(entry("c", "c-value"), entry("a", "a-value"), entry("b", "b-value"));
+  }
+
+  @Test
+  public void loadObjects_overlapsLoads() {
+    CountDownLatch allStarted = new CountDownLatch(3);
+
+    Map<String, String> objects =
+        loader.loadObjects(
+            ObjectType.METRIC_SET_LIST,
+            Arrays.asList("a", "b", "c"),
+            key -> {
+              allStarted.countDown();
+              await(allStarted);
+              return key + "-value";
+            });
+
+    assertThat(objects).hasSize(3);
+  }
+
+  @Test
+  public void loadObjects_boundsTheNumberOfLoadsInFlight() {
+    configuration.setMaxConcurrentLoads(2);
+    ConcurrentObjectLoader boundedLoader = new ConcurrentObjectLoader(configuration);
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+
+    try {
+      boundedLoader.loadObjects(
+          ObjectType.METRIC_SET_LIST,
+          Arrays.asList("a", "b", "c", "d", "e", "f"),
+          key -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep();
+            inFlight.decrementAndGet();
+            return key;
+          });
+    } finally {
+      boundedLoader.shutdown();
+    }
+
+    assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+  }
+
+  @Test
+  public void loadObjects_reportsEveryFailedKey() {
+    assertThatThrownBy(
+            () ->
+                loader.loadObjects(
+                    ObjectType.METRIC_SET_LIST,
+                    Arrays.asList("a", "missing-1", "b", "missing-2"),
+                    key -> {
+                      if (key.startsWith("missing")) {
+                        throw new NotFoundException("No such object: " + key);
+                      }
+                      return key;
+                    }))
+        .isInstanceOfSatisfying(
+            BulkLoadException.class,
+            e -> {
+              assertThat(e.getFailures()).containsOnlyKeys("missing-1", "missing-2");
+              assertThat(e.getFailures().get("missing-1")).isInstanceOf(NotFoundException.class);
+              assertThat(e).hasMessageContaining("Failed to load 2 of 4 metrics objects");
+            });
+  }
+
+  @Test
+  public void loadSequentially_reportsEveryFailedKey() {
+    assertThatThrownBy(
+            () ->
+                ConcurrentObjectLoader.loadSequentially(
+                    ObjectType.METRIC_SET_LIST,
+                    Arrays.asList("missing", "a"),
+                    key -> {
+                      if (key.equals("missing")) {
+                        throw new NotFoundException("No such object: " + key);
+                      }
+                      return key;
+                    }))
+        .isInstanceOfSatisfying(
+            BulkLoadException.class,
+            e -> assertThat(e.getFailures()).containsOnlyKeys("missing"));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      if (!latch.await(10, TimeUnit.SECONDS)) {
+        throw new IllegalStateException("Loads did not overlap");
+      }
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void sleep() {
+    try {
+      Thread.sleep(20);
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
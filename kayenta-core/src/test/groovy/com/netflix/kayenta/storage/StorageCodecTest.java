@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.netflix.kayenta.atlas.config.KayentaSerializationConfigurationProperties;
+import com.netflix.kayenta.canary.CanaryConfig;
+import com.netflix.kayenta.config.KayentaConfiguration;
+import com.netflix.kayenta.metrics.DoubleSeries;
+import com.netflix.kayenta.metrics.MetricSetPair;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class StorageCodecTest {
+
+  private static final TypeReference<List<MetricSetPair>> METRIC_SET_PAIR_LIST =
+      new TypeReference<List<MetricSetPair>>() {};
+
+  private final ObjectMapper jsonObjectMapper = objectMapper(new ObjectMapper());
+
+  @Test
+  public void roundTripsMetricSetPairListsInEveryEncoding() throws IOException {
+    List<MetricSetPair> metricSetPairs = metricSetPairs();
+
+    for (StorageFormat format : StorageFormat.values()) {
+      for (boolean compressed : new boolean[] {false, true}) {
+        StorageCodec codec = codec(format, compressed);
+
+        StorageCodec.EncodedObject encoded =
+            codec.encode(ObjectType.METRIC_SET_PAIR_LIST, metricSetPairs);
+        List<MetricSetPair> decoded = decode(codec, encoded, METRIC_SET_PAIR_LIST);
+
+        assertThat(encoded.getEncoding())
+            .isEqualTo(format.name().toLowerCase() + (compressed ? "+gzip" : ""));
+        assertThat(decoded).hasSize(1);
+        assertThat(decoded.get(0).getValues()).isEqualTo(metricSetPairs.get(0).getValues());
+        assertThat(decoded.get(0).getTags()).isEqualTo(metricSetPairs.get(0).getTags());
+      }
+    }
+  }
+
+  @Test
+  public void binaryFormatsAreSmallerThanJson() throws IOException {
+    List<MetricSetPair> metricSetPairs = metricSetPairs();
+
+    int json = encodedSize(StorageFormat.JSON, metricSetPairs);
+    int smile = encodedSize(StorageFormat.SMILE, metricSetPairs);
+    int cbor = encodedSize(StorageFormat.CBOR, metricSetPairs);
+
+    assertThat(smile).isLessThan(json);
+    assertThat(cbor).isLessThan(json);
+  }
+
+  @Test
+  public void objectsWithoutARecordedEncodingAreReadAsJson() throws IOException {
+    List<MetricSetPair> metricSetPairs = metricSetPairs();
+    byte[] json = jsonObjectMapper.writeValueAsBytes(metricSetPairs);
+
+    List<MetricSetPair> decoded =
+        codec(StorageFormat.SMILE, true)
+            .decode(null, new ByteArrayInputStream(json), METRIC_SET_PAIR_LIST);
+
+    assertThat(decoded.get(0).getValues()).isEqualTo(metricSetPairs.get(0).getValues());
+  }
+
+  @Test
+  public void otherObjectTypesAreAlwaysWrittenAsJson() throws IOException {
+    CanaryConfig canaryConfig = CanaryConfig.builder().name("config").build();
+
+    StorageCodec.EncodedObject encoded =
+        codec(StorageFormat.CBOR, true).encode(ObjectType.CANARY_CONFIG, canaryConfig);
+
+    assertThat(encoded.getEncoding()).isEqualTo("json");
+    assertThat(encoded.getContentType()).isEqualTo("application/json");
+    assertThat(jsonObjectMapper.readValue(encoded.getBytes(), CanaryConfig.class).getName())
+        .isEqualTo("config");
+  }
+
+  private StorageCodec codec(StorageFormat format, boolean compressed) {
+    Map<StorageFormat, ObjectMapper> objectMappers = new EnumMap<>(StorageFormat.class);
+    objectMappers.put(StorageFormat.JSON, jsonObjectMapper);
+    objectMappers.put(
+        StorageFormat.SMILE,
+        objectMapper(
+            new ObjectMapper(
+                new SmileFactory().disable(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT))));
+    objectMappers.put(StorageFormat.CBOR, objectMapper(new ObjectMapper(new CBORFactory())));
+
+    StorageCodecConfigurationProperties configuration = new StorageCodecConfigurationProperties();
+    configuration.setFormat(format);
+    configuration.setCompressed(compressed);
+
+    return new StorageCodec(objectMappers, configuration);
+  }
+
+  private int encodedSize(StorageFormat format, List<MetricSetPair> metricSetPairs)
+      throws IOException {
+    return codec(format, false)
+        .encode(ObjectType.METRIC_SET_PAIR_LIST, metricSetPairs)
+        .getBytes()
+        .length;
+  }
+
+  private static <T> T decode(
+      StorageCodec codec, StorageCodec.EncodedObject encoded, TypeReference<T> typeReference)
+      throws IOException {
+    return codec.decode(
+        encoded.getEncoding(), new ByteArrayInputStream(encoded.getBytes()), typeReference);
+  }
+
+  private static ObjectMapper objectMapper(ObjectMapper objectMapper) {
+    KayentaConfiguration.configureObjectMapperFeatures(
+        objectMapper, new KayentaSerializationConfigurationProperties());
+    return objectMapper;
+  }
+
+  private static List<MetricSetPair> metricSetPairs() {
+    double[] control = new double[500];
+    double[] experiment = new double[500];
+
+    for (int i = 0; i < control.length; i++) {
+      control[i] = i % 7 == 0 ? Double.NaN : 100 + i / 10;
+      experiment[i] = 0.25 * i;
+    }
+
+    return Collections.singletonList(
+        MetricSetPair.builder()
+            .name("requests")
+            .id("pair-1")
+            .tag("region", "us-west-2")
+            .value("control", DoubleSeries.of(control))
+            .value("experiment", DoubleSeries.of(experiment))
+            .attribute("control", Collections.singletonMap("query", "name,requests,:eq"))
+            .build());
+  }
+}
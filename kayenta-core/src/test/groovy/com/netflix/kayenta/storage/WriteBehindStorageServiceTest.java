@@ -0,0 +1,201 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.netflix.kayenta.metrics.MetricSet;
+import com.netflix.spectator.api.DefaultRegistry;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Test;
+
+public class WriteBehindStorageServiceTest {
+
+  private static final String ACCOUNT = "account-1";
+
+  private final StorageService delegate = mock(StorageService.class);
+  private final StorageWriteBehindConfigurationProperties configuration =
+      new StorageWriteBehindConfigurationProperties();
+  private final CountDownLatch writesReleased = new CountDownLatch(1);
+
+  private WriteBehindQueue writeBehindQueue;
+  private WriteBehindStorageService storageService;
+
+  @After
+  public void shutdown() throws InterruptedException {
+    writesReleased.countDown();
+    writeBehindQueue.shutdown();
+  }
+
+  @Test
+  public void storeObject_returnsBeforeTheObjectIsPersisted() {
+    createStorageService();
+    blockWrites();
+    List<MetricSet> metricSets = metricSets();
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets);
+
+    List<MetricSet> loaded = storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+    assertThat(loaded).isSameAs(metricSets);
+    verify(delegate, never()).loadObject(anyString(), any(), anyString());
+
+    writesReleased.countDown();
+
+    verify(delegate, timeout(5000))
+        .storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets, null, true);
+  }
+
+  @Test
+  public void loadObject_fallsBackToTheDelegateOnceTheObjectIsPersisted() {
+    createStorageService();
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets());
+
+    verify(delegate, timeout(5000))
+        .storeObject(
+            eq(ACCOUNT), eq(ObjectType.METRIC_SET_LIST), eq("id-1"), any(), isNull(), eq(true));
+    awaitNoPendingWrites();
+
+    storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+
+    verify(delegate).loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+  }
+
+  @Test
+  public void storeObject_writesOtherObjectTypesSynchronously() {
+    createStorageService();
+    Object canaryConfig = new Object();
+
+    storageService.storeObject(ACCOUNT, ObjectType.CANARY_CONFIG, "id-1", canaryConfig);
+
+    verify(delegate)
+        .storeObject(ACCOUNT, ObjectType.CANARY_CONFIG, "id-1", canaryConfig, null, true);
+    assertThat(writeBehindQueue.getPending(ACCOUNT, ObjectType.CANARY_CONFIG, "id-1")).isNull();
+  }
+
+  @Test
+  public void storeObject_writesSynchronouslyOnceTooManyWritesArePending() {
+    configuration.setMaxPendingWrites(1);
+    createStorageService();
+    blockWrites();
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets());
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-2", metricSets());
+
+    assertThat(writeBehindQueue.getPending(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1"))
+        .isNotNull();
+    assertThat(writeBehindQueue.getPending(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-2")).isNull();
+  }
+
+  @Test
+  public void failedWritesAreRetried() {
+    configuration.setAttempts(3);
+    configuration.setBackoffPeriod(Duration.ZERO);
+    createStorageService();
+    doThrow(new IllegalStateException("unavailable"))
+        .doNothing()
+        .when(delegate)
+        .storeObject(anyString(), any(), anyString(), any(), any(), anyBoolean());
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1", metricSets());
+
+    verify(delegate, timeout(5000).times(2))
+        .storeObject(anyString(), any(), anyString(), any(), any(), anyBoolean());
+    awaitNoPendingWrites();
+    verify(delegate, times(2))
+        .storeObject(anyString(), any(), anyString(), any(), any(), anyBoolean());
+  }
+
+  @Test
+  public void writesThatRunOutOfAttemptsAreReportedInsteadOfMissing() {
+    configuration.setAttempts(2);
+    configuration.setBackoffPeriod(Duration.ZERO);
+    createStorageService();
+    doThrow(new IllegalStateException("unavailable"))
+        .when(delegate)
+        .storeObject(anyString(), any(), anyString(), any(), any(), anyBoolean());
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets());
+
+    verify(delegate, timeout(5000).times(2))
+        .storeObject(anyString(), any(), anyString(), any(), any(), anyBoolean());
+    awaitNoPendingWrites();
+
+    assertThatThrownBy(() -> storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1"))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("Failed to persist metrics id-1 after 2 attempts");
+    assertThatThrownBy(
+            () ->
+                storageService.loadObjects(
+                    ACCOUNT, ObjectType.METRIC_SET_LIST, Collections.singletonList("id-1")))
+        .isInstanceOf(IllegalStateException.class);
+    verify(delegate, never()).loadObject(anyString(), any(), anyString());
+  }
+
+  private void createStorageService() {
+    writeBehindQueue = new WriteBehindQueue(configuration, new DefaultRegistry());
+    storageService = new WriteBehindStorageService(delegate, writeBehindQueue);
+  }
+
+  private void blockWrites() {
+    doAnswer(
+            invocation -> {
+              writesReleased.await();
+              return null;
+            })
+        .when(delegate)
+        .storeObject(anyString(), any(), anyString(), any(), any(), anyBoolean());
+  }
+
+  private void awaitNoPendingWrites() {
+    for (int i = 0; i < 500; i++) {
+      if (writeBehindQueue.getPending(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1") == null
+          && writeBehindQueue.getPending(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1")
+              == null) {
+        return;
+      }
+
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    throw new AssertionError("Writes are still pending");
+  }
+
+  private static List<MetricSet> metricSets() {
+    return Collections.singletonList(MetricSet.builder().name("metric").build());
+  }
+}
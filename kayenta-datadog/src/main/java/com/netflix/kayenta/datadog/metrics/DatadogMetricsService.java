@@ -101,6 +101,21 @@ public class DatadogMetricsService implements MetricsService {
       CanaryMetricConfig canaryMetricConfig,
       CanaryScope canaryScope)
       throws IOException {
+    return batchQueryMetrics(
+        accountName, canaryConfig, Collections.singletonList(canaryMetricConfig), canaryScope);
+  }
+
+  /**
+   * Datadog accepts several comma-separated queries in one request, and tags every returned series
+   * with the index of the query that produced it.
+   */
+  @Override
+  public List<MetricSet> batchQueryMetrics(
+      String accountName,
+      CanaryConfig canaryConfig,
+      List<CanaryMetricConfig> canaryMetricConfigs,
+      CanaryScope canaryScope)
+      throws IOException {
     DatadogNamedAccountCredentials accountCredentials =
         accountCredentialsRepository.getRequiredOne(accountName);
 
@@ -115,21 +130,50 @@ public class DatadogMetricsService implements MetricsService {
       throw new IllegalArgumentException("End time is required.");
     }
 
-    String query = buildQuery(accountName, canaryConfig, canaryMetricConfig, canaryScope);
+    List<String> queries =
+        canaryMetricConfigs.stream()
+            .map(
+                canaryMetricConfig ->
+                    buildQuery(accountName, canaryConfig, canaryMetricConfig, canaryScope))
+            .collect(Collectors.toList());
     DatadogTimeSeries timeSeries =
         remoteService.getTimeSeries(
             credentials.getApiKey(),
             credentials.getApplicationKey(),
             (int) canaryScope.getStart().getEpochSecond(),
             (int) canaryScope.getEnd().getEpochSecond(),
-            query);
+            String.join(",", queries));
 
+    Map<Integer, List<DatadogTimeSeries.DatadogSeriesEntry>> seriesByQueryIndex =
+        timeSeries.getSeries().stream()
+            .collect(
+                Collectors.groupingBy(
+                    series -> series.getQueryIndex() != null ? series.getQueryIndex() : 0));
+    List<MetricSet> ret = new ArrayList<MetricSet>();
+
+    for (int index = 0; index < canaryMetricConfigs.size(); index++) {
+      ret.addAll(
+          toMetricSets(
+              canaryMetricConfigs.get(index).getName(),
+              seriesByQueryIndex.getOrDefault(index, Collections.emptyList()),
+              queries.get(index),
+              canaryScope));
+    }
+
+    return ret;
+  }
+
+  private static List<MetricSet> toMetricSets(
+      String metricName,
+      List<DatadogTimeSeries.DatadogSeriesEntry> seriesList,
+      String query,
+      CanaryScope canaryScope) {
     List<MetricSet> ret = new ArrayList<MetricSet>();
 
-    for (DatadogTimeSeries.DatadogSeriesEntry series : timeSeries.getSeries()) {
+    for (DatadogTimeSeries.DatadogSeriesEntry series : seriesList) {
       ret.add(
           MetricSet.builder()
-              .name(canaryMetricConfig.getName())
+              .name(metricName)
               .startTimeMillis(series.getStart())
               .startTimeIso(Instant.ofEpochMilli(series.getStart()).toString())
               .endTimeMillis(series.getEnd())
@@ -144,7 +188,7 @@ public class DatadogMetricsService implements MetricsService {
       // Add placeholder metric set.
       ret.add(
           MetricSet.builder()
-              .name(canaryMetricConfig.getName())
+              .name(metricName)
               .startTimeMillis(canaryScope.getStart().toEpochMilli())
               .startTimeIso(canaryScope.getStart().toString())
               .endTimeMillis(canaryScope.getEnd().toEpochMilli())
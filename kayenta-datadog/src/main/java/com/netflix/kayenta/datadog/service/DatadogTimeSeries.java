@@ -17,6 +17,7 @@
 package com.netflix.kayenta.datadog.service;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Stream;
@@ -31,6 +32,12 @@ public class DatadogTimeSeries {
   @Data
   public static class DatadogSeriesEntry {
     private String scope;
+
+    // Index of the query that produced this series when several comma-separated queries are
+    // issued in a single request.
+    @JsonProperty("query_index")
+    private Integer queryIndex;
+
     private Long start;
     private Long interval;
     private Long end;
@@ -20,10 +20,18 @@ import com.netflix.kayenta.canary.CanaryConfig
 import com.netflix.kayenta.canary.CanaryMetricConfig
 import com.netflix.kayenta.canary.providers.metrics.DatadogCanaryMetricSetQueryConfig
 import com.netflix.kayenta.datadog.canary.DatadogCanaryScope
+import com.netflix.kayenta.datadog.security.DatadogCredentials
+import com.netflix.kayenta.datadog.security.DatadogNamedAccountCredentials
+import com.netflix.kayenta.datadog.service.DatadogRemoteService
+import com.netflix.kayenta.datadog.service.DatadogTimeSeries
+import com.netflix.kayenta.metrics.MetricSet
+import com.netflix.kayenta.security.AccountCredentialsRepository
 import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.time.Instant
+
 class DatadogMetricsServiceSpec extends Specification {
 
   @Shared
@@ -60,4 +68,62 @@ class DatadogMetricsServiceSpec extends Specification {
     "sum:app.errors"   | null                                                     | "tag:some-tag" | null                || 'sum:app.errors{tag:some-tag}'
     null               | 'sum:app.errors{${scope}}/sum:app.requests{${scope}}'    | "tag:some-tag" | null                || 'sum:app.errors{tag:some-tag}/sum:app.requests{tag:some-tag}'
   }
+
+  void "Batched query results are split back to their metric by query index"() {
+    given:
+    DatadogRemoteService datadogRemoteService = Mock(DatadogRemoteService)
+    AccountCredentialsRepository accountCredentialsRepository = Stub(AccountCredentialsRepository) {
+      getRequiredOne("some-account") >> DatadogNamedAccountCredentials.builder()
+        .name("some-account")
+        .credentials(DatadogCredentials.builder().apiKey("api-key").applicationKey("app-key").build())
+        .datadogRemoteService(datadogRemoteService)
+        .build()
+    }
+    DatadogMetricsService batchingDatadogMetricsService =
+      DatadogMetricsService.builder()
+        .accountCredentialsRepository(accountCredentialsRepository)
+        .build()
+    List<CanaryMetricConfig> canaryMetricConfigs = ["errors", "requests", "latency"].collect { name ->
+      CanaryMetricConfig.builder()
+        .name(name)
+        .query(DatadogCanaryMetricSetQueryConfig.builder().metricName("sum:app." + name).build())
+        .build()
+    }
+    CanaryConfig canaryConfig = CanaryConfig.builder().metrics(canaryMetricConfigs).build()
+    DatadogCanaryScope datadogCanaryScope =
+      new DatadogCanaryScope()
+        .setScope("tag:some-tag")
+        .setStart(Instant.EPOCH)
+        .setEnd(Instant.EPOCH.plusSeconds(120))
+        .setStep(60L)
+
+    when:
+    List<MetricSet> metricSets =
+      batchingDatadogMetricsService.batchQueryMetrics("some-account", canaryConfig, canaryMetricConfigs, datadogCanaryScope)
+
+    then:
+    1 * datadogRemoteService.getTimeSeries("api-key", "app-key", 0, 120,
+      "sum:app.errors{tag:some-tag},sum:app.requests{tag:some-tag},sum:app.latency{tag:some-tag}") >>
+      new DatadogTimeSeries(series: [series(1, 2), series(0, 1), series(1, 3)])
+    0 * datadogRemoteService._
+
+    metricSets*.name == ["errors", "requests", "requests", "latency"]
+    metricSets[0].values == [1d, 1d, 1d]
+    metricSets[0].attributes.query == "sum:app.errors{tag:some-tag}"
+    metricSets[1].values == [2d, 2d, 2d]
+    metricSets[2].values == [3d, 3d, 3d]
+    metricSets[2].attributes.query == "sum:app.requests{tag:some-tag}"
+    // A metric that matched nothing still gets a placeholder.
+    metricSets[3].values.isEmpty()
+    metricSets[3].attributes.query == "sum:app.latency{tag:some-tag}"
+  }
+
+  private static DatadogTimeSeries.DatadogSeriesEntry series(int queryIndex, double value) {
+    new DatadogTimeSeries.DatadogSeriesEntry(
+      queryIndex: queryIndex,
+      start: 0L,
+      interval: 60L,
+      end: 120_000L,
+      pointlist: [[0L, value], [60_000L, value], [120_000L, value]])
+  }
 }
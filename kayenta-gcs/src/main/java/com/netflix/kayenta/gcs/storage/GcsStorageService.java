@@ -32,9 +32,12 @@ import com.netflix.kayenta.google.security.GoogleNamedAccountCredentials;
 import com.netflix.kayenta.index.CanaryConfigIndex;
 import com.netflix.kayenta.index.config.CanaryConfigIndexAction;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.storage.ConcurrentObjectLoader;
 import com.netflix.kayenta.storage.ObjectType;
+import com.netflix.kayenta.storage.StorageCodec;
 import com.netflix.kayenta.storage.StorageService;
 import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.time.Instant;
@@ -59,6 +62,10 @@ public class GcsStorageService implements StorageService {
 
   @Autowired private CanaryConfigIndex canaryConfigIndex;
 
+  @Autowired(required = false) private ConcurrentObjectLoader concurrentObjectLoader;
+
+  @Autowired(required = false) private StorageCodec storageCodec;
+
   @Override
   public boolean servicesAccount(String accountName) {
     return accountNames.contains(accountName);
@@ -145,6 +152,17 @@ public class GcsStorageService implements StorageService {
     }
   }
 
+  @Override
+  public <T> Map<String, T> loadObjects(
+      String accountName, ObjectType objectType, List<String> objectKeys) {
+    if (concurrentObjectLoader == null) {
+      return StorageService.super.loadObjects(accountName, objectType, objectKeys);
+    }
+
+    return concurrentObjectLoader.loadObjects(
+        objectType, objectKeys, objectKey -> loadObject(accountName, objectType, objectKey));
+  }
+
   private StorageObject resolveSingularItem(
       ObjectType objectType,
       String objectKey,
@@ -181,9 +199,17 @@ public class GcsStorageService implements StorageService {
     ByteArrayOutputStream output = new java.io.ByteArrayOutputStream();
     Storage.Objects.Get getter = storage.objects().get(object.getBucket(), object.getName());
     getter.executeMediaAndDownloadTo(output);
-    String json = output.toString("UTF8");
+    String encoding =
+        object.getMetadata() != null
+            ? object.getMetadata().get(StorageCodec.ENCODING_METADATA_KEY)
+            : null;
+
+    return getStorageCodec()
+        .decode(encoding, new ByteArrayInputStream(output.toByteArray()), typeReference);
+  }
 
-    return kayentaObjectMapper.readValue(json, typeReference);
+  private StorageCodec getStorageCodec() {
+    return storageCodec != null ? storageCodec : StorageCodec.json(kayentaObjectMapper);
   }
 
   @Override
@@ -247,9 +273,16 @@ public class GcsStorageService implements StorageService {
     }
 
     try {
-      byte[] bytes = kayentaObjectMapper.writeValueAsBytes(obj);
-      StorageObject object = new StorageObject().setBucket(bucketName).setName(path);
-      ByteArrayContent content = new ByteArrayContent("application/json", bytes);
+      StorageCodec.EncodedObject encodedObject = getStorageCodec().encode(objectType, obj);
+      StorageObject object =
+          new StorageObject()
+              .setBucket(bucketName)
+              .setName(path)
+              .setMetadata(
+                  ImmutableMap.of(
+                      StorageCodec.ENCODING_METADATA_KEY, encodedObject.getEncoding()));
+      ByteArrayContent content =
+          new ByteArrayContent(encodedObject.getContentType(), encodedObject.getBytes());
 
       storage.objects().insert(bucketName, object, content).execute();
 
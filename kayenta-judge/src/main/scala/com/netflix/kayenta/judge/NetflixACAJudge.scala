@@ -17,6 +17,7 @@
 package com.netflix.kayenta.judge
 
 import java.util
+import java.util.concurrent.{Callable, ForkJoinPool}
 
 import com.netflix.kayenta.canary.results._
 import com.netflix.kayenta.canary.{CanaryClassifierThresholdsConfig, CanaryConfig, CanaryJudge}
@@ -29,7 +30,7 @@ import com.netflix.kayenta.judge.stats.DescriptiveStatistics
 import com.netflix.kayenta.judge.utils.MapUtils
 import com.netflix.kayenta.metrics.MetricSetPair
 import com.typesafe.scalalogging.StrictLogging
-import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.{Autowired, Qualifier}
 import org.springframework.stereotype.Component
 
 import scala.collection.JavaConverters._
@@ -42,6 +43,10 @@ class NetflixACAJudge extends CanaryJudge with StrictLogging {
   @Autowired
   var netflixJudgeConfigurationProperties: NetflixJudgeConfigurationProperties = null
 
+  @Autowired(required = false)
+  @Qualifier("netflixJudgeClassificationPool")
+  var classificationPool: ForkJoinPool = null
+
   private final val judgeName = "NetflixACAJudge-v1.0"
 
   override def isVisible: Boolean = true
@@ -52,9 +57,20 @@ class NetflixACAJudge extends CanaryJudge with StrictLogging {
                      metricSetPairList: util.List[MetricSetPair]): CanaryJudgeResult = {
 
     //Metric Classification
-    val metricResults = metricSetPairList.asScala.toList.map { metricPair =>
-      classifyMetric(canaryConfig, metricPair)
-    }
+    val metricPairs = metricSetPairList.asScala.toList
+    val metricResults =
+      if (classificationPool == null || classificationPool.getParallelism <= 1 || metricPairs.size <= 1) {
+        metricPairs.map { metricPair =>
+          classifyMetric(canaryConfig, metricPair)
+        }
+      } else {
+        //Joining the tasks in submission order keeps the results in the order of the metric pairs
+        metricPairs.map { metricPair =>
+          classificationPool.submit(new Callable[CanaryAnalysisResult] {
+            override def call(): CanaryAnalysisResult = classifyMetric(canaryConfig, metricPair)
+          })
+        }.map(_.join())
+      }
 
     val scoringHelper = new ScoringHelper(judgeName)
     scoringHelper.score(canaryConfig, scoreThresholds, metricResults)
@@ -95,8 +111,8 @@ class NetflixACAJudge extends CanaryJudge with StrictLogging {
       case None => throw new IllegalArgumentException(s"Could not find metric config for ${metric.getName}")
     }
 
-    val experimentValues = metric.getValues.get("experiment").asScala.map(_.toDouble).toArray
-    val controlValues = metric.getValues.get("control").asScala.map(_.toDouble).toArray
+    val experimentValues = metric.getValues.get("experiment").toDoubleArray
+    val controlValues = metric.getValues.get("control").toDoubleArray
 
     val experiment = Metric(metric.getName, experimentValues, label="Canary")
     val control = Metric(metric.getName, controlValues, label="Baseline")
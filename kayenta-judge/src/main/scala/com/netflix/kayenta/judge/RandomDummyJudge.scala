@@ -46,8 +46,8 @@ class RandomDummyJudge extends CanaryJudge {
         case None => throw new IllegalArgumentException(s"Could not find metric config for ${metricPair.getName}")
       }
 
-      val experimentValues = metricPair.getValues.get("experiment").asScala.map(_.toDouble).toArray
-      val controlValues = metricPair.getValues.get("control").asScala.map(_.toDouble).toArray
+      val experimentValues = metricPair.getValues.get("experiment").toDoubleArray
+      val controlValues = metricPair.getValues.get("control").toDoubleArray
 
       val experimentMetric = Metric(metricPair.getName, experimentValues, label="Canary")
       val controlMetric = Metric(metricPair.getName, controlValues, label="Baseline")
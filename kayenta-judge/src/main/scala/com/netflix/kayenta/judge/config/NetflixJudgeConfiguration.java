@@ -16,6 +16,7 @@
 
 package com.netflix.kayenta.judge.config;
 
+import java.util.concurrent.ForkJoinPool;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
@@ -30,4 +31,11 @@ public class NetflixJudgeConfiguration {
   NetflixJudgeConfigurationProperties netflixJudgeConfigurationProperties() {
     return new NetflixJudgeConfigurationProperties();
   }
+
+  @Bean(destroyMethod = "shutdown")
+  ForkJoinPool netflixJudgeClassificationPool(
+      NetflixJudgeConfigurationProperties netflixJudgeConfigurationProperties) {
+    return new ForkJoinPool(
+        Math.max(1, netflixJudgeConfigurationProperties.getClassificationParallelism()));
+  }
 }
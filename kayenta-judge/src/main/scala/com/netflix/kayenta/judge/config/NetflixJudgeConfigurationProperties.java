@@ -21,6 +21,10 @@ public class NetflixJudgeConfigurationProperties {
   private double tolerance = 0.25;
   private double confLevel = 0.98;
 
+  // Number of metric pairs the NetflixACAJudge classifies concurrently. A value of 1 classifies
+  // them one after the other on the calling thread.
+  private int classificationParallelism = Runtime.getRuntime().availableProcessors();
+
   public void setTolerance(double tolerance) {
     this.tolerance = tolerance;
   }
@@ -36,4 +40,12 @@ public class NetflixJudgeConfigurationProperties {
   public double getConfLevel() {
     return confLevel;
   }
+
+  public void setClassificationParallelism(int classificationParallelism) {
+    this.classificationParallelism = classificationParallelism;
+  }
+
+  public int getClassificationParallelism() {
+    return classificationParallelism;
+  }
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.judge
+
+import java.util.concurrent.ForkJoinPool
+
+import com.netflix.kayenta.canary.{CanaryClassifierConfig, CanaryClassifierThresholdsConfig, CanaryConfig, CanaryMetricConfig}
+import com.netflix.kayenta.metrics.{DoubleSeries, MetricSetPair}
+import org.scalatest.FunSuite
+
+import scala.collection.JavaConverters._
+import scala.util.Random
+
+class NetflixACAJudgeSuite extends FunSuite {
+
+  private val parallelism = 4
+  private val metricCount = 4 * parallelism + 1
+
+  private val metricNames = (0 until metricCount).map(i => s"metric-$i")
+
+  private val canaryConfig = CanaryConfig.builder()
+    .metrics(metricNames.map(name => CanaryMetricConfig.builder().name(name).group("test-group").build()).asJava)
+    .classifier(CanaryClassifierConfig.builder().build())
+    .build()
+
+  private val scoreThresholds = CanaryClassifierThresholdsConfig.builder().pass(95.0).marginal(75.0).build()
+
+  //Shift every third experiment up and every third down, so the metrics are not all classified alike
+  private val metricSetPairs = metricNames.zipWithIndex.map { case (name, i) =>
+    val shift = (i % 3 - 1) * 10.0
+    MetricSetPair.builder()
+      .name(name)
+      .value("control", series(100.0, seed = 2 * i))
+      .value("experiment", series(100.0 + shift, seed = 2 * i + 1))
+      .build()
+  }.asJava
+
+  private def series(mean: Double, seed: Long): DoubleSeries = {
+    val random = new Random(seed)
+    DoubleSeries.of(Array.fill(120)(mean + random.nextGaussian()))
+  }
+
+  test("Parallel classification keeps the metric order and matches serial classification") {
+    val serialJudge = new NetflixACAJudge()
+    val parallelJudge = new NetflixACAJudge()
+    val pool = new ForkJoinPool(parallelism)
+    parallelJudge.classificationPool = pool
+
+    try {
+      val serialResults = serialJudge.judge(canaryConfig, scoreThresholds, metricSetPairs).getResults.asScala
+      val parallelResults = parallelJudge.judge(canaryConfig, scoreThresholds, metricSetPairs).getResults.asScala
+
+      assert(parallelResults.map(_.getName) == metricNames)
+      assert(parallelResults.map(_.getClassification) == serialResults.map(_.getClassification))
+      assert(parallelResults.map(_.getResultMetadata) == serialResults.map(_.getResultMetadata))
+      assert(serialResults.map(_.getClassification).distinct.size > 1)
+    } finally {
+      pool.shutdown()
+    }
+  }
+}
@@ -18,7 +18,6 @@ package com.netflix.kayenta.mannwhitney
 
 import org.apache.commons.math3.analysis.UnivariateFunction
 import org.apache.commons.math3.distribution.NormalDistribution
-import org.apache.commons.math3.stat.ranking._
 
 case class MannWhitneyParams(mu: Double, confidenceLevel: Double, controlData: Array[Double], experimentData: Array[Double])
 case class MannWhitneyResult(confidenceInterval: Array[Double], estimate: Double)
@@ -56,20 +55,62 @@ class MannWhitney {
   }
 
   def wilcoxonDiff(mu: Double, quantile: Double, x: Array[Double], y: Array[Double]): Double = {
+    wilcoxonDiffSorted(mu, quantile, sortedCopy(x), sortedCopy(y))
+  }
+
+  /**
+    * Returns a sorted copy of the sample in which NaNs rank above every other value, like NaNStrategy.MAXIMAL does.
+    */
+  private def sortedCopy(values: Array[Double]): Array[Double] = {
+    val sorted = values.map(v => if (v.isNaN) Double.PositiveInfinity else v)
+    java.util.Arrays.sort(sorted)
+    sorted
+  }
+
+  /**
+    * Same as wilcoxonDiff, for samples that have been sorted with sortedCopy.
+    *
+    * Shifting x by mu keeps it sorted, so the ranks of the combined sample (with ties sharing their average rank)
+    * are found by merging both samples once. This avoids re-sorting and allocating on every evaluation of the
+    * root searches below, and yields exactly the same rank sums and tie counts as NaturalRanking.
+    */
+  private def wilcoxonDiffSorted(mu: Double, quantile: Double, x: Array[Double], y: Array[Double]): Double = {
     val xLen = x.length.toDouble
     val yLen = y.length.toDouble
 
-    val dr = new NaturalRanking(NaNStrategy.MAXIMAL, TiesStrategy.AVERAGE).rank(x.map(_ - mu) ++ y)
-    val ntiesCi = dr.groupBy(identity).mapValues(_.length)
-    val dz = {
-      for (e <- x.indices) yield dr(e)
-    }.sum - xLen * (xLen + 1) / 2 - xLen * yLen / 2
+    var i = 0
+    var j = 0
+    var rank = 0
+    var xRankSum = 0.0
+    var tiesCorrection = 0.0
+    while (i < x.length || j < y.length) {
+      val value =
+        if (j >= y.length || (i < x.length && java.lang.Double.compare(x(i) - mu, y(j)) <= 0)) x(i) - mu
+        else y(j)
+      var xTies = 0
+      var yTies = 0
+      while (i < x.length && java.lang.Double.compare(x(i) - mu, value) == 0) {
+        i += 1
+        xTies += 1
+      }
+      while (j < y.length && java.lang.Double.compare(y(j), value) == 0) {
+        j += 1
+        yTies += 1
+      }
+      val ties = (xTies + yTies).toDouble
+      // Tied values share the average of the ranks rank + 1 to rank + ties
+      xRankSum += xTies * (rank + (ties + 1) / 2)
+      tiesCorrection += Math.pow(ties, 3) - ties
+      rank += xTies + yTies
+    }
+
+    val dz = xRankSum - xLen * (xLen + 1) / 2 - xLen * yLen / 2
     val correctionCi = (if (dz.signum.isNaN) 0 else dz.signum) * 0.5
     val sigmaCi = Math.sqrt(
       (xLen * yLen / 12) *
         (
           (xLen + yLen + 1)
-            - ntiesCi.mapValues(v => Math.pow(v, 3) - v).values.sum
+            - tiesCorrection
             / ((xLen + yLen) * (xLen + yLen - 1))
           )
     )
@@ -86,13 +127,17 @@ class MannWhitney {
     val muMin: Double = x.min - y.max
     val muMax: Double = x.max - y.min
 
+    // Sort both samples once for all the evaluations of the root searches
+    val xSorted = sortedCopy(x)
+    val ySorted = sortedCopy(y)
+
     val wilcoxonDiffWrapper = (zq: Double) => new UnivariateFunction {
-      override def value(input: Double): Double = wilcoxonDiff(input, zq, x, y)
+      override def value(input: Double): Double = wilcoxonDiffSorted(input, zq, xSorted, ySorted)
     }
 
     def findRoot(zq: Double): Double = {
-      val fLower = wilcoxonDiff(muMin, zq, x, y)
-      val fUpper = wilcoxonDiff(muMax, zq, x, y)
+      val fLower = wilcoxonDiffSorted(muMin, zq, xSorted, ySorted)
+      val fUpper = wilcoxonDiffSorted(muMax, zq, xSorted, ySorted)
       if (fLower <= 0) muMin
       else if (fUpper >= 0) muMax
       else BrentSolver.solve(muMin, muMax, fLower, fUpper, wilcoxonDiffWrapper(zq))
@@ -100,8 +145,8 @@ class MannWhitney {
 
     val zQuant = new NormalDistribution(0,1).inverseCumulativeProbability(alpha/2)
     val confidenceInterval: Array[Double] = Array(findRoot(-zQuant), findRoot(zQuant))
-    val fLower = wilcoxonDiff(muMin, 0, x, y)
-    val fUpper = wilcoxonDiff(muMax, 0, x, y)
+    val fLower = wilcoxonDiffSorted(muMin, 0, xSorted, ySorted)
+    val fUpper = wilcoxonDiffSorted(muMax, 0, xSorted, ySorted)
 
     val estimate = BrentSolver.solve(muMin, muMax, fLower, fUpper, wilcoxonDiffWrapper(0))
     (confidenceInterval, estimate)
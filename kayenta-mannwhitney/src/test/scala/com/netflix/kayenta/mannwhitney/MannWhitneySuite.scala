@@ -19,6 +19,7 @@ package com.netflix.kayenta.mannwhitney
 import junit.framework.TestCase.assertEquals
 import org.apache.commons.math3.analysis.UnivariateFunction
 import org.apache.commons.math3.distribution.NormalDistribution
+import org.apache.commons.math3.stat.ranking.{NaNStrategy, NaturalRanking, TiesStrategy}
 import org.scalatest.FunSuite
 
 
@@ -1073,4 +1074,26 @@ class MannWhitneySuite extends FunSuite {
     assertEquals(rCiu, ciUpper, E)
     assertEquals(rEst, estimate, E)
   }
+
+  test("Wilcoxon Diff Function: Ties match NaturalRanking"){
+    val x = Array(1.0, 2.0, 2.0, 3.0, 5.0, 5.0, 5.0, 8.0)
+    val y = Array(0.0, 1.0, 2.0, 2.0, 4.0, 5.0, 9.0)
+
+    def referenceDiff(mu: Double, quantile: Double): Double = {
+      val ranks = new NaturalRanking(NaNStrategy.MAXIMAL, TiesStrategy.AVERAGE).rank(x.map(_ - mu) ++ y)
+      val ties = ranks.groupBy(identity).mapValues(_.length.toDouble)
+      val xLen = x.length.toDouble
+      val yLen = y.length.toDouble
+      val dz = ranks.take(x.length).sum - xLen * (xLen + 1) / 2 - xLen * yLen / 2
+      val correction = Math.signum(dz) * 0.5
+      val sigma = Math.sqrt((xLen * yLen / 12) *
+        ((xLen + yLen + 1) - ties.values.map(v => Math.pow(v, 3) - v).sum / ((xLen + yLen) * (xLen + yLen - 1))))
+      (dz - correction) / sigma - quantile
+    }
+
+    val mw = new MannWhitney()
+    for (mu <- Seq(-3.0, -1.0, 0.0, 0.5, 1.0, 3.0); quantile <- Seq(-2.0, 0.0, 2.0)) {
+      assertEquals(referenceDiff(mu, quantile), mw.wilcoxonDiff(mu, quantile, x, y), E)
+    }
+  }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.filesystem.config;
+
+import com.netflix.kayenta.filesystem.security.FilesystemAccountCredentials;
+import com.netflix.kayenta.filesystem.security.FilesystemNamedAccountCredentials;
+import com.netflix.kayenta.filesystem.storage.FilesystemStorageService;
+import com.netflix.kayenta.security.AccountCredentials;
+import com.netflix.kayenta.security.AccountCredentialsRepository;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+@Configuration
+@ConditionalOnProperty("kayenta.filesystem.enabled")
+@ComponentScan({"com.netflix.kayenta.filesystem"})
+@Slf4j
+public class FilesystemConfiguration {
+
+  @Bean
+  @ConfigurationProperties("kayenta.filesystem")
+  FilesystemConfigurationProperties filesystemConfigurationProperties() {
+    return new FilesystemConfigurationProperties();
+  }
+
+  @Bean
+  FilesystemStorageService filesystemStorageService(
+      FilesystemConfigurationProperties filesystemConfigurationProperties,
+      AccountCredentialsRepository accountCredentialsRepository) {
+    FilesystemStorageService.FilesystemStorageServiceBuilder filesystemStorageServiceBuilder =
+        FilesystemStorageService.builder()
+            .filesystemConfigurationProperties(filesystemConfigurationProperties);
+
+    for (FilesystemManagedAccount filesystemManagedAccount :
+        filesystemConfigurationProperties.getAccounts()) {
+      String name = filesystemManagedAccount.getName();
+      String rootDirectory = filesystemManagedAccount.getRootDirectory();
+      List<AccountCredentials.Type> supportedTypes = filesystemManagedAccount.getSupportedTypes();
+
+      if (StringUtils.isEmpty(rootDirectory)) {
+        throw new IllegalArgumentException(
+            "Filesystem account " + name + " must specify a rootDirectory.");
+      }
+
+      log.info(
+          "Registering Filesystem account {} rooted at {} with supported types {}.",
+          name,
+          rootDirectory,
+          supportedTypes);
+
+      FilesystemNamedAccountCredentials.FilesystemNamedAccountCredentialsBuilder
+          filesystemNamedAccountCredentialsBuilder =
+              FilesystemNamedAccountCredentials.builder()
+                  .name(name)
+                  .rootDirectory(rootDirectory)
+                  .credentials(FilesystemAccountCredentials.builder().build());
+
+      if (!CollectionUtils.isEmpty(supportedTypes)) {
+        filesystemNamedAccountCredentialsBuilder.supportedTypes(supportedTypes);
+      }
+
+      accountCredentialsRepository.save(name, filesystemNamedAccountCredentialsBuilder.build());
+      filesystemStorageServiceBuilder.accountName(name);
+    }
+
+    FilesystemStorageService filesystemStorageService = filesystemStorageServiceBuilder.build();
+
+    log.info(
+        "Populated FilesystemStorageService with {} filesystem accounts.",
+        filesystemStorageService.getAccountNames().size());
+
+    return filesystemStorageService;
+  }
+}
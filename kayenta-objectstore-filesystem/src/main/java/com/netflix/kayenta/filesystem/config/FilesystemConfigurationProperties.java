@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.filesystem.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+public class FilesystemConfigurationProperties {
+
+  @Getter private List<FilesystemManagedAccount> accounts = new ArrayList<>();
+
+  /**
+   * Objects at least this large are read through a memory-mapped buffer rather than copied through
+   * a stream. In practice this only applies to metric set pair lists.
+   */
+  @Getter @Setter private long memoryMapThresholdBytes = 1024 * 1024;
+
+  /**
+   * The index journal of an object type is rewritten as a snapshot once it holds more than this
+   * many records and more than twice as many records as there are objects.
+   */
+  @Getter @Setter private int indexCompactionThreshold = 1000;
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.filesystem.security;
+
+import com.netflix.kayenta.security.AccountCredentials;
+import java.util.List;
+import javax.validation.constraints.NotNull;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Singular;
+
+@Builder
+@Data
+public class FilesystemNamedAccountCredentials
+    implements AccountCredentials<FilesystemAccountCredentials> {
+
+  @NotNull private String name;
+
+  @NotNull @Singular private List<Type> supportedTypes;
+
+  @NotNull private FilesystemAccountCredentials credentials;
+
+  @NotNull private String rootDirectory;
+
+  @Override
+  public String getType() {
+    return "filesystem";
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.filesystem.storage;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The persistent index of the objects of one type in a filesystem account. Entries are held in
+ * memory and every change is appended to a journal, so listing objects never walks the directory
+ * tree. The journal is replaced by a snapshot of the live entries once it has grown well past
+ * their number.
+ */
+@Slf4j
+class FilesystemObjectIndex {
+
+  private final Path journal;
+  private final ObjectMapper objectMapper;
+  private final int compactionThreshold;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  private FileChannel journalChannel;
+  private int journalRecords;
+
+  private FilesystemObjectIndex(Path journal, ObjectMapper objectMapper, int compactionThreshold) {
+    this.journal = journal;
+    this.objectMapper = objectMapper;
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /** Replays an existing journal. */
+  static FilesystemObjectIndex load(
+      Path journal, ObjectMapper objectMapper, int compactionThreshold) throws IOException {
+    FilesystemObjectIndex index =
+        new FilesystemObjectIndex(journal, objectMapper, compactionThreshold);
+
+    try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+
+        Entry entry;
+
+        try {
+          entry = objectMapper.readValue(line, Entry.class);
+        } catch (JsonProcessingException e) {
+          // A crash can only tear the last record. Its object is left unindexed, as if the write
+          // had failed.
+          log.warn("Skipping unreadable record in index journal {}.", journal);
+          continue;
+        }
+
+        if (entry.isRemoval()) {
+          index.entries.remove(entry.getId());
+        } else {
+          index.entries.put(entry.getId(), entry);
+        }
+      }
+    }
+
+    index.compact();
+    return index;
+  }
+
+  /** Starts a new journal holding the given entries, replacing any existing one. */
+  static FilesystemObjectIndex create(
+      Path journal, ObjectMapper objectMapper, int compactionThreshold, Collection<Entry> entries)
+      throws IOException {
+    FilesystemObjectIndex index =
+        new FilesystemObjectIndex(journal, objectMapper, compactionThreshold);
+
+    for (Entry entry : entries) {
+      index.entries.put(entry.getId(), entry);
+    }
+
+    index.compact();
+    return index;
+  }
+
+  Entry get(String id) {
+    return entries.get(id);
+  }
+
+  Collection<Entry> getEntries() {
+    return Collections.unmodifiableCollection(entries.values());
+  }
+
+  /** Records the entry, returning the one it replaced or null if there was none. */
+  synchronized Entry put(Entry entry) throws IOException {
+    append(entry);
+    Entry previous = entries.put(entry.getId(), entry);
+    compactIfNeeded();
+    return previous;
+  }
+
+  /** Forgets the entry with the given id, returning it or null if there was none. */
+  synchronized Entry remove(String id) throws IOException {
+    if (!entries.containsKey(id)) {
+      return null;
+    }
+
+    append(new Entry(id, null, null, 0));
+    Entry previous = entries.remove(id);
+    compactIfNeeded();
+    return previous;
+  }
+
+  private void append(Entry entry) throws IOException {
+    // Every record is synced before the change is acknowledged: the index is only rebuilt from the
+    // object directories when the journal is missing altogether, so a record lost in a crash
+    // would leave its object unindexed for good.
+    ByteBuffer record =
+        ByteBuffer.wrap(
+            (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+
+    while (record.hasRemaining()) {
+      journalChannel.write(record);
+    }
+
+    journalChannel.force(false);
+    journalRecords++;
+  }
+
+  private void compactIfNeeded() throws IOException {
+    if (journalRecords > compactionThreshold && journalRecords > 2 * entries.size()) {
+      compact();
+    }
+  }
+
+  private synchronized void compact() throws IOException {
+    Files.createDirectories(journal.getParent());
+    Path snapshot =
+        Files.createTempFile(journal.getParent(), journal.getFileName().toString(), ".tmp");
+
+    try {
+      try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+        Writer snapshotWriter =
+            new BufferedWriter(
+                Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+
+        for (Entry entry : entries.values()) {
+          snapshotWriter.write(objectMapper.writeValueAsString(entry));
+          snapshotWriter.write('\n');
+        }
+
+        snapshotWriter.flush();
+        channel.force(true);
+      }
+
+      if (journalChannel != null) {
+        journalChannel.close();
+      }
+
+      Files.move(snapshot, journal, StandardCopyOption.ATOMIC_MOVE);
+      journalRecords = entries.size();
+    } finally {
+      Files.deleteIfExists(snapshot);
+      journalChannel =
+          FileChannel.open(
+              journal,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.APPEND);
+    }
+  }
+
+  /** An indexed object, or in the journal, the removal of one when it has no filename. */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  static class Entry {
+    private String id;
+
+    /** The name of the file in the object's directory that holds it. */
+    private String filename;
+
+    /** The canary config name, for canary configs. */
+    private String name;
+
+    private long updatedTimestamp;
+
+    boolean isRemoval() {
+      return filename == null;
+    }
+  }
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.filesystem.storage;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.netflix.kayenta.canary.CanaryConfig;
+import com.netflix.kayenta.filesystem.config.FilesystemConfigurationProperties;
+import com.netflix.kayenta.filesystem.security.FilesystemNamedAccountCredentials;
+import com.netflix.kayenta.index.CanaryConfigIndex;
+import com.netflix.kayenta.index.config.CanaryConfigIndexAction;
+import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.storage.ObjectType;
+import com.netflix.kayenta.storage.StorageCodec;
+import com.netflix.kayenta.storage.StorageService;
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.validation.constraints.NotNull;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.StringUtils;
+
+/**
+ * Stores objects on a local filesystem, each in its own directory at {@code
+ * <rootDirectory>/<group>/<objectKey>/}. Objects are written to a temporary file which is synced
+ * and then renamed into place, so readers never see a partially written object. Each object type
+ * has a persistent index under {@code <rootDirectory>/.index/}; it is rebuilt from the object
+ * directories if it is missing.
+ */
+@Builder
+@Slf4j
+public class FilesystemStorageService implements StorageService {
+
+  private static final String INDEX_DIRECTORY = ".index";
+  private static final String INDEX_JOURNAL_SUFFIX = ".journal";
+  private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+  @Autowired private ObjectMapper kayentaObjectMapper;
+
+  @NotNull @Singular @Getter private List<String> accountNames;
+
+  @Autowired private AccountCredentialsRepository accountCredentialsRepository;
+
+  @Autowired private CanaryConfigIndex canaryConfigIndex;
+
+  @Autowired(required = false) private StorageCodec storageCodec;
+
+  @NotNull private FilesystemConfigurationProperties filesystemConfigurationProperties;
+
+  // Keyed by the directory holding the objects of one type in one account.
+  @Builder.Default private Map<Path, FilesystemObjectIndex> indexes = new ConcurrentHashMap<>();
+
+  @Override
+  public boolean servicesAccount(String accountName) {
+    return accountNames.contains(accountName);
+  }
+
+  @Override
+  public <T> T loadObject(String accountName, ObjectType objectType, String objectKey)
+      throws IllegalArgumentException, NotFoundException {
+    FilesystemNamedAccountCredentials credentials =
+        accountCredentialsRepository.getRequiredOne(accountName);
+    Path objectDirectory = objectDirectory(credentials, objectType, objectKey);
+    FilesystemObjectIndex.Entry entry = getIndex(credentials, objectType).get(objectKey);
+
+    if (entry == null) {
+      throw new NotFoundException(
+          "No " + objectType.getGroup() + " object with key " + objectKey + " was found.");
+    }
+
+    Path path = objectDirectory.resolve(entry.getFilename());
+
+    try {
+      return read(path, objectType, encodingOf(objectType, entry.getFilename()));
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Could not find file " + path + ".");
+    } catch (IOException e) {
+      log.error("Failed to read file {}: {}", path, e);
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private <T> T read(Path path, ObjectType objectType, String encoding) throws IOException {
+    TypeReference<T> typeReference = (TypeReference<T>) objectType.getTypeReference();
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+
+      if (size >= filesystemConfigurationProperties.getMemoryMapThresholdBytes()
+          && size <= Integer.MAX_VALUE) {
+        // The mapping stays valid after the channel is closed, and is released with the buffer.
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        return getStorageCodec().decode(encoding, new ByteBufferInputStream(buffer), typeReference);
+      }
+
+      return getStorageCodec().decode(encoding, Channels.newInputStream(channel), typeReference);
+    }
+  }
+
+  private StorageCodec getStorageCodec() {
+    return storageCodec != null ? storageCodec : StorageCodec.json(kayentaObjectMapper);
+  }
+
+  @Override
+  public <T> void storeObject(
+      String accountName,
+      ObjectType objectType,
+      String objectKey,
+      T obj,
+      String filename,
+      boolean isAnUpdate) {
+    FilesystemNamedAccountCredentials credentials =
+        accountCredentialsRepository.getRequiredOne(accountName);
+    Path objectDirectory = objectDirectory(credentials, objectType, objectKey);
+    FilesystemObjectIndex index = getIndex(credentials, objectType);
+
+    long updatedTimestamp;
+    String canaryConfigName = null;
+    String correlationId = null;
+    String canaryConfigSummaryJson = null;
+
+    if (objectType == ObjectType.CANARY_CONFIG) {
+      updatedTimestamp = canaryConfigIndex.getRedisTime();
+
+      CanaryConfig canaryConfig = (CanaryConfig) obj;
+
+      checkForDuplicateCanaryConfig(canaryConfig, objectKey, credentials);
+
+      canaryConfigName = canaryConfig.getName();
+      correlationId = UUID.randomUUID().toString();
+
+      Map<String, Object> canaryConfigSummary =
+          new ImmutableMap.Builder<String, Object>()
+              .put("id", objectKey)
+              .put("name", canaryConfigName)
+              .put("updatedTimestamp", updatedTimestamp)
+              .put("updatedTimestampIso", Instant.ofEpochMilli(updatedTimestamp).toString())
+              .put("applications", canaryConfig.getApplications())
+              .build();
+
+      try {
+        canaryConfigSummaryJson = kayentaObjectMapper.writeValueAsString(canaryConfigSummary);
+      } catch (JsonProcessingException e) {
+        throw new IllegalArgumentException(
+            "Problem serializing canaryConfigSummary -> " + canaryConfigSummary, e);
+      }
+
+      canaryConfigIndex.startPendingUpdate(
+          credentials,
+          updatedTimestamp + "",
+          CanaryConfigIndexAction.UPDATE,
+          correlationId,
+          canaryConfigSummaryJson);
+    } else {
+      updatedTimestamp = System.currentTimeMillis();
+    }
+
+    try {
+      StorageCodec.EncodedObject encodedObject = getStorageCodec().encode(objectType, obj);
+      String dataFilename = dataFilename(objectType, encodedObject.getEncoding());
+
+      writeAtomically(objectDirectory, dataFilename, encodedObject.getBytes());
+
+      FilesystemObjectIndex.Entry previous =
+          index.put(
+              new FilesystemObjectIndex.Entry(
+                  objectKey, dataFilename, canaryConfigName, updatedTimestamp));
+
+      // The previous version was written with a different encoding.
+      if (previous != null && !previous.getFilename().equals(dataFilename)) {
+        Files.deleteIfExists(objectDirectory.resolve(previous.getFilename()));
+      }
+
+      if (correlationId != null) {
+        canaryConfigIndex.finishPendingUpdate(
+            credentials, CanaryConfigIndexAction.UPDATE, correlationId);
+      }
+    } catch (Exception e) {
+      log.error("Update failed on path {}: {}", objectDirectory, e);
+
+      if (correlationId != null) {
+        canaryConfigIndex.removeFailedPendingUpdate(
+            credentials,
+            updatedTimestamp + "",
+            CanaryConfigIndexAction.UPDATE,
+            correlationId,
+            canaryConfigSummaryJson);
+      }
+
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private static void writeAtomically(Path directory, String filename, byte[] bytes)
+      throws IOException {
+    Files.createDirectories(directory);
+    Path temporaryFile = Files.createTempFile(directory, filename, TEMPORARY_FILE_SUFFIX);
+
+    try {
+      try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+
+        channel.force(true);
+      }
+
+      Files.move(temporaryFile, directory.resolve(filename), StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  private void checkForDuplicateCanaryConfig(
+      CanaryConfig canaryConfig,
+      String canaryConfigId,
+      FilesystemNamedAccountCredentials credentials) {
+    String canaryConfigName = canaryConfig.getName();
+    List<String> applications = canaryConfig.getApplications();
+    String existingCanaryConfigId =
+        canaryConfigIndex.getIdFromName(credentials, canaryConfigName, applications);
+
+    // We want to avoid creating a naming collision due to the renaming of an existing canary
+    // config.
+    if (!StringUtils.isEmpty(existingCanaryConfigId)
+        && !existingCanaryConfigId.equals(canaryConfigId)) {
+      throw new IllegalArgumentException(
+          "Canary config with name '"
+              + canaryConfigName
+              + "' already exists in the scope of applications "
+              + applications
+              + ".");
+    }
+  }
+
+  @Override
+  public void deleteObject(String accountName, ObjectType objectType, String objectKey) {
+    FilesystemNamedAccountCredentials credentials =
+        accountCredentialsRepository.getRequiredOne(accountName);
+    Path objectDirectory = objectDirectory(credentials, objectType, objectKey);
+    FilesystemObjectIndex index = getIndex(credentials, objectType);
+
+    if (index.get(objectKey) == null) {
+      throw new NotFoundException(
+          "No " + objectType.getGroup() + " object with key " + objectKey + " was found.");
+    }
+
+    long updatedTimestamp = -1;
+    String correlationId = null;
+    String canaryConfigSummaryJson = null;
+
+    if (objectType == ObjectType.CANARY_CONFIG) {
+      updatedTimestamp = canaryConfigIndex.getRedisTime();
+
+      Map<String, Object> existingCanaryConfigSummary =
+          canaryConfigIndex.getSummaryFromId(credentials, objectKey);
+
+      if (existingCanaryConfigSummary != null) {
+        String canaryConfigName = (String) existingCanaryConfigSummary.get("name");
+        List<String> applications = (List<String>) existingCanaryConfigSummary.get("applications");
+
+        correlationId = UUID.randomUUID().toString();
+
+        Map<String, Object> canaryConfigSummary =
+            new ImmutableMap.Builder<String, Object>()
+                .put("id", objectKey)
+                .put("name", canaryConfigName)
+                .put("updatedTimestamp", updatedTimestamp)
+                .put("updatedTimestampIso", Instant.ofEpochMilli(updatedTimestamp).toString())
+                .put("applications", applications)
+                .build();
+
+        try {
+          canaryConfigSummaryJson = kayentaObjectMapper.writeValueAsString(canaryConfigSummary);
+        } catch (JsonProcessingException e) {
+          throw new IllegalArgumentException(
+              "Problem serializing canaryConfigSummary -> " + canaryConfigSummary, e);
+        }
+
+        canaryConfigIndex.startPendingUpdate(
+            credentials,
+            updatedTimestamp + "",
+            CanaryConfigIndexAction.DELETE,
+            correlationId,
+            canaryConfigSummaryJson);
+      }
+    }
+
+    try {
+      // The object is unindexed first, so a failure part way through leaves files that are never
+      // listed rather than an index entry that cannot be loaded.
+      index.remove(objectKey);
+      deleteDirectory(objectDirectory);
+
+      if (correlationId != null) {
+        canaryConfigIndex.finishPendingUpdate(
+            credentials, CanaryConfigIndexAction.DELETE, correlationId);
+      }
+    } catch (Exception e) {
+      log.error("Failed to delete path {}: {}", objectDirectory, e);
+
+      if (correlationId != null) {
+        canaryConfigIndex.removeFailedPendingUpdate(
+            credentials,
+            updatedTimestamp + "",
+            CanaryConfigIndexAction.DELETE,
+            correlationId,
+            canaryConfigSummaryJson);
+      }
+
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private static void deleteDirectory(Path directory) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+
+    Files.deleteIfExists(directory);
+  }
+
+  @Override
+  public List<Map<String, Object>> listObjectKeys(
+      String accountName, ObjectType objectType, List<String> applications, boolean skipIndex) {
+    FilesystemNamedAccountCredentials credentials =
+        accountCredentialsRepository.getRequiredOne(accountName);
+
+    if (!skipIndex && objectType == ObjectType.CANARY_CONFIG) {
+      Set<Map<String, Object>> canaryConfigSet =
+          canaryConfigIndex.getCanaryConfigSummarySet(credentials, applications);
+
+      return Lists.newArrayList(canaryConfigSet);
+    }
+
+    List<Map<String, Object>> result = new ArrayList<>();
+
+    for (FilesystemObjectIndex.Entry entry : getIndex(credentials, objectType).getEntries()) {
+      Map<String, Object> objectMetadataMap = new HashMap<>();
+      long updatedTimestamp = entry.getUpdatedTimestamp();
+
+      objectMetadataMap.put("id", entry.getId());
+      objectMetadataMap.put("updatedTimestamp", updatedTimestamp);
+      objectMetadataMap.put(
+          "updatedTimestampIso", Instant.ofEpochMilli(updatedTimestamp).toString());
+
+      if (objectType == ObjectType.CANARY_CONFIG) {
+        objectMetadataMap.put("name", entry.getName());
+      }
+
+      result.add(objectMetadataMap);
+    }
+
+    return result;
+  }
+
+  private FilesystemObjectIndex getIndex(
+      FilesystemNamedAccountCredentials credentials, ObjectType objectType) {
+    return indexes.computeIfAbsent(
+        typedDirectory(credentials, objectType),
+        typedDirectory -> openIndex(credentials, objectType, typedDirectory));
+  }
+
+  private FilesystemObjectIndex openIndex(
+      FilesystemNamedAccountCredentials credentials, ObjectType objectType, Path typedDirectory) {
+    Path journal =
+        Paths.get(credentials.getRootDirectory())
+            .resolve(INDEX_DIRECTORY)
+            .resolve(objectType.getGroup() + INDEX_JOURNAL_SUFFIX);
+    int compactionThreshold = filesystemConfigurationProperties.getIndexCompactionThreshold();
+
+    try {
+      if (Files.exists(journal)) {
+        return FilesystemObjectIndex.load(journal, kayentaObjectMapper, compactionThreshold);
+      }
+
+      List<FilesystemObjectIndex.Entry> entries = new ArrayList<>();
+
+      if (Files.isDirectory(typedDirectory)) {
+        log.info("Rebuilding the index of {}.", typedDirectory);
+
+        try (DirectoryStream<Path> objectDirectories = Files.newDirectoryStream(typedDirectory)) {
+          for (Path objectDirectory : objectDirectories) {
+            FilesystemObjectIndex.Entry entry = rebuildEntry(objectType, objectDirectory);
+
+            if (entry != null) {
+              entries.add(entry);
+            }
+          }
+        }
+      }
+
+      return FilesystemObjectIndex.create(
+          journal, kayentaObjectMapper, compactionThreshold, entries);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to open the index of " + typedDirectory + ".", e);
+    }
+  }
+
+  private FilesystemObjectIndex.Entry rebuildEntry(ObjectType objectType, Path objectDirectory)
+      throws IOException {
+    String baseName = baseName(objectType);
+
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(objectDirectory, baseName + ".*")) {
+      for (Path file : files) {
+        String dataFilename = file.getFileName().toString();
+
+        if (dataFilename.endsWith(TEMPORARY_FILE_SUFFIX)) {
+          continue;
+        }
+
+        String objectKey = objectDirectory.getFileName().toString();
+        String canaryConfigName = null;
+
+        if (objectType == ObjectType.CANARY_CONFIG) {
+          CanaryConfig canaryConfig =
+              read(file, objectType, encodingOf(objectType, dataFilename));
+          canaryConfigName = canaryConfig.getName();
+        }
+
+        return new FilesystemObjectIndex.Entry(
+            objectKey,
+            dataFilename,
+            canaryConfigName,
+            Files.getLastModifiedTime(file).toMillis());
+      }
+    }
+
+    return null;
+  }
+
+  private Path typedDirectory(
+      FilesystemNamedAccountCredentials credentials, ObjectType objectType) {
+    return Paths.get(credentials.getRootDirectory()).resolve(objectType.getGroup());
+  }
+
+  private Path objectDirectory(
+      FilesystemNamedAccountCredentials credentials, ObjectType objectType, String objectKey) {
+    if (StringUtils.isEmpty(objectKey)
+        || objectKey.startsWith(".")
+        || objectKey.contains("/")
+        || objectKey.contains("\\")) {
+      throw new IllegalArgumentException("Invalid object key '" + objectKey + "'.");
+    }
+
+    return typedDirectory(credentials, objectType).resolve(objectKey);
+  }
+
+  // Data files are named after the object type's default filename with the encoding as their
+  // extension (e.g. metric_set_pairs.smile.gzip), so the index can be rebuilt from them alone.
+  private static String dataFilename(ObjectType objectType, String encoding) {
+    return baseName(objectType) + "." + encoding.replace('+', '.');
+  }
+
+  private static String encodingOf(ObjectType objectType, String dataFilename) {
+    return dataFilename.substring(baseName(objectType).length() + 1).replace('.', '+');
+  }
+
+  private static String baseName(ObjectType objectType) {
+    String defaultFilename = objectType.getDefaultFilename();
+    int extension = defaultFilename.indexOf('.');
+
+    return extension < 0 ? defaultFilename : defaultFilename.substring(0, extension);
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.filesystem.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.kayenta.atlas.config.KayentaSerializationConfigurationProperties;
+import com.netflix.kayenta.canary.CanaryConfig;
+import com.netflix.kayenta.config.KayentaConfiguration;
+import com.netflix.kayenta.filesystem.config.FilesystemConfigurationProperties;
+import com.netflix.kayenta.filesystem.security.FilesystemAccountCredentials;
+import com.netflix.kayenta.filesystem.security.FilesystemNamedAccountCredentials;
+import com.netflix.kayenta.index.CanaryConfigIndex;
+import com.netflix.kayenta.index.config.CanaryConfigIndexAction;
+import com.netflix.kayenta.metrics.DoubleSeries;
+import com.netflix.kayenta.metrics.MetricSetPair;
+import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.storage.ObjectType;
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FilesystemStorageServiceTest {
+
+  private static final String ACCOUNT = "local";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final AccountCredentialsRepository accountCredentialsRepository =
+      mock(AccountCredentialsRepository.class);
+  private final CanaryConfigIndex canaryConfigIndex = mock(CanaryConfigIndex.class);
+  private final FilesystemConfigurationProperties configuration =
+      new FilesystemConfigurationProperties();
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private File rootDirectory;
+  private FilesystemNamedAccountCredentials credentials;
+
+  @Before
+  public void setUp() throws IOException {
+    KayentaConfiguration.configureObjectMapperFeatures(
+        objectMapper, new KayentaSerializationConfigurationProperties());
+    rootDirectory = temporaryFolder.newFolder();
+    credentials =
+        FilesystemNamedAccountCredentials.builder()
+            .name(ACCOUNT)
+            .rootDirectory(rootDirectory.getPath())
+            .credentials(FilesystemAccountCredentials.builder().build())
+            .build();
+
+    when(accountCredentialsRepository.getRequiredOne(ACCOUNT)).thenReturn(credentials);
+    when(canaryConfigIndex.getRedisTime()).thenReturn(1_000L);
+  }
+
+  @Test
+  public void storesAndLoadsObjectsThroughTheIndex() {
+    FilesystemStorageService storageService = storageService();
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1", metricSetPairs());
+
+    List<MetricSetPair> loaded =
+        storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1");
+
+    assertThat(loaded).hasSize(1);
+    assertThat(loaded.get(0).getValues()).isEqualTo(metricSetPairs().get(0).getValues());
+    assertThat(storageService.listObjectKeys(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST))
+        .extracting(metadata -> metadata.get("id"))
+        .containsExactly("id-1");
+    assertThat(new File(rootDirectory, "metric_pairs/id-1/metric_set_pairs.json")).isFile();
+  }
+
+  @Test
+  public void readsLargeObjectsThroughAMemoryMappedBuffer() {
+    configuration.setMemoryMapThresholdBytes(0);
+    FilesystemStorageService storageService = storageService();
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1", metricSetPairs());
+
+    List<MetricSetPair> loaded =
+        storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1");
+
+    assertThat(loaded.get(0).getValues()).isEqualTo(metricSetPairs().get(0).getValues());
+  }
+
+  @Test
+  public void deletedObjectsAreNoLongerListedOrLoaded() {
+    FilesystemStorageService storageService = storageService();
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1", metricSetPairs());
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-2", metricSetPairs());
+    storageService.deleteObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1");
+
+    assertThatThrownBy(
+            () -> storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1"))
+        .isInstanceOf(NotFoundException.class);
+    assertThat(storageService.listObjectKeys(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST))
+        .extracting(metadata -> metadata.get("id"))
+        .containsExactly("id-2");
+    assertThat(new File(rootDirectory, "metric_pairs/id-1")).doesNotExist();
+  }
+
+  @Test
+  public void theIndexOutlivesTheServiceAndIsRebuiltIfLost() throws IOException {
+    storageService()
+        .storeObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1", metricSetPairs());
+
+    assertThat(storageService().listObjectKeys(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST))
+        .extracting(metadata -> metadata.get("id"))
+        .containsExactly("id-1");
+
+    Files.delete(rootDirectory.toPath().resolve(".index/metric_pairs.journal"));
+
+    assertThat(storageService().listObjectKeys(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST))
+        .extracting(metadata -> metadata.get("id"))
+        .containsExactly("id-1");
+  }
+
+  @Test
+  public void theJournalIsCompacted() throws IOException {
+    configuration.setIndexCompactionThreshold(4);
+    FilesystemStorageService storageService = storageService();
+
+    for (int i = 0; i < 10; i++) {
+      storageService.storeObject(
+          ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1", metricSetPairs());
+    }
+
+    assertThat(Files.readAllLines(rootDirectory.toPath().resolve(".index/metric_pairs.journal")))
+        .hasSizeLessThanOrEqualTo(4);
+    assertThat(storageService().listObjectKeys(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST))
+        .hasSize(1);
+  }
+
+  @Test
+  public void canaryConfigUpdatesAreRecordedInTheCanaryConfigIndex() {
+    FilesystemStorageService storageService = storageService();
+    CanaryConfig canaryConfig =
+        CanaryConfig.builder().name("my-config").application("my-app").build();
+
+    storageService.storeObject(ACCOUNT, ObjectType.CANARY_CONFIG, "config-1", canaryConfig);
+
+    verify(canaryConfigIndex)
+        .startPendingUpdate(
+            eq(credentials),
+            eq("1000"),
+            eq(CanaryConfigIndexAction.UPDATE),
+            anyString(),
+            anyString());
+    verify(canaryConfigIndex)
+        .finishPendingUpdate(eq(credentials), eq(CanaryConfigIndexAction.UPDATE), anyString());
+
+    List<Map<String, Object>> canaryConfigs =
+        storageService.listObjectKeys(ACCOUNT, ObjectType.CANARY_CONFIG, null, true);
+
+    assertThat(canaryConfigs).hasSize(1);
+    assertThat(canaryConfigs.get(0))
+        .containsEntry("id", "config-1")
+        .containsEntry("name", "my-config")
+        .containsEntry("updatedTimestamp", 1_000L);
+  }
+
+  @Test
+  public void rejectsObjectKeysThatEscapeTheAccountDirectory() {
+    FilesystemStorageService storageService = storageService();
+
+    assertThatThrownBy(
+            () ->
+                storageService.storeObject(
+                    ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "../id-1", metricSetPairs()))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(rootDirectory.list()).isEmpty();
+  }
+
+  private FilesystemStorageService storageService() {
+    return FilesystemStorageService.builder()
+        .accountName(ACCOUNT)
+        .kayentaObjectMapper(objectMapper)
+        .accountCredentialsRepository(accountCredentialsRepository)
+        .canaryConfigIndex(canaryConfigIndex)
+        .filesystemConfigurationProperties(configuration)
+        .build();
+  }
+
+  private static List<MetricSetPair> metricSetPairs() {
+    return Collections.singletonList(
+        MetricSetPair.builder()
+            .name("requests")
+            .id("pair-1")
+            .tag("region", "us-west-2")
+            .value("control", DoubleSeries.of(1, 2, 3))
+            .value("experiment", DoubleSeries.of(4, 5, 6))
+            .build());
+  }
+}
@@ -16,13 +16,17 @@
 
 package com.netflix.kayenta.memory.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.kayenta.memory.security.MemoryAccountCredentials;
 import com.netflix.kayenta.memory.security.MemoryNamedAccountCredentials;
 import com.netflix.kayenta.memory.storage.MemoryStorageService;
+import com.netflix.kayenta.memory.storage.SpilledObjectStore;
 import com.netflix.kayenta.security.AccountCredentials;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
 import com.netflix.kayenta.storage.ObjectType;
 import com.netflix.kayenta.storage.StorageService;
+import com.netflix.spectator.api.Registry;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -33,6 +37,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
 
 @Configuration
 @ConditionalOnProperty("kayenta.memory.enabled")
@@ -49,9 +54,25 @@ public class MemoryConfiguration {
   @Bean
   StorageService storageService(
       MemoryConfigurationProperties memoryConfigurationProperties,
-      AccountCredentialsRepository accountCredentialsRepository) {
+      AccountCredentialsRepository accountCredentialsRepository,
+      ObjectMapper kayentaObjectMapper,
+      Registry registry)
+      throws IOException {
     MemoryStorageService.MemoryStorageServiceBuilder memoryStorageServiceBuilder =
-        MemoryStorageService.builder();
+        MemoryStorageService.builder()
+            .registry(registry)
+            .memoryConfigurationProperties(memoryConfigurationProperties);
+
+    if (!StringUtils.isEmpty(memoryConfigurationProperties.getSpillDirectory())) {
+      log.info(
+          "Spilling evicted in-memory objects to {}.",
+          memoryConfigurationProperties.getSpillDirectory());
+      SpilledObjectStore spilledObjectStore =
+          new SpilledObjectStore(
+              memoryConfigurationProperties.getSpillDirectory(), kayentaObjectMapper);
+      spilledObjectStore.clear();
+      memoryStorageServiceBuilder.spilledObjectStore(spilledObjectStore);
+    }
 
     for (MemoryManagedAccount memoryManagedAccount : memoryConfigurationProperties.getAccounts()) {
       String name = memoryManagedAccount.getName();
@@ -17,10 +17,25 @@
 package com.netflix.kayenta.memory.config;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import lombok.Getter;
+import lombok.Setter;
 
 public class MemoryConfigurationProperties {
 
   @Getter private List<MemoryManagedAccount> accounts = new ArrayList<>();
+
+  /**
+   * Limits on the objects held per account, keyed by object type group (e.g. metrics,
+   * metric_pairs). Object types without limits are held until they are deleted.
+   */
+  @Getter private Map<String, MemoryObjectLimits> limits = new HashMap<>();
+
+  /**
+   * If set, evicted objects are written to this directory and read back from it on demand instead
+   * of being dropped.
+   */
+  @Getter @Setter private String spillDirectory;
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.memory.config;
+
+import java.time.Duration;
+import lombok.Data;
+
+/** Bounds on the objects of one type held by an in-memory storage account. */
+@Data
+public class MemoryObjectLimits {
+
+  /** Maximum number of objects; 0 means unlimited. */
+  private long maxObjects = 0;
+
+  /** Maximum estimated size of the objects, in bytes; 0 means unlimited. */
+  private long maxBytes = 0;
+
+  /** Objects not read or written for this long are evicted; unset means never. */
+  private Duration expireAfterAccess;
+
+  public boolean isUnbounded() {
+    return maxObjects <= 0 && maxBytes <= 0 && expireAfterAccess == null;
+  }
+}
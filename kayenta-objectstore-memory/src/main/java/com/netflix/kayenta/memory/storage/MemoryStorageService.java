@@ -16,31 +16,54 @@
 
 package com.netflix.kayenta.memory.storage;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
 import com.netflix.kayenta.canary.CanaryConfig;
 import com.netflix.kayenta.index.CanaryConfigIndex;
+import com.netflix.kayenta.memory.config.MemoryConfigurationProperties;
+import com.netflix.kayenta.memory.config.MemoryObjectLimits;
 import com.netflix.kayenta.memory.security.MemoryNamedAccountCredentials;
+import com.netflix.kayenta.metrics.MetricSet;
+import com.netflix.kayenta.metrics.MetricSetPair;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
 import com.netflix.kayenta.storage.ObjectType;
 import com.netflix.kayenta.storage.StorageService;
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.Registry;
 import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.validation.constraints.NotNull;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Singular;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 
 @Builder
+@Slf4j
 public class MemoryStorageService implements StorageService {
   @NotNull @Singular @Getter private List<String> accountNames;
 
   @Autowired AccountCredentialsRepository accountCredentialsRepository;
 
+  @NotNull private Registry registry;
+
+  // Null when every object type is held until it is deleted.
+  private MemoryConfigurationProperties memoryConfigurationProperties;
+
+  // Null when evicted objects are dropped.
+  private SpilledObjectStore spilledObjectStore;
+
   @Override
   public boolean servicesAccount(String accountName) {
     return accountNames.contains(accountName);
@@ -49,16 +72,174 @@ public class MemoryStorageService implements StorageService {
   private MemoryNamedAccountCredentials getCredentials(String accountName, ObjectType objectType) {
     MemoryNamedAccountCredentials credentials =
         accountCredentialsRepository.getRequiredOne(accountName);
-    credentials.getObjects().putIfAbsent(objectType, new ConcurrentHashMap<>());
     credentials.getMetadata().putIfAbsent(objectType, new ConcurrentHashMap<>());
+    credentials
+        .getObjects()
+        .computeIfAbsent(objectType, type -> createObjectMap(credentials, type));
     return credentials;
   }
 
+  private Map<String, Object> createObjectMap(
+      MemoryNamedAccountCredentials credentials, ObjectType objectType) {
+    MemoryObjectLimits limits =
+        memoryConfigurationProperties != null
+            ? memoryConfigurationProperties.getLimits().get(objectType.getGroup())
+            : null;
+    Id objectsId =
+        registry
+            .createId("kayenta.memory.objects")
+            .withTags("account", credentials.getName(), "objectType", objectType.getGroup());
+
+    if (limits == null || limits.isUnbounded()) {
+      Map<String, Object> objects = new ConcurrentHashMap<>();
+      registry.gauge(objectsId, objects, Map::size);
+      return objects;
+    }
+
+    AtomicLong bytes =
+        registry.gauge(
+            registry
+                .createId("kayenta.memory.bytes")
+                .withTags("account", credentials.getName(), "objectType", objectType.getGroup()),
+            new AtomicLong());
+    CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+
+    if (limits.getMaxBytes() > 0 || limits.getMaxObjects() > 0) {
+      // A single weight bounds both the bytes and the number of objects: every object weighs at
+      // least maxBytes / maxObjects, so no more than maxObjects of them fit under maxBytes.
+      long maxWeight = limits.getMaxBytes() > 0 ? limits.getMaxBytes() : limits.getMaxObjects();
+      long minObjectWeight =
+          limits.getMaxBytes() <= 0
+              ? 1
+              : limits.getMaxObjects() <= 0
+                  ? 0
+                  : (limits.getMaxBytes() + limits.getMaxObjects() - 1) / limits.getMaxObjects();
+      boolean weighBytes = limits.getMaxBytes() > 0;
+
+      cacheBuilder
+          .maximumWeight(maxWeight)
+          .weigher(
+              (String key, Object value) -> {
+                long objectBytes = estimateBytes(value);
+                bytes.addAndGet(objectBytes);
+                long weight = Math.max(weighBytes ? objectBytes : 0, minObjectWeight);
+                return (int) Math.min(weight, Integer.MAX_VALUE);
+              });
+    } else {
+      cacheBuilder
+          .maximumWeight(Long.MAX_VALUE)
+          .weigher(
+              (String key, Object value) -> {
+                bytes.addAndGet(estimateBytes(value));
+                return 1;
+              });
+    }
+
+    if (limits.getExpireAfterAccess() != null) {
+      cacheBuilder.expireAfterAccess(
+          limits.getExpireAfterAccess().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    Map<String, Map<String, Object>> metadata = credentials.getMetadata().get(objectType);
+    Cache<String, Object> cache =
+        cacheBuilder
+            .removalListener(
+                (RemovalNotification<String, Object> notification) ->
+                    onRemoval(credentials.getName(), objectType, metadata, bytes, notification))
+            .build();
+
+    registry.gauge(objectsId, cache, Cache::size);
+
+    return cache.asMap();
+  }
+
+  private void onRemoval(
+      String accountName,
+      ObjectType objectType,
+      Map<String, Map<String, Object>> metadata,
+      AtomicLong bytes,
+      RemovalNotification<String, Object> notification) {
+    bytes.addAndGet(-estimateBytes(notification.getValue()));
+
+    if (!notification.wasEvicted()) {
+      return;
+    }
+
+    registry
+        .counter(
+            "kayenta.memory.evictions",
+            "objectType",
+            objectType.getGroup(),
+            "cause",
+            notification.getCause().name().toLowerCase(Locale.ROOT))
+        .increment();
+
+    if (spilledObjectStore != null) {
+      try {
+        spilledObjectStore.write(
+            accountName, objectType, notification.getKey(), notification.getValue());
+        registry.counter("kayenta.memory.spills", "objectType", objectType.getGroup()).increment();
+        return;
+      } catch (IOException e) {
+        log.warn(
+            "Unable to spill {} {} to disk, dropping it.",
+            objectType.getGroup(),
+            notification.getKey(),
+            e);
+      }
+    }
+
+    metadata.remove(notification.getKey());
+  }
+
+  /**
+   * A rough estimate of the heap held by an object: 8 bytes per metric value plus a fixed
+   * allowance per series, or a fixed allowance for anything else.
+   */
+  private static long estimateBytes(Object obj) {
+    if (obj instanceof MetricSet) {
+      return 256 + 8L * ((MetricSet) obj).getValues().size();
+    } else if (obj instanceof MetricSetPair) {
+      long bytes = 256;
+
+      for (List<Double> values : ((MetricSetPair) obj).getValues().values()) {
+        bytes += 8L * values.size();
+      }
+
+      return bytes;
+    } else if (obj instanceof List) {
+      long bytes = 64;
+
+      for (Object element : (List<?>) obj) {
+        bytes += estimateBytes(element);
+      }
+
+      return bytes;
+    }
+
+    return 1024;
+  }
+
   @Override
   public <T> T loadObject(String accountName, ObjectType objectType, String objectKey)
       throws IllegalArgumentException {
     MemoryNamedAccountCredentials credentials = getCredentials(accountName, objectType);
-    Object entry = credentials.getObjects().get(objectType).get(objectKey);
+    Map<String, Object> objects = credentials.getObjects().get(objectType);
+    Object entry = objects.get(objectKey);
+
+    if (entry == null && spilledObjectStore != null) {
+      entry = spilledObjectStore.read(accountName, objectType, objectKey);
+
+      if (entry != null) {
+        // Delete the spill file before the put: an object evicted again by its own put is
+        // re-spilled by the removal listener, and deleting afterwards would drop the only copy.
+        spilledObjectStore.delete(accountName, objectType, objectKey);
+        objects.put(objectKey, entry);
+        registry
+            .counter("kayenta.memory.spillReads", "objectType", objectType.getGroup())
+            .increment();
+      }
+    }
 
     if (entry == null) {
       throw new NotFoundException("No such object named " + objectKey);
@@ -92,8 +273,18 @@ public class MemoryStorageService implements StorageService {
       objectMetadataMap.put("applications", canaryConfig.getApplications());
     }
 
-    credentials.getObjects().get(objectType).put(objectKey, obj);
-    credentials.getMetadata().get(objectType).put(objectKey, objectMetadataMap);
+    Map<String, Object> objects = credentials.getObjects().get(objectType);
+    Map<String, Map<String, Object>> metadata = credentials.getMetadata().get(objectType);
+
+    // The metadata is recorded first: a bounded cache may evict the object inside the put itself,
+    // and the eviction must then find the metadata to spill or drop along with it. The previous
+    // value may also have been evicted, taking the new metadata with it, since it was recorded.
+    metadata.put(objectKey, objectMetadataMap);
+    objects.put(objectKey, obj);
+
+    if (objects.containsKey(objectKey)) {
+      metadata.put(objectKey, objectMetadataMap);
+    }
   }
 
   private void checkForDuplicateCanaryConfig(
@@ -127,8 +318,11 @@ public class MemoryStorageService implements StorageService {
 
     Object oldValue = credentials.getObjects().get(objectType).remove(objectKey);
     credentials.getMetadata().get(objectType).remove(objectKey);
+    boolean spilled =
+        spilledObjectStore != null
+            && spilledObjectStore.delete(accountName, objectType, objectKey);
 
-    if (oldValue == null) {
+    if (oldValue == null && !spilled) {
       throw new IllegalArgumentException("Does not exist");
     }
   }
@@ -141,20 +335,17 @@ public class MemoryStorageService implements StorageService {
     boolean filterOnApplications = applications != null && applications.size() > 0;
     List<Map<String, Object>> result = new ArrayList<>();
 
-    for (Map.Entry<String, Object> entry : credentials.getObjects().get(objectType).entrySet()) {
-      String entryKey = entry.getKey();
-      if (objectType == ObjectType.CANARY_CONFIG) {
-        if (filterOnApplications) {
-          CanaryConfig canaryConfig = (CanaryConfig) entry.getValue();
-
-          if (CanaryConfigIndex.haveCommonElements(applications, canaryConfig.getApplications())) {
-            result.add(credentials.getMetadata().get(objectType).get(entryKey));
-          }
-        } else {
-          result.add(credentials.getMetadata().get(objectType).get(entryKey));
+    // Listed from the metadata, which also covers objects that were spilled to disk.
+    for (Map<String, Object> objectMetadata : credentials.getMetadata().get(objectType).values()) {
+      if (objectType == ObjectType.CANARY_CONFIG && filterOnApplications) {
+        List<String> canaryConfigApplications =
+            (List<String>) objectMetadata.get("applications");
+
+        if (CanaryConfigIndex.haveCommonElements(applications, canaryConfigApplications)) {
+          result.add(objectMetadata);
         }
       } else {
-        result.add(credentials.getMetadata().get(objectType).get(entryKey));
+        result.add(objectMetadata);
       }
     }
 
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.memory.storage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.kayenta.storage.ObjectType;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** The local-disk tier of the in-memory storage service, holding objects evicted from memory. */
+public class SpilledObjectStore {
+
+  private final Path root;
+  private final ObjectMapper objectMapper;
+
+  public SpilledObjectStore(String directory, ObjectMapper objectMapper) {
+    this.root = Paths.get(directory);
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Deletes every spilled object. The in-memory metadata for them does not survive a restart, so
+   * whatever is left in the directory from a previous run can never be read back.
+   */
+  public void clear() throws IOException {
+    if (!Files.exists(root)) {
+      return;
+    }
+
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        if (!path.equals(root)) {
+          Files.delete(path);
+        }
+      }
+    }
+  }
+
+  void write(String accountName, ObjectType objectType, String objectKey, Object obj)
+      throws IOException {
+    Path path = path(accountName, objectType, objectKey);
+
+    Files.createDirectories(path.getParent());
+    objectMapper.writeValue(path.toFile(), obj);
+  }
+
+  /** Returns the spilled object, or null if there is none. */
+  @SuppressWarnings("unchecked")
+  <T> T read(String accountName, ObjectType objectType, String objectKey) {
+    Path path = path(accountName, objectType, objectKey);
+
+    if (!Files.exists(path)) {
+      return null;
+    }
+
+    try {
+      return objectMapper.readValue(
+          path.toFile(), (TypeReference<T>) objectType.getTypeReference());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to read spilled object " + path + ".", e);
+    }
+  }
+
+  boolean delete(String accountName, ObjectType objectType, String objectKey) {
+    try {
+      return Files.deleteIfExists(path(accountName, objectType, objectKey));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Path path(String accountName, ObjectType objectType, String objectKey) {
+    try {
+      return root.resolve(URLEncoder.encode(accountName, StandardCharsets.UTF_8.name()))
+          .resolve(objectType.getGroup())
+          .resolve(URLEncoder.encode(objectKey, StandardCharsets.UTF_8.name()) + ".json");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.memory.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.kayenta.atlas.config.KayentaSerializationConfigurationProperties;
+import com.netflix.kayenta.config.KayentaConfiguration;
+import com.netflix.kayenta.memory.config.MemoryConfigurationProperties;
+import com.netflix.kayenta.memory.config.MemoryObjectLimits;
+import com.netflix.kayenta.memory.security.MemoryAccountCredentials;
+import com.netflix.kayenta.memory.security.MemoryNamedAccountCredentials;
+import com.netflix.kayenta.metrics.MetricSet;
+import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.storage.ObjectType;
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MemoryStorageServiceTest {
+
+  private static final String ACCOUNT = "in-memory";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final AccountCredentialsRepository accountCredentialsRepository =
+      mock(AccountCredentialsRepository.class);
+  private final Registry registry = new DefaultRegistry();
+  private final MemoryConfigurationProperties configuration = new MemoryConfigurationProperties();
+
+  @Before
+  public void setUp() {
+    MemoryNamedAccountCredentials credentials =
+        MemoryNamedAccountCredentials.builder()
+            .name(ACCOUNT)
+            .credentials(MemoryAccountCredentials.builder().build())
+            .objects(new ConcurrentHashMap<>())
+            .metadata(new ConcurrentHashMap<>())
+            .build();
+
+    when(accountCredentialsRepository.getRequiredOne(ACCOUNT)).thenReturn(credentials);
+
+    MemoryObjectLimits limits = new MemoryObjectLimits();
+    limits.setMaxObjects(2);
+    configuration.getLimits().put(ObjectType.METRIC_SET_LIST.getGroup(), limits);
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedObjectsBeyondTheLimit() {
+    MemoryStorageService storageService = storageService(null);
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets());
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-2", metricSets());
+    storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-3", metricSets());
+
+    assertThatThrownBy(() -> storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-2"))
+        .isInstanceOf(NotFoundException.class);
+    assertThat(storageService.listObjectKeys(ACCOUNT, ObjectType.METRIC_SET_LIST))
+        .extracting(metadata -> metadata.get("id"))
+        .containsExactlyInAnyOrder("id-1", "id-3");
+    assertThat(
+            registry
+                .counter(
+                    "kayenta.memory.evictions",
+                    "objectType",
+                    ObjectType.METRIC_SET_LIST.getGroup(),
+                    "cause",
+                    "size")
+                .count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void objectTypesWithoutLimitsAreNeverEvicted() {
+    MemoryStorageService storageService = storageService(null);
+
+    for (int i = 0; i < 10; i++) {
+      storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-" + i, metricSets());
+    }
+
+    assertThat(storageService.listObjectKeys(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST)).hasSize(10);
+  }
+
+  @Test
+  public void objectsEvictedAsTheyAreStoredAreNotListed() {
+    MemoryObjectLimits limits = new MemoryObjectLimits();
+    limits.setMaxBytes(100);
+    configuration.getLimits().put(ObjectType.METRIC_SET_PAIR_LIST.getGroup(), limits);
+    MemoryStorageService storageService = storageService(null);
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1", metricSets());
+
+    assertThat(storageService.listObjectKeys(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST)).isEmpty();
+    assertThatThrownBy(
+            () -> storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1"))
+        .isInstanceOf(NotFoundException.class);
+  }
+
+  @Test
+  public void evictedObjectsAreReadBackFromTheSpillDirectory() throws IOException {
+    MemoryStorageService storageService =
+        storageService(
+            new SpilledObjectStore(temporaryFolder.newFolder().getPath(), objectMapper()));
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets());
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-2", metricSets());
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-3", metricSets());
+
+    List<MetricSet> spilled =
+        storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+
+    assertThat(spilled).hasSize(1);
+    assertThat(spilled.get(0).getName()).isEqualTo("requests");
+    assertThat(spilled.get(0).getValues()).containsExactly(1.0, 2.0, 3.0);
+    assertThat(storageService.listObjectKeys(ACCOUNT, ObjectType.METRIC_SET_LIST)).hasSize(3);
+  }
+
+  @Test
+  public void objectsEvictedAgainWhenReadBackStaySpilled() throws IOException {
+    MemoryObjectLimits limits = new MemoryObjectLimits();
+    limits.setMaxBytes(100);
+    configuration.getLimits().put(ObjectType.METRIC_SET_PAIR_LIST.getGroup(), limits);
+    MemoryStorageService storageService =
+        storageService(
+            new SpilledObjectStore(temporaryFolder.newFolder().getPath(), objectMapper()));
+
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1", metricSets());
+    storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1");
+
+    List<MetricSet> spilled =
+        storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_PAIR_LIST, "id-1");
+
+    assertThat(spilled).hasSize(1);
+    assertThat(spilled.get(0).getValues()).containsExactly(1.0, 2.0, 3.0);
+  }
+
+  @Test
+  public void clearingTheSpillDirectoryDropsObjectsFromAPreviousRun() throws IOException {
+    String spillDirectory = temporaryFolder.newFolder().getPath();
+    new SpilledObjectStore(spillDirectory, objectMapper())
+        .write(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets());
+    SpilledObjectStore spilledObjectStore = new SpilledObjectStore(spillDirectory, objectMapper());
+
+    spilledObjectStore.clear();
+
+    assertThat(spilledObjectStore.<Object>read(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1"))
+        .isNull();
+    assertThat(new File(spillDirectory).list()).isEmpty();
+  }
+
+  private static ObjectMapper objectMapper() {
+    ObjectMapper objectMapper = new ObjectMapper();
+    KayentaConfiguration.configureObjectMapperFeatures(
+        objectMapper, new KayentaSerializationConfigurationProperties());
+    return objectMapper;
+  }
+
+  private MemoryStorageService storageService(SpilledObjectStore spilledObjectStore) {
+    return MemoryStorageService.builder()
+        .accountName(ACCOUNT)
+        .accountCredentialsRepository(accountCredentialsRepository)
+        .registry(registry)
+        .memoryConfigurationProperties(configuration)
+        .spilledObjectStore(spilledObjectStore)
+        .build();
+  }
+
+  private static List<MetricSet> metricSets() {
+    return Collections.singletonList(
+        MetricSet.builder().name("requests").values(new double[] {1, 2, 3}).build());
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.sql.config;
+
+import com.netflix.kayenta.security.AccountCredentials;
+import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.sql.security.SqlAccountCredentials;
+import com.netflix.kayenta.sql.security.SqlNamedAccountCredentials;
+import com.netflix.kayenta.sql.storage.SqlStorageService;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+@Configuration
+@ConditionalOnProperty("kayenta.sql.enabled")
+@ComponentScan({"com.netflix.kayenta.sql"})
+@Slf4j
+public class SqlConfiguration {
+
+  public static final String SCHEMA_LOCATION = "kayenta/sql/schema.sql";
+
+  @Bean
+  @ConfigurationProperties("kayenta.sql")
+  SqlConfigurationProperties sqlConfigurationProperties() {
+    return new SqlConfigurationProperties();
+  }
+
+  @Bean(destroyMethod = "close")
+  HikariDataSource kayentaSqlDataSource(SqlConfigurationProperties sqlConfigurationProperties) {
+    if (StringUtils.isEmpty(sqlConfigurationProperties.getJdbcUrl())) {
+      throw new IllegalArgumentException("kayenta.sql.jdbcUrl must be set.");
+    }
+
+    HikariConfig hikariConfig = new HikariConfig();
+    hikariConfig.setPoolName("kayenta-sql");
+    hikariConfig.setJdbcUrl(sqlConfigurationProperties.getJdbcUrl());
+    hikariConfig.setUsername(sqlConfigurationProperties.getUser());
+    hikariConfig.setPassword(sqlConfigurationProperties.getPassword());
+    hikariConfig.setMaximumPoolSize(sqlConfigurationProperties.getMaximumPoolSize());
+    hikariConfig.setMinimumIdle(sqlConfigurationProperties.getMinimumIdle());
+    hikariConfig.setConnectionTimeout(
+        sqlConfigurationProperties.getConnectionTimeout().toMillis());
+
+    HikariDataSource dataSource = new HikariDataSource(hikariConfig);
+
+    if (sqlConfigurationProperties.isInitializeSchema()) {
+      new ResourceDatabasePopulator(new ClassPathResource(SCHEMA_LOCATION)).execute(dataSource);
+    }
+
+    return dataSource;
+  }
+
+  @Bean
+  SqlStorageService sqlStorageService(
+      SqlConfigurationProperties sqlConfigurationProperties,
+      HikariDataSource kayentaSqlDataSource,
+      AccountCredentialsRepository accountCredentialsRepository) {
+    SqlStorageService.SqlStorageServiceBuilder sqlStorageServiceBuilder =
+        SqlStorageService.builder()
+            .sqlConfigurationProperties(sqlConfigurationProperties)
+            .jdbcTemplate(new NamedParameterJdbcTemplate(kayentaSqlDataSource))
+            .transactionTemplate(
+                new TransactionTemplate(new DataSourceTransactionManager(kayentaSqlDataSource)));
+
+    for (SqlManagedAccount sqlManagedAccount : sqlConfigurationProperties.getAccounts()) {
+      String name = sqlManagedAccount.getName();
+      List<AccountCredentials.Type> supportedTypes = sqlManagedAccount.getSupportedTypes();
+
+      log.info("Registering SQL account {} with supported types {}.", name, supportedTypes);
+
+      SqlNamedAccountCredentials.SqlNamedAccountCredentialsBuilder
+          sqlNamedAccountCredentialsBuilder =
+              SqlNamedAccountCredentials.builder()
+                  .name(name)
+                  .credentials(SqlAccountCredentials.builder().build());
+
+      if (!CollectionUtils.isEmpty(supportedTypes)) {
+        sqlNamedAccountCredentialsBuilder.supportedTypes(supportedTypes);
+      }
+
+      accountCredentialsRepository.save(name, sqlNamedAccountCredentialsBuilder.build());
+      sqlStorageServiceBuilder.accountName(name);
+    }
+
+    SqlStorageService sqlStorageService = sqlStorageServiceBuilder.build();
+
+    log.info(
+        "Populated SqlStorageService with {} SQL accounts.",
+        sqlStorageService.getAccountNames().size());
+
+    return sqlStorageService;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.sql.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+public class SqlConfigurationProperties {
+
+  @Getter private List<SqlManagedAccount> accounts = new ArrayList<>();
+
+  /** The database every account's objects are stored in, e.g. jdbc:postgresql://host/kayenta. */
+  @Getter @Setter private String jdbcUrl;
+
+  @Getter @Setter private String user;
+
+  @Getter @Setter private String password;
+
+  @Getter @Setter private int maximumPoolSize = 10;
+
+  @Getter @Setter private int minimumIdle = 2;
+
+  @Getter @Setter private Duration connectionTimeout = Duration.ofSeconds(5);
+
+  /** Whether to create the tables and indexes at startup if they do not exist yet. */
+  @Getter @Setter private boolean initializeSchema = true;
+
+  /** The number of rows read per query when listing or bulk loading objects. */
+  @Getter @Setter private int pageSize = 500;
+}
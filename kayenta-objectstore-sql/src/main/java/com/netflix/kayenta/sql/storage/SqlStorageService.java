@@ -0,0 +1,452 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.sql.storage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.netflix.kayenta.canary.CanaryConfig;
+import com.netflix.kayenta.sql.config.SqlConfigurationProperties;
+import com.netflix.kayenta.storage.BulkLoadException;
+import com.netflix.kayenta.storage.ObjectType;
+import com.netflix.kayenta.storage.StorageCodec;
+import com.netflix.kayenta.storage.StorageService;
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import javax.validation.constraints.NotNull;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Stores objects as encoded blobs in a relational database, alongside indexed columns for their
+ * type, key, name, applications and update time. Listing objects is an indexed query, filtered by
+ * application and paged by key on the database side, so canary config listing does not depend on
+ * the Redis canary config index.
+ */
+@Builder
+@Slf4j
+public class SqlStorageService implements StorageService {
+
+  private static final String OBJECT_KEY_COLUMNS =
+      "account_name = :accountName AND object_type = :objectType AND object_key = :objectKey";
+
+  private static final String UPDATE_OBJECT =
+      "UPDATE kayenta_objects"
+          + " SET name = :name, updated_at = :updatedAt, encoding = :encoding, body = :body"
+          + " WHERE "
+          + OBJECT_KEY_COLUMNS;
+
+  private static final String INSERT_OBJECT =
+      "INSERT INTO kayenta_objects"
+          + " (account_name, object_type, object_key, name, updated_at, encoding, body)"
+          + " VALUES"
+          + " (:accountName, :objectType, :objectKey, :name, :updatedAt, :encoding, :body)";
+
+  private static final String DELETE_OBJECT =
+      "DELETE FROM kayenta_objects WHERE " + OBJECT_KEY_COLUMNS;
+
+  private static final String SELECT_OBJECTS =
+      "SELECT object_key, encoding, body FROM kayenta_objects"
+          + " WHERE account_name = :accountName AND object_type = :objectType"
+          + " AND object_key IN (:objectKeys)";
+
+  private static final String INSERT_APPLICATION =
+      "INSERT INTO kayenta_object_applications"
+          + " (account_name, object_type, object_key, application, name)"
+          + " VALUES (:accountName, :objectType, :objectKey, :application, :name)";
+
+  private static final String DELETE_APPLICATIONS =
+      "DELETE FROM kayenta_object_applications WHERE " + OBJECT_KEY_COLUMNS;
+
+  private static final String SELECT_APPLICATIONS =
+      "SELECT object_key, application FROM kayenta_object_applications"
+          + " WHERE account_name = :accountName AND object_type = :objectType"
+          + " AND object_key IN (:objectKeys)"
+          + " ORDER BY object_key, application";
+
+  @Autowired private ObjectMapper kayentaObjectMapper;
+
+  @NotNull @Singular @Getter private List<String> accountNames;
+
+  @Autowired(required = false) private StorageCodec storageCodec;
+
+  @NotNull private SqlConfigurationProperties sqlConfigurationProperties;
+
+  @NotNull private NamedParameterJdbcTemplate jdbcTemplate;
+
+  @NotNull private TransactionTemplate transactionTemplate;
+
+  @Override
+  public boolean servicesAccount(String accountName) {
+    return accountNames.contains(accountName);
+  }
+
+  @Override
+  public <T> T loadObject(String accountName, ObjectType objectType, String objectKey)
+      throws IllegalArgumentException, NotFoundException {
+    Map<String, T> objects =
+        selectObjects(accountName, objectType, Collections.singletonList(objectKey));
+
+    if (!objects.containsKey(objectKey)) {
+      throw new NotFoundException(
+          "No "
+              + objectType.getGroup()
+              + " object with key "
+              + objectKey
+              + " was found in account "
+              + accountName
+              + ".");
+    }
+
+    return objects.get(objectKey);
+  }
+
+  @Override
+  public <T> Map<String, T> loadObjects(
+      String accountName, ObjectType objectType, List<String> objectKeys) {
+    List<String> distinctObjectKeys = new ArrayList<>(new LinkedHashSet<>(objectKeys));
+    Map<String, T> loaded = new HashMap<>();
+
+    for (List<String> page :
+        Lists.partition(distinctObjectKeys, sqlConfigurationProperties.getPageSize())) {
+      loaded.putAll(selectObjects(accountName, objectType, page));
+    }
+
+    Map<String, T> objects = new LinkedHashMap<>();
+    Map<String, Throwable> failures = new LinkedHashMap<>();
+
+    for (String objectKey : distinctObjectKeys) {
+      if (loaded.containsKey(objectKey)) {
+        objects.put(objectKey, loaded.get(objectKey));
+      } else {
+        failures.put(
+            objectKey,
+            new NotFoundException(
+                "No " + objectType.getGroup() + " object with key " + objectKey + " was found."));
+      }
+    }
+
+    if (!failures.isEmpty()) {
+      throw new BulkLoadException(objectType, distinctObjectKeys.size(), failures);
+    }
+
+    return objects;
+  }
+
+  private <T> Map<String, T> selectObjects(
+      String accountName, ObjectType objectType, List<String> objectKeys) {
+    TypeReference<T> typeReference = (TypeReference<T>) objectType.getTypeReference();
+    MapSqlParameterSource parameters =
+        new MapSqlParameterSource()
+            .addValue("accountName", accountName)
+            .addValue("objectType", objectType.getGroup())
+            .addValue("objectKeys", objectKeys);
+    Map<String, T> objects = new HashMap<>();
+
+    jdbcTemplate.query(
+        SELECT_OBJECTS,
+        parameters,
+        (ResultSet resultSet) -> {
+          String objectKey = resultSet.getString("object_key");
+          objects.put(objectKey, decode(objectKey, resultSet, typeReference));
+        });
+
+    return objects;
+  }
+
+  private <T> T decode(String objectKey, ResultSet resultSet, TypeReference<T> typeReference)
+      throws SQLException {
+    try {
+      return getStorageCodec()
+          .decode(
+              resultSet.getString("encoding"), resultSet.getBinaryStream("body"), typeReference);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to decode object " + objectKey + ".", e);
+    }
+  }
+
+  private StorageCodec getStorageCodec() {
+    return storageCodec != null ? storageCodec : StorageCodec.json(kayentaObjectMapper);
+  }
+
+  @Override
+  public <T> void storeObject(
+      String accountName,
+      ObjectType objectType,
+      String objectKey,
+      T obj,
+      String filename,
+      boolean isAnUpdate) {
+    String canaryConfigName = null;
+    List<String> applications = Collections.emptyList();
+
+    if (objectType == ObjectType.CANARY_CONFIG) {
+      CanaryConfig canaryConfig = (CanaryConfig) obj;
+
+      canaryConfigName = canaryConfig.getName();
+      applications = new ArrayList<>(new LinkedHashSet<>(canaryConfig.getApplications()));
+    }
+
+    StorageCodec.EncodedObject encodedObject;
+
+    try {
+      encodedObject = getStorageCodec().encode(objectType, obj);
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e);
+    }
+
+    MapSqlParameterSource parameters =
+        objectKeyParameters(accountName, objectType, objectKey)
+            .addValue("name", canaryConfigName)
+            .addValue("updatedAt", System.currentTimeMillis())
+            .addValue("encoding", encodedObject.getEncoding())
+            .addValue("body", encodedObject.getBytes());
+    List<String> canaryConfigApplications = applications;
+
+    try {
+      transactionTemplate.execute(
+          status -> {
+            upsertObject(status, parameters);
+            jdbcTemplate.update(DELETE_APPLICATIONS, parameters);
+            insertApplications(parameters, canaryConfigApplications);
+
+            return null;
+          });
+    } catch (DataAccessException e) {
+      log.error("Update failed on {} object {}: {}", objectType.getGroup(), objectKey, e);
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private void upsertObject(TransactionStatus status, MapSqlParameterSource parameters) {
+    if (jdbcTemplate.update(UPDATE_OBJECT, parameters) > 0) {
+      return;
+    }
+
+    // PostgreSQL aborts the whole transaction when a statement fails, so the insert runs in a
+    // savepoint that can be rolled back if it loses a race with another instance.
+    Object savepoint = status.createSavepoint();
+
+    try {
+      jdbcTemplate.update(INSERT_OBJECT, parameters);
+      status.releaseSavepoint(savepoint);
+    } catch (DuplicateKeyException e) {
+      // Another instance inserted the object since the update above; overwrite it.
+      status.rollbackToSavepoint(savepoint);
+      jdbcTemplate.update(UPDATE_OBJECT, parameters);
+    }
+  }
+
+  private void insertApplications(MapSqlParameterSource parameters, List<String> applications) {
+    if (applications.isEmpty()) {
+      return;
+    }
+
+    SqlParameterSource[] batch =
+        applications.stream()
+            .map(
+                application ->
+                    new MapSqlParameterSource(parameters.getValues())
+                        .addValue("application", application))
+            .toArray(SqlParameterSource[]::new);
+
+    try {
+      jdbcTemplate.batchUpdate(INSERT_APPLICATION, batch);
+    } catch (DuplicateKeyException e) {
+      // We want to avoid creating a naming collision due to the renaming of an existing canary
+      // config. The unique index on (application, name) rejects the row even when another
+      // instance is writing a config of the same name concurrently.
+      throw new IllegalArgumentException(
+          "Canary config with name '"
+              + parameters.getValue("name")
+              + "' already exists in the scope of applications "
+              + applications
+              + ".",
+          e);
+    }
+  }
+
+  @Override
+  public void deleteObject(String accountName, ObjectType objectType, String objectKey) {
+    MapSqlParameterSource parameters = objectKeyParameters(accountName, objectType, objectKey);
+    Integer deleted;
+
+    try {
+      deleted =
+          transactionTemplate.execute(
+              status -> {
+                jdbcTemplate.update(DELETE_APPLICATIONS, parameters);
+                return jdbcTemplate.update(DELETE_OBJECT, parameters);
+              });
+    } catch (DataAccessException e) {
+      log.error("Failed to delete {} object {}: {}", objectType.getGroup(), objectKey, e);
+      throw new IllegalArgumentException(e);
+    }
+
+    if (deleted == null || deleted == 0) {
+      throw new NotFoundException(
+          "No " + objectType.getGroup() + " object with key " + objectKey + " was found.");
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> listObjectKeys(
+      String accountName, ObjectType objectType, List<String> applications, boolean skipIndex) {
+    // Listing is an indexed query whether or not the caller asked to skip the index.
+    int pageSize = sqlConfigurationProperties.getPageSize();
+    List<Map<String, Object>> result = new ArrayList<>();
+    List<Map<String, Object>> page;
+    String startAfterObjectKey = null;
+
+    do {
+      page = listObjectKeys(accountName, objectType, applications, startAfterObjectKey, pageSize);
+
+      if (!page.isEmpty()) {
+        result.addAll(page);
+        startAfterObjectKey = (String) page.get(page.size() - 1).get("id");
+      }
+    } while (page.size() == pageSize);
+
+    return result;
+  }
+
+  /**
+   * Lists up to limit objects in key order, starting after startAfterObjectKey (or from the first
+   * object if it is null). If applications are given, only canary configs shared with at least one
+   * of them are listed.
+   */
+  public List<Map<String, Object>> listObjectKeys(
+      String accountName,
+      ObjectType objectType,
+      List<String> applications,
+      String startAfterObjectKey,
+      int limit) {
+    boolean filterByApplication =
+        objectType == ObjectType.CANARY_CONFIG && !CollectionUtils.isEmpty(applications);
+    MapSqlParameterSource parameters =
+        new MapSqlParameterSource()
+            .addValue("accountName", accountName)
+            .addValue("objectType", objectType.getGroup())
+            .addValue("startAfterObjectKey", startAfterObjectKey)
+            .addValue("applications", applications)
+            .addValue("limit", limit);
+    StringBuilder query =
+        new StringBuilder(
+            "SELECT o.object_key, o.name, o.updated_at FROM kayenta_objects o"
+                + " WHERE o.account_name = :accountName AND o.object_type = :objectType");
+
+    if (!StringUtils.isEmpty(startAfterObjectKey)) {
+      query.append(" AND o.object_key > :startAfterObjectKey");
+    }
+
+    if (filterByApplication) {
+      query.append(
+          " AND EXISTS (SELECT 1 FROM kayenta_object_applications a"
+              + " WHERE a.account_name = o.account_name AND a.object_type = o.object_type"
+              + " AND a.object_key = o.object_key AND a.application IN (:applications))");
+    }
+
+    query.append(" ORDER BY o.object_key LIMIT :limit");
+
+    List<Map<String, Object>> result =
+        jdbcTemplate.query(
+            query.toString(),
+            parameters,
+            (resultSet, rowNum) -> {
+              Map<String, Object> objectMetadataMap = new HashMap<>();
+              long updatedTimestamp = resultSet.getLong("updated_at");
+
+              objectMetadataMap.put("id", resultSet.getString("object_key"));
+              objectMetadataMap.put("updatedTimestamp", updatedTimestamp);
+              objectMetadataMap.put(
+                  "updatedTimestampIso", Instant.ofEpochMilli(updatedTimestamp).toString());
+
+              if (objectType == ObjectType.CANARY_CONFIG) {
+                objectMetadataMap.put("name", resultSet.getString("name"));
+              }
+
+              return objectMetadataMap;
+            });
+
+    if (objectType == ObjectType.CANARY_CONFIG && !result.isEmpty()) {
+      addApplications(accountName, objectType, result);
+    }
+
+    return result;
+  }
+
+  // Canary config summaries carry their applications, as they do when listed from the Redis
+  // canary config index.
+  private void addApplications(
+      String accountName, ObjectType objectType, List<Map<String, Object>> canaryConfigSummaries) {
+    Map<String, List<String>> applicationsByObjectKey = new HashMap<>();
+
+    for (Map<String, Object> canaryConfigSummary : canaryConfigSummaries) {
+      applicationsByObjectKey.put((String) canaryConfigSummary.get("id"), new ArrayList<>());
+    }
+
+    MapSqlParameterSource parameters =
+        new MapSqlParameterSource()
+            .addValue("accountName", accountName)
+            .addValue("objectType", objectType.getGroup())
+            .addValue("objectKeys", new ArrayList<>(applicationsByObjectKey.keySet()));
+
+    jdbcTemplate.query(
+        SELECT_APPLICATIONS,
+        parameters,
+        (ResultSet resultSet) -> {
+          applicationsByObjectKey
+              .get(resultSet.getString("object_key"))
+              .add(resultSet.getString("application"));
+        });
+
+    for (Map<String, Object> canaryConfigSummary : canaryConfigSummaries) {
+      canaryConfigSummary.put(
+          "applications", applicationsByObjectKey.get(canaryConfigSummary.get("id")));
+    }
+  }
+
+  private static MapSqlParameterSource objectKeyParameters(
+      String accountName, ObjectType objectType, String objectKey) {
+    return new MapSqlParameterSource()
+        .addValue("accountName", accountName)
+        .addValue("objectType", objectType.getGroup())
+        .addValue("objectKey", objectKey);
+  }
+}
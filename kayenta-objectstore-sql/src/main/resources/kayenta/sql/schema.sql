@@ -0,0 +1,26 @@
+CREATE TABLE IF NOT EXISTS kayenta_objects (
+  account_name VARCHAR(255) NOT NULL,
+  object_type VARCHAR(64) NOT NULL,
+  object_key VARCHAR(255) NOT NULL,
+  name VARCHAR(255),
+  updated_at BIGINT NOT NULL,
+  encoding VARCHAR(32) NOT NULL,
+  body BYTEA NOT NULL,
+  PRIMARY KEY (account_name, object_type, object_key)
+);
+
+CREATE TABLE IF NOT EXISTS kayenta_object_applications (
+  account_name VARCHAR(255) NOT NULL,
+  object_type VARCHAR(64) NOT NULL,
+  object_key VARCHAR(255) NOT NULL,
+  application VARCHAR(255) NOT NULL,
+  name VARCHAR(255),
+  PRIMARY KEY (account_name, object_type, object_key, application)
+);
+
+CREATE INDEX IF NOT EXISTS kayenta_object_applications_application_idx
+  ON kayenta_object_applications (account_name, object_type, application);
+
+-- Canary config names are unique within each application.
+CREATE UNIQUE INDEX IF NOT EXISTS kayenta_object_applications_name_idx
+  ON kayenta_object_applications (account_name, object_type, application, name);
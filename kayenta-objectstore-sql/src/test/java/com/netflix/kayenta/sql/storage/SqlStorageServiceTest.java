@@ -0,0 +1,234 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.sql.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.kayenta.atlas.config.KayentaSerializationConfigurationProperties;
+import com.netflix.kayenta.canary.CanaryConfig;
+import com.netflix.kayenta.config.KayentaConfiguration;
+import com.netflix.kayenta.metrics.MetricSet;
+import com.netflix.kayenta.sql.config.SqlConfiguration;
+import com.netflix.kayenta.sql.config.SqlConfigurationProperties;
+import com.netflix.kayenta.storage.BulkLoadException;
+import com.netflix.kayenta.storage.ObjectType;
+import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class SqlStorageServiceTest {
+
+  private static final String ACCOUNT = "sql";
+
+  private final SqlConfigurationProperties configuration = new SqlConfigurationProperties();
+
+  private SqlStorageService storageService;
+
+  @Before
+  public void setUp() {
+    DriverManagerDataSource dataSource =
+        new DriverManagerDataSource(
+            "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+    new ResourceDatabasePopulator(new ClassPathResource(SqlConfiguration.SCHEMA_LOCATION))
+        .execute(dataSource);
+
+    ObjectMapper objectMapper = new ObjectMapper();
+    KayentaConfiguration.configureObjectMapperFeatures(
+        objectMapper, new KayentaSerializationConfigurationProperties());
+    configuration.setPageSize(2);
+
+    storageService =
+        SqlStorageService.builder()
+            .accountName(ACCOUNT)
+            .kayentaObjectMapper(objectMapper)
+            .sqlConfigurationProperties(configuration)
+            .jdbcTemplate(new NamedParameterJdbcTemplate(dataSource))
+            .transactionTemplate(
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)))
+            .build();
+  }
+
+  @Test
+  public void storesReplacesAndDeletesObjects() {
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets(1));
+    storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1", metricSets(2));
+
+    List<MetricSet> loaded = storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+
+    assertThat(loaded.get(0).getValues()).containsExactly(2.0);
+
+    storageService.deleteObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1");
+
+    assertThatThrownBy(() -> storageService.loadObject(ACCOUNT, ObjectType.METRIC_SET_LIST, "id-1"))
+        .isInstanceOf(NotFoundException.class);
+  }
+
+  @Test
+  public void listsEveryPageInKeyOrder() {
+    for (String objectKey : Arrays.asList("id-3", "id-1", "id-5", "id-2", "id-4")) {
+      storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, objectKey, metricSets(1));
+    }
+
+    assertThat(storageService.listObjectKeys(ACCOUNT, ObjectType.METRIC_SET_LIST))
+        .extracting(metadata -> metadata.get("id"))
+        .containsExactly("id-1", "id-2", "id-3", "id-4", "id-5");
+    assertThat(
+            storageService.listObjectKeys(
+                ACCOUNT, ObjectType.METRIC_SET_LIST, null, "id-2", Integer.MAX_VALUE))
+        .extracting(metadata -> metadata.get("id"))
+        .containsExactly("id-3", "id-4", "id-5");
+  }
+
+  @Test
+  public void filtersCanaryConfigsByApplication() {
+    storageService.storeObject(
+        ACCOUNT, ObjectType.CANARY_CONFIG, "config-1", canaryConfig("one", "app-a", "app-b"));
+    storageService.storeObject(
+        ACCOUNT, ObjectType.CANARY_CONFIG, "config-2", canaryConfig("two", "app-b"));
+    storageService.storeObject(
+        ACCOUNT, ObjectType.CANARY_CONFIG, "config-3", canaryConfig("three", "app-c"));
+
+    List<Map<String, Object>> canaryConfigs =
+        storageService.listObjectKeys(
+            ACCOUNT, ObjectType.CANARY_CONFIG, Collections.singletonList("app-a"), false);
+
+    assertThat(canaryConfigs).hasSize(1);
+    assertThat(canaryConfigs.get(0))
+        .containsEntry("id", "config-1")
+        .containsEntry("name", "one")
+        .containsEntry("applications", Arrays.asList("app-a", "app-b"));
+    assertThat(
+            storageService.listObjectKeys(
+                ACCOUNT, ObjectType.CANARY_CONFIG, Arrays.asList("app-b", "app-c"), false))
+        .extracting(metadata -> metadata.get("id"))
+        .containsExactly("config-1", "config-2", "config-3");
+  }
+
+  @Test
+  public void rejectsCanaryConfigNamesAlreadyUsedByAnApplication() {
+    storageService.storeObject(
+        ACCOUNT, ObjectType.CANARY_CONFIG, "config-1", canaryConfig("one", "app-a"));
+
+    assertThatThrownBy(
+            () ->
+                storageService.storeObject(
+                    ACCOUNT,
+                    ObjectType.CANARY_CONFIG,
+                    "config-2",
+                    canaryConfig("one", "app-b", "app-a")))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("already exists");
+
+    // Updating a config in place is not a collision, nor is reusing its name in another scope.
+    storageService.storeObject(
+        ACCOUNT, ObjectType.CANARY_CONFIG, "config-1", canaryConfig("one", "app-a"));
+    storageService.storeObject(
+        ACCOUNT, ObjectType.CANARY_CONFIG, "config-2", canaryConfig("one", "app-b"));
+  }
+
+  @Test
+  public void rejectsConcurrentWritesOfTheSameCanaryConfigName() throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(2);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> writes = new ArrayList<>();
+
+    try {
+      for (String objectKey : Arrays.asList("config-1", "config-2")) {
+        writes.add(
+            executorService.submit(
+                () -> {
+                  start.await();
+                  storageService.storeObject(
+                      ACCOUNT, ObjectType.CANARY_CONFIG, objectKey, canaryConfig("one", "app-a"));
+                  return null;
+                }));
+      }
+      start.countDown();
+
+      int failures = 0;
+
+      for (Future<?> write : writes) {
+        try {
+          write.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+          assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+          failures++;
+        }
+      }
+
+      assertThat(failures).isEqualTo(1);
+      assertThat(
+              storageService.listObjectKeys(
+                  ACCOUNT, ObjectType.CANARY_CONFIG, Collections.singletonList("app-a"), false))
+          .hasSize(1);
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  public void loadsObjectsInBulkAndReportsMissingOnes() {
+    for (String objectKey : Arrays.asList("id-1", "id-2", "id-3")) {
+      storageService.storeObject(ACCOUNT, ObjectType.METRIC_SET_LIST, objectKey, metricSets(1));
+    }
+
+    Map<String, List<MetricSet>> loaded =
+        storageService.loadObjects(
+            ACCOUNT, ObjectType.METRIC_SET_LIST, Arrays.asList("id-3", "id-1", "id-2"));
+
+    assertThat(loaded.keySet()).containsExactly("id-3", "id-1", "id-2");
+    assertThatThrownBy(
+            () ->
+                storageService.loadObjects(
+                    ACCOUNT, ObjectType.METRIC_SET_LIST, Arrays.asList("id-1", "id-4")))
+        .isInstanceOfSatisfying(
+            BulkLoadException.class,
+            e -> {
+              assertThat(e.getFailures()).containsOnlyKeys("id-4");
+              assertThat(e.isNotFound()).isTrue();
+            });
+  }
+
+  private static List<MetricSet> metricSets(double value) {
+    return Collections.singletonList(
+        MetricSet.builder().name("requests").values(new double[] {value}).build());
+  }
+
+  private static CanaryConfig canaryConfig(String name, String... applications) {
+    return CanaryConfig.builder().name(name).applications(Arrays.asList(applications)).build();
+  }
+}
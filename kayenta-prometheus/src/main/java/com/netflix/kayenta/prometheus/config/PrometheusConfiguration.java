@@ -16,6 +16,7 @@
 
 package com.netflix.kayenta.prometheus.config;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.kayenta.metrics.MetricsService;
 import com.netflix.kayenta.prometheus.metrics.PrometheusMetricDescriptorsCache;
 import com.netflix.kayenta.prometheus.metrics.PrometheusMetricsService;
@@ -28,6 +29,7 @@ import com.netflix.kayenta.security.AccountCredentialsRepository;
 import com.squareup.okhttp.OkHttpClient;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Executors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -71,6 +73,15 @@ public class PrometheusConfiguration {
     PrometheusMetricsService.PrometheusMetricsServiceBuilder prometheusMetricsServiceBuilder =
         PrometheusMetricsService.builder();
     prometheusMetricsServiceBuilder.scopeLabel(prometheusConfigurationProperties.getScopeLabel());
+    prometheusMetricsServiceBuilder.maxPointsPerQuery(
+        prometheusConfigurationProperties.getMaxPointsPerQuery());
+    prometheusMetricsServiceBuilder.queryExecutor(
+        Executors.newFixedThreadPool(
+            Math.max(1, prometheusConfigurationProperties.getMaxConcurrentQueries()),
+            new ThreadFactoryBuilder()
+                .setNameFormat("prometheus-range-query-%d")
+                .setDaemon(true)
+                .build()));
 
     for (PrometheusManagedAccount prometheusManagedAccount :
         prometheusConfigurationProperties.getAccounts()) {
@@ -26,6 +26,16 @@ public class PrometheusConfigurationProperties {
 
   @Getter @Setter private long metadataCachingIntervalMS = Duration.ofSeconds(60).toMillis();
 
+  /**
+   * Range queries that would return more points per series than this are split into step-aligned
+   * sub-queries, which stays clear of Prometheus' limit of 11,000 points per series. Zero disables
+   * splitting.
+   */
+  @Getter @Setter private int maxPointsPerQuery = 10000;
+
+  /** The number of sub-queries of split range queries that may run at the same time. */
+  @Getter @Setter private int maxConcurrentQueries = 4;
+
   /**
    * TODO(duftler): Once we've finished docs for all target platforms, move this somewhere more
    * appropriate. GCE: Configures Prometheus service discovery to automatically identify the GCE
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.prometheus.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.netflix.kayenta.metrics.DoubleSeries;
+import com.netflix.kayenta.prometheus.model.PrometheusResults;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the response of a Prometheus range query straight off the wire.
+ *
+ * <p>The response is walked token by token: the timestamps and values of each series are written
+ * into primitive buffers, and sample values are parsed from the parser's character buffer without
+ * materializing a String for the common case. Once every series has been read, the step is taken
+ * to be the smallest distance between two consecutive samples in the response, and each series is
+ * laid out on that grid, so that a missing sample becomes a NaN rather than shifting the samples
+ * after it. The response alone cannot tell where the requested range starts or, if samples are
+ * missing throughout, what its step is; PrometheusMetricsService lays every series out again on
+ * the grid of the requested start and step.
+ */
+class PrometheusRangeQueryDecoder {
+
+  // Powers of ten that are exactly representable as doubles.
+  private static final double[] POWERS_OF_TEN = new double[23];
+
+  // Mantissas below this are exactly representable as doubles.
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private final JsonFactory jsonFactory;
+
+  PrometheusRangeQueryDecoder(JsonFactory jsonFactory) {
+    this.jsonFactory = jsonFactory;
+  }
+
+  /**
+   * Returns the series of the response, or an empty list if the query matched nothing.
+   *
+   * @throws IllegalStateException if Prometheus reported that the query failed
+   */
+  List<PrometheusResults> decode(InputStream in) throws IOException {
+    List<RawSeries> rawSeriesList = new ArrayList<>();
+    String status = null;
+    String error = null;
+
+    try (JsonParser parser = jsonFactory.createParser(in)) {
+      expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+
+        if ("status".equals(fieldName)) {
+          status = parser.getValueAsString();
+        } else if ("error".equals(fieldName)) {
+          error = parser.getValueAsString();
+        } else if ("data".equals(fieldName) && token == JsonToken.START_OBJECT) {
+          readData(parser, rawSeriesList);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+
+    if ("error".equals(status)) {
+      throw new IllegalStateException("Prometheus query failed: " + error);
+    }
+
+    return align(rawSeriesList);
+  }
+
+  private static void readData(JsonParser parser, List<RawSeries> rawSeriesList)
+      throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+
+      if ("result".equals(fieldName) && token == JsonToken.START_ARRAY) {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          rawSeriesList.add(readSeries(parser));
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private static RawSeries readSeries(JsonParser parser) throws IOException {
+    RawSeries rawSeries = new RawSeries();
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+
+      if ("metric".equals(fieldName) && token == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String tagName = parser.getCurrentName();
+          String tagValue = parser.nextTextValue();
+
+          if ("__name__".equals(tagName)) {
+            rawSeries.id = tagValue;
+          } else {
+            rawSeries.tags.put(tagName, tagValue);
+          }
+        }
+      } else if ("values".equals(fieldName) && token == JsonToken.START_ARRAY) {
+        while (parser.nextToken() == JsonToken.START_ARRAY) {
+          if (!parser.nextToken().isNumeric()) {
+            expect(parser, parser.currentToken(), JsonToken.VALUE_NUMBER_FLOAT);
+          }
+          long timestampMillis = Math.round(parser.getDoubleValue() * 1000);
+          parser.nextToken();
+          double value = parseValue(parser);
+          expect(parser, parser.nextToken(), JsonToken.END_ARRAY);
+
+          rawSeries.add(timestampMillis, value);
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    return rawSeries;
+  }
+
+  // Prometheus encodes sample values as strings, e.g. "0.25", "NaN" or "+Inf".
+  private static double parseValue(JsonParser parser) throws IOException {
+    JsonToken token = parser.currentToken();
+
+    if (token == JsonToken.VALUE_NULL) {
+      return Double.NaN;
+    } else if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+      return parser.getDoubleValue();
+    }
+
+    expect(parser, token, JsonToken.VALUE_STRING);
+
+    char[] chars = parser.getTextCharacters();
+    int offset = parser.getTextOffset();
+    int length = parser.getTextLength();
+    double value = parseSimpleDecimal(chars, offset, length);
+
+    if (!Double.isNaN(value)) {
+      return value;
+    }
+
+    switch (parser.getText()) {
+      case "NaN":
+        return Double.NaN;
+      case "+Inf":
+      case "Inf":
+        return Double.POSITIVE_INFINITY;
+      case "-Inf":
+        return Double.NEGATIVE_INFINITY;
+      default:
+        return Double.parseDouble(parser.getText());
+    }
+  }
+
+  /**
+   * Parses a plain decimal such as "-12.5" whose digits fit in a double's mantissa, which is then
+   * divided by an exactly representable power of ten and so is correctly rounded. Returns NaN for
+   * anything else (exponents, long mantissas, special values), which is left to the caller.
+   */
+  static double parseSimpleDecimal(char[] chars, int offset, int length) {
+    int end = offset + length;
+    int i = offset;
+    boolean negative = false;
+
+    if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+      negative = chars[i] == '-';
+      i++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = -1;
+
+    for (; i < end; i++) {
+      char c = chars[i];
+
+      if (c >= '0' && c <= '9') {
+        mantissa = mantissa * 10 + (c - '0');
+        digits++;
+
+        if (fractionDigits >= 0) {
+          fractionDigits++;
+        }
+        if (mantissa >= MAX_EXACT_MANTISSA) {
+          return Double.NaN;
+        }
+      } else if (c == '.' && fractionDigits < 0) {
+        fractionDigits = 0;
+      } else {
+        return Double.NaN;
+      }
+    }
+
+    if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+      return Double.NaN;
+    }
+
+    double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+
+    return negative ? -value : value;
+  }
+
+  private static List<PrometheusResults> align(List<RawSeries> rawSeriesList) {
+    // Every series of a range query shares the same step. If no series has two consecutive
+    // samples, consider the step size to be zero.
+    long stepMillis = Long.MAX_VALUE;
+
+    for (RawSeries rawSeries : rawSeriesList) {
+      for (int i = 1; i < rawSeries.size; i++) {
+        long delta = rawSeries.timestampsMillis[i] - rawSeries.timestampsMillis[i - 1];
+
+        if (delta > 0 && delta < stepMillis) {
+          stepMillis = delta;
+        }
+      }
+    }
+
+    if (stepMillis == Long.MAX_VALUE) {
+      stepMillis = 0;
+    }
+
+    List<PrometheusResults> prometheusResultsList = new ArrayList<>(rawSeriesList.size());
+
+    for (RawSeries rawSeries : rawSeriesList) {
+      if (rawSeries.size == 0) {
+        continue;
+      }
+
+      long startTimeMillis = rawSeries.timestampsMillis[0];
+      double[] values;
+
+      if (stepMillis == 0) {
+        values = Arrays.copyOf(rawSeries.values, 1);
+      } else {
+        long lastTimeMillis = rawSeries.timestampsMillis[rawSeries.size - 1];
+        int gridSize = (int) ((lastTimeMillis - startTimeMillis + stepMillis / 2) / stepMillis) + 1;
+
+        if (gridSize == rawSeries.size) {
+          // No samples are missing, so the buffer already is the series.
+          values =
+              rawSeries.values.length == gridSize
+                  ? rawSeries.values
+                  : Arrays.copyOf(rawSeries.values, gridSize);
+        } else {
+          values = new double[gridSize];
+          Arrays.fill(values, Double.NaN);
+
+          for (int i = 0; i < rawSeries.size; i++) {
+            long offsetMillis = rawSeries.timestampsMillis[i] - startTimeMillis;
+            values[(int) ((offsetMillis + stepMillis / 2) / stepMillis)] = rawSeries.values[i];
+          }
+        }
+      }
+
+      long stepSecs = TimeUnit.MILLISECONDS.toSeconds(stepMillis);
+      long endTimeMillis = startTimeMillis + values.length * stepSecs * 1000;
+
+      prometheusResultsList.add(
+          new PrometheusResults(
+              rawSeries.id,
+              startTimeMillis,
+              stepSecs,
+              endTimeMillis,
+              rawSeries.tags,
+              DoubleSeries.of(values)));
+    }
+
+    return prometheusResultsList;
+  }
+
+  private static void expect(JsonParser parser, JsonToken actual, JsonToken expected)
+      throws JsonParseException {
+    if (actual != expected) {
+      throw new JsonParseException(
+          parser, "Expected " + expected + " in Prometheus response but found " + actual + ".");
+    }
+  }
+
+  private static class RawSeries {
+
+    private String id;
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private long[] timestampsMillis = new long[64];
+    private double[] values = new double[64];
+    private int size;
+
+    void add(long timestampMillis, double value) {
+      if (size == values.length) {
+        timestampsMillis = Arrays.copyOf(timestampsMillis, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+
+      timestampsMillis[size] = timestampMillis;
+      values[size] = value;
+      size++;
+    }
+  }
+}
@@ -19,14 +19,10 @@ package com.netflix.kayenta.prometheus.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.kayenta.prometheus.model.PrometheusMetricDescriptorsResponse;
 import com.netflix.kayenta.prometheus.model.PrometheusResults;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -42,10 +38,12 @@ import retrofit.mime.TypedOutput;
 public class PrometheusResponseConverter implements Converter {
 
   private final ObjectMapper kayentaObjectMapper;
+  private final PrometheusRangeQueryDecoder rangeQueryDecoder;
 
   @Autowired
   public PrometheusResponseConverter(ObjectMapper kayentaObjectMapper) {
     this.kayentaObjectMapper = kayentaObjectMapper;
+    this.rangeQueryDecoder = new PrometheusRangeQueryDecoder(kayentaObjectMapper.getFactory());
   }
 
   @Override
@@ -53,73 +51,21 @@ public class PrometheusResponseConverter implements Converter {
     if (type == PrometheusMetricDescriptorsResponse.class) {
       return new JacksonConverter(kayentaObjectMapper).fromBody(body, type);
     } else {
-      try (BufferedReader reader = new BufferedReader(new InputStreamReader(body.in()))) {
-        String json = reader.readLine();
-        Map responseMap = kayentaObjectMapper.readValue(json, Map.class);
-        Map data = (Map) responseMap.get("data");
-        List<Map> resultList = (List<Map>) data.get("result");
-        List<PrometheusResults> prometheusResultsList =
-            new ArrayList<PrometheusResults>(resultList.size());
+      try (InputStream in = body.in()) {
+        List<PrometheusResults> prometheusResultsList = rangeQueryDecoder.decode(in);
 
-        if (CollectionUtils.isEmpty(resultList)) {
+        if (CollectionUtils.isEmpty(prometheusResultsList)) {
           log.warn("Received no data from Prometheus.");
           return null;
         }
 
-        for (Map elem : resultList) {
-          Map<String, String> tags = (Map<String, String>) elem.get("metric");
-          String id = tags.remove("__name__");
-          List<List> values = (List<List>) elem.get("values");
-          List<Double> dataValues = new ArrayList<Double>(values.size());
-
-          for (List tuple : values) {
-            String val = (String) tuple.get(1);
-            if (val != null) {
-              switch (val) {
-                case "+Inf":
-                  dataValues.add(Double.POSITIVE_INFINITY);
-                  break;
-                case "-Inf":
-                  dataValues.add(Double.NEGATIVE_INFINITY);
-                  break;
-                case "NaN":
-                  dataValues.add(Double.NaN);
-                  break;
-                default:
-                  dataValues.add(Double.valueOf(val));
-              }
-            }
-          }
-
-          long startTimeMillis =
-              doubleTimestampSecsToLongTimestampMillis(values.get(0).get(0) + "");
-          // If there aren't at least two data points, consider the step size to be zero.
-          long stepSecs =
-              values.size() > 1
-                  ? TimeUnit.MILLISECONDS.toSeconds(
-                      doubleTimestampSecsToLongTimestampMillis(values.get(1).get(0) + "")
-                          - startTimeMillis)
-                  : 0;
-          long endTimeMillis = startTimeMillis + values.size() * stepSecs * 1000;
-
-          prometheusResultsList.add(
-              new PrometheusResults(
-                  id, startTimeMillis, stepSecs, endTimeMillis, tags, dataValues));
-        }
-
         return prometheusResultsList;
-      } catch (IOException e) {
-        e.printStackTrace();
+      } catch (IOException | IllegalStateException e) {
+        throw new ConversionException(e);
       }
-
-      return null;
     }
   }
 
-  private static long doubleTimestampSecsToLongTimestampMillis(String doubleTimestampSecsAsString) {
-    return (long) (Double.parseDouble(doubleTimestampSecsAsString) * 1000);
-  }
-
   @Override
   public TypedOutput toBody(Object object) {
     return null;
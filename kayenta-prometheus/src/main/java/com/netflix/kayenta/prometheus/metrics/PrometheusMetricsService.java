@@ -21,6 +21,7 @@ import com.netflix.kayenta.canary.CanaryMetricConfig;
 import com.netflix.kayenta.canary.CanaryScope;
 import com.netflix.kayenta.canary.providers.metrics.PrometheusCanaryMetricSetQueryConfig;
 import com.netflix.kayenta.canary.providers.metrics.QueryConfigUtils;
+import com.netflix.kayenta.metrics.DoubleSeries;
 import com.netflix.kayenta.metrics.MetricSet;
 import com.netflix.kayenta.metrics.MetricsService;
 import com.netflix.kayenta.prometheus.canary.PrometheusCanaryScope;
@@ -35,9 +36,14 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import javax.validation.constraints.NotNull;
 import lombok.Builder;
 import lombok.Getter;
@@ -61,6 +67,13 @@ public class PrometheusMetricsService implements MetricsService {
 
   @Autowired private final PrometheusMetricDescriptorsCache metricDescriptorsCache;
 
+  // Range queries spanning more points than this are split into concurrent sub-queries. Zero
+  // disables splitting.
+  private final int maxPointsPerQuery;
+
+  // Runs the sub-queries of split range queries; if null, they run one after the other.
+  private final Executor queryExecutor;
+
   @Override
   public String getType() {
     return "prometheus";
@@ -256,12 +269,7 @@ public class PrometheusMetricsService implements MetricsService {
     List<PrometheusResults> prometheusResultsList;
 
     try {
-      prometheusResultsList =
-          prometheusRemoteService.rangeQuery(
-              query,
-              canaryScope.getStart().toString(),
-              canaryScope.getEnd().toString(),
-              canaryScope.getStep());
+      prometheusResultsList = rangeQuery(prometheusRemoteService, query, canaryScope);
     } finally {
       long endTime = registry.clock().monotonicTime();
       // TODO(ewiseblatt/duftler): Add appropriate tags.
@@ -316,6 +324,132 @@ public class PrometheusMetricsService implements MetricsService {
     return metricSetList;
   }
 
+  /**
+   * Runs the range query, split into consecutive step-aligned chunks of at most maxPointsPerQuery
+   * points each so that no sub-query runs into Prometheus' limit on points per series. The chunks
+   * are fetched concurrently, and every series they return is laid out on the grid of the
+   * requested start and step.
+   */
+  private List<PrometheusResults> rangeQuery(
+      PrometheusRemoteService prometheusRemoteService, String query, CanaryScope canaryScope) {
+    Instant start = canaryScope.getStart();
+    Instant end = canaryScope.getEnd();
+    Long step = canaryScope.getStep();
+
+    if (step == null || step <= 0) {
+      return prometheusRemoteService.rangeQuery(query, start.toString(), end.toString(), step);
+    }
+
+    long stepMillis = TimeUnit.SECONDS.toMillis(step);
+    long chunkMillis = stepMillis * maxPointsPerQuery;
+    List<Instant> chunkStarts = new ArrayList<>();
+
+    if (maxPointsPerQuery > 0) {
+      for (Instant chunkStart = start;
+          !chunkStart.isAfter(end);
+          chunkStart = chunkStart.plusMillis(chunkMillis)) {
+        chunkStarts.add(chunkStart);
+      }
+    }
+
+    if (chunkStarts.size() <= 1) {
+      return alignToGrid(
+          Collections.singletonList(
+              prometheusRemoteService.rangeQuery(query, start.toString(), end.toString(), step)),
+          start.toEpochMilli(),
+          end.toEpochMilli(),
+          stepMillis);
+    }
+
+    List<CompletableFuture<List<PrometheusResults>>> chunkFutures = new ArrayList<>();
+
+    for (Instant chunkStart : chunkStarts) {
+      Instant chunkEnd = chunkStart.plusMillis(chunkMillis - stepMillis);
+      Instant boundedChunkEnd = chunkEnd.isAfter(end) ? end : chunkEnd;
+      Supplier<List<PrometheusResults>> chunkQuery =
+          () ->
+              prometheusRemoteService.rangeQuery(
+                  query, chunkStart.toString(), boundedChunkEnd.toString(), step);
+
+      chunkFutures.add(
+          queryExecutor != null
+              ? CompletableFuture.supplyAsync(chunkQuery, queryExecutor)
+              : CompletableFuture.completedFuture(chunkQuery.get()));
+    }
+
+    List<List<PrometheusResults>> chunks = new ArrayList<>(chunkFutures.size());
+
+    try {
+      for (CompletableFuture<List<PrometheusResults>> chunkFuture : chunkFutures) {
+        chunks.add(chunkFuture.join());
+      }
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+
+    return alignToGrid(chunks, start.toEpochMilli(), end.toEpochMilli(), stepMillis);
+  }
+
+  /**
+   * Lays the pieces of each series, identified by its name and labels, out on the grid from
+   * startMillis to endMillis. Each sample goes to the grid point at its own timestamp, so a series
+   * that is missing samples, at its start or anywhere else, has NaNs in their place and lines up
+   * with every other series of the same grid.
+   */
+  private static List<PrometheusResults> alignToGrid(
+      List<List<PrometheusResults>> chunks, long startMillis, long endMillis, long stepMillis) {
+    Map<List<Object>, List<PrometheusResults>> piecesBySeries = new LinkedHashMap<>();
+
+    for (List<PrometheusResults> chunk : chunks) {
+      if (chunk != null) {
+        for (PrometheusResults piece : chunk) {
+          piecesBySeries
+              .computeIfAbsent(
+                  Arrays.asList(piece.getId(), piece.getTags()), key -> new ArrayList<>())
+              .add(piece);
+        }
+      }
+    }
+
+    List<PrometheusResults> prometheusResultsList = new ArrayList<>(piecesBySeries.size());
+    int size = (int) ((endMillis - startMillis) / stepMillis) + 1;
+
+    for (List<PrometheusResults> pieces : piecesBySeries.values()) {
+      PrometheusResults first = pieces.get(0);
+      double[] values = new double[size];
+
+      Arrays.fill(values, Double.NaN);
+      for (PrometheusResults piece : pieces) {
+        long pieceStepMillis = TimeUnit.SECONDS.toMillis(piece.getStepSecs());
+        List<Double> pieceValues = piece.getValues();
+
+        for (int i = 0; i < pieceValues.size(); i++) {
+          long offsetMillis = piece.getStartTimeMillis() + i * pieceStepMillis - startMillis;
+          long index = Math.floorDiv(offsetMillis + stepMillis / 2, stepMillis);
+          double value = pieceValues.get(i);
+
+          if (index >= 0 && index < size && !Double.isNaN(value)) {
+            values[(int) index] = value;
+          }
+        }
+      }
+
+      prometheusResultsList.add(
+          new PrometheusResults(
+              first.getId(),
+              startMillis,
+              TimeUnit.MILLISECONDS.toSeconds(stepMillis),
+              startMillis + size * stepMillis,
+              first.getTags(),
+              DoubleSeries.of(values)));
+    }
+
+    return prometheusResultsList;
+  }
+
   @Override
   public List<Map> getMetadata(String metricsAccountName, String filter) {
     return metricDescriptorsCache.getMetadata(metricsAccountName, filter);
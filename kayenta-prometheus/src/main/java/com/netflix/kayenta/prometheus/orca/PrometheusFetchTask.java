@@ -20,10 +20,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.kayenta.canary.CanaryConfig;
 import com.netflix.kayenta.canary.CanaryScope;
 import com.netflix.kayenta.metrics.SynchronousQueryProcessor;
+import com.netflix.kayenta.metrics.orca.MetricsFetchTask;
 import com.netflix.kayenta.prometheus.canary.PrometheusCanaryScope;
 import com.netflix.kayenta.security.AccountCredentials;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
-import com.netflix.spinnaker.orca.api.pipeline.RetryableTask;
 import com.netflix.spinnaker.orca.api.pipeline.TaskResult;
 import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
 import java.io.IOException;
@@ -36,7 +36,7 @@ import org.springframework.stereotype.Component;
 
 @Component
 @Slf4j
-public class PrometheusFetchTask implements RetryableTask {
+public class PrometheusFetchTask implements MetricsFetchTask {
 
   private final ObjectMapper kayentaObjectMapper;
   private final AccountCredentialsRepository accountCredentialsRepository;
@@ -75,7 +75,6 @@ public class PrometheusFetchTask implements RetryableTask {
     Map<String, Object> canaryConfigMap = (Map<String, Object>) context.get("canaryConfig");
     CanaryConfig canaryConfig =
         kayentaObjectMapper.convertValue(canaryConfigMap, CanaryConfig.class);
-    int metricIndex = (Integer) stage.getContext().get("metricIndex");
     CanaryScope canaryScope;
     try {
       canaryScope =
@@ -98,7 +97,7 @@ public class PrometheusFetchTask implements RetryableTask {
         resolvedMetricsAccountName,
         resolvedStorageAccountName,
         canaryConfig,
-        metricIndex,
-        canaryScope);
+        canaryScope,
+        stage);
   }
 }
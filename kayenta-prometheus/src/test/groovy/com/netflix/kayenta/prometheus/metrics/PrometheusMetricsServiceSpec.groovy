@@ -19,11 +19,20 @@ package com.netflix.kayenta.prometheus.metrics
 import com.netflix.kayenta.canary.CanaryConfig
 import com.netflix.kayenta.canary.CanaryMetricConfig
 import com.netflix.kayenta.canary.providers.metrics.PrometheusCanaryMetricSetQueryConfig
+import com.netflix.kayenta.metrics.DoubleSeries
+import com.netflix.kayenta.metrics.MetricSet
 import com.netflix.kayenta.prometheus.canary.PrometheusCanaryScope
+import com.netflix.kayenta.prometheus.model.PrometheusResults
+import com.netflix.kayenta.prometheus.security.PrometheusNamedAccountCredentials
+import com.netflix.kayenta.prometheus.service.PrometheusRemoteService
+import com.netflix.kayenta.security.AccountCredentialsRepository
+import com.netflix.spectator.api.NoopRegistry
 import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.time.Instant
+
 class PrometheusMetricsServiceSpec extends Specification {
 
   @Shared
@@ -89,4 +98,115 @@ class PrometheusMetricsServiceSpec extends Specification {
     null          | null                         | 'PromQL:histogram_quantile(0.5, prometheus_http_response_size_bytes_bucket{instance="localhost:9090",handler="${scope}"})'         | null               | "/graph"            | null                || 'histogram_quantile(0.5, prometheus_http_response_size_bytes_bucket{instance="localhost:9090",handler="/graph"})'
     null          | null                         | 'PromQL:histogram_quantile(${quantile}, prometheus_http_response_size_bytes_bucket{instance="localhost:9090",handler="${scope}"})' | null               | "/graph"            | [quantile: 0.99]    || 'histogram_quantile(0.99, prometheus_http_response_size_bytes_bucket{instance="localhost:9090",handler="/graph"})'
   }
+
+  void "Long range queries are split into step-aligned sub-queries whose series are merged"() {
+    given:
+    PrometheusRemoteService prometheusRemoteService = Mock(PrometheusRemoteService)
+    AccountCredentialsRepository accountCredentialsRepository = Stub(AccountCredentialsRepository) {
+      getRequiredOne("some-account") >> PrometheusNamedAccountCredentials.builder()
+        .name("some-account")
+        .prometheusRemoteService(prometheusRemoteService)
+        .build()
+    }
+    PrometheusMetricsService splittingPrometheusMetricsService =
+      PrometheusMetricsService.builder()
+        .scopeLabel("instance")
+        .accountCredentialsRepository(accountCredentialsRepository)
+        .registry(new NoopRegistry())
+        .maxPointsPerQuery(100)
+        .build()
+    CanaryMetricConfig canaryMetricConfig =
+      CanaryMetricConfig.builder()
+        .name("some-metric")
+        .query(PrometheusCanaryMetricSetQueryConfig.builder().customInlineTemplate("PromQL:some_query").build())
+        .build()
+    CanaryConfig canaryConfig = CanaryConfig.builder().metric(canaryMetricConfig).build()
+    // 250 points of 60 seconds each.
+    PrometheusCanaryScope prometheusCanaryScope =
+      new PrometheusCanaryScope()
+        .setStart(Instant.EPOCH)
+        .setEnd(Instant.EPOCH.plusSeconds(249 * 60))
+        .setStep(60L)
+
+    when:
+    List<MetricSet> metricSets =
+      splittingPrometheusMetricsService.queryMetrics("some-account", canaryConfig, canaryMetricConfig, prometheusCanaryScope)
+
+    then:
+    1 * prometheusRemoteService.rangeQuery("some_query", "1970-01-01T00:00:00Z", "1970-01-01T01:39:00Z", 60L) >>
+      [results([instance: "i-1"], 0, 100, 1), results([instance: "i-2"], 0, 100, 2)]
+    1 * prometheusRemoteService.rangeQuery("some_query", "1970-01-01T01:40:00Z", "1970-01-01T03:19:00Z", 60L) >>
+      [results([instance: "i-2"], 6000, 100, 2)]
+    1 * prometheusRemoteService.rangeQuery("some_query", "1970-01-01T03:20:00Z", "1970-01-01T04:09:00Z", 60L) >>
+      [results([instance: "i-1"], 12000, 50, 3), results([instance: "i-2"], 12000, 50, 2)]
+    0 * prometheusRemoteService._
+
+    metricSets.size() == 2
+    metricSets[0].tags == [instance: "i-1"]
+    metricSets[0].startTimeMillis == 0
+    metricSets[0].endTimeMillis == 250 * 60_000
+    metricSets[0].stepMillis == 60_000
+    metricSets[0].values.size() == 250
+    metricSets[0].values.subList(0, 100).every { it == 1 }
+    metricSets[0].values.subList(100, 200).every { it.isNaN() }
+    metricSets[0].values.subList(200, 250).every { it == 3 }
+    metricSets[1].tags == [instance: "i-2"]
+    metricSets[1].values.size() == 250
+    metricSets[1].values.every { it == 2 }
+  }
+
+  void "Series are laid out on the grid of the requested start and step"() {
+    given:
+    PrometheusRemoteService prometheusRemoteService = Mock(PrometheusRemoteService)
+    AccountCredentialsRepository accountCredentialsRepository = Stub(AccountCredentialsRepository) {
+      getRequiredOne("some-account") >> PrometheusNamedAccountCredentials.builder()
+        .name("some-account")
+        .prometheusRemoteService(prometheusRemoteService)
+        .build()
+    }
+    PrometheusMetricsService alignedPrometheusMetricsService =
+      PrometheusMetricsService.builder()
+        .scopeLabel("instance")
+        .accountCredentialsRepository(accountCredentialsRepository)
+        .registry(new NoopRegistry())
+        .build()
+    CanaryMetricConfig canaryMetricConfig =
+      CanaryMetricConfig.builder()
+        .name("some-metric")
+        .query(PrometheusCanaryMetricSetQueryConfig.builder().customInlineTemplate("PromQL:some_query").build())
+        .build()
+    CanaryConfig canaryConfig = CanaryConfig.builder().metric(canaryMetricConfig).build()
+    // 10 points of 60 seconds each.
+    PrometheusCanaryScope prometheusCanaryScope =
+      new PrometheusCanaryScope()
+        .setStart(Instant.EPOCH)
+        .setEnd(Instant.EPOCH.plusSeconds(9 * 60))
+        .setStep(60L)
+    // Missing every other sample, so the step inferred from the response alone is doubled.
+    PrometheusResults everyOtherSample =
+      new PrometheusResults(null, 0, 120, 600_000, [instance: "i-2"], DoubleSeries.of([2, 2, 2, 2, 2] as double[]))
+
+    when:
+    List<MetricSet> metricSets =
+      alignedPrometheusMetricsService.queryMetrics("some-account", canaryConfig, canaryMetricConfig, prometheusCanaryScope)
+
+    then:
+    1 * prometheusRemoteService.rangeQuery("some_query", "1970-01-01T00:00:00Z", "1970-01-01T00:09:00Z", 60L) >>
+      [results([instance: "i-1"], 120, 8, 1), everyOtherSample]
+    0 * prometheusRemoteService._
+
+    metricSets.size() == 2
+    metricSets.every { it.startTimeMillis == 0 && it.stepMillis == 60_000 && it.values.size() == 10 }
+    metricSets[0].tags == [instance: "i-1"]
+    metricSets[0].values.subList(0, 2).every { it.isNaN() }
+    metricSets[0].values.subList(2, 10).every { it == 1 }
+    metricSets[1].tags == [instance: "i-2"]
+    (0..<10).every { i -> i % 2 == 0 ? metricSets[1].values[i] == 2 : metricSets[1].values[i].isNaN() }
+  }
+
+  private static PrometheusResults results(Map<String, String> tags, long startTimeSecs, int length, double value) {
+    double[] values = new double[length]
+    Arrays.fill(values, value)
+    new PrometheusResults(null, startTimeSecs * 1000, 60, (startTimeSecs + length * 60) * 1000, tags, DoubleSeries.of(values))
+  }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.prometheus.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.kayenta.prometheus.model.PrometheusResults;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.Test;
+import retrofit.converter.ConversionException;
+import retrofit.mime.TypedByteArray;
+
+public class PrometheusResponseConverterTest {
+
+  private final PrometheusResponseConverter converter =
+      new PrometheusResponseConverter(new ObjectMapper());
+
+  @Test
+  public void decodesEverySeriesOfARangeQuery() throws ConversionException {
+    List<PrometheusResults> prometheusResultsList =
+        decode(
+            "{\"status\":\"success\",\"data\":{\"resultType\":\"matrix\",\"result\":["
+                + "{\"metric\":{\"__name__\":\"requests\",\"instance\":\"i-1\"},"
+                + "\"values\":[[1435781430.781,\"1\"],[1435781490.781,\"-2.5\"],"
+                + "[1435781550.781,\"0.30000000000000004\"]]},"
+                + "{\"metric\":{\"instance\":\"i-2\"},"
+                + "\"values\":[[1435781430.781,\"NaN\"],[1435781490.781,\"+Inf\"],"
+                + "[1435781550.781,\"-Inf\"]]}]}}");
+
+    assertThat(prometheusResultsList).hasSize(2);
+
+    PrometheusResults first = prometheusResultsList.get(0);
+    assertThat(first.getId()).isEqualTo("requests");
+    assertThat(first.getTags()).containsOnlyKeys("instance");
+    assertThat(first.getStartTimeMillis()).isEqualTo(1435781430781L);
+    assertThat(first.getStepSecs()).isEqualTo(60);
+    assertThat(first.getEndTimeMillis()).isEqualTo(1435781430781L + 3 * 60_000);
+    assertThat(first.getValues()).containsExactly(1.0, -2.5, 0.30000000000000004);
+
+    PrometheusResults second = prometheusResultsList.get(1);
+    assertThat(second.getId()).isNull();
+    assertThat(second.getValues())
+        .containsExactly(Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+  }
+
+  @Test
+  public void missingSamplesBecomeNaNInsteadOfShiftingTheSeries() throws ConversionException {
+    List<PrometheusResults> prometheusResultsList =
+        decode(
+            "{\"status\":\"success\",\"data\":{\"resultType\":\"matrix\",\"result\":["
+                + "{\"metric\":{\"instance\":\"i-1\"},"
+                + "\"values\":[[1000,\"1\"],[1180,\"4\"],[1240,\"5\"]]},"
+                + "{\"metric\":{\"instance\":\"i-2\"},"
+                + "\"values\":[[1000,\"1\"],[1060,\"2\"]]}]}}");
+
+    PrometheusResults first = prometheusResultsList.get(0);
+    assertThat(first.getStepSecs()).isEqualTo(60);
+    assertThat(first.getValues()).containsExactly(1.0, Double.NaN, Double.NaN, 4.0, 5.0);
+    assertThat(first.getEndTimeMillis()).isEqualTo(1_000_000L + 5 * 60_000);
+  }
+
+  @Test
+  public void returnsNullWhenTheQueryMatchesNothing() throws ConversionException {
+    assertThat(
+            decode(
+                "{\"status\":\"success\",\"data\":{\"resultType\":\"matrix\",\"result\":[]}}"))
+        .isNull();
+  }
+
+  @Test
+  public void reportsFailedQueries() {
+    assertThatThrownBy(
+            () ->
+                decode(
+                    "{\"status\":\"error\",\"errorType\":\"bad_data\","
+                        + "\"error\":\"parse error at char 5\"}"))
+        .isInstanceOf(ConversionException.class)
+        .hasMessageContaining("parse error at char 5");
+  }
+
+  @Test
+  public void parsesSimpleDecimalsExactly() {
+    for (String value : new String[] {"0", "12", "-12.5", "0.1", "123456.789", "+3.25", "1."}) {
+      char[] chars = ("xx" + value).toCharArray();
+
+      assertThat(PrometheusRangeQueryDecoder.parseSimpleDecimal(chars, 2, value.length()))
+          .isEqualTo(Double.parseDouble(value));
+    }
+
+    for (String value :
+        new String[] {"", "-", "1e3", "NaN", "+Inf", "1.2.3", "12345678901234567"}) {
+      assertThat(
+              PrometheusRangeQueryDecoder.parseSimpleDecimal(
+                  value.toCharArray(), 0, value.length()))
+          .isNaN();
+    }
+  }
+
+  private List<PrometheusResults> decode(String json) throws ConversionException {
+    return (List<PrometheusResults>)
+        converter.fromBody(
+            new TypedByteArray("application/json", json.getBytes(StandardCharsets.UTF_8)),
+            List.class);
+  }
+}
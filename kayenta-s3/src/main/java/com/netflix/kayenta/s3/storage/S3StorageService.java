@@ -22,6 +22,8 @@ import com.amazonaws.services.s3.model.*;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.netflix.kayenta.aws.security.AwsNamedAccountCredentials;
@@ -29,7 +31,9 @@ import com.netflix.kayenta.canary.CanaryConfig;
 import com.netflix.kayenta.index.CanaryConfigIndex;
 import com.netflix.kayenta.index.config.CanaryConfigIndexAction;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.storage.ConcurrentObjectLoader;
 import com.netflix.kayenta.storage.ObjectType;
+import com.netflix.kayenta.storage.StorageCodec;
 import com.netflix.kayenta.storage.StorageService;
 import com.netflix.kayenta.util.Retry;
 import com.netflix.spinnaker.kork.web.exceptions.NotFoundException;
@@ -61,6 +65,10 @@ public class S3StorageService implements StorageService {
 
   @Autowired CanaryConfigIndex canaryConfigIndex;
 
+  @Autowired(required = false) private ConcurrentObjectLoader concurrentObjectLoader;
+
+  @Autowired(required = false) private StorageCodec storageCodec;
+
   @Override
   public boolean servicesAccount(String accountName) {
     return accountNames.contains(accountName);
@@ -68,6 +76,15 @@ public class S3StorageService implements StorageService {
 
   private final Retry retry = new Retry();
 
+  // Paths of canary configs by account and config id. Unlike other object types, the path of a
+  // canary config depends on its name, so it cannot be derived from the object key alone. The
+  // canary config index lists every config when it is refreshed, which fills this in after a
+  // restart; it is bounded, since a config missing from it is still found by listing.
+  private static final int MAX_CANARY_CONFIG_PATHS = 10000;
+
+  private final Cache<String, String> canaryConfigPaths =
+      CacheBuilder.newBuilder().maximumSize(MAX_CANARY_CONFIG_PATHS).build();
+
   /** Check to see if the bucket exists, creating it if it is not there. */
   public void ensureBucketExists(String accountName) {
     AwsNamedAccountCredentials credentials =
@@ -104,7 +121,22 @@ public class S3StorageService implements StorageService {
         accountCredentialsRepository.getRequiredOne(accountName);
     AmazonS3 amazonS3 = credentials.getAmazonS3();
     String bucket = credentials.getBucket();
-    String path;
+    String path = getKnownPath(objectType, objectKey, credentials);
+
+    if (path != null) {
+      try {
+        return getObject(amazonS3, bucket, path, objectType, objectKey);
+      } catch (AmazonS3Exception e) {
+        if (e.getStatusCode() != 404) {
+          log.error(
+              "Failed to load {} {}: {}", objectType.getGroup(), objectKey, e.getStatusCode());
+          throw e;
+        }
+        // Stored under a legacy path, or a canary config renamed by another instance. Fall back to
+        // looking the path up.
+        forgetPath(objectType, objectKey, credentials);
+      }
+    }
 
     try {
       path = resolveSingularPath(objectType, objectKey, credentials, amazonS3, bucket);
@@ -113,20 +145,98 @@ public class S3StorageService implements StorageService {
     }
 
     try {
-      S3Object s3Object = amazonS3.getObject(bucket, path);
+      T obj = getObject(amazonS3, bucket, path, objectType, objectKey);
 
-      return deserialize(s3Object, (TypeReference<T>) objectType.getTypeReference());
+      rememberPath(objectType, objectKey, credentials, path);
+
+      return obj;
     } catch (AmazonS3Exception e) {
       log.error("Failed to load {} {}: {}", objectType.getGroup(), objectKey, e.getStatusCode());
       if (e.getStatusCode() == 404) {
         throw new NotFoundException("No file at path " + path + ".");
       }
       throw e;
+    }
+  }
+
+  @Override
+  public <T> Map<String, T> loadObjects(
+      String accountName, ObjectType objectType, List<String> objectKeys) {
+    if (concurrentObjectLoader == null) {
+      return StorageService.super.loadObjects(accountName, objectType, objectKeys);
+    }
+
+    return concurrentObjectLoader.loadObjects(
+        objectType, objectKeys, objectKey -> loadObject(accountName, objectType, objectKey));
+  }
+
+  private <T> T getObject(
+      AmazonS3 amazonS3, String bucket, String path, ObjectType objectType, String objectKey) {
+    try (S3Object s3Object = amazonS3.getObject(bucket, path)) {
+      return deserialize(s3Object, (TypeReference<T>) objectType.getTypeReference());
     } catch (IOException e) {
       throw new IllegalStateException("Unable to deserialize object (key: " + objectKey + ")", e);
     }
   }
 
+  /**
+   * Returns the path the object is expected at without listing the bucket, or null if it is not
+   * known. Every object type but canary configs is stored under a path derived from its key.
+   */
+  private String getKnownPath(
+      ObjectType objectType, String objectKey, AwsNamedAccountCredentials credentials) {
+    if (objectType == ObjectType.CANARY_CONFIG) {
+      return canaryConfigPaths.getIfPresent(canaryConfigPathKey(credentials, objectKey));
+    }
+
+    return buildS3Key(credentials, objectType, objectType.getGroup(), objectKey, null);
+  }
+
+  /**
+   * Returns the path of an existing object, checking the expected path with a HEAD request before
+   * falling back to listing the bucket.
+   */
+  private String resolveExistingPath(
+      ObjectType objectType,
+      String objectKey,
+      AwsNamedAccountCredentials credentials,
+      AmazonS3 amazonS3,
+      String bucket) {
+    String path = getKnownPath(objectType, objectKey, credentials);
+
+    if (path != null && amazonS3.doesObjectExist(bucket, path)) {
+      return path;
+    }
+
+    forgetPath(objectType, objectKey, credentials);
+    path = resolveSingularPath(objectType, objectKey, credentials, amazonS3, bucket);
+    rememberPath(objectType, objectKey, credentials, path);
+
+    return path;
+  }
+
+  private void rememberPath(
+      ObjectType objectType,
+      String objectKey,
+      AwsNamedAccountCredentials credentials,
+      String path) {
+    if (objectType == ObjectType.CANARY_CONFIG) {
+      canaryConfigPaths.put(canaryConfigPathKey(credentials, objectKey), path);
+    }
+  }
+
+  private void forgetPath(
+      ObjectType objectType, String objectKey, AwsNamedAccountCredentials credentials) {
+    if (objectType == ObjectType.CANARY_CONFIG) {
+      canaryConfigPaths.invalidate(canaryConfigPathKey(credentials, objectKey));
+    }
+  }
+
+  private static String canaryConfigPathKey(
+      AwsNamedAccountCredentials credentials, String objectKey) {
+    return credentials.getName() + ":" + objectKey;
+  }
+
   private String resolveSingularPath(
       ObjectType objectType,
       String objectKey,
@@ -153,7 +263,14 @@ public class S3StorageService implements StorageService {
   }
 
   private <T> T deserialize(S3Object s3Object, TypeReference<T> typeReference) throws IOException {
-    return objectMapper.readValue(s3Object.getObjectContent(), typeReference);
+    String encoding =
+        s3Object.getObjectMetadata().getUserMetaDataOf(StorageCodec.ENCODING_METADATA_KEY);
+
+    return getStorageCodec().decode(encoding, s3Object.getObjectContent(), typeReference);
+  }
+
+  private StorageCodec getStorageCodec() {
+    return storageCodec != null ? storageCodec : StorageCodec.json(objectMapper);
   }
 
   @Override
@@ -188,7 +305,7 @@ public class S3StorageService implements StorageService {
       if (isAnUpdate) {
         // Storing a canary config while not checking for naming collisions can only be a PUT (i.e.
         // an update to an existing config).
-        originalPath = resolveSingularPath(objectType, objectKey, credentials, amazonS3, bucket);
+        originalPath = resolveExistingPath(objectType, objectKey, credentials, amazonS3, bucket);
       } else {
         originalPath = null;
       }
@@ -222,9 +339,13 @@ public class S3StorageService implements StorageService {
     }
 
     try {
-      byte[] bytes = objectMapper.writeValueAsBytes(obj);
+      StorageCodec.EncodedObject encodedObject = getStorageCodec().encode(objectType, obj);
+      byte[] bytes = encodedObject.getBytes();
       ObjectMetadata objectMetadata = new ObjectMetadata();
       objectMetadata.setContentLength(bytes.length);
+      objectMetadata.setContentType(encodedObject.getContentType());
+      objectMetadata.addUserMetadata(
+          StorageCodec.ENCODING_METADATA_KEY, encodedObject.getEncoding());
       objectMetadata.setContentMD5(
           new String(org.apache.commons.codec.binary.Base64.encodeBase64(DigestUtils.md5(bytes))));
 
@@ -239,6 +360,7 @@ public class S3StorageService implements StorageService {
           retry.retry(
               () -> amazonS3.deleteObject(bucket, originalPath), MAX_RETRIES, RETRY_BACKOFF);
         }
+        rememberPath(objectType, objectKey, credentials, path);
 
         canaryConfigIndex.finishPendingUpdate(
             credentials, CanaryConfigIndexAction.UPDATE, correlationId);
@@ -285,7 +407,7 @@ public class S3StorageService implements StorageService {
         accountCredentialsRepository.getRequiredOne(accountName);
     AmazonS3 amazonS3 = credentials.getAmazonS3();
     String bucket = credentials.getBucket();
-    String path = resolveSingularPath(objectType, objectKey, credentials, amazonS3, bucket);
+    String path = resolveExistingPath(objectType, objectKey, credentials, amazonS3, bucket);
 
     long updatedTimestamp = -1;
     String correlationId = null;
@@ -330,6 +452,7 @@ public class S3StorageService implements StorageService {
 
     try {
       retry.retry(() -> amazonS3.deleteObject(bucket, path), MAX_RETRIES, RETRY_BACKOFF);
+      forgetPath(objectType, objectKey, credentials);
 
       if (correlationId != null) {
         canaryConfigIndex.finishPendingUpdate(
@@ -391,8 +514,9 @@ public class S3StorageService implements StorageService {
           int indexOfLastSlash = itemName.lastIndexOf("/");
           Map<String, Object> objectMetadataMap = new HashMap<>();
           long updatedTimestamp = summary.getLastModified().getTime();
+          String id = itemName.substring(skipToOffset, indexOfLastSlash);
 
-          objectMetadataMap.put("id", itemName.substring(skipToOffset, indexOfLastSlash));
+          objectMetadataMap.put("id", id);
           objectMetadataMap.put("updatedTimestamp", updatedTimestamp);
           objectMetadataMap.put(
               "updatedTimestampIso", Instant.ofEpochMilli(updatedTimestamp).toString());
@@ -405,6 +529,7 @@ public class S3StorageService implements StorageService {
             }
 
             objectMetadataMap.put("name", name);
+            rememberPath(objectType, id, credentials, itemName);
           }
 
           result.add(objectMetadataMap);
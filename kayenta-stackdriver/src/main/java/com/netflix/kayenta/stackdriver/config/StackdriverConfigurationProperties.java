@@ -23,4 +23,11 @@ import lombok.Setter;
 public class StackdriverConfigurationProperties {
 
   @Getter @Setter private long metadataCachingIntervalMS = Duration.ofSeconds(60).toMillis();
+
+  // Maximum number of Stackdriver queries issued concurrently when fetching batches of metrics.
+  @Getter @Setter private int maxConcurrentQueries = 8;
+
+  // Maximum number of time series returned per page of a query. Every page is fetched, so this
+  // only bounds the size of each response.
+  @Getter @Setter private int queryPageSize = 1000;
 }
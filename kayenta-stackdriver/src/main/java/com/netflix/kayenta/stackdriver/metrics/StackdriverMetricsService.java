@@ -39,6 +39,7 @@ import com.netflix.kayenta.stackdriver.config.StackdriverConfigurationProperties
 import com.netflix.spectator.api.Id;
 import com.netflix.spectator.api.Registry;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -47,6 +48,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import javax.validation.constraints.NotNull;
@@ -73,6 +77,9 @@ public class StackdriverMetricsService implements MetricsService {
 
   @Builder.Default private List<MetricDescriptor> metricDescriptorsCache = Collections.emptyList();
 
+  // Used to issue the queries of a batch concurrently. Batches are queried sequentially when unset.
+  private final ExecutorService queryExecutor;
+
   @Override
   public String getType() {
     return StackdriverCanaryMetricSetQueryConfig.SERVICE_TYPE;
@@ -337,11 +344,24 @@ public class StackdriverMetricsService implements MetricsService {
       list.setAggregationGroupByFields(groupByFields);
     }
 
+    list.setPageSize(stackdriverConfigurationProperties.getQueryPageSize());
+
     long startTime = registry.clock().monotonicTime();
-    ListTimeSeriesResponse response;
+    List<TimeSeries> timeSeriesList = new ArrayList<>();
 
     try {
-      response = list.execute();
+      // Each page token is only handed out with the page before it, so pages are fetched in turn.
+      String pageToken = null;
+
+      do {
+        ListTimeSeriesResponse response = list.setPageToken(pageToken).execute();
+
+        if (response.getTimeSeries() != null) {
+          timeSeriesList.addAll(response.getTimeSeries());
+        }
+
+        pageToken = response.getNextPageToken();
+      } while (!StringUtils.isEmpty(pageToken));
     } finally {
       long endTime = registry.clock().monotonicTime();
       Id stackdriverFetchTimerId =
@@ -364,9 +384,7 @@ public class StackdriverMetricsService implements MetricsService {
       numIntervals++;
     }
 
-    List<TimeSeries> timeSeriesList = response.getTimeSeries();
-
-    if (timeSeriesList == null || timeSeriesList.size() == 0) {
+    if (timeSeriesList.isEmpty()) {
       // Add placeholder metric set.
       timeSeriesList =
           Collections.singletonList(
@@ -385,24 +403,26 @@ public class StackdriverMetricsService implements MetricsService {
             "Expected {} data {}, but received {}.", numIntervals, pointOrPoints, points.size());
       }
 
-      Collections.reverse(points);
-
+      // Points are returned newest first.
       Instant responseStartTimeInstant =
           points.size() > 0
-              ? Instant.parse(points.get(0).getInterval().getStartTime())
+              ? Instant.parse(points.get(points.size() - 1).getInterval().getStartTime())
               : stackdriverCanaryScope.getStart();
       long responseStartTimeMillis = responseStartTimeInstant.toEpochMilli();
 
       Instant responseEndTimeInstant =
           points.size() > 0
-              ? Instant.parse(points.get(points.size() - 1).getInterval().getEndTime())
+              ? Instant.parse(points.get(0).getInterval().getEndTime())
               : stackdriverCanaryScope.getEnd();
 
       // TODO(duftler): What if there are no data points?
-      List<Double> pointValues =
-          points.stream()
-              .map(point -> point.getValue().getDoubleValue())
-              .collect(Collectors.toList());
+      double[] pointValues = new double[points.size()];
+
+      for (int i = 0; i < pointValues.length; i++) {
+        Double value = points.get(pointValues.length - 1 - i).getValue().getDoubleValue();
+
+        pointValues[i] = value != null ? value : Double.NaN;
+      }
 
       MetricSet.MetricSetBuilder metricSetBuilder =
           MetricSet.builder()
@@ -449,6 +469,55 @@ public class StackdriverMetricsService implements MetricsService {
     return metricSetList;
   }
 
+  @Override
+  public List<MetricSet> batchQueryMetrics(
+      String metricsAccountName,
+      CanaryConfig canaryConfig,
+      List<CanaryMetricConfig> canaryMetricConfigs,
+      CanaryScope canaryScope)
+      throws IOException {
+    if (queryExecutor == null) {
+      return MetricsService.super.batchQueryMetrics(
+          metricsAccountName, canaryConfig, canaryMetricConfigs, canaryScope);
+    }
+
+    // Stackdriver has no multi-filter query, so issue one request per metric concurrently.
+    List<CompletableFuture<List<MetricSet>>> futures =
+        canaryMetricConfigs.stream()
+            .map(
+                canaryMetricConfig ->
+                    CompletableFuture.supplyAsync(
+                        () -> {
+                          try {
+                            return queryMetrics(
+                                metricsAccountName, canaryConfig, canaryMetricConfig, canaryScope);
+                          } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                          }
+                        },
+                        queryExecutor))
+            .collect(Collectors.toList());
+    List<MetricSet> metricSetList = new ArrayList<>();
+
+    try {
+      for (CompletableFuture<List<MetricSet>> future : futures) {
+        metricSetList.addAll(future.join());
+      }
+    } catch (CompletionException e) {
+      futures.forEach(future -> future.cancel(true));
+
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+
+      throw e;
+    }
+
+    return metricSetList;
+  }
+
   private String determineProjectId(
       String metricsAccountName, StackdriverCanaryScope stackdriverCanaryScope) {
     String projectId = stackdriverCanaryScope.getProject();
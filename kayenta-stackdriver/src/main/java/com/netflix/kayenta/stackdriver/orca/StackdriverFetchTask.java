@@ -19,10 +19,10 @@ package com.netflix.kayenta.stackdriver.orca;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.kayenta.canary.CanaryConfig;
 import com.netflix.kayenta.metrics.SynchronousQueryProcessor;
+import com.netflix.kayenta.metrics.orca.MetricsFetchTask;
 import com.netflix.kayenta.security.AccountCredentials;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
 import com.netflix.kayenta.stackdriver.canary.StackdriverCanaryScope;
-import com.netflix.spinnaker.orca.api.pipeline.RetryableTask;
 import com.netflix.spinnaker.orca.api.pipeline.TaskResult;
 import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
 import java.io.IOException;
@@ -35,7 +35,7 @@ import org.springframework.stereotype.Component;
 
 @Component
 @Slf4j
-public class StackdriverFetchTask implements RetryableTask {
+public class StackdriverFetchTask implements MetricsFetchTask {
 
   private final ObjectMapper kayentaObjectMapper;
   private final AccountCredentialsRepository accountCredentialsRepository;
@@ -72,7 +72,6 @@ public class StackdriverFetchTask implements RetryableTask {
     Map<String, Object> canaryConfigMap = (Map<String, Object>) context.get("canaryConfig");
     CanaryConfig canaryConfig =
         kayentaObjectMapper.convertValue(canaryConfigMap, CanaryConfig.class);
-    int metricIndex = (Integer) stage.getContext().get("metricIndex");
     StackdriverCanaryScope stackdriverCanaryScope;
     try {
       stackdriverCanaryScope =
@@ -95,7 +94,7 @@ public class StackdriverFetchTask implements RetryableTask {
         resolvedMetricsAccountName,
         resolvedStorageAccountName,
         canaryConfig,
-        metricIndex,
-        stackdriverCanaryScope);
+        stackdriverCanaryScope,
+        stage);
   }
 }
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.kayenta.stackdriver.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.services.monitoring.v3.Monitoring;
+import com.google.api.services.monitoring.v3.model.ListTimeSeriesResponse;
+import com.google.api.services.monitoring.v3.model.Metric;
+import com.google.api.services.monitoring.v3.model.Point;
+import com.google.api.services.monitoring.v3.model.TimeInterval;
+import com.google.api.services.monitoring.v3.model.TimeSeries;
+import com.google.api.services.monitoring.v3.model.TypedValue;
+import com.netflix.kayenta.canary.CanaryConfig;
+import com.netflix.kayenta.canary.CanaryMetricConfig;
+import com.netflix.kayenta.canary.CanaryScope;
+import com.netflix.kayenta.canary.providers.metrics.StackdriverCanaryMetricSetQueryConfig;
+import com.netflix.kayenta.google.security.GoogleNamedAccountCredentials;
+import com.netflix.kayenta.metrics.MetricSet;
+import com.netflix.kayenta.security.AccountCredentialsRepository;
+import com.netflix.kayenta.stackdriver.canary.StackdriverCanaryScope;
+import com.netflix.kayenta.stackdriver.config.StackdriverConfigurationProperties;
+import com.netflix.spectator.api.DefaultRegistry;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class StackdriverMetricsServiceTest {
+
+  private final List<CanaryMetricConfig> canaryMetricConfigs =
+      Arrays.asList(metric("cpu"), metric("errors"), metric("latency"));
+
+  private final CanaryConfig canaryConfig =
+      CanaryConfig.builder().metrics(canaryMetricConfigs).build();
+
+  private static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+
+  private final AccountCredentialsRepository accountCredentialsRepository =
+      mock(AccountCredentialsRepository.class);
+
+  private final Monitoring.Projects.TimeSeries.List timeSeriesList =
+      mock(Monitoring.Projects.TimeSeries.List.class, RETURNS_SELF);
+
+  private ExecutorService queryExecutor;
+
+  private StackdriverMetricsService stackdriverMetricsService;
+
+  @Before
+  public void setUp() throws IOException {
+    queryExecutor = Executors.newFixedThreadPool(canaryMetricConfigs.size());
+    stackdriverMetricsService =
+        spy(
+            StackdriverMetricsService.builder()
+                .accountCredentialsRepository(accountCredentialsRepository)
+                .registry(new DefaultRegistry())
+                .stackdriverConfigurationProperties(new StackdriverConfigurationProperties())
+                .queryExecutor(queryExecutor)
+                .build());
+
+    Monitoring monitoring = mock(Monitoring.class, RETURNS_DEEP_STUBS);
+    when(monitoring.projects().timeSeries().list("projects/some-project"))
+        .thenReturn(timeSeriesList);
+    doReturn(
+            GoogleNamedAccountCredentials.builder()
+                .name("some-account")
+                .project("some-project")
+                .monitoring(monitoring)
+                .build())
+        .when(accountCredentialsRepository)
+        .getRequiredOne("some-account");
+  }
+
+  @After
+  public void tearDown() {
+    queryExecutor.shutdownNow();
+  }
+
+  @Test
+  public void batchedQueriesRunConcurrentlyAndKeepTheOrderOfTheMetrics() throws IOException {
+    CountDownLatch lastMetricQueried = new CountDownLatch(1);
+
+    // The first metric only completes once the last one has been queried, so the queries can only
+    // all complete if they run concurrently, and they complete out of order.
+    doAnswer(
+            invocation -> {
+              CanaryMetricConfig canaryMetricConfig = invocation.getArgument(2);
+
+              if (canaryMetricConfig.getName().equals("cpu")) {
+                assertThat(lastMetricQueried.await(5, TimeUnit.SECONDS)).isTrue();
+              } else if (canaryMetricConfig.getName().equals("latency")) {
+                lastMetricQueried.countDown();
+              }
+
+              return Arrays.asList(
+                  metricSet(canaryMetricConfig.getName(), "a"),
+                  metricSet(canaryMetricConfig.getName(), "b"));
+            })
+        .when(stackdriverMetricsService)
+        .queryMetrics(anyString(), any(), any(), any());
+
+    List<MetricSet> metricSets =
+        stackdriverMetricsService.batchQueryMetrics(
+            "some-account", canaryConfig, canaryMetricConfigs, new CanaryScope());
+
+    assertThat(metricSets)
+        .extracting(metricSet -> metricSet.getName() + "/" + metricSet.getTags().get("series"))
+        .containsExactly("cpu/a", "cpu/b", "errors/a", "errors/b", "latency/a", "latency/b");
+  }
+
+  @Test
+  public void aFailedQueryFailsTheBatch() throws IOException {
+    doAnswer(
+            invocation -> {
+              CanaryMetricConfig canaryMetricConfig = invocation.getArgument(2);
+
+              if (canaryMetricConfig.getName().equals("errors")) {
+                throw new IOException("boom");
+              }
+
+              return Collections.singletonList(metricSet(canaryMetricConfig.getName(), "a"));
+            })
+        .when(stackdriverMetricsService)
+        .queryMetrics(anyString(), any(), any(), any());
+
+    assertThatThrownBy(
+            () ->
+                stackdriverMetricsService.batchQueryMetrics(
+                    "some-account", canaryConfig, canaryMetricConfigs, new CanaryScope()))
+        .isInstanceOf(IOException.class)
+        .hasMessage("boom");
+  }
+
+  @Test
+  public void seriesFromEveryPageAreReturned() throws IOException {
+    when(timeSeriesList.execute())
+        .thenReturn(
+            new ListTimeSeriesResponse()
+                .setTimeSeries(Collections.singletonList(timeSeries("a", 3.0, 2.0, 1.0)))
+                .setNextPageToken("page-2"),
+            new ListTimeSeriesResponse()
+                .setTimeSeries(Collections.singletonList(timeSeries("b", 6.0, 5.0, 4.0))));
+
+    List<MetricSet> metricSets = queryCpu();
+
+    assertThat(metricSets)
+        .extracting(metricSet -> metricSet.getTags().get("series"))
+        .containsExactly("a", "b");
+    InOrder pages = inOrder(timeSeriesList);
+    pages.verify(timeSeriesList).setPageToken(null);
+    pages.verify(timeSeriesList).execute();
+    pages.verify(timeSeriesList).setPageToken("page-2");
+    pages.verify(timeSeriesList).execute();
+    verify(timeSeriesList, times(2)).execute();
+  }
+
+  @Test
+  public void pointsReturnedNewestFirstAreOrderedOldestFirst() throws IOException {
+    when(timeSeriesList.execute())
+        .thenReturn(
+            new ListTimeSeriesResponse()
+                .setTimeSeries(Collections.singletonList(timeSeries("a", 3.0, 2.0, 1.0))));
+
+    MetricSet metricSet = queryCpu().get(0);
+
+    assertThat(metricSet.getStartTimeIso()).isEqualTo("2020-01-01T00:00:00Z");
+    assertThat(metricSet.getStartTimeMillis()).isEqualTo(START.toEpochMilli());
+    assertThat(metricSet.getEndTimeIso()).isEqualTo("2020-01-01T00:03:00Z");
+    assertThat(metricSet.getStepMillis()).isEqualTo(60000);
+    assertThat(metricSet.getValues()).containsExactly(1.0, 2.0, 3.0);
+  }
+
+  @Test
+  public void pointsWithoutADoubleValueAreNaN() throws IOException {
+    when(timeSeriesList.execute())
+        .thenReturn(
+            new ListTimeSeriesResponse()
+                .setTimeSeries(Collections.singletonList(timeSeries("a", 3.0, null, 1.0))));
+
+    assertThat(queryCpu().get(0).getValues()).containsExactly(1.0, Double.NaN, 3.0);
+  }
+
+  private List<MetricSet> queryCpu() throws IOException {
+    StackdriverCanaryScope canaryScope = new StackdriverCanaryScope();
+    canaryScope.setProject("some-project");
+    canaryScope.setStart(START);
+    canaryScope.setEnd(START.plusSeconds(180));
+    canaryScope.setStep(60L);
+    CanaryMetricConfig canaryMetricConfig =
+        CanaryMetricConfig.builder()
+            .name("cpu")
+            .query(
+                StackdriverCanaryMetricSetQueryConfig.builder()
+                    .metricType("compute.googleapis.com/instance/cpu/utilization")
+                    .resourceType("global")
+                    .build())
+            .build();
+
+    return stackdriverMetricsService.queryMetrics(
+        "some-account", canaryConfig, canaryMetricConfig, canaryScope);
+  }
+
+  /** A series of one-minute points starting at START, given newest first as Stackdriver does. */
+  private static TimeSeries timeSeries(String series, Double... newestFirst) {
+    List<Point> points = new ArrayList<>();
+
+    for (int i = 0; i < newestFirst.length; i++) {
+      Instant pointStart = START.plusSeconds(60L * (newestFirst.length - 1 - i));
+
+      points.add(
+          new Point()
+              .setInterval(
+                  new TimeInterval()
+                      .setStartTime(pointStart.toString())
+                      .setEndTime(pointStart.plusSeconds(60).toString()))
+              .setValue(new TypedValue().setDoubleValue(newestFirst[i])));
+    }
+
+    return new TimeSeries()
+        .setMetric(new Metric().setLabels(Collections.singletonMap("series", series)))
+        .setPoints(points);
+  }
+
+  private static CanaryMetricConfig metric(String name) {
+    return CanaryMetricConfig.builder().name(name).build();
+  }
+
+  private static MetricSet metricSet(String name, String series) {
+    return MetricSet.builder()
+        .name(name)
+        .tag("series", series)
+        .values(Collections.singletonList(1.0))
+        .build();
+  }
+}
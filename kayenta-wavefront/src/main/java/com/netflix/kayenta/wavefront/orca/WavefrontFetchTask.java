@@ -19,10 +19,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.kayenta.canary.CanaryConfig;
 import com.netflix.kayenta.canary.CanaryScope;
 import com.netflix.kayenta.metrics.SynchronousQueryProcessor;
+import com.netflix.kayenta.metrics.orca.MetricsFetchTask;
 import com.netflix.kayenta.security.AccountCredentials;
 import com.netflix.kayenta.security.AccountCredentialsRepository;
 import com.netflix.kayenta.wavefront.canary.WavefrontCanaryScope;
-import com.netflix.spinnaker.orca.api.pipeline.RetryableTask;
 import com.netflix.spinnaker.orca.api.pipeline.TaskResult;
 import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
 import java.io.IOException;
@@ -35,7 +35,7 @@ import org.springframework.stereotype.Component;
 
 @Component
 @Slf4j
-public class WavefrontFetchTask implements RetryableTask {
+public class WavefrontFetchTask implements MetricsFetchTask {
 
   private final ObjectMapper kayentaObjectMapper;
   private final AccountCredentialsRepository accountCredentialsRepository;
@@ -70,7 +70,6 @@ public class WavefrontFetchTask implements RetryableTask {
     Map<String, Object> canaryConfigMap = (Map<String, Object>) context.get("canaryConfig");
     CanaryConfig canaryConfig =
         kayentaObjectMapper.convertValue(canaryConfigMap, CanaryConfig.class);
-    int metricIndex = (Integer) stage.getContext().get("metricIndex");
     CanaryScope canaryScope;
     try {
       canaryScope =
@@ -93,7 +92,7 @@ public class WavefrontFetchTask implements RetryableTask {
         resolvedMetricsAccountName,
         resolvedStorageAccountName,
         canaryConfig,
-        metricIndex,
-        canaryScope);
+        canaryScope,
+        stage);
   }
 }
@@ -2,6 +2,7 @@ package com.netflix.kayenta.config;
 
 import com.netflix.spinnaker.config.PluginsAutoConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
@@ -18,7 +19,8 @@ import org.springframework.scheduling.annotation.EnableScheduling;
   "com.netflix.spinnaker.config",
   "com.netflix.spinnaker.endpoint",
 })
-@EnableAutoConfiguration
+// The SQL object store configures its own connection pool, only when it is enabled.
+@EnableAutoConfiguration(exclude = DataSourceAutoConfiguration.class)
 @EnableAsync
 @EnableScheduling
 public class ApplicationConfiguration {}
@@ -5,6 +5,7 @@ import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.kayenta.canary.CanaryFetchConfigurationProperties;
 import com.netflix.kayenta.canary.CanaryJudge;
 import com.netflix.kayenta.canary.ExecutionMapper;
 import com.netflix.kayenta.config.WebConfiguration;
@@ -94,7 +95,8 @@ public abstract class BaseControllerTest {
           "",
           Optional.empty(),
           executionLauncher,
-          executionRepository);
+          executionRepository,
+          new CanaryFetchConfigurationProperties());
     }
 
     @Bean